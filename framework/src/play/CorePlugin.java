@@ -13,6 +13,10 @@ import java.util.*;
 
 import org.apache.commons.lang.StringUtils;
 import play.Play.Mode;
+import play.cache.Cache;
+import play.cache.CacheImpl;
+import play.cache.ConcurrentCacheImpl;
+import play.cache.NearCacheImpl;
 import play.classloading.ApplicationClasses.ApplicationClass;
 import play.classloading.enhancers.ContinuationEnhancer;
 import play.classloading.enhancers.ControllersEnhancer;
@@ -26,6 +30,7 @@ import play.libs.Crypto;
 import play.mvc.Http.Header;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
+import play.server.ResponseBuffer;
 
 import static java.util.Arrays.asList;
 
@@ -170,6 +175,44 @@ public class CorePlugin extends PlayPlugin {
         out.println("Scheduled task count: " + Invoker.executor.getTaskCount());
         out.println("Queue size: " + Invoker.executor.getQueue().size());
         out.println();
+        out.println("Invoker pools:");
+        out.println("~~~~~~~~~~~~~~");
+        for (Invoker.Pool pool : Invoker.getPools()) {
+            out.println(String.format("%s: %d threads, %d active, %d waiting (max %s), %.1f ms avg wait, %d started, %d rejected", pool.name,
+                    pool.executor.getCorePoolSize(), pool.getActiveCount(), pool.getQueueSize(), pool.maxQueue == -1 ? "none" : pool.maxQueue,
+                    pool.getAverageWaitTime(), pool.getStartedCount(), pool.getRejectedCount()));
+        }
+        out.println();
+        out.println("Response buffers:");
+        out.println("~~~~~~~~~~~~~~~~~");
+        out.println("Allocated chunks: " + ResponseBuffer.allocatedChunks());
+        out.println("Pooled chunks: " + ResponseBuffer.pooledChunks());
+        out.println("Outstanding chunks: " + ResponseBuffer.outstandingChunks());
+        out.println();
+        CacheImpl cacheImpl = Cache.cacheImpl;
+        if (cacheImpl instanceof NearCacheImpl) {
+            NearCacheImpl near = (NearCacheImpl) cacheImpl;
+            out.println("Near cache:");
+            out.println("~~~~~~~~~~~");
+            out.println("Entries: " + near.getLocalCache().size() + " (max " + near.getLocalCache().getMaximum() + ")");
+            out.println(String.format("Hits: %d (%.1f%%)", near.getLocalCache().getHitCount(), near.getLocalCache().getHitRatio() * 100));
+            out.println("Remote reads: " + near.getRemoteReadCount());
+            out.println("Stale reads: " + near.getStaleReadCount());
+            out.println();
+            cacheImpl = near.getRemoteCache();
+        }
+        if (cacheImpl instanceof ConcurrentCacheImpl) {
+            ConcurrentCacheImpl cache = (ConcurrentCacheImpl) cacheImpl;
+            out.println("Cache:");
+            out.println("~~~~~~");
+            out.println("Entries: " + cache.size());
+            out.println((cache.isWeighingBytes() ? "Size: " : "Weighted size: ") + cache.getWeightedSize() + " (max " + cache.getMaximum() + ")");
+            out.println(String.format("Hits: %d (%.1f%%)", cache.getHitCount(), cache.getHitRatio() * 100));
+            out.println("Misses: " + cache.getMissCount());
+            out.println("Evictions: " + cache.getEvictionCount());
+            out.println("Expirations: " + cache.getExpirationCount());
+            out.println();
+        }
         try {
             out.println("Monitors:");
             out.println("~~~~~~~~");
@@ -231,6 +274,56 @@ public class CorePlugin extends PlayPlugin {
             status.add("pool", pool);
         }
 
+        {
+            JsonArray pools = new JsonArray();
+            for (Invoker.Pool pool : Invoker.getPools()) {
+                JsonObject o = new JsonObject();
+                o.addProperty("name", pool.name);
+                o.addProperty("size", pool.executor.getCorePoolSize());
+                o.addProperty("active", pool.getActiveCount());
+                o.addProperty("queue", pool.getQueueSize());
+                o.addProperty("maxQueue", pool.maxQueue);
+                o.addProperty("avgWait", pool.getAverageWaitTime());
+                o.addProperty("started", pool.getStartedCount());
+                o.addProperty("rejected", pool.getRejectedCount());
+                pools.add(o);
+            }
+            status.add("pools", pools);
+        }
+
+        {
+            JsonObject buffers = new JsonObject();
+            buffers.addProperty("allocated", ResponseBuffer.allocatedChunks());
+            buffers.addProperty("pooled", ResponseBuffer.pooledChunks());
+            buffers.addProperty("outstanding", ResponseBuffer.outstandingChunks());
+            status.add("responseBuffers", buffers);
+        }
+
+        CacheImpl cacheImpl = Cache.cacheImpl;
+        if (cacheImpl instanceof NearCacheImpl) {
+            NearCacheImpl near = (NearCacheImpl) cacheImpl;
+            JsonObject o = new JsonObject();
+            o.addProperty("entries", near.getLocalCache().size());
+            o.addProperty("maxEntries", near.getLocalCache().getMaximum());
+            o.addProperty("hits", near.getLocalCache().getHitCount());
+            o.addProperty("remoteReads", near.getRemoteReadCount());
+            o.addProperty("staleReads", near.getStaleReadCount());
+            status.add("nearCache", o);
+            cacheImpl = near.getRemoteCache();
+        }
+        if (cacheImpl instanceof ConcurrentCacheImpl) {
+            ConcurrentCacheImpl cache = (ConcurrentCacheImpl) cacheImpl;
+            JsonObject o = new JsonObject();
+            o.addProperty("entries", cache.size());
+            o.addProperty("size", cache.getWeightedSize());
+            o.addProperty("maxSize", cache.getMaximum());
+            o.addProperty("hits", cache.getHitCount());
+            o.addProperty("misses", cache.getMissCount());
+            o.addProperty("evictions", cache.getEvictionCount());
+            o.addProperty("expirations", cache.getExpirationCount());
+            status.add("cache", o);
+        }
+
         {
             JsonArray monitors = new JsonArray();
             try {
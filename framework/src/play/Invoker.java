@@ -1,15 +1,21 @@
 package play;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.jamonapi.Monitor;
 import com.jamonapi.MonitorFactory;
@@ -21,7 +27,10 @@ import play.exceptions.UnexpectedException;
 import play.i18n.Lang;
 import play.libs.F;
 import play.libs.F.Promise;
+import play.mvc.ActionInvoker;
+import play.mvc.InvokerPool;
 import play.utils.PThreadFactory;
+import play.utils.ThreadPerTaskExecutor;
 
 /**
  * Run some code in a Play! context
@@ -33,16 +42,200 @@ public class Invoker {
      */
     public static ScheduledThreadPoolExecutor executor = null;
 
+    /**
+     * The main pool, running the invocations on the main executor.
+     */
+    public static Pool defaultPool = null;
+
+    /**
+     * The named pools, by name.
+     */
+    static final Map<String, Pool> pools = new LinkedHashMap<String, Pool>();
+
+    /**
+     * The pool of each action, when it is not the main pool.
+     */
+    static final Map<String, Pool> actionPools = new ConcurrentHashMap<String, Pool>();
+
+    /**
+     * The pools set by the configuration, by lower case action or
+     * <code>controller.*</code>.
+     */
+    static final Map<String, Pool> configuredActionPools = new HashMap<String, Pool>();
+
+    /**
+     * An executor with a bounded number of waiting invocations.
+     * <p>
+     * An invocation is rejected with a {@link RejectedExecutionException} when
+     * <code>maxQueue</code> invocations are already waiting for a thread.
+     * Resumed invocations (after a suspend) are not counted.
+     * </p>
+     */
+    public static class Pool {
+
+        public final String name;
+        public final ScheduledThreadPoolExecutor executor;
+        /**
+         * Maximum number of waiting invocations, -1 for no maximum.
+         */
+        public final int maxQueue;
+
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicLong started = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong waitTime = new AtomicLong();
+
+        Pool(String name, ScheduledThreadPoolExecutor executor, int maxQueue) {
+            this.name = name;
+            this.executor = executor;
+            this.maxQueue = maxQueue;
+        }
+
+        boolean admit() {
+            if (queued.incrementAndGet() > maxQueue && maxQueue != -1) {
+                queued.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void started(long waitedNanos) {
+            queued.decrementAndGet();
+            started.incrementAndGet();
+            waitTime.addAndGet(waitedNanos);
+        }
+
+        /**
+         * @return the number of invocations waiting for a thread.
+         */
+        public int getQueueSize() {
+            return queued.get();
+        }
+
+        public int getActiveCount() {
+            return executor.getActiveCount();
+        }
+
+        public long getStartedCount() {
+            return started.get();
+        }
+
+        public long getRejectedCount() {
+            return rejected.get();
+        }
+
+        /**
+         * @return the average time the invocations waited for a thread, in
+         *         milliseconds.
+         */
+        public double getAverageWaitTime() {
+            long count = started.get();
+            return count == 0 ? 0 : waitTime.get() / 1000000.0 / count;
+        }
+    }
+
+    /**
+     * @return all the pools, the main pool first.
+     */
+    public static List<Pool> getPools() {
+        List<Pool> all = new ArrayList<Pool>(pools.size() + 1);
+        all.add(defaultPool);
+        all.addAll(pools.values());
+        return all;
+    }
+
+    /**
+     * @return true if named pools are configured, the only ones actions can
+     *         be routed to.
+     */
+    public static boolean hasNamedPools() {
+        return !pools.isEmpty();
+    }
+
+    /**
+     * @return the named pool, or the main pool (named "default") if there is
+     *         no such pool.
+     */
+    public static Pool getPool(String name) {
+        if (name == null || name.equals(defaultPool.name)) {
+            return defaultPool;
+        }
+        Pool pool = pools.get(name);
+        if (pool == null) {
+            Logger.warn("No pool named %s (play.pool.%s.size is not set), the main pool is used", name, name);
+            return defaultPool;
+        }
+        return pool;
+    }
+
+    /**
+     * Find the pool of an action, set by its {@link InvokerPool} annotation
+     * (on the method or the controller) or the
+     * <code>play.pool.&lt;name&gt;.actions</code> configuration.
+     *
+     * @return the pool, the main pool by default.
+     */
+    public static Pool getActionPool(String action) {
+        if (action == null || pools.isEmpty()) {
+            return defaultPool;
+        }
+        Pool pool = actionPools.get(action);
+        if (pool != null) {
+            return pool;
+        }
+        pool = configuredActionPools.get(action.toLowerCase());
+        if (pool == null && action.lastIndexOf('.') > 0) {
+            pool = configuredActionPools.get(action.substring(0, action.lastIndexOf('.')).toLowerCase() + ".*");
+        }
+        if (pool == null) {
+            pool = annotatedPool(action);
+        }
+        // Classes are reloaded in DEV mode
+        if (Play.mode == Mode.PROD && actionPools.size() < 10000) {
+            actionPools.put(action, pool);
+        }
+        return pool;
+    }
+
+    private static Pool annotatedPool(String action) {
+        try {
+            Object[] controllerAndMethod = ActionInvoker.getActionMethod(action);
+            Method method = (Method) controllerAndMethod[1];
+            InvokerPool annotation = method.getAnnotation(InvokerPool.class);
+            for (Class<?> c = (Class<?>) controllerAndMethod[0]; annotation == null && c != null; c = c.getSuperclass()) {
+                annotation = c.getAnnotation(InvokerPool.class);
+            }
+            if (annotation != null) {
+                return getPool(annotation.value());
+            }
+        } catch (Exception e) {
+            // Not found, the invocation will fail in the main pool
+        }
+        return defaultPool;
+    }
+
     /**
      * Run the code in a new thread took from a thread pool.
      * @param invocation The code to run
      * @return The future object, to know when the task is completed
+     * @throws RejectedExecutionException if too many invocations are waiting in the pool
      */
     public static Future<?> invoke(final Invocation invocation) {
+        Pool pool = invocation.getPool();
+        if (!pool.admit()) {
+            throw new RejectedExecutionException("Too many invocations are waiting in the " + pool.name + " pool");
+        }
         Monitor monitor = MonitorFactory.getMonitor("Invoker queue size", "elmts.");
-        monitor.add(executor.getQueue().size());
+        monitor.add(pool.executor.getQueue().size());
         invocation.waitInQueue = MonitorFactory.start("Waiting for execution");
-        return executor.submit(invocation);
+        invocation.queuedAt = System.nanoTime();
+        try {
+            return pool.executor.submit(invocation);
+        } catch (RejectedExecutionException e) {
+            pool.queued.decrementAndGet();
+            throw e;
+        }
     }
 
     /**
@@ -52,9 +245,17 @@ public class Invoker {
      * @return The future object, to know when the task is completed
      */
     public static Future<?> invoke(final Invocation invocation, long millis) {
+        Pool pool = invocation.getPool();
         Monitor monitor = MonitorFactory.getMonitor("Invocation queue", "elmts.");
-        monitor.add(executor.getQueue().size());
-        return executor.schedule(invocation, millis, TimeUnit.MILLISECONDS);
+        monitor.add(pool.executor.getQueue().size());
+        return pool.executor.schedule(invocation, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run again a suspended invocation, in its pool.
+     */
+    static Future<?> resume(Invocation invocation) {
+        return invocation.getPool().executor.submit(invocation);
     }
 
     /**
@@ -172,6 +373,29 @@ public class Invoker {
          */
         Monitor waitInQueue;
 
+        /**
+         * When the invocation was queued, in nanoseconds, or 0 if it is not
+         * waiting in the queue
+         */
+        long queuedAt;
+
+        private Pool pool;
+
+        /**
+         * @return the name of the pool to run this invocation in, or null for
+         *         the main pool.
+         */
+        public String getPoolName() {
+            return null;
+        }
+
+        Pool getPool() {
+            if (pool == null) {
+                pool = Invoker.getPool(getPoolName());
+            }
+            return pool;
+        }
+
         /**
          * Override this method
          * @throws java.lang.Exception
@@ -269,6 +493,10 @@ public class Invoker {
             if (waitInQueue != null) {
                 waitInQueue.stop();
             }
+            if (queuedAt != 0) {
+                getPool().started(System.nanoTime() - queuedAt);
+                queuedAt = 0;
+            }
             try {
                 preInit();
                 if (init()) {//重新编译类到二进制码
@@ -319,7 +547,62 @@ public class Invoker {
      */
     static {
         int core = Integer.parseInt(Play.configuration.getProperty("play.pool", Play.mode == Mode.DEV ? "1" : ((Runtime.getRuntime().availableProcessors() + 1) + "")));
-        executor = new ScheduledThreadPoolExecutor(core, new PThreadFactory("play"), new ThreadPoolExecutor.AbortPolicy());
+        if (ThreadPerTaskExecutor.useVirtualThreads()) {
+            // A virtual thread per invocation, play.pool is not a limit
+            executor = new ThreadPerTaskExecutor(1, "play", -1, ThreadPerTaskExecutor.virtualThreadFactory("play"));
+        } else {
+            executor = new ScheduledThreadPoolExecutor(core, new PThreadFactory("play"), new ThreadPoolExecutor.AbortPolicy());
+        }
+        defaultPool = new Pool("default", executor, Integer.parseInt(Play.configuration.getProperty("play.pool.queue", "-1")));
+        initPools();
+    }
+
+    /**
+     * Create the named pools: <code>play.pool.&lt;name&gt;.size</code>
+     * threads, at most <code>play.pool.&lt;name&gt;.queue</code> waiting
+     * invocations (1000 by default) and the
+     * <code>play.pool.&lt;name&gt;.actions</code> actions
+     * (<code>Controller.action</code> or <code>Controller.*</code>, comma
+     * separated).
+     */
+    static void initPools() {
+        for (Pool pool : pools.values()) {
+            pool.executor.shutdown();
+        }
+        pools.clear();
+        actionPools.clear();
+        configuredActionPools.clear();
+        Map<String, String> actions = new HashMap<String, String>();
+        for (Object key : Play.configuration.keySet()) {
+            String property = key.toString();
+            if (property.startsWith("play.pool.") && property.endsWith(".size")) {
+                String name = property.substring("play.pool.".length(), property.length() - ".size".length());
+                int size = Integer.parseInt(Play.configuration.getProperty(property).trim());
+                int queue = Integer.parseInt(Play.configuration.getProperty("play.pool." + name + ".queue", "1000").trim());
+                pools.put(name, new Pool(name, newPoolExecutor("play-" + name, size), queue));
+                actions.put(name, Play.configuration.getProperty("play.pool." + name + ".actions", ""));
+            }
+        }
+        for (Map.Entry<String, String> entry : actions.entrySet()) {
+            for (String action : entry.getValue().split(",")) {
+                action = action.trim();
+                if (action.length() > 0) {
+                    configuredActionPools.put(action.toLowerCase(), pools.get(entry.getKey()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return an executor running at most <code>size</code> invocations at
+     *         the same time, on virtual threads if
+     *         <code>play.pool.virtual</code> is set.
+     */
+    static ScheduledThreadPoolExecutor newPoolExecutor(String name, int size) {
+        if (ThreadPerTaskExecutor.useVirtualThreads()) {
+            return new ThreadPerTaskExecutor(1, name, size, ThreadPerTaskExecutor.virtualThreadFactory(name));
+        }
+        return new ScheduledThreadPoolExecutor(size, new PThreadFactory(name), new ThreadPoolExecutor.AbortPolicy());
     }
 
     /**
@@ -378,7 +661,7 @@ public class Invoker {
                 Promise<V> smartFuture = (Promise<V>) task;
                 smartFuture.onRedeem(new F.Action<F.Promise<V>>() {
                     public void invoke(Promise<V> result) {
-                        executor.submit(invocation);
+                        Invoker.resume(invocation);
                     }
                 });
             } else {
@@ -400,7 +683,7 @@ public class Invoker {
                     if (!queue.isEmpty()) {
                         for (Future<?> task : new HashSet<Future<?>>(queue.keySet())) {
                             if (task.isDone()) {
-                                executor.submit(queue.get(task));
+                                Invoker.resume(queue.get(task));
                                 queue.remove(task);
                             }
                         }
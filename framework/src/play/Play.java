@@ -22,6 +22,7 @@ import play.libs.IO;
 import play.mvc.Http;
 import play.mvc.Router;
 import play.plugins.PluginCollection;
+import play.templates.TemplateArchive;
 import play.templates.TemplateLoader;
 import play.utils.OrderSafeProperties;
 import play.vfs.VirtualFile;
@@ -588,6 +589,7 @@ public class Play {
     static boolean preCompile() {
         if (usePrecompiled) {
             if (Play.getFile("precompiled").exists()) {
+                TemplateArchive.load();
                 classloader.getAllClasses();
                 Logger.info("Application is precompiled");
                 return true;
@@ -606,9 +608,23 @@ public class Play {
                 Logger.trace("%sms to precompile the Java stuff", System.currentTimeMillis() - start);
             }
 
+            // The archive is written when precompiling, or at startup when
+            // it is missing, else it is loaded
+            boolean writeArchive = System.getProperty("precompile") != null
+                    || (Boolean.parseBoolean(configuration.getProperty("play.templates.archive.write", "false")) && !TemplateArchive.file().exists());
+            if (!writeArchive) {
+                TemplateArchive.load();
+            }
+
             if (!lazyLoadTemplates) {
                 start = System.currentTimeMillis();
+                if (writeArchive) {
+                    TemplateArchive.record();
+                }
                 TemplateLoader.getAllTemplate();
+                if (writeArchive) {
+                    TemplateArchive.write();
+                }
 
                 if (Logger.isTraceEnabled()) {
                     Logger.trace("%sms to precompile the templates", System.currentTimeMillis() - start);
@@ -235,11 +235,23 @@ public abstract class Cache {
             } catch (Exception e) {
                 Logger.error(e, "Error while connecting to memcached");
                 Logger.warn("Fallback to local cache");
-                cacheImpl = EhCacheImpl.newInstance();
+                cacheImpl = newLocalCache();
             }
         } else {
-            cacheImpl = EhCacheImpl.newInstance();
+            cacheImpl = newLocalCache();
         }
+        cacheImpl = NearCacheImpl.wrap(cacheImpl);
+    }
+
+    /**
+     * @return the in memory cache set by <code>cache.local</code>:
+     *         <code>ehcache</code> (the default) or <code>concurrent</code>.
+     */
+    static CacheImpl newLocalCache() {
+        if ("concurrent".equals(Play.configuration.getProperty("cache.local", "ehcache"))) {
+            return ConcurrentCacheImpl.newInstance();
+        }
+        return EhCacheImpl.newInstance();
     }
 
     /**
@@ -11,10 +11,45 @@ import java.lang.annotation.Target;
  * <p>If a time is not specified, the results will be cached for 1 hour by default.
  *
  * <p>Example: <code>@CacheFor("1h")</code>
+ *
+ * <p>The response is cached for GET and HEAD requests, by URL unless an id is
+ * given, and served with a strong ETag: a request whose If-None-Match matches
+ * it gets a 304 Not Modified. When the entry expires, a single request
+ * recomputes it while the others wait for it, up to <code>waitTimeout</code>, or are served the expired
+ * response during <code>staleWhileRevalidate</code>.
+ *
+ * <p>Example: <code>@CacheFor(value = "10mn", staleWhileRevalidate = "1mn", varyLang = true)</code>
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface CacheFor {
     String value() default "1h";
     String id() default "";
+
+    /**
+     * How long an expired response can still be served while a request
+     * computes the new one, none by default.
+     */
+    String staleWhileRevalidate() default "";
+
+    /**
+     * How long a request waits for another one computing the response, when
+     * there is no expired response to serve, before answering a 503 error.
+     */
+    String waitTimeout() default "30s";
+
+    /**
+     * The request headers whose values are part of the cache key.
+     */
+    String[] varyHeaders() default {};
+
+    /**
+     * The cookies whose values are part of the cache key.
+     */
+    String[] varyCookies() default {};
+
+    /**
+     * Whether the current language is part of the cache key.
+     */
+    boolean varyLang() default false;
 }
@@ -0,0 +1,607 @@
+package play.cache;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
+import play.Logger;
+import play.Play;
+
+/**
+ * Bounded in memory cache, an alternative to {@link EhCacheImpl} enabled with
+ * <code>cache.local=concurrent</code>.
+ * <p>
+ * The entries are stored in a concurrent hash map, reads and writes never
+ * wait for a lock. The cache is bounded by a number of entries
+ * (<code>cache.local.maxEntries</code>, 10000 by default), or by the estimated
+ * size of the entries in bytes (<code>cache.local.maxSize</code>).
+ * </p>
+ * <p>
+ * Evictions follow the W-TinyLFU policy: new entries go to a small LRU window
+ * (1% of the cache). Entries leaving the window are admitted to the main space
+ * only if they were accessed more often than the entry they would evict,
+ * according to a {@link FrequencySketch}. The main space is a segmented LRU:
+ * entries accessed again move from the probation segment to the protected
+ * one (80% of the main space). The accesses are recorded in buffers replayed
+ * by the thread that wins the maintenance lock, the others don't wait for it.
+ * </p>
+ * <p>
+ * Expired entries are removed when they are read, or evicted as any other
+ * entry, there is no timer. Expiration is specified in seconds, 0 for never.
+ * </p>
+ */
+public class ConcurrentCacheImpl implements CacheImpl {
+
+    static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_THRESHOLD = 32;
+
+    /**
+     * Estimated size of the values of unknown types, in bytes.
+     */
+    static final int DEFAULT_VALUE_SIZE = 64;
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static ConcurrentCacheImpl uniqueInstance;
+
+    final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<String, Node>();
+    private final long maximum;
+    private final boolean weighBytes;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // Guarded by the eviction lock
+    private final FrequencySketch sketch;
+    private final AccessOrder window = new AccessOrder();
+    private final AccessOrder probation = new AccessOrder();
+    private final AccessOrder protectedSegment = new AccessOrder();
+    private volatile long weightedSize;
+
+    private final Queue<Node> writeBuffer = new ConcurrentLinkedQueue<Node>();
+    private final AtomicReferenceArray<Node> readBuffer = new AtomicReferenceArray<Node>(READ_BUFFER_SIZE);
+    private final AtomicLong readBufferWrites = new AtomicLong();
+    private volatile long readBufferReads;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param maximum
+     *            The maximum number of entries, or total size in bytes
+     * @param weighBytes
+     *            Whether the maximum is a size in bytes
+     */
+    ConcurrentCacheImpl(long maximum, boolean weighBytes) {
+        this.maximum = maximum;
+        this.weighBytes = weighBytes;
+        this.windowMaximum = Math.max(1, maximum / 100);
+        this.protectedMaximum = (maximum - windowMaximum) * 4 / 5;
+        // Assume 1KB entries for the frequencies of a cache bounded in bytes
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, weighBytes ? maximum / 1024 : maximum));
+    }
+
+    /**
+     * A cache of its own, bounded by a number of entries, for framework data
+     * that should not be mixed with the application cache.
+     */
+    public static ConcurrentCacheImpl withMaxEntries(long maxEntries) {
+        return new ConcurrentCacheImpl(maxEntries, false);
+    }
+
+    public static ConcurrentCacheImpl getInstance() {
+        return uniqueInstance;
+    }
+
+    public static ConcurrentCacheImpl newInstance() {
+        String maxSize = Play.configuration.getProperty("cache.local.maxSize");
+        if (maxSize != null) {
+            uniqueInstance = new ConcurrentCacheImpl(Long.parseLong(maxSize.trim()), true);
+        } else {
+            uniqueInstance = new ConcurrentCacheImpl(Long.parseLong(Play.configuration.getProperty("cache.local.maxEntries", "10000").trim()), false);
+        }
+        return uniqueInstance;
+    }
+
+    public void add(String key, Object value, int expiration) {
+        Node node = newNode(key, value, expiration);
+        for (;;) {
+            Node existing = data.putIfAbsent(key, node);
+            if (existing == null) {
+                afterWrite(node);
+                return;
+            }
+            if (!existing.isExpired(System.currentTimeMillis())) {
+                return;
+            }
+            if (data.replace(key, existing, node)) {
+                expirations.incrementAndGet();
+                retire(existing);
+                afterWrite(node);
+                return;
+            }
+        }
+    }
+
+    public void set(String key, Object value, int expiration) {
+        Node node = newNode(key, value, expiration);
+        Node existing = data.put(key, node);
+        if (existing != null) {
+            retire(existing);
+        }
+        afterWrite(node);
+    }
+
+    public void replace(String key, Object value, int expiration) {
+        Node node = newNode(key, value, expiration);
+        for (;;) {
+            Node existing = data.get(key);
+            if (existing == null) {
+                return;
+            }
+            if (existing.isExpired(System.currentTimeMillis())) {
+                expire(existing);
+                return;
+            }
+            if (data.replace(key, existing, node)) {
+                retire(existing);
+                afterWrite(node);
+                return;
+            }
+        }
+    }
+
+    public Object get(String key) {
+        Node node = data.get(key);
+        if (node == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (node.isExpired(System.currentTimeMillis())) {
+            misses.incrementAndGet();
+            expire(node);
+            return null;
+        }
+        hits.incrementAndGet();
+        afterRead(node);
+        return node.value;
+    }
+
+    public Map<String, Object> get(String[] keys) {
+        Map<String, Object> result = new HashMap<String, Object>(keys.length);
+        for (String key : keys) {
+            result.put(key, get(key));
+        }
+        return result;
+    }
+
+    /**
+     * Add to a number, keeping its expiration. The concurrent increments
+     * don't lose updates.
+     *
+     * @return the new value, or -1 if there is no such entry.
+     */
+    public long incr(String key, int by) {
+        Node node = data.get(key);
+        if (node == null) {
+            return -1;
+        }
+        if (node.isExpired(System.currentTimeMillis())) {
+            expire(node);
+            return -1;
+        }
+        for (;;) {
+            Object current = node.value;
+            long newValue = ((Number) current).longValue() + by;
+            if (Node.VALUE.compareAndSet(node, current, newValue)) {
+                afterRead(node);
+                return newValue;
+            }
+        }
+    }
+
+    public long decr(String key, int by) {
+        return incr(key, -by);
+    }
+
+    public void delete(String key) {
+        Node node = data.remove(key);
+        if (node != null) {
+            retire(node);
+            drain();
+        }
+    }
+
+    public void clear() {
+        for (Node node : data.values()) {
+            if (data.remove(node.key, node)) {
+                retire(node);
+            }
+        }
+        evictionLock.lock();
+        try {
+            maintenance();
+            sketch.clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public boolean safeAdd(String key, Object value, int expiration) {
+        try {
+            add(key, value, expiration);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public boolean safeDelete(String key) {
+        try {
+            delete(key);
+            return true;
+        } catch (Exception e) {
+            Logger.error(e.toString());
+            return false;
+        }
+    }
+
+    public boolean safeReplace(String key, Object value, int expiration) {
+        try {
+            replace(key, value, expiration);
+            return true;
+        } catch (Exception e) {
+            Logger.error(e.toString());
+            return false;
+        }
+    }
+
+    public boolean safeSet(String key, Object value, int expiration) {
+        try {
+            set(key, value, expiration);
+            return true;
+        } catch (Exception e) {
+            Logger.error(e.toString());
+            return false;
+        }
+    }
+
+    public void stop() {
+        clear();
+    }
+
+    /**
+     * @return the number of entries, including the expired ones not removed
+     *         yet.
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * @return the number of entries or their estimated size in bytes, as
+     *         bounded by {@link #getMaximum()}.
+     */
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+
+    public boolean isWeighingBytes() {
+        return weighBytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * @return the ratio of the reads finding a value, between 0 and 1.
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private Node newNode(String key, Object value, int expiration) {
+        long expiresAt = expiration > 0 ? System.currentTimeMillis() + expiration * 1000L : 0;
+        return new Node(key, value, expiresAt, weighBytes ? ENTRY_OVERHEAD + estimateSize(key) + estimateSize(value) : 1);
+    }
+
+    private void expire(Node node) {
+        if (data.remove(node.key, node)) {
+            expirations.incrementAndGet();
+            retire(node);
+            drain();
+        }
+    }
+
+    /**
+     * The node has been removed from the map, remove it from the policy.
+     */
+    private void retire(Node node) {
+        node.retired = true;
+        writeBuffer.offer(node);
+    }
+
+    private void afterWrite(Node node) {
+        writeBuffer.offer(node);
+        drain();
+    }
+
+    private void afterRead(Node node) {
+        long index = readBufferWrites.getAndIncrement();
+        long pending = index - readBufferReads;
+        if (pending < READ_BUFFER_SIZE) {
+            readBuffer.lazySet((int) (index & READ_BUFFER_MASK), node);
+        }
+        // Otherwise the access is not recorded
+        if (pending >= READ_BUFFER_THRESHOLD) {
+            drain();
+        }
+    }
+
+    /**
+     * Replay the buffers and evict, unless another thread is doing it.
+     */
+    private void drain() {
+        do {
+            if (!evictionLock.tryLock()) {
+                // The owner replays our writes before releasing the lock
+                return;
+            }
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    private void maintenance() {
+        drainReadBuffer();
+        for (Node node = writeBuffer.poll(); node != null; node = writeBuffer.poll()) {
+            if (node.retired) {
+                if (node.queue != null) {
+                    node.queue.remove(node);
+                }
+            } else if (node.queue == null) {
+                sketch.increment(node.key);
+                window.add(node);
+            }
+        }
+        evict();
+        weightedSize = window.weight + probation.weight + protectedSegment.weight;
+    }
+
+    private void drainReadBuffer() {
+        long writes = readBufferWrites.get();
+        for (long i = Math.max(readBufferReads, writes - READ_BUFFER_SIZE); i < writes; i++) {
+            int index = (int) (i & READ_BUFFER_MASK);
+            Node node = readBuffer.get(index);
+            if (node != null) {
+                readBuffer.lazySet(index, null);
+                onAccess(node);
+            }
+        }
+        readBufferReads = writes;
+    }
+
+    private void onAccess(Node node) {
+        sketch.increment(node.key);
+        if (node.queue == window || node.queue == protectedSegment) {
+            node.queue.moveToTail(node);
+        } else if (node.queue == probation) {
+            probation.remove(node);
+            protectedSegment.add(node);
+        }
+    }
+
+    private void evict() {
+        while (window.weight > windowMaximum) {
+            Node candidate = window.head;
+            window.remove(candidate);
+            admit(candidate);
+        }
+        while (protectedSegment.weight > protectedMaximum) {
+            Node node = protectedSegment.head;
+            protectedSegment.remove(node);
+            probation.add(node);
+        }
+        // Entries bigger than the window, or a lower maximum
+        while (window.weight + probation.weight + protectedSegment.weight > maximum) {
+            Node victim = probation.head != null ? probation.head : protectedSegment.head != null ? protectedSegment.head : window.head;
+            evict(victim);
+        }
+    }
+
+    /**
+     * An entry leaves the window: keep it or the least recently used entry of
+     * the main space, whichever is the most frequently used.
+     */
+    private void admit(Node candidate) {
+        Node victim = probation.head != null ? probation.head : protectedSegment.head;
+        if (victim == null || window.weight + probation.weight + protectedSegment.weight + candidate.weight <= maximum) {
+            probation.add(candidate);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (candidate.isExpired(now)) {
+            evict(candidate);
+        } else if (victim.isExpired(now) || sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            evict(victim);
+            probation.add(candidate);
+        } else {
+            evict(candidate);
+        }
+    }
+
+    private void evict(Node node) {
+        if (node.queue != null) {
+            node.queue.remove(node);
+        }
+        if (data.remove(node.key, node)) {
+            if (node.isExpired(System.currentTimeMillis())) {
+                expirations.incrementAndGet();
+            } else {
+                evictions.incrementAndGet();
+            }
+        }
+        node.retired = true;
+    }
+
+    /**
+     * @return a rough estimate of the memory used by the object, in bytes.
+     */
+    static long estimateSize(Object value) {
+        return estimateSize(value, 0);
+    }
+
+    private static long estimateSize(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof char[]) {
+            return 16 + 2L * ((char[]) value).length;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16;
+        }
+        if (depth < 2) {
+            if (value instanceof Object[]) {
+                long size = 16 + 8L * ((Object[]) value).length;
+                for (Object element : (Object[]) value) {
+                    size += estimateSize(element, depth + 1);
+                }
+                return size;
+            }
+            if (value.getClass().isArray()) {
+                return 16 + 8L * Array.getLength(value);
+            }
+            if (value instanceof Collection) {
+                long size = 48;
+                for (Object element : (Collection<?>) value) {
+                    size += 32 + estimateSize(element, depth + 1);
+                }
+                return size;
+            }
+            if (value instanceof Map) {
+                long size = 48;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    size += 32 + estimateSize(entry.getKey(), depth + 1) + estimateSize(entry.getValue(), depth + 1);
+                }
+                return size;
+            }
+        }
+        return DEFAULT_VALUE_SIZE;
+    }
+
+    static final class Node {
+
+        static final AtomicReferenceFieldUpdater<Node, Object> VALUE = AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "value");
+
+        final String key;
+        volatile Object value;
+        /**
+         * In milliseconds, 0 for never.
+         */
+        final long expiresAt;
+        final long weight;
+        volatile boolean retired;
+
+        // Guarded by the eviction lock
+        AccessOrder queue;
+        Node previous;
+        Node next;
+
+        Node(String key, Object value, long expiresAt, long weight) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != 0 && now >= expiresAt;
+        }
+    }
+
+    /**
+     * A doubly linked list of nodes, from the least to the most recently used.
+     */
+    static final class AccessOrder {
+
+        Node head;
+        Node tail;
+        long weight;
+
+        void add(Node node) {
+            node.queue = this;
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void remove(Node node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            node.queue = null;
+            weight -= node.weight;
+        }
+
+        void moveToTail(Node node) {
+            if (node != tail) {
+                remove(node);
+                add(node);
+            }
+        }
+    }
+}
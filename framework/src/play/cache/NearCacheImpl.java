@@ -0,0 +1,311 @@
+package play.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import play.Logger;
+import play.Play;
+import play.libs.Time;
+
+/**
+ * A small in memory cache in front of another cache, typically
+ * {@link MemcachedImpl}, enabled with <code>cache.near=enabled</code>.
+ * <p>
+ * The values read from the remote cache are kept locally for a short time
+ * (<code>cache.near.ttl</code>, 5 seconds by default) in a
+ * {@link ConcurrentCacheImpl} of <code>cache.near.maxEntries</code> entries
+ * (1000 by default), so that the most read keys don't cost a network round
+ * trip each time. The values are shared by the readers of a server: they must
+ * not be modified.
+ * </p>
+ * <p>
+ * The keys are spread in {@link #BUCKETS} buckets, each with a version number
+ * stored in the remote cache and incremented by the writes through the near
+ * cache. The servers read the versions at most every
+ * <code>cache.near.versionCheck</code> milliseconds (1000 by default), and
+ * ignore the local values read with a previous version of their bucket. So a
+ * value written by a server is not read as stale by the others after this
+ * delay, and the writes of a server are seen at once by itself. Counters are
+ * not versioned: <code>incr</code> and <code>decr</code> only drop the local
+ * value, the other servers may read the previous one until it expires.
+ * </p>
+ */
+public class NearCacheImpl implements CacheImpl {
+
+    static final int BUCKETS = 64;
+    private static final String[] VERSION_KEYS = new String[BUCKETS];
+    static {
+        for (int i = 0; i < BUCKETS; i++) {
+            VERSION_KEYS[i] = "__play_near_cache_version_" + i;
+        }
+    }
+
+    final CacheImpl remote;
+    final ConcurrentCacheImpl local;
+    private final int ttl;
+    private final long versionCheck;
+
+    /**
+     * The versions of the buckets, -1 if there was no write yet. Copied on
+     * change.
+     */
+    private volatile long[] versions = new long[BUCKETS];
+    private final AtomicLong versionCheckedAt = new AtomicLong();
+
+    private final AtomicLong remoteReads = new AtomicLong();
+    private final AtomicLong staleReads = new AtomicLong();
+
+    /**
+     * @param remote
+     *            The cache to read from and write to
+     * @param maxEntries
+     *            The maximum number of values kept locally
+     * @param ttl
+     *            The time the values are kept locally, in seconds
+     * @param versionCheck
+     *            The time between two reads of the remote version, in
+     *            milliseconds
+     */
+    public NearCacheImpl(CacheImpl remote, int maxEntries, int ttl, long versionCheck) {
+        this.remote = remote;
+        this.local = new ConcurrentCacheImpl(maxEntries, false);
+        this.ttl = ttl;
+        this.versionCheck = versionCheck;
+    }
+
+    /**
+     * @return the remote cache wrapped in a near cache, if
+     *         <code>cache.near</code> is enabled.
+     */
+    public static CacheImpl wrap(CacheImpl remote) {
+        if (!Play.configuration.getProperty("cache.near", "disabled").equals("enabled")) {
+            return remote;
+        }
+        int maxEntries = Integer.parseInt(Play.configuration.getProperty("cache.near.maxEntries", "1000").trim());
+        int ttl = Time.parseDuration(Play.configuration.getProperty("cache.near.ttl", "5s"));
+        long versionCheck = Long.parseLong(Play.configuration.getProperty("cache.near.versionCheck", "1000").trim());
+        Logger.info("Near cache of %d entries for %ds in front of %s", maxEntries, ttl, remote.getClass().getSimpleName());
+        return new NearCacheImpl(remote, maxEntries, ttl, versionCheck);
+    }
+
+    public Object get(String key) {
+        long[] current = currentVersions();
+        Object value = localValue(key, current);
+        if (value != null) {
+            return value;
+        }
+        remoteReads.incrementAndGet();
+        value = remote.get(key);
+        keepLocally(key, value, current);
+        return value;
+    }
+
+    public Map<String, Object> get(String[] keys) {
+        long[] current = currentVersions();
+        Map<String, Object> result = new HashMap<String, Object>(keys.length);
+        List<String> missing = new ArrayList<String>(keys.length);
+        for (String key : keys) {
+            Object value = localValue(key, current);
+            if (value != null) {
+                result.put(key, value);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            remoteReads.incrementAndGet();
+            Map<String, Object> values = remote.get(missing.toArray(new String[missing.size()]));
+            for (String key : missing) {
+                Object value = values.get(key);
+                keepLocally(key, value, current);
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    public void add(String key, Object value, int expiration) {
+        remote.add(key, value, expiration);
+        written(key);
+    }
+
+    public boolean safeAdd(String key, Object value, int expiration) {
+        try {
+            return remote.safeAdd(key, value, expiration);
+        } finally {
+            written(key);
+        }
+    }
+
+    public void set(String key, Object value, int expiration) {
+        remote.set(key, value, expiration);
+        written(key);
+    }
+
+    public boolean safeSet(String key, Object value, int expiration) {
+        try {
+            return remote.safeSet(key, value, expiration);
+        } finally {
+            written(key);
+        }
+    }
+
+    public void replace(String key, Object value, int expiration) {
+        remote.replace(key, value, expiration);
+        written(key);
+    }
+
+    public boolean safeReplace(String key, Object value, int expiration) {
+        try {
+            return remote.safeReplace(key, value, expiration);
+        } finally {
+            written(key);
+        }
+    }
+
+    public long incr(String key, int by) {
+        local.delete(key);
+        return remote.incr(key, by);
+    }
+
+    public long decr(String key, int by) {
+        local.delete(key);
+        return remote.decr(key, by);
+    }
+
+    public void delete(String key) {
+        remote.delete(key);
+        written(key);
+    }
+
+    public boolean safeDelete(String key) {
+        try {
+            return remote.safeDelete(key);
+        } finally {
+            written(key);
+        }
+    }
+
+    public void clear() {
+        local.clear();
+        remote.clear();
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            bumpVersion(bucket);
+        }
+    }
+
+    public void stop() {
+        local.stop();
+        remote.stop();
+    }
+
+    /**
+     * @return the local cache statistics.
+     */
+    public ConcurrentCacheImpl getLocalCache() {
+        return local;
+    }
+
+    public CacheImpl getRemoteCache() {
+        return remote;
+    }
+
+    /**
+     * @return the number of reads sent to the remote cache.
+     */
+    public long getRemoteReadCount() {
+        return remoteReads.get();
+    }
+
+    /**
+     * @return the number of local values ignored because of a newer version.
+     */
+    public long getStaleReadCount() {
+        return staleReads.get();
+    }
+
+    /**
+     * @return the version of the bucket of the key, as last read.
+     */
+    public long getVersion(String key) {
+        return versions[bucket(key)];
+    }
+
+    private Object localValue(String key, long[] current) {
+        Versioned versioned = (Versioned) local.get(key);
+        if (versioned == null) {
+            return null;
+        }
+        if (versioned.version != current[bucket(key)]) {
+            staleReads.incrementAndGet();
+            return null;
+        }
+        return versioned.value;
+    }
+
+    private void keepLocally(String key, Object value, long[] readVersions) {
+        if (value != null) {
+            local.set(key, new Versioned(value, readVersions[bucket(key)]), ttl);
+        }
+    }
+
+    private void written(String key) {
+        local.delete(key);
+        bumpVersion(bucket(key));
+    }
+
+    static int bucket(String key) {
+        int hash = key.hashCode();
+        return ((hash >>> 16) ^ hash) & (BUCKETS - 1);
+    }
+
+    /**
+     * @return the versions, read from the remote cache if they were not read
+     *         recently.
+     */
+    private long[] currentVersions() {
+        long checkedAt = versionCheckedAt.get();
+        long now = System.currentTimeMillis();
+        if (now - checkedAt >= versionCheck && versionCheckedAt.compareAndSet(checkedAt, now)) {
+            Map<String, Object> values = remote.get(VERSION_KEYS);
+            long[] read = new long[BUCKETS];
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                Object value = values.get(VERSION_KEYS[bucket]);
+                // A Long, or a String for the counters created by memcached
+                read[bucket] = value == null ? -1 : Long.parseLong(value.toString().trim());
+            }
+            versions = read;
+        }
+        return versions;
+    }
+
+    private void bumpVersion(int bucket) {
+        long version = remote.incr(VERSION_KEYS[bucket], 1);
+        if (version == -1) {
+            // A local cache, not creating the missing counters
+            remote.add(VERSION_KEYS[bucket], 0L, 0);
+            version = remote.incr(VERSION_KEYS[bucket], 0);
+        }
+        long[] updated = versions.clone();
+        updated[bucket] = version;
+        versions = updated;
+    }
+
+    /**
+     * A value read from the remote cache, with the version of its bucket at
+     * that time.
+     */
+    static class Versioned {
+
+        final Object value;
+        final long version;
+
+        Versioned(Object value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+}
@@ -120,7 +120,7 @@ public class BytecodeCache {
      * Build a hash of the source code.
      * To efficiently track source code modifications.
      */
-    static String hash(String text) {
+    public static String hash(String text) {
         try {
             StringBuffer plugins = new StringBuffer();
             for(PlayPlugin plugin : Play.pluginCollection.getEnabledPlugins()) {
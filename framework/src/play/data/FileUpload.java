@@ -16,11 +16,27 @@ public class FileUpload implements Upload {
 
     FileItem fileItem;
     File defaultFile;
+    String fieldName;
+    String fileName;
+    String contentType;
 
     public FileUpload() {
         // Left empty
     }
 
+    /**
+     * An upload already written to a temporary file.
+     *
+     * @param file
+     *            The file, or null if no file was sent for this field
+     */
+    public FileUpload(File file, String fieldName, String fileName, String contentType) {
+        this.defaultFile = file;
+        this.fieldName = fieldName;
+        this.fileName = fileName;
+        this.contentType = contentType;
+    }
+
     public FileUpload(FileItem fileItem) {
         this.fileItem = fileItem;
         File tmp = TempFilePlugin.createTempFolder();
@@ -75,17 +91,17 @@ public class FileUpload implements Upload {
 
     @Override
     public String getContentType() {
-        return fileItem.getContentType();
+        return fileItem == null ? contentType : fileItem.getContentType();
     }
 
     @Override
     public String getFileName() {
-        return fileItem.getName();
+        return fileItem == null ? fileName : fileItem.getName();
     }
 
     @Override
     public String getFieldName() {
-        return fileItem.getFieldName();
+        return fileItem == null ? fieldName : fileItem.getFieldName();
     }
 
     @Override
@@ -95,6 +111,6 @@ public class FileUpload implements Upload {
 
     @Override
     public boolean isInMemory() {
-        return fileItem.isInMemory();
+        return fileItem != null && fileItem.isInMemory();
     }
 }
@@ -2,7 +2,6 @@ package play.data.binding;
 
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
-import play.Logger;
 import play.Play;
 import play.data.Upload;
 import play.data.binding.types.*;
@@ -15,7 +14,6 @@ import java.io.File;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.util.*;
@@ -49,6 +47,7 @@ public abstract class Binder {
 
     public static <T> void register(Class<T> clazz, TypeBinder<T> typeBinder) {
         supportedTypes.put(clazz, typeBinder);
+        BindingPlan.clear();
     }
 
     public static class MethodAndParamInfo {
@@ -91,9 +90,9 @@ public abstract class Binder {
             result = MISSING;
         }
 
-        final BindingAnnotations bindingAnnotations = new BindingAnnotations(annotations);
+        final BindingPlan plan = BindingPlan.get(clazz, type, annotations, null);
 
-        if (bindingAnnotations.checkNoBinding()) {
+        if (plan.noBinding) {
             return NO_BINDING;
         }
 
@@ -105,7 +104,7 @@ public abstract class Binder {
                 return result;
             }
 
-            result = internalBind(paramNode, clazz, type, bindingAnnotations);
+            result = internalBind(paramNode, plan);
         }
 
         if (result == MISSING) {
@@ -152,6 +151,10 @@ public abstract class Binder {
 
 
     protected static Object internalBind(ParamNode paramNode, Class<?> clazz, Type type, BindingAnnotations bindingAnnotations) {
+        return internalBind(paramNode, BindingPlan.get(clazz, type, bindingAnnotations.annotations, bindingAnnotations.getProfiles()));
+    }
+
+    static Object internalBind(ParamNode paramNode, BindingPlan plan) {
 
         if (paramNode == null) {
             return MISSING;
@@ -161,25 +164,25 @@ public abstract class Binder {
             return MISSING;
         }
 
-        if (bindingAnnotations.checkNoBinding()) {
+        if (plan.noBinding) {
             return NO_BINDING;
         }
 
         try {
 
-            if (Enum.class.isAssignableFrom(clazz)) {
-                return bindEnum(clazz, paramNode);
+            if (plan.isEnum) {
+                return bindEnum(plan.clazz, paramNode);
             }
 
-            if (Map.class.isAssignableFrom(clazz)) {
-                return bindMap(clazz, type, paramNode, bindingAnnotations);
+            if (plan.isMap) {
+                return bindMap(plan, paramNode);
             }
 
-            if (Collection.class.isAssignableFrom(clazz)) {
-                return bindCollection(clazz, type, paramNode, bindingAnnotations);
+            if (plan.isCollection) {
+                return bindCollection(plan, paramNode);
             }
 
-            Object directBindResult = internalDirectBind(paramNode.getOriginalKey(), bindingAnnotations.annotations, paramNode.getFirstValue(clazz), clazz, type);
+            Object directBindResult = internalDirectBind(plan, paramNode.getOriginalKey(), paramNode.getFirstValue(plan.clazz));
             
             if (directBindResult != DIRECTBINDING_NO_RESULT) {
                 // we found a value/result when direct binding
@@ -187,12 +190,12 @@ public abstract class Binder {
             }
 
             // Must do the default array-check after direct binding, since some custom-binders checks for specific arrays
-            if (clazz.isArray()) {
-                return bindArray(clazz, paramNode, bindingAnnotations);
+            if (plan.clazz.isArray()) {
+                return bindArray(plan, paramNode);
             }
 			
 			if (!paramNode.getAllChildren().isEmpty()) {
-	        	return internalBindBean(clazz, paramNode, bindingAnnotations);
+	        	return internalBindBean(plan, paramNode);
 	        }
 
             return null; // give up
@@ -204,9 +207,10 @@ public abstract class Binder {
         return MISSING;
     }
 
-    private static Object bindArray(Class<?> clazz, ParamNode paramNode, BindingAnnotations bindingAnnotations) {
+    private static Object bindArray(BindingPlan plan, ParamNode paramNode) throws Exception {
 
-        Class<?> componentType = clazz.getComponentType();
+        BindingPlan component = plan.element();
+        Class<?> componentType = component.clazz;
 
         int invalidItemsCount = 0;
         int size;
@@ -214,14 +218,8 @@ public abstract class Binder {
         String[] values = paramNode.getValues();
         if (values != null) {
 
-            if (bindingAnnotations.annotations != null) {
-                for (Annotation annotation : bindingAnnotations.annotations) {
-                    if (annotation.annotationType().equals(As.class)) {
-                        As as = ((As) annotation);
-                        final String separator = as.value()[0];
-                        values = values[0].split(separator);
-                    }
-                }
+            if (plan.hasAs) {
+                values = values[0].split(plan.separator);
             }
 
             size = values.length;
@@ -229,7 +227,8 @@ public abstract class Binder {
             for (int i = 0; i < size; i++) {
                 String thisValue = values[i];
                 try {
-                    Array.set(array, i - invalidItemsCount, directBind(paramNode.getOriginalKey(), bindingAnnotations.annotations, thisValue, componentType, componentType));
+                    Object value = internalDirectBind(component, paramNode.getOriginalKey(), thisValue);
+                    Array.set(array, i - invalidItemsCount, value == DIRECTBINDING_NO_RESULT ? null : value);
                 } catch (Exception e) {
                     // bad item..
                     invalidItemsCount++;
@@ -240,7 +239,7 @@ public abstract class Binder {
             array = Array.newInstance(componentType, size);
             int i = 0;
             for (ParamNode child : paramNode.getAllChildren()) {
-                Object childValue = internalBind(child, componentType, componentType, bindingAnnotations);
+                Object childValue = internalBind(child, component);
                 if (childValue != NO_BINDING && childValue != MISSING) {
                     try {
                         Array.set(array, i - invalidItemsCount, childValue);
@@ -266,9 +265,9 @@ public abstract class Binder {
         return array;
     }
 
-    private static Object internalBindBean(Class<?> clazz, ParamNode paramNode, BindingAnnotations bindingAnnotations) throws Exception {
-        Object bean = clazz.newInstance();
-        internalBindBean(paramNode, bean, bindingAnnotations);
+    private static Object internalBindBean(BindingPlan plan, ParamNode paramNode) throws Exception {
+        Object bean = plan.clazz.newInstance();
+        internalBindBean(paramNode, bean, plan);
         return bean;
     }
 
@@ -286,7 +285,7 @@ public abstract class Binder {
         ParamNode paramNode = StringUtils.isEmpty(name) ? rootParamNode : rootParamNode.getChild(name);
 
         try {
-            internalBindBean(paramNode, bean, new BindingAnnotations());
+            internalBindBean(paramNode, bean, BindingPlan.get(bean.getClass(), bean.getClass(), null, null));
         } catch (Exception e) {
             Validation.addError(paramNode.getOriginalKey(), "validation.invalid");
         }
@@ -297,31 +296,26 @@ public abstract class Binder {
      * Does NOT invoke plugins
      */
     public static void bindBean(ParamNode paramNode, Object bean, Annotation[] annotations) throws Exception {
-        internalBindBean(paramNode, bean, new BindingAnnotations(annotations));
+        internalBindBean(paramNode, bean, BindingPlan.get(bean.getClass(), bean.getClass(), annotations, null));
     }
 
-    private static void internalBindBean(ParamNode paramNode, Object bean, BindingAnnotations bindingAnnotations) throws Exception {
+    private static void internalBindBean(ParamNode paramNode, Object bean, BindingPlan plan) throws Exception {
 
-        BeanWrapper bw = BeanWrapper.forClass(bean.getClass());
-        for (BeanWrapper.Property prop : bw.getWrappers()) {
-            ParamNode propParamNode = paramNode.getChild(prop.getName());
+        for (BindingPlan.Property prop : plan.properties(bean.getClass())) {
+            ParamNode propParamNode = paramNode.getChild(prop.name);
             if (propParamNode != null) {
-                // Create new ParamsContext for this property
-                Annotation[] annotations = null;
                 // first we try with annotations resolved from property
-                annotations = prop.getAnnotations();
-                BindingAnnotations propBindingAnnotations = new BindingAnnotations(annotations, bindingAnnotations.getProfiles());
-                Object value = internalBind(propParamNode, prop.getType(), prop.getGenericType(), propBindingAnnotations);
+                Object value = internalBind(propParamNode, prop.plan);
                 if (value != MISSING) {
                     if (value != NO_BINDING) {
-                        prop.setValue(bean, value);
+                        prop.property.setValue(bean, value);
                     }
                 } else {
                     // retry without annotations resolved from property, but use input-annotations instead..
                     // This is actually necessary to parse Fixture (iso) dates
-                    value = internalBind(propParamNode, prop.getType(), prop.getGenericType(), bindingAnnotations);
+                    value = internalBind(propParamNode, prop.fallback);
                     if (value != NO_BINDING && value != MISSING) {
-                        prop.setValue(bean, value);
+                        prop.property.setValue(bean, value);
                     }
                 }
             }
@@ -342,20 +336,19 @@ public abstract class Binder {
         return Enum.valueOf((Class<? extends Enum>) clazz, value);
     }
 
-    private static Object bindMap(Class<?> clazz, Type type, ParamNode paramNode, BindingAnnotations bindingAnnotations) throws Exception {
-        Class keyClass = String.class;
-        Class valueClass = String.class;
-        if (type instanceof ParameterizedType) {
-            keyClass = (Class) ((ParameterizedType) type).getActualTypeArguments()[0];
-            valueClass = (Class) ((ParameterizedType) type).getActualTypeArguments()[1];
-        }
+    private static Object bindMap(BindingPlan plan, ParamNode paramNode) throws Exception {
+        BindingPlan keyPlan = plan.key();
+        BindingPlan valuePlan = plan.element();
 
         Map<Object, Object> r = new HashMap<Object, Object>();
 
         for (ParamNode child : paramNode.getAllChildren()) {
             try {
-                Object keyObject = directBind(paramNode.getOriginalKey(), bindingAnnotations.annotations, child.getName(), keyClass, keyClass);
-                Object valueObject = internalBind(child, valueClass, valueClass, bindingAnnotations);
+                Object keyObject = internalDirectBind(keyPlan, paramNode.getOriginalKey(), child.getName());
+                if (keyObject == DIRECTBINDING_NO_RESULT) {
+                    keyObject = null;
+                }
+                Object valueObject = internalBind(child, valuePlan);
                 if (valueObject == NO_BINDING || valueObject == MISSING) {
                     valueObject = null;
                 }
@@ -369,29 +362,10 @@ public abstract class Binder {
     }
 
     @SuppressWarnings("unchecked")
-    private static Object bindCollection(Class<?> clazz, Type type, ParamNode paramNode, BindingAnnotations bindingAnnotations) throws Exception {
-        if (clazz.isInterface()) {
-            if (clazz.equals(List.class)) {
-                clazz = ArrayList.class;
-            } else if (clazz.equals(Set.class)) {
-                clazz = HashSet.class;
-            } else if (clazz.equals(SortedSet.class)) {
-                clazz = TreeSet.class;
-            } else {
-                clazz = ArrayList.class;
-            }
-        }
-
-        Class componentClass = String.class;
-        Type componentType = String.class;
-        if (type instanceof ParameterizedType) {
-            componentType = ((ParameterizedType) type).getActualTypeArguments()[0];
-            if(componentType instanceof ParameterizedType) {
-                componentClass = (Class) ((ParameterizedType) componentType).getRawType();
-            } else {
-                componentClass = (Class) componentType;
-            }
-        }
+    private static Object bindCollection(BindingPlan plan, ParamNode paramNode) throws Exception {
+        Class<?> clazz = plan.collectionClass;
+        BindingPlan component = plan.element();
+        Class componentClass = component.clazz;
 
         if (paramNode.getAllChildren().isEmpty()) {
             // should use value-array as collection
@@ -401,16 +375,8 @@ public abstract class Binder {
                 return MISSING;
             }
 
-            if (bindingAnnotations.annotations != null) {
-                for (Annotation annotation : bindingAnnotations.annotations) {
-                    if (annotation.annotationType().equals(As.class)) {
-                        As as = ((As) annotation);
-                        final String separator = as.value()[0];
-                        if (separator != null && !separator.isEmpty()){
-                        	values = values[0].split(separator);
-                        }
-                    }
-                }
+            if (plan.hasAs && plan.separator != null && !plan.separator.isEmpty()) {
+                values = values[0].split(plan.separator);
             }
 
             Collection l;
@@ -422,7 +388,7 @@ public abstract class Binder {
             boolean hasMissing = false;
             for (int i = 0; i < values.length; i++) {
                 try {
-                    Object value = internalDirectBind(paramNode.getOriginalKey(), bindingAnnotations.annotations, values[i], componentClass, componentType);
+                    Object value = internalDirectBind(component, paramNode.getOriginalKey(), values[i]);
                     if ( value == DIRECTBINDING_NO_RESULT) {
                         hasMissing  = true;
                     } else { 
@@ -460,7 +426,7 @@ public abstract class Binder {
 
             for (String index : indexes) {
                 ParamNode child = paramNode.getChild(index);
-                Object childValue = internalBind(child, componentClass, componentType, bindingAnnotations);
+                Object childValue = internalBind(child, component);
                 if (childValue != NO_BINDING && childValue != MISSING) {
 
                     // must make sure we place the value at the correct position
@@ -481,7 +447,7 @@ public abstract class Binder {
         }
 
         for (ParamNode child : paramNode.getAllChildren()) {
-            Object childValue = internalBind(child, componentClass, componentType, bindingAnnotations);
+            Object childValue = internalBind(child, component);
             if (childValue != NO_BINDING && childValue != MISSING) {
                 r.add(childValue);
             }
@@ -548,48 +514,33 @@ public abstract class Binder {
     // If internalDirectBind was not able to bind it, it returns a special variable instance: DIRECTBIND_MISSING
     // Needs this because sometimes we need to know if no value was returned..
     private static Object internalDirectBind(String name, Annotation[] annotations, String value, Class<?> clazz, Type type) throws Exception {
-        boolean nullOrEmpty = value == null || value.trim().length() == 0;
+        return internalDirectBind(BindingPlan.get(clazz, type, annotations, null), name, value);
+    }
 
-        if (annotations != null) {
-            for (Annotation annotation : annotations) {
-                if (annotation.annotationType().equals(As.class)) {
-                    Class<? extends TypeBinder<?>> toInstanciate = ((As) annotation).binder();
-                    if (!(toInstanciate.equals(As.DEFAULT.class))) {
-                        // Instantiate the binder
-                        TypeBinder<?> myInstance = toInstanciate.newInstance();
-                        return myInstance.bind(name, annotations, value, clazz, type);
-                    }
-                }
-            }
+    private static Object internalDirectBind(BindingPlan plan, String name, String value) throws Exception {
+        Annotation[] annotations = plan.bindingAnnotations.annotations;
+        Class<?> clazz = plan.clazz;
+        Type type = plan.type;
+
+        if (plan.asBinder != null) {
+            return plan.asBinder.newInstance().bind(name, annotations, value, clazz, type);
         }
 
         // application custom types have higher priority. If unable to bind proceed with the next one
-        for (Class<TypeBinder<?>> c : Play.classloader.getAssignableClasses(TypeBinder.class)) {
-            if (c.isAnnotationPresent(Global.class)) {
-                Class<?> forType = (Class) ((ParameterizedType) c.getGenericInterfaces()[0]).getActualTypeArguments()[0];
-                if (forType.isAssignableFrom(clazz)) {
-                    Object result = c.newInstance().bind(name, annotations, value, clazz, type);
-                    if (result != null) {
-                        return result;
-                    }
-                }
+        for (Class<TypeBinder<?>> binder : plan.globalBinders) {
+            Object result = binder.newInstance().bind(name, annotations, value, clazz, type);
+            if (result != null) {
+                return result;
             }
         }
 
         // custom types
-        for (Class<?> c : supportedTypes.keySet()) {
-            if (Logger.isTraceEnabled()) {
-                Logger.trace("directBind: value [" + value + "] c [" + c + "] Class [" + clazz + "]");
-            }
-
-            if (c.isAssignableFrom(clazz)) {
-                if (Logger.isTraceEnabled()) {
-                    Logger.trace("directBind: isAssignableFrom is true");
-                }
-                return supportedTypes.get(c).bind(name, annotations, value, clazz, type);
-            }
+        if (plan.typeBinder != null) {
+            return plan.typeBinder.bind(name, annotations, value, clazz, type);
         }
 
+        boolean nullOrEmpty = value == null || value.trim().length() == 0;
+
         // raw String
         if (clazz.equals(String.class)) {
             return value;
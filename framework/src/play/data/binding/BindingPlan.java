@@ -0,0 +1,307 @@
+package play.data.binding;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import play.Play;
+import play.classloading.ApplicationClassloaderState;
+
+/**
+ * What {@link Binder} resolves once for a type and its binding annotations:
+ * the <code>@As</code> and <code>@NoBinding</code> handling, the
+ * {@link TypeBinder}s of the type, the element plans of the arrays,
+ * collections and maps, and the properties of a bean with their own plan.
+ * Binding a value is then a walk over the plans.
+ * <p>
+ * The plans are dropped when the application classes are reloaded or a
+ * binder is registered.
+ * </p>
+ */
+public class BindingPlan {
+
+    private static final ConcurrentHashMap<Key, BindingPlan> plans = new ConcurrentHashMap<Key, BindingPlan>();
+    private static volatile ApplicationClassloaderState state;
+
+    public final Class<?> clazz;
+    public final Type type;
+    public final BindingAnnotations bindingAnnotations;
+    final boolean noBinding;
+
+    /**
+     * Whether there is an <code>@As</code> annotation, and its first value:
+     * the separator of the values of an array or a collection.
+     */
+    final boolean hasAs;
+    final String separator;
+    /**
+     * The binder class of <code>@As(binder = ...)</code> and the
+     * <code>@Global</code> binder classes of the application for this type,
+     * instantiated for each binding since they may keep state, and the binder
+     * registered for this type.
+     */
+    final Class<? extends TypeBinder<?>> asBinder;
+    final List<Class<TypeBinder<?>>> globalBinders;
+    final TypeBinder<?> typeBinder;
+
+    final boolean isEnum;
+    final boolean isMap;
+    final boolean isCollection;
+    /**
+     * The class to instantiate for a collection.
+     */
+    final Class<?> collectionClass;
+
+    private volatile BindingPlan element;
+    private volatile BindingPlan key;
+    private volatile List<Property> properties;
+
+    /**
+     * A property of a bean, with the plan of its annotations, and the plan of
+     * the bean annotations tried when the first one finds nothing.
+     */
+    static class Property {
+
+        final BeanWrapper.Property property;
+        final String name;
+        final BindingPlan plan;
+        final BindingPlan fallback;
+
+        Property(BeanWrapper.Property property, BindingPlan bean) {
+            this.property = property;
+            this.name = property.getName();
+            this.plan = get(property.getType(), property.getGenericType(), property.getAnnotations(), bean.bindingAnnotations.getProfiles());
+            this.fallback = get(property.getType(), property.getGenericType(), bean.bindingAnnotations.annotations,
+                    bean.bindingAnnotations.getProfiles());
+        }
+    }
+
+    BindingPlan(Class<?> clazz, Type type, Annotation[] annotations, String[] profiles) {
+        this.clazz = clazz;
+        this.type = type;
+        this.bindingAnnotations = profiles == null ? new BindingAnnotations(annotations) : new BindingAnnotations(annotations, profiles);
+        this.noBinding = bindingAnnotations.checkNoBinding();
+
+        boolean hasAs = false;
+        String separator = null;
+        Class<? extends TypeBinder<?>> asBinder = null;
+        if (annotations != null) {
+            for (Annotation annotation : annotations) {
+                if (annotation.annotationType().equals(As.class)) {
+                    As as = (As) annotation;
+                    hasAs = true;
+                    separator = as.value()[0];
+                    if (asBinder == null && !as.binder().equals(As.DEFAULT.class)) {
+                        asBinder = as.binder();
+                    }
+                }
+            }
+        }
+        this.hasAs = hasAs;
+        this.separator = separator;
+        this.asBinder = asBinder;
+
+        List<Class<TypeBinder<?>>> globalBinders = new ArrayList<Class<TypeBinder<?>>>();
+        if (asBinder == null && clazz != null && Play.classloader != null) {
+            for (Class<TypeBinder<?>> c : Play.classloader.getAssignableClasses(TypeBinder.class)) {
+                if (c.isAnnotationPresent(Global.class)) {
+                    Class<?> forType = (Class) ((ParameterizedType) c.getGenericInterfaces()[0]).getActualTypeArguments()[0];
+                    if (forType.isAssignableFrom(clazz)) {
+                        globalBinders.add(c);
+                    }
+                }
+            }
+        }
+        this.globalBinders = globalBinders.isEmpty() ? Collections.<Class<TypeBinder<?>>> emptyList() : globalBinders;
+
+        TypeBinder<?> typeBinder = null;
+        if (clazz != null) {
+            for (Map.Entry<Class<?>, TypeBinder<?>> supported : Binder.supportedTypes.entrySet()) {
+                if (supported.getKey().isAssignableFrom(clazz)) {
+                    typeBinder = supported.getValue();
+                    break;
+                }
+            }
+        }
+        this.typeBinder = typeBinder;
+
+        this.isEnum = clazz != null && Enum.class.isAssignableFrom(clazz);
+        this.isMap = clazz != null && Map.class.isAssignableFrom(clazz);
+        this.isCollection = clazz != null && Collection.class.isAssignableFrom(clazz);
+
+        Class<?> collectionClass = clazz;
+        if (isCollection && clazz.isInterface()) {
+            if (clazz.equals(List.class)) {
+                collectionClass = ArrayList.class;
+            } else if (clazz.equals(Set.class)) {
+                collectionClass = HashSet.class;
+            } else if (clazz.equals(SortedSet.class)) {
+                collectionClass = TreeSet.class;
+            } else {
+                collectionClass = ArrayList.class;
+            }
+        }
+        this.collectionClass = collectionClass;
+    }
+
+    /**
+     * @param clazz
+     *            The class to bind
+     * @param type
+     *            Its generic type, or null
+     * @param annotations
+     *            The annotations of the parameter or property, or null
+     * @param profiles
+     *            The <code>@As</code>/<code>@NoBinding</code> profiles, null
+     *            to read them from the annotations
+     * @return the plan of the type, built on the first call.
+     */
+    public static BindingPlan get(Class<?> clazz, Type type, Annotation[] annotations, String[] profiles) {
+        if (Play.classloader != null) {
+            ApplicationClassloaderState current = Play.classloader.currentState;
+            if (!current.equals(state)) {
+                plans.clear();
+                state = current;
+            }
+        }
+        Key key = new Key(clazz, type, annotations, profiles);
+        BindingPlan plan = plans.get(key);
+        if (plan == null) {
+            plan = new BindingPlan(clazz, type, annotations, profiles);
+            plans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Drops the plans, for instance when a binder is registered.
+     */
+    public static void clear() {
+        plans.clear();
+    }
+
+    /**
+     * @return the plan of the elements of an array, a collection, or the
+     *         values of a map.
+     * @throws ClassCastException
+     *             if the element type is not a class, as a type variable
+     */
+    BindingPlan element() {
+        BindingPlan plan = element;
+        if (plan == null) {
+            Class<?> elementClass = String.class;
+            Type elementType = String.class;
+            if (isCollection) {
+                if (type instanceof ParameterizedType) {
+                    elementType = ((ParameterizedType) type).getActualTypeArguments()[0];
+                    if (elementType instanceof ParameterizedType) {
+                        elementClass = (Class) ((ParameterizedType) elementType).getRawType();
+                    } else {
+                        elementClass = (Class) elementType;
+                    }
+                }
+            } else if (isMap) {
+                if (type instanceof ParameterizedType) {
+                    elementClass = (Class) ((ParameterizedType) type).getActualTypeArguments()[1];
+                    elementType = elementClass;
+                }
+            } else {
+                elementClass = clazz.getComponentType();
+                elementType = elementClass;
+            }
+            plan = get(elementClass, elementType, bindingAnnotations.annotations, bindingAnnotations.getProfiles());
+            element = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * @return the plan of the keys of a map.
+     */
+    BindingPlan key() {
+        BindingPlan plan = key;
+        if (plan == null) {
+            Class<?> keyClass = String.class;
+            if (type instanceof ParameterizedType) {
+                keyClass = (Class) ((ParameterizedType) type).getActualTypeArguments()[0];
+            }
+            plan = get(keyClass, keyClass, bindingAnnotations.annotations, bindingAnnotations.getProfiles());
+            key = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * @param beanClass
+     *            The class of the bean, which can be a subclass of the planned
+     *            one
+     * @return the properties to bind on a bean of the class.
+     */
+    List<Property> properties(Class<?> beanClass) {
+        if (beanClass != clazz) {
+            return get(beanClass, beanClass, bindingAnnotations.annotations, bindingAnnotations.getProfiles()).properties(beanClass);
+        }
+        List<Property> result = properties;
+        if (result == null) {
+            result = new ArrayList<Property>();
+            for (BeanWrapper.Property property : BeanWrapper.forClass(beanClass).getWrappers()) {
+                result.add(new Property(property, this));
+            }
+            properties = result;
+        }
+        return result;
+    }
+
+    static class Key {
+
+        private final Class<?> clazz;
+        private final Type type;
+        private final List<Annotation> annotations;
+        private final List<String> profiles;
+        private final int hash;
+
+        Key(Class<?> clazz, Type type, Annotation[] annotations, String[] profiles) {
+            this.clazz = clazz;
+            this.type = type;
+            this.annotations = annotations == null ? null : Arrays.asList(annotations);
+            this.profiles = profiles == null ? null : Arrays.asList(profiles);
+            int hash = clazz == null ? 0 : clazz.hashCode();
+            hash = 31 * hash + (type == null ? 0 : type.hashCode());
+            hash = 31 * hash + (this.annotations == null ? 0 : this.annotations.hashCode());
+            hash = 31 * hash + (this.profiles == null ? 0 : this.profiles.hashCode());
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return clazz == other.clazz && equal(type, other.type) && equal(annotations, other.annotations) && equal(profiles, other.profiles);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
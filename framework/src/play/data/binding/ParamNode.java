@@ -2,6 +2,7 @@ package play.data.binding;
 
 import play.utils.Utils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -57,7 +58,7 @@ public class ParamNode {
     }
 
     public ParamNode getChild(String name, boolean returnEmptyChildIfNotFound) {
-        ParamNode child = getChild( name.split(keyPartDelimiterRegexpString));
+        ParamNode child = getChild(splitKey(name));
         if (child == null && returnEmptyChildIfNotFound) {
             child = new ParamNode(name);
         }
@@ -111,6 +112,44 @@ public class ParamNode {
         return currentChildNode;
     }
 
+    /**
+     * Same as <code>key.split(keyPartDelimiterRegexpString)</code>, without
+     * the regular expression.
+     */
+    static String[] splitKey(String key) {
+        int length = key.length();
+        int i = 0;
+        while (i < length && !isKeyPartDelimiter(key.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return new String[] { key };
+        }
+        List<String> parts = new ArrayList<String>();
+        int start = 0;
+        while (i < length) {
+            parts.add(key.substring(start, i));
+            while (i < length && isKeyPartDelimiter(key.charAt(i))) {
+                i++;
+            }
+            start = i;
+            while (i < length && !isKeyPartDelimiter(key.charAt(i))) {
+                i++;
+            }
+        }
+        parts.add(key.substring(start));
+        // Trailing empty strings are not kept by split
+        int size = parts.size();
+        while (size > 0 && parts.get(size - 1).length() == 0) {
+            size--;
+        }
+        return parts.subList(0, size).toArray(new String[size]);
+    }
+
+    private static boolean isKeyPartDelimiter(char c) {
+        return c == '.' || c == '[' || c == ']';
+    }
+
     public Collection<ParamNode> getAllChildren() {
         return _children.values();
     }
@@ -143,7 +182,7 @@ public class ParamNode {
 
             ParamNode currentParent = root;
 
-            for ( String name : key.split(keyPartDelimiterRegexpString)) {
+            for ( String name : splitKey(key)) {
                 ParamNode paramNode = currentParent.getChild( name );
                 if (paramNode ==null) {
                     // first time we see this node - create it and add it to parent
@@ -28,7 +28,7 @@ import static org.apache.commons.io.FileUtils.readFileToByteArray;
  */
 public class ApacheMultipartParser extends DataParser {
 
-    private static void putMapEntry(Map<String, String[]> map, String name, String value) {
+    static void putMapEntry(Map<String, String[]> map, String name, String value) {
         String[] newValues;
         String[] oldValues = map.get(name);
         if (oldValues == null) {
@@ -507,6 +507,14 @@ public class ApacheMultipartParser extends DataParser {
     }
 
     public Map<String, String[]> parse(InputStream body) {
+        if (body instanceof MultipartBody) {
+            // Already parsed while it was received
+            try {
+                return ((MultipartBody) body).parse(Request.current());
+            } catch (UnsupportedEncodingException e) {
+                throw new UnexpectedException(e);
+            }
+        }
         Map<String, String[]> result = new HashMap<String, String[]>();
         try {
             FileItemIteratorImpl iter = new FileItemIteratorImpl(body, Request.current().headers.get("content-type").value(), Request.current().encoding);
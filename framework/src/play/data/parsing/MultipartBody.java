@@ -0,0 +1,99 @@
+package play.data.parsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import play.data.Upload;
+import play.mvc.Http.Request;
+import play.utils.HTTP;
+
+/**
+ * The body of a multipart request parsed while it was received, see
+ * {@link MultipartStreamParser}. It is used as the (empty) request body, and
+ * gives its parameters and uploads to the {@link ApacheMultipartParser}.
+ */
+public class MultipartBody extends InputStream {
+
+    static class Field {
+
+        final String name;
+        final String contentType;
+        final byte[] value;
+
+        Field(String name, String contentType, byte[] value) {
+            this.name = name;
+            this.contentType = contentType;
+            this.value = value;
+        }
+    }
+
+    final List<Field> fields = new ArrayList<Field>();
+    final List<Upload> uploads = new ArrayList<Upload>();
+    File folder;
+
+    /**
+     * @return the uploaded files.
+     */
+    public List<Upload> getUploads() {
+        return uploads;
+    }
+
+    /**
+     * Add the uploads to the request and decode the form fields.
+     *
+     * @return the request parameters.
+     */
+    public Map<String, String[]> parse(Request request) throws UnsupportedEncodingException {
+        Map<String, String[]> result = new HashMap<String, String[]>();
+        for (Field field : fields) {
+            String encoding = request.encoding;
+            if (field.contentType != null) {
+                HTTP.ContentTypeWithEncoding contentTypeEncoding = HTTP.parseContentType(field.contentType);
+                if (contentTypeEncoding.encoding != null) {
+                    encoding = contentTypeEncoding.encoding;
+                }
+            }
+            ApacheMultipartParser.putMapEntry(result, field.name, new String(field.value, encoding));
+        }
+        if (!uploads.isEmpty()) {
+            @SuppressWarnings("unchecked")
+            List<Upload> requestUploads = (List<Upload>) request.args.get("__UPLOADS");
+            if (requestUploads == null) {
+                requestUploads = new ArrayList<Upload>();
+                request.args.put("__UPLOADS", requestUploads);
+            }
+            for (Upload upload : uploads) {
+                requestUploads.add(upload);
+                ApacheMultipartParser.putMapEntry(result, upload.getFieldName(), upload.getFieldName());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Delete the uploaded files.
+     */
+    public synchronized void delete() {
+        if (folder != null) {
+            try {
+                FileUtils.deleteDirectory(folder);
+            } catch (IOException e) {
+                // Left for the next tmp cleanup
+            }
+            folder = null;
+        }
+    }
+
+    @Override
+    public int read() {
+        return -1;
+    }
+}
@@ -0,0 +1,329 @@
+package play.data.parsing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+import org.apache.commons.fileupload.ParameterParser;
+import org.apache.commons.io.FilenameUtils;
+
+import play.data.FileUpload;
+
+/**
+ * Incremental parser of a <code>multipart/form-data</code> body, fed with the
+ * body chunks as they are received.
+ * <p>
+ * The form fields are kept in memory, up to <code>maxFieldSize</code> bytes
+ * each. The files are written as they come to a new
+ * {@link TempFilePlugin#newTempFolder() temporary folder}, up to
+ * <code>maxFileSize</code> bytes each. Nested <code>multipart/mixed</code>
+ * parts are not split, they are handled as a single field or file.
+ * </p>
+ */
+public class MultipartStreamParser {
+
+    /**
+     * Thrown when a part is bigger than allowed.
+     */
+    public static class LimitExceededException extends IOException {
+
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    static final int MAX_HEADERS_SIZE = 10240;
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] HEADERS_END = { '\r', '\n', '\r', '\n' };
+
+    private enum State {
+        PREAMBLE, DELIMITER, HEADERS, BODY, EPILOGUE
+    }
+
+    private final byte[] dashBoundary;
+    private final byte[] delimiter;
+    private final String headerEncoding;
+    private final long maxFieldSize;
+    private final long maxFileSize;
+    private final MultipartBody body = new MultipartBody();
+
+    private State state = State.PREAMBLE;
+    private byte[] pending = new byte[8192];
+    private int pendingLength;
+    private int position;
+
+    // The part being read
+    private String fieldName;
+    private String fileName;
+    private String contentType;
+    private long partSize;
+    private boolean skipped;
+    private ByteArrayOutputStream field;
+    private File file;
+    private FileChannel channel;
+
+    /**
+     * @param boundary
+     *            The boundary, from the request content type
+     * @param headerEncoding
+     *            The encoding of the parts headers
+     * @param maxFieldSize
+     *            The maximum size of a form field, -1 for no maximum
+     * @param maxFileSize
+     *            The maximum size of a file, -1 for no maximum
+     */
+    public MultipartStreamParser(String boundary, String headerEncoding, long maxFieldSize, long maxFileSize) {
+        this.dashBoundary = ("--" + boundary).getBytes();
+        this.delimiter = ("\r\n--" + boundary).getBytes();
+        this.headerEncoding = headerEncoding;
+        this.maxFieldSize = maxFieldSize;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * @return the boundary of a multipart content type, or null if there is
+     *         none.
+     */
+    public static String boundary(String contentType) {
+        ParameterParser parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        String boundary = parser.parse(contentType, new char[] { ';', ',' }).get("boundary");
+        return boundary == null || boundary.length() == 0 ? null : boundary;
+    }
+
+    /**
+     * Parse the next bytes of the body.
+     */
+    public void feed(byte[] bytes, int offset, int length) throws IOException {
+        append(bytes, offset, length);
+        while (step()) {
+            // Parse as far as possible
+        }
+    }
+
+    /**
+     * Check that the whole body was received.
+     *
+     * @return the parsed body.
+     */
+    public MultipartBody finish() throws IOException {
+        if (state != State.EPILOGUE) {
+            throw new IOException("Unexpected end of the multipart body");
+        }
+        return body;
+    }
+
+    /**
+     * Stop parsing and delete the files already written.
+     */
+    public void abort() {
+        closeFile();
+        body.delete();
+    }
+
+    private boolean step() throws IOException {
+        switch (state) {
+        case PREAMBLE: {
+            int i = indexOf(dashBoundary, position);
+            if (i < 0) {
+                position = Math.max(position, pendingLength - dashBoundary.length + 1);
+                return false;
+            }
+            position = i + dashBoundary.length;
+            state = State.DELIMITER;
+            return true;
+        }
+        case DELIMITER: {
+            if (pendingLength - position < 2) {
+                return false;
+            }
+            if (pending[position] == '-' && pending[position + 1] == '-') {
+                position = pendingLength;
+                state = State.EPILOGUE;
+            } else if (pending[position] == '\r' && pending[position + 1] == '\n') {
+                position += 2;
+                state = State.HEADERS;
+            } else if (pending[position] == ' ' || pending[position] == '\t') {
+                // Transport padding
+                position++;
+            } else {
+                throw new IOException("Invalid multipart boundary");
+            }
+            return true;
+        }
+        case HEADERS: {
+            int end;
+            if (startsWith(CRLF, position)) {
+                // No headers
+                end = position - 2;
+            } else {
+                end = indexOf(HEADERS_END, position);
+            }
+            if (end < 0) {
+                if (pendingLength - position > MAX_HEADERS_SIZE) {
+                    throw new LimitExceededException("The multipart headers are too big");
+                }
+                return false;
+            }
+            String headers = end > position ? new String(pending, position, end - position, headerEncoding) : "";
+            position = end + HEADERS_END.length;
+            startPart(headers);
+            state = State.BODY;
+            return true;
+        }
+        case BODY: {
+            int i = indexOf(delimiter, position);
+            if (i < 0) {
+                // Keep what could be the beginning of the delimiter
+                int safe = pendingLength - delimiter.length + 1;
+                if (safe > position) {
+                    write(position, safe - position);
+                    position = safe;
+                }
+                return false;
+            }
+            write(position, i - position);
+            position = i + delimiter.length;
+            endPart();
+            state = State.DELIMITER;
+            return true;
+        }
+        default:
+            position = pendingLength;
+            return false;
+        }
+    }
+
+    private void startPart(String headers) throws IOException {
+        fieldName = null;
+        fileName = null;
+        contentType = null;
+        partSize = 0;
+        for (String line : headers.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Disposition")) {
+                ParameterParser parser = new ParameterParser();
+                parser.setLowerCaseNames(true);
+                Map<String, String> parameters = parser.parse(value, ';');
+                fieldName = parameters.get("name");
+                if (parameters.containsKey("filename")) {
+                    // An empty file name is parsed as null
+                    fileName = parameters.get("filename") == null ? "" : parameters.get("filename").trim();
+                }
+            } else if (name.equalsIgnoreCase("Content-Type")) {
+                contentType = value;
+            }
+        }
+        // Parts without a name and files without a file name are not kept
+        skipped = fieldName == null || (fileName != null && fileName.trim().length() == 0);
+        if (skipped) {
+            return;
+        }
+        if (fileName == null) {
+            field = new ByteArrayOutputStream();
+            return;
+        }
+        if (body.folder == null) {
+            body.folder = TempFilePlugin.newTempFolder();
+            if (body.folder == null) {
+                throw new IOException("No temporary folder for the uploaded files");
+            }
+        }
+        file = new File(body.folder, FilenameUtils.getName(fieldName) + File.separator + FilenameUtils.getName(fileName));
+        if (!file.getCanonicalPath().startsWith(body.folder.getCanonicalPath())) {
+            throw new IOException("Temp file try to override existing file?");
+        }
+        file.getParentFile().mkdirs();
+        channel = new FileOutputStream(file).getChannel();
+    }
+
+    private void write(int offset, int length) throws IOException {
+        if (skipped || length == 0) {
+            return;
+        }
+        partSize += length;
+        if (channel != null) {
+            if (maxFileSize != -1 && partSize > maxFileSize) {
+                throw new LimitExceededException("The file " + fileName + " is bigger than " + maxFileSize + " bytes");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(pending, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } else {
+            if (maxFieldSize != -1 && partSize > maxFieldSize) {
+                throw new LimitExceededException("The field " + fieldName + " is bigger than " + maxFieldSize + " bytes");
+            }
+            field.write(pending, offset, length);
+        }
+    }
+
+    private void endPart() throws IOException {
+        if (fieldName != null && fileName != null) {
+            closeFile();
+            body.uploads.add(new FileUpload(skipped ? null : file, fieldName, fileName, contentType));
+        } else if (!skipped) {
+            body.fields.add(new MultipartBody.Field(fieldName, contentType, field.toByteArray()));
+        }
+        field = null;
+        file = null;
+    }
+
+    private void closeFile() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            channel = null;
+        }
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        // Drop the bytes already parsed
+        if (position > 0) {
+            System.arraycopy(pending, position, pending, 0, pendingLength - position);
+            pendingLength -= position;
+            position = 0;
+        }
+        if (pendingLength + length > pending.length) {
+            byte[] grown = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        System.arraycopy(bytes, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    private boolean startsWith(byte[] pattern, int from) {
+        if (pendingLength - from < pattern.length) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (pending[from + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(byte[] pattern, int from) {
+        byte first = pattern[0];
+        for (int i = from, last = pendingLength - pattern.length; i <= last; i++) {
+            if (pending[i] == first && startsWith(pattern, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
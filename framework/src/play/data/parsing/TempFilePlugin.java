@@ -2,12 +2,12 @@ package play.data.parsing;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.DecimalFormat;
 
 import org.apache.commons.io.FileUtils;
 
 import play.Play;
 import play.PlayPlugin;
+import play.mvc.Http.Request;
 
 /**
  *  Creates temporary folders for file parsing, and deletes
@@ -15,13 +15,6 @@ import play.PlayPlugin;
  */
 public class TempFilePlugin extends PlayPlugin {
 
-    private static DecimalFormat format = new DecimalFormat("##########");
-    
-
-    static {
-        format.setMinimumIntegerDigits(10);
-        format.setGroupingUsed(false);
-    }
     private static long count = 0;
 
     private static synchronized long getCountLocal() {
@@ -34,17 +27,31 @@ public class TempFilePlugin extends PlayPlugin {
             return null;
         }
         if (tempFolder.get() == null) {
-            File file = new File(Play.tmpDir +
-                    File.separator + "uploads" + File.separator +
-                    System.currentTimeMillis() + "_" + format.format(getCountLocal()));
-            file.mkdirs();
-            tempFolder.set(file);
+            tempFolder.set(newTempFolder());
         }
         return tempFolder.get();
     }
 
+    /**
+     * Create a new temporary folder, not bound to the current thread. The
+     * caller is responsible for deleting it.
+     *
+     * @return the folder, or null if there is no writable tmp directory.
+     */
+    public static File newTempFolder() {
+        if (Play.tmpDir == null || Play.readOnlyTmp) {
+            return null;
+        }
+        File file = new File(Play.tmpDir +
+                File.separator + "uploads" + File.separator +
+                System.currentTimeMillis() + "_" + String.format("%010d", getCountLocal()));
+        file.mkdirs();
+        return file;
+    }
+
     @Override
     public void onInvocationSuccess() {
+        deleteStreamedUploads();
         File file = tempFolder.get();
         if (file != null) {
             tempFolder.remove();
@@ -54,4 +61,20 @@ public class TempFilePlugin extends PlayPlugin {
             }
         }
     }
+
+    @Override
+    public void onInvocationException(Throwable e) {
+        deleteStreamedUploads();
+    }
+
+    /**
+     * Delete the files uploaded with a multipart body parsed while it was
+     * received.
+     */
+    private static void deleteStreamedUploads() {
+        Request request = Request.current();
+        if (request != null && request.body instanceof MultipartBody) {
+            ((MultipartBody) request.body).delete();
+        }
+    }
 }
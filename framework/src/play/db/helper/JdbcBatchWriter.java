@@ -0,0 +1,73 @@
+package play.db.helper;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Write rows with a prepared statement, sending them to the database as JDBC
+ * batches of batchSize rows instead of one at a time. Run it in a transaction
+ * (or with auto-commit off) and close it to send the last batch.
+ */
+public class JdbcBatchWriter implements Closeable {
+
+    private final PreparedStatement statement;
+    private final int batchSize;
+    private int pending;
+    private int count;
+
+    public JdbcBatchWriter(Connection connection, String sql, int batchSize) throws SQLException {
+        this.statement = connection.prepareStatement(sql);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Add a row, sending the batch if it is full
+     * @param params the parameters of the statement for this row
+     */
+    public JdbcBatchWriter add(Object... params) throws SQLException {
+        int index = 0;
+        for (Object param : params) {
+            statement.setObject(++index, param);
+        }
+        statement.addBatch();
+        if (++pending == batchSize) {
+            flush();
+        }
+        return this;
+    }
+
+    /**
+     * Send the rows added since the last batch
+     */
+    public void flush() throws SQLException {
+        if (pending > 0) {
+            statement.executeBatch();
+            count += pending;
+            pending = 0;
+        }
+    }
+
+    /**
+     * @return the number of rows sent to the database
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Send the last batch and close the statement
+     */
+    public void close() {
+        try {
+            try {
+                flush();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
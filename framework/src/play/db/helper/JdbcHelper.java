@@ -1,5 +1,6 @@
 package play.db.helper;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -33,4 +34,33 @@ public class JdbcHelper {
         return executeList(query.toString(), query.getParams());
     }
 
+    /**
+     * Execute a query whose rows are read from the database fetchSize at a
+     * time, as they are iterated over, instead of all at once: the result set
+     * is forward only and read only. Some drivers need more, such as a
+     * fetchSize of Integer.MIN_VALUE with MySQL, or a connection that is not
+     * in auto-commit mode with PostgreSQL.
+     * Close the statement of the result set once done.
+     */
+    public static ResultSet stream(Connection connection, int fetchSize, String sql, List<Object> params) throws SQLException {
+        PreparedStatement pst = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        pst.setFetchSize(fetchSize);
+        int index = 0;
+        for (Object param : params) {
+            pst.setObject(++index, param);
+        }
+        return pst.executeQuery();
+    }
+
+    public static ResultSet stream(SqlQuery query, int fetchSize) throws SQLException {
+        return stream(DB.getConnection(), fetchSize, query.toString(), query.getParams());
+    }
+
+    /**
+     * @return a writer sending the rows of the statement batchSize at a time
+     */
+    public static JdbcBatchWriter batch(String sql, int batchSize) throws SQLException {
+        return new JdbcBatchWriter(DB.getConnection(), sql, batchSize);
+    }
+
 }
@@ -3,6 +3,7 @@ package play.db.helper;
 import java.io.Closeable;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Iterator;
 
 /**
@@ -23,9 +24,33 @@ public class JdbcIterator<T> implements Iterator<T>, Iterable<T>, Closeable {
         }
     }
 
+    /**
+     * Iterate over the rows of the query as they are read from the database,
+     * fetchSize at a time, with bounded memory. The iterator, and its
+     * statement, are closed once all the rows are read: close it if you stop
+     * before.
+     */
+    public static <U> JdbcIterator<U> stream(SqlQuery query, int fetchSize, Class<U> resultClass) {
+        return stream(query, fetchSize, JdbcResultFactories.build(resultClass));
+    }
+
+    public static <U> JdbcIterator<U> stream(SqlQuery query, int fetchSize, JdbcResultFactory<U> factory) {
+        try {
+            JdbcIterator<U> iterator = new JdbcIterator<U>(JdbcHelper.stream(query, fetchSize), factory);
+            iterator.closeStatement = true;
+            return iterator;
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
 
     protected final JdbcResultFactory<T> factory;
     protected ResultSet result;
+    /**
+     * Whether the statement of the result set is closed with it
+     */
+    protected boolean closeStatement;
     private T next;
 
     public JdbcIterator(ResultSet result, JdbcResultFactory<T> factory) throws SQLException {
@@ -45,8 +70,12 @@ public class JdbcIterator<T> implements Iterator<T>, Iterable<T>, Closeable {
         if (result != null) {
             try {
                 next = null;
+                Statement statement = closeStatement ? result.getStatement() : null;
                 result.close();
                 result = null;
+                if (statement != null) {
+                    statement.close();
+                }
             } catch (SQLException ex) {
                 result = null;
                 throw new RuntimeException(ex);
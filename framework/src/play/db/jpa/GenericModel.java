@@ -7,6 +7,8 @@ import java.util.*;
 import javax.persistence.*;
 
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 
 import play.Play;
 import play.classloading.enhancers.LVEnhancer;
@@ -114,7 +116,6 @@ public class GenericModel extends JPABase {
                     Class<Model> c = (Class<Model>) Play.classloader.loadClass(relation);
                     if (JPABase.class.isAssignableFrom(c)) {
                         String keyName = Model.Manager.factoryFor(c).keyName();
-                        EntityManager em = JPABase.getJPAConfig(c).getJPAContext().em();
                         if (multiple && Collection.class.isAssignableFrom(field.getType())) {
                             Collection l = new ArrayList();
                             if (SortedSet.class.isAssignableFrom(field.getType())) {
@@ -126,17 +127,26 @@ public class GenericModel extends JPABase {
                             if (ids != null) {
                                 // Remove it to prevent us from finding it again later
                                 fieldParamNode.removeChild(keyName, removedNodesList);
+                                Class<?> keyType = Model.Manager.factoryFor(c).keyType();
+                                List<Object> keys = new ArrayList<Object>(ids.length);
                                 for (String _id : ids) {
                                     if (_id == null || _id.equals("")) {
+                                        keys.add(null);
+                                    } else {
+                                        keys.add(Binder.directBind(rootParamNode.getOriginalKey(), annotations, _id, keyType, null));
+                                    }
+                                }
+                                // One query for all the ids, then the entities in the submitted order
+                                Map<Object, Object> found = findByKeys(c, keyName, keys);
+                                for (int i = 0; i < ids.length; i++) {
+                                    if (keys.get(i) == null) {
                                         continue;
                                     }
-                                    Query q = em.createQuery("from " + relation + " where " + keyName + " = ?1");
-                                    q.setParameter(1, Binder.directBind(rootParamNode.getOriginalKey(), annotations,_id, Model.Manager.factoryFor((Class<Model>) Play.classloader.loadClass(relation)).keyType(), null));
-                                    try {
-                                        l.add(q.getSingleResult());
-
-                                    } catch (NoResultException e) {
-                                        Validation.addError(name + "." + field.getName(), "validation.notFound", _id);
+                                    Object entity = found.get(keys.get(i));
+                                    if (entity != null) {
+                                        l.add(entity);
+                                    } else {
+                                        Validation.addError(name + "." + field.getName(), "validation.notFound", ids[i]);
                                     }
                                 }
                                 bw.set(field.getName(), o, l);
@@ -145,6 +155,7 @@ public class GenericModel extends JPABase {
                             String[] ids = fieldParamNode.getChild(keyName, true).getValues();
                             if (ids != null && ids.length > 0 && !ids[0].equals("")) {
 
+                                EntityManager em = JPABase.getJPAConfig(c).getJPAContext().em();
                                 Query q = em.createQuery("from " + relation + " where " + keyName + " = ?1");
                                 q.setParameter(1, Binder.directBind(rootParamNode.getOriginalKey(), annotations, ids[0], Model.Manager.factoryFor((Class<Model>) Play.classloader.loadClass(relation)).keyType(), null));
                                 try {
@@ -187,6 +198,38 @@ public class GenericModel extends JPABase {
         }
     }
 
+    /**
+     * The maximum number of keys bound in a single query, to stay under the
+     * parameter limit of the databases
+     */
+    static final int BIND_BATCH_SIZE = 500;
+
+    /**
+     * Loads the entities of these keys, with one query per
+     * {@link #BIND_BATCH_SIZE} keys.
+     *
+     * @return the entities found, by key
+     */
+    static Map<Object, Object> findByKeys(Class<?> type, String keyName, List<Object> keys) {
+        Set<Object> distinct = new LinkedHashSet<Object>(keys);
+        distinct.remove(null);
+        Map<Object, Object> found = new HashMap<Object, Object>();
+        if (distinct.isEmpty()) {
+            return found;
+        }
+        Model.Factory factory = Model.Manager.factoryFor((Class<Model>) type);
+        EntityManager em = JPABase.getJPAConfig(type).getJPAContext().em();
+        List<Object> all = new ArrayList<Object>(distinct);
+        for (int from = 0; from < all.size(); from += BIND_BATCH_SIZE) {
+            Query q = em.createQuery("from " + type.getName() + " o where o." + keyName + " in (:keys)");
+            q.setParameter("keys", all.subList(from, Math.min(all.size(), from + BIND_BATCH_SIZE)));
+            for (Object entity : q.getResultList()) {
+                found.put(factory.keyValue((Model) entity), entity);
+            }
+        }
+        return found;
+    }
+
     /**
      * This method is deprecated. Use this instead:
      *
@@ -341,14 +384,28 @@ public class GenericModel extends JPABase {
      */
     public static class JPAQuery {
 
+        /**
+         * Number of rows read from the database at a time by stream()
+         */
+        public static final int DEFAULT_SCROLL_SIZE = 1000;
+
         public Query query;
         public String sq;
+        /**
+         * The entityManager of the query, when known
+         */
+        public EntityManager em;
 
         public JPAQuery(String sq, Query query) {
             this.query = query;
             this.sq = sq;
         }
 
+        public JPAQuery(String sq, Query query, EntityManager em) {
+            this(sq, query);
+            this.em = em;
+        }
+
         public JPAQuery(Query query) {
             this.query = query;
             this.sq = query.toString();
@@ -444,6 +501,37 @@ public class GenericModel extends JPABase {
                 throw new JPAQueryException("Error while executing query <strong>" + sq + "</strong>", JPAQueryException.findBestCause(e));
             }
         }
+
+        /**
+         * Iterate over the results of the query, read from the database
+         * DEFAULT_SCROLL_SIZE at a time
+         * @see #scroll(int)
+         */
+        public <T> JPAScrollIterator<T> stream() {
+            return scroll(DEFAULT_SCROLL_SIZE);
+        }
+
+        /**
+         * Iterate over the results of the query as they are read from the
+         * database, batchSize at a time, instead of loading them all in
+         * memory. Every batchSize rows the persistence context is flushed and
+         * cleared, so the entities already iterated over are detached (only
+         * when em is set, as it is for the queries of the models' finders).
+         * The iterator is closed once all the results are read: close it if
+         * you stop before.
+         * @param batchSize Number of rows read at a time
+         * @return An iterator over the entities
+         */
+        public <T> JPAScrollIterator<T> scroll(int batchSize) {
+            try {
+                org.hibernate.Query hibernateQuery = query.unwrap(org.hibernate.Query.class);
+                hibernateQuery.setFetchSize(batchSize);
+                ScrollableResults results = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
+                return new JPAScrollIterator<T>(results, em, batchSize);
+            } catch (Exception e) {
+                throw new JPAQueryException("Error while executing query <strong>" + sq + "</strong>", JPAQueryException.findBestCause(e));
+            }
+        }
     }
 
     // ----- THIS CODE IS DEPRECATED AND WILL BE REMOVED IN NEXT VERSIONs
@@ -1,7 +1,13 @@
 package play.db.jpa;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
 
@@ -43,7 +49,11 @@ public class JPA {
     private final static Map<String, JPAConfig> jpaConfigs = new HashMap<String, JPAConfig>(1);
 
     protected static void addConfiguration(String configName, Ejb3Configuration cfg) {
-        JPAConfig jpaConfig = new JPAConfig(cfg, configName);
+        addConfiguration(configName, cfg, null);
+    }
+
+    protected static void addConfiguration(String configName, Ejb3Configuration cfg, ReadOnlyRoutingDataSource readOnlyRouting) {
+        JPAConfig jpaConfig = new JPAConfig(cfg, configName, readOnlyRouting);
         jpaConfigs.put(configName, jpaConfig);
         if( DBConfig.defaultDbConfigName.equals(configName)) {
             _defaultJPAConfig = jpaConfig;
@@ -128,7 +138,7 @@ public class JPA {
     * Tell to JPA do not commit the current transaction
     */
     public static void setRollbackOnly() {
-        getDefaultJPAConfig().getJPAContext().em().getTransaction().setRollbackOnly();
+        getDefaultJPAConfig().getJPAContext().setRollbackOnly();
     }
 
     /**
@@ -145,6 +155,49 @@ public class JPA {
         return getDefaultJPAConfig().getJPAContext().em().createQuery(query).executeUpdate();
     }
 
+    /**
+     * Save the entities, batchSize at a time: each batch is flushed once, so
+     * that Hibernate sends its inserts and updates as JDBC batches (see
+     * hibernate.jdbc.batch_size), then its entities are detached with the
+     * ones saved by cascade, so that the persistence context does not grow
+     * with the number of entities.
+     * Entities whose id is generated by the database on insert (identity
+     * columns, as with MySQL) are still inserted one at a time.
+     * @param entities the entities to save, all of the same JPA configuration
+     * @param batchSize the number of entities saved at a time
+     */
+    public static void batch(Collection<? extends JPABase> entities, int batchSize) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        EntityManager em = entities.iterator().next().em();
+        // the entities of the next batches stay attached when reached by cascade
+        Set<JPABase> pending = Collections.newSetFromMap(new IdentityHashMap<JPABase, Boolean>());
+        pending.addAll(entities);
+        List<JPABase> batch = new ArrayList<JPABase>(Math.min(batchSize, entities.size()));
+        for (JPABase entity : entities) {
+            batch.add(entity);
+            if (batch.size() == batchSize) {
+                saveAndDetach(em, batch, pending);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            saveAndDetach(em, batch, pending);
+        }
+    }
+
+    private static void saveAndDetach(EntityManager em, List<JPABase> batch, Set<JPABase> pending) {
+        for (JPABase entity : batch) {
+            pending.remove(entity);
+        }
+        for (JPABase entity : JPABase._saveAll(em, batch)) {
+            if (!pending.contains(entity) && em.contains(entity)) {
+                em.detach(entity);
+            }
+        }
+    }
+
     /*
      * Build a new entityManager.
      * (In most case you want to use the local entityManager with em)
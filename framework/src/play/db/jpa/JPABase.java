@@ -46,18 +46,32 @@ public class JPABase implements Serializable, play.db.Model {
     }
 
     public void _save() {
-        if (!em().contains(this)) {
-            em().persist(this);
-            PlayPlugin.postEvent("JPASupport.objectPersisted", this);
+        _saveAll(em(), Collections.singletonList(this));
+    }
+
+    /**
+     * Save the entities with a single flush, letting Hibernate send their
+     * inserts and updates as JDBC batches
+     * @return the entities saved, with the ones reached by the cascade
+     * @see JPA#batch(Collection, int)
+     */
+    static Set<JPABase> _saveAll(EntityManager em, Collection<? extends JPABase> entities) {
+        for (JPABase entity : entities) {
+            if (!em.contains(entity)) {
+                em.persist(entity);
+                PlayPlugin.postEvent("JPASupport.objectPersisted", entity);
+            }
         }
         avoidCascadeSaveLoops.set(new HashSet<JPABase>());
         try {
-            saveAndCascade(true);
+            for (JPABase entity : entities) {
+                entity.saveAndCascade(true);
+            }
         } finally {
             avoidCascadeSaveLoops.get().clear();
         }
         try {
-            em().flush();
+            em.flush();
         } catch (PersistenceException e) {
             if (e.getCause() instanceof GenericJDBCException) {
                 throw new PersistenceException(((GenericJDBCException) e.getCause()).getSQL(), e);
@@ -65,12 +79,16 @@ public class JPABase implements Serializable, play.db.Model {
                 throw e;
             }
         }
-        avoidCascadeSaveLoops.set(new HashSet<JPABase>());
+        Set<JPABase> saved = new HashSet<JPABase>();
+        avoidCascadeSaveLoops.set(saved);
         try {
-            saveAndCascade(false);
+            for (JPABase entity : entities) {
+                entity.saveAndCascade(false);
+            }
         } finally {
-            avoidCascadeSaveLoops.get().clear();
+            avoidCascadeSaveLoops.set(new HashSet<JPABase>());
         }
+        return saved;
     }
 
     public void _delete() {
@@ -31,9 +31,19 @@ public class JPAConfig {
     private EntityManagerFactory entityManagerFactory = null;
     private ThreadLocal<JPAContext> local = new ThreadLocal<JPAContext>();
     public final JPQL jpql;
+    private final ReadOnlyRoutingDataSource readOnlyRouting;
 
     protected JPAConfig(Ejb3Configuration cfg, String configName) {
+        this(cfg, configName, null);
+    }
+
+    /**
+     * @param readOnlyRouting the datasource of cfg when the read-only
+     *            transactions use a replica, or null
+     */
+    protected JPAConfig(Ejb3Configuration cfg, String configName, ReadOnlyRoutingDataSource readOnlyRouting) {
         this.configName = configName;
+        this.readOnlyRouting = readOnlyRouting;
         invokeJPAConfigurationExtensions(cfg, configName);
         entityManagerFactory = cfg.buildEntityManagerFactory();
         jpql = new JPQL(this);
@@ -69,6 +79,16 @@ public class JPAConfig {
         return entityManagerFactory.createEntityManager();
     }
 
+    /**
+     * Takes the connections of the current thread from the replica, for a
+     * read-only context, when there is one.
+     */
+    void route(boolean readOnly) {
+        if (readOnlyRouting != null) {
+            readOnlyRouting.route(readOnly);
+        }
+    }
+
     /**
      * gets the active or create new
      * @return the active JPAContext bound to current thread
@@ -14,21 +14,50 @@ public class JPAContext {
     private JPAConfig jpaConfig;
     private EntityManager entityManager;
     private boolean readonly = true;
+    private boolean beginTransaction;
+    private boolean rollbackOnly;
 
+    /**
+     * The entityManager, and the transaction with its JDBC connection, are
+     * only opened on first use: invocations that do not touch the database
+     * do not take a connection from the pool.
+     */
     protected JPAContext(JPAConfig jpaConfig, boolean readonly, boolean beginTransaction) {
-
         this.jpaConfig = jpaConfig;
+        this.readonly = readonly;
+        this.beginTransaction = beginTransaction;
+    }
 
-        EntityManager manager = jpaConfig.newEntityManager();
-        manager.setFlushMode(FlushModeType.COMMIT);
-        manager.setProperty("org.hibernate.readOnly", readonly);
-
-        if (beginTransaction) {
-            manager.getTransaction().begin();
+    private void open() {
+        jpaConfig.route(readonly);
+        EntityManager manager = null;
+        try {
+            manager = jpaConfig.newEntityManager();
+            manager.setFlushMode(FlushModeType.COMMIT);
+            manager.setProperty("org.hibernate.readOnly", readonly);
+
+            if (beginTransaction) {
+                manager.getTransaction().begin();
+                if (rollbackOnly) {
+                    manager.getTransaction().setRollbackOnly();
+                }
+            }
+        } catch (RuntimeException e) {
+            if (manager != null) {
+                manager.close();
+            }
+            jpaConfig.route(false);
+            throw e;
         }
 
         entityManager = manager;
-        this.readonly = readonly;
+    }
+
+    /**
+     * @return true if the entityManager has been opened
+     */
+    public boolean isOpen() {
+        return entityManager != null;
     }
 
     public JPAConfig getJPAConfig() {
@@ -40,6 +69,10 @@ public class JPAContext {
      * @param rollback shall current transaction be committed (false) or cancelled (true)
      */
     public void closeTx(boolean rollback) {
+        if (entityManager == null) {
+            jpaConfig.clearJPAContext();
+            return;
+        }
 
         try {
             if (entityManager.getTransaction().isActive()) {
@@ -64,7 +97,7 @@ public class JPAContext {
                 }
             }
         } finally {
-            entityManager.close();
+            close();
             //clear context
             jpaConfig.clearJPAContext();
         }
@@ -72,13 +105,23 @@ public class JPAContext {
     }
 
     protected void close() {
-        entityManager.close();;
+        if (entityManager != null) {
+            try {
+                entityManager.close();
+            } finally {
+                entityManager = null;
+                jpaConfig.route(false);
+            }
+        }
     }
 
     /*
      * Retrieve the current entityManager
      */
     public EntityManager em() {
+        if (entityManager == null) {
+            open();
+        }
         return entityManager;
     }
 
@@ -86,7 +129,11 @@ public class JPAContext {
      * Tell to JPA do not commit the current transaction
      */
     public void setRollbackOnly() {
-        entityManager.getTransaction().setRollbackOnly();
+        if (entityManager == null) {
+            rollbackOnly = true;
+        } else {
+            entityManager.getTransaction().setRollbackOnly();
+        }
     }
 
 
@@ -94,13 +141,16 @@ public class JPAContext {
      * Execute a JPQL query
      */
     public int execute(String query) {
-        return entityManager.createQuery(query).executeUpdate();
+        return em().createQuery(query).executeUpdate();
     }
 
     /**
      * @return true if current thread is running inside a transaction
      */
     public boolean isInsideTransaction() {
+        if (entityManager == null) {
+            return beginTransaction;
+        }
         return entityManager.getTransaction() != null;
     }
 }
@@ -24,6 +24,7 @@ import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
 import java.util.*;
 
 /**
@@ -35,6 +36,12 @@ public class JPAPlugin extends PlayPlugin {
 
     @Override
     public Object bind(RootParamNode rootParamNode, String name, Class clazz, java.lang.reflect.Type type, Annotation[] annotations) {
+        if (Collection.class.isAssignableFrom(clazz) && type instanceof ParameterizedType) {
+            java.lang.reflect.Type element = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (element instanceof Class && ((Class<?>) element).isAnnotationPresent(Entity.class)) {
+                return bindAll(rootParamNode, name, clazz, (Class) element, annotations);
+            }
+        }
         // TODO need to be more generic in order to work with JPASupport
     	if(clazz.isAnnotationPresent(Entity.class)) {
 
@@ -83,6 +90,71 @@ public class JPAPlugin extends PlayPlugin {
         return null;
     }
 
+    /**
+     * Binds a collection of entities, like <code>posts[0].id=1&amp;posts[1].id=2</code>,
+     * loading all the entities with a single query per
+     * {@link GenericModel#BIND_BATCH_SIZE} ids.
+     *
+     * @return the entities, or null to let the binder bind this collection.
+     */
+    Object bindAll(RootParamNode rootParamNode, String name, Class<?> clazz, Class entity, Annotation[] annotations) {
+        ParamNode paramNode = rootParamNode.getChild(name);
+        String[] keyNames = new JPAModelLoader(entity).keyNames();
+        if (paramNode == null || paramNode.getAllChildren().isEmpty() || keyNames.length != 1) {
+            return null;
+        }
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (String index : paramNode.getAllChildrenKeys()) {
+            try {
+                indexes.add(Integer.valueOf(index));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        Collections.sort(indexes);
+
+        Class<?> keyType = new JPAModelLoader(entity).keyTypes()[0];
+        List<Object> keys = new ArrayList<Object>(indexes.size());
+        try {
+            for (Integer index : indexes) {
+                ParamNode id = paramNode.getChild(index.toString()).getChild(keyNames[0]);
+                String value = id == null ? null : id.getFirstValue(null);
+                keys.add(value == null || value.trim().length() == 0 ? null : Binder.directBind(id.getOriginalKey(), annotations, value, keyType, null));
+            }
+            Map<Object, Object> found = GenericModel.findByKeys(entity, keyNames[0], keys);
+
+            Collection result;
+            if (!clazz.isInterface()) {
+                result = (Collection) clazz.newInstance();
+            } else if (SortedSet.class.isAssignableFrom(clazz)) {
+                result = new TreeSet();
+            } else if (Set.class.isAssignableFrom(clazz)) {
+                result = new HashSet();
+            } else {
+                result = new ArrayList();
+            }
+            for (int i = 0; i < indexes.size(); i++) {
+                String elementName = name + "." + indexes.get(i);
+                if (result instanceof List) {
+                    // Items are placed at their index, as the binder does
+                    while (result.size() < indexes.get(i)) {
+                        result.add(null);
+                    }
+                }
+                Object o = keys.get(i) == null ? null : found.get(keys.get(i));
+                if (o != null) {
+                    result.add(GenericModel.edit(rootParamNode, elementName, o, annotations));
+                } else {
+                    // No id, or an unknown one: it is a new entity
+                    result.add(GenericModel.create(rootParamNode, elementName, entity, annotations));
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
     @Override
     public Object bindBean(RootParamNode rootParamNode, String name, Object bean) {
         if (bean instanceof JPABase) {
@@ -142,7 +214,18 @@ public class JPAPlugin extends PlayPlugin {
 
                 Ejb3Configuration cfg = new Ejb3Configuration();
 
-                if (dbConfig.getDatasource() != null) {
+                // read-only transactions may use a replica database
+                ReadOnlyRoutingDataSource readOnlyRouting = null;
+                String readOnlyDb = Play.configuration.getProperty(propPrefix + "jpa.readOnlyDb");
+                if (!StringUtils.isEmpty(readOnlyDb)) {
+                    DBConfig replica = DB.getDBConfig(readOnlyDb, true);
+                    if (replica == null || replica.getDatasource() == null || dbConfig.getDatasource() == null) {
+                        throw new JPAException("Cannot use the read-only database " + readOnlyDb + getConfigInfoString(configName)
+                                + ": both databases must be configured in application.conf");
+                    }
+                    readOnlyRouting = new ReadOnlyRoutingDataSource(dbConfig.getDatasource(), replica.getDatasource());
+                    cfg.setDataSource(readOnlyRouting);
+                } else if (dbConfig.getDatasource() != null) {
                     cfg.setDataSource(dbConfig.getDatasource());
                 }
 
@@ -158,6 +241,9 @@ public class JPAPlugin extends PlayPlugin {
                 }
                 cfg.setProperty("hibernate.dialect", getDefaultDialect(propPrefix, driver));
                 cfg.setProperty("javax.persistence.transaction", "RESOURCE_LOCAL");
+                // group the statements of a flush by entity, so that they are sent as JDBC batches
+                cfg.setProperty("hibernate.order_inserts", "true");
+                cfg.setProperty("hibernate.order_updates", "true");
 
 
                 cfg.setInterceptor(new HibernateInterceptor());
@@ -230,7 +316,7 @@ public class JPAPlugin extends PlayPlugin {
                 }
 
                 try {
-                    JPA.addConfiguration(configName, cfg);
+                    JPA.addConfiguration(configName, cfg, readOnlyRouting);
                 } catch (PersistenceException e) {
                     throw new JPAException(e.getMessage() + getConfigInfoString(configName), e.getCause() != null ? e.getCause() : e);
                 }
@@ -0,0 +1,91 @@
+package play.db.jpa;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.ScrollableResults;
+
+/**
+ * Iterate over the results of a JPAQuery as they are read from the database,
+ * with bounded memory: every batchSize rows, the changes of the entities are
+ * flushed and the persistence context is cleared, detaching the entities
+ * already iterated over, and any other entity of the context.
+ * The iterator is closed once all the results are read: close it if you stop
+ * before.
+ */
+public class JPAScrollIterator<T> implements Iterator<T>, Iterable<T>, Closeable {
+
+    private final ScrollableResults results;
+    private final EntityManager em;
+    private final int batchSize;
+    private int rows;
+    private boolean loaded;
+    private boolean closed;
+    private T next;
+
+    /**
+     * @param em the entityManager of the query, cleared every batchSize rows
+     */
+    public JPAScrollIterator(ScrollableResults results, EntityManager em, int batchSize) {
+        this.results = results;
+        this.em = em;
+        this.batchSize = batchSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() {
+        if (loaded || closed) {
+            return;
+        }
+        if (rows > 0 && rows % batchSize == 0 && em != null) {
+            if (em.getTransaction().isActive()) {
+                em.flush();
+            }
+            em.clear();
+        }
+        if (results.next()) {
+            Object[] row = results.get();
+            next = (T) (row.length == 1 ? row[0] : row);
+            loaded = true;
+            rows++;
+        } else {
+            close();
+        }
+    }
+
+    public boolean hasNext() {
+        load();
+        return loaded;
+    }
+
+    public T next() {
+        load();
+        if (!loaded) {
+            throw new NoSuchElementException();
+        }
+        T result = next;
+        next = null;
+        loaded = false;
+        return result;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    public void close() {
+        if (!closed) {
+            closed = true;
+            next = null;
+            loaded = false;
+            results.close();
+        }
+    }
+}
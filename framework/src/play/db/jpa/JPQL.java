@@ -2,6 +2,8 @@ package play.db.jpa;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
@@ -21,8 +23,22 @@ public class JPQL {
     @Deprecated
     public static JPQL instance = null;
 
+    /**
+     * Beyond this number of distinct queries (applications building their
+     * JPQL with concatenated values), new ones are generated each time.
+     */
+    static final int MAX_CACHED_QUERIES = 1000;
+
     private final JPAConfig jpaConfig;
 
+    /**
+     * The generated JPQL, by kind, entity, query and number of parameters.
+     * Generating it again for each call would parse the finder shorthand
+     * again, and giving Hibernate the very same string lets its query plan
+     * cache hit.
+     */
+    private final ConcurrentMap<String, String> queries = new ConcurrentHashMap<String, String>();
+
     protected JPQL() {
         // get the default config
         jpaConfig = JPA.getJPAConfig( DBConfig.defaultDbConfigName);
@@ -65,24 +81,24 @@ public class JPQL {
     }
 
     public JPAQuery find(String entity, String query, Object[] params) {
-        Query q = em().createQuery(
-                createFindByQuery(entity, entity, query, params));
-        return new JPAQuery(
-                createFindByQuery(entity, entity, query, params), bindParameters(q, params));
+        String jpql = createFindByQuery(entity, entity, query, params);
+        EntityManager em = em();
+        Query q = em.createQuery(jpql);
+        return new JPAQuery(jpql, bindParameters(q, params), em);
     }
 
     public JPAQuery find(String entity) {
-        Query q = em().createQuery(
-                createFindByQuery(entity, entity, null));
-        return new JPAQuery(
-                createFindByQuery(entity, entity, null), bindParameters(q));
+        String jpql = createFindByQuery(entity, entity, null);
+        EntityManager em = em();
+        Query q = em.createQuery(jpql);
+        return new JPAQuery(jpql, bindParameters(q), em);
     }
 
     public JPAQuery all(String entity) {
-        Query q = em().createQuery(
-                createFindByQuery(entity, entity, null));
-        return new JPAQuery(
-                createFindByQuery(entity, entity, null), bindParameters(q));
+        String jpql = createFindByQuery(entity, entity, null);
+        EntityManager em = em();
+        Query q = em.createQuery(jpql);
+        return new JPAQuery(jpql, bindParameters(q), em);
     }
 
     public int delete(String entity, String query, Object[] params) {
@@ -116,6 +132,18 @@ public class JPQL {
     }
 
     public String createFindByQuery(String entityName, String entityClass, String query, Object... params) {
+        String key = "F" + arity(params) + ":" + entityName + ":" + query;
+        String jpql = queries.get(key);
+        if (jpql == null) {
+            jpql = buildFindByQuery(entityName, query, params);
+            if (queries.size() < MAX_CACHED_QUERIES) {
+                queries.putIfAbsent(key, jpql);
+            }
+        }
+        return jpql;
+    }
+
+    String buildFindByQuery(String entityName, String query, Object... params) {
         if (query == null || query.trim().length() == 0) {
             return "from " + entityName;
         }
@@ -141,6 +169,18 @@ public class JPQL {
     }
 
     public String createDeleteQuery(String entityName, String entityClass, String query, Object... params) {
+        String key = "D" + arity(params) + ":" + entityName + ":" + query;
+        String jpql = queries.get(key);
+        if (jpql == null) {
+            jpql = buildDeleteQuery(entityName, query, params);
+            if (queries.size() < MAX_CACHED_QUERIES) {
+                queries.putIfAbsent(key, jpql);
+            }
+        }
+        return jpql;
+    }
+
+    String buildDeleteQuery(String entityName, String query, Object... params) {
         if (query == null) {
             return "delete from " + entityName;
         }
@@ -160,6 +200,18 @@ public class JPQL {
     }
 
     public String createCountQuery(String entityName, String entityClass, String query, Object... params) {
+        String key = "C" + arity(params) + ":" + entityName + ":" + query;
+        String jpql = queries.get(key);
+        if (jpql == null) {
+            jpql = buildCountQuery(entityName, query, params);
+            if (queries.size() < MAX_CACHED_QUERIES) {
+                queries.putIfAbsent(key, jpql);
+            }
+        }
+        return jpql;
+    }
+
+    String buildCountQuery(String entityName, String query, Object... params) {
         if (query.trim().toLowerCase().startsWith("select ")) {
             return query;
         }
@@ -184,6 +236,10 @@ public class JPQL {
         return "select count(*) from " + entityName + " e where " + query;
     }
 
+    private static int arity(Object[] params) {
+        return params == null ? -1 : params.length;
+    }
+
     @SuppressWarnings("unchecked")
     public Query bindParameters(Query q, Object... params) {
         if (params == null) {
@@ -0,0 +1,94 @@
+package play.db.jpa;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+import javax.sql.DataSource;
+
+/**
+ * The datasource of a JPA configuration having a read-only database
+ * (jpa.readOnlyDb): the connections of the read-only JPA contexts of the
+ * thread are taken from the replica, all the others from the primary
+ * database.
+ */
+public class ReadOnlyRoutingDataSource implements DataSource {
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ThreadLocal<Boolean> readOnly = new ThreadLocal<Boolean>();
+
+    public ReadOnlyRoutingDataSource(DataSource primary, DataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    /**
+     * @param readOnly whether the connections of the current thread, until
+     *            the next call, are taken from the replica
+     */
+    void route(boolean readOnly) {
+        if (readOnly) {
+            this.readOnly.set(Boolean.TRUE);
+        } else {
+            this.readOnly.remove();
+        }
+    }
+
+    /**
+     * @return the datasource the current thread takes its connections from
+     */
+    public DataSource current() {
+        return readOnly.get() != null ? replica : primary;
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public DataSource getReplica() {
+        return replica;
+    }
+
+    public Connection getConnection() throws SQLException {
+        return current().getConnection();
+    }
+
+    public Connection getConnection(String username, String password) throws SQLException {
+        return current().getConnection(username, password);
+    }
+
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+        replica.setLogWriter(out);
+    }
+
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+        replica.setLoginTimeout(seconds);
+    }
+
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return current().unwrap(iface);
+    }
+
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || current().isWrapperFor(iface);
+    }
+}
@@ -25,6 +25,7 @@ import play.libs.Time;
 import play.mvc.Http.Request;
 import play.utils.Java;
 import play.utils.PThreadFactory;
+import play.utils.ThreadPerTaskExecutor;
 
 public class JobsPlugin extends PlayPlugin {
 
@@ -190,7 +191,12 @@ public class JobsPlugin extends PlayPlugin {
     @Override
     public void onApplicationStart() {
         int core = Integer.parseInt(Play.configuration.getProperty("play.jobs.pool", "10"));
-        executor = new ScheduledThreadPoolExecutor(core, new PThreadFactory("jobs"), new ThreadPoolExecutor.AbortPolicy());
+        if (ThreadPerTaskExecutor.useVirtualThreads()) {
+            // The periodic jobs still hold one of the core scheduler threads while they run
+            executor = new ThreadPerTaskExecutor(core, "jobs", -1, ThreadPerTaskExecutor.virtualThreadFactory("jobs"));
+        } else {
+            executor = new ScheduledThreadPoolExecutor(core, new PThreadFactory("jobs"), new ThreadPoolExecutor.AbortPolicy());
+        }
         scheduledJobs = new ArrayList<Job>();
     }
 
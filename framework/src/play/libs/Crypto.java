@@ -2,6 +2,10 @@ package play.libs;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.codec.binary.Base64;
 
@@ -57,11 +61,10 @@ public class Crypto {
         }
 
         try {
-            Mac mac = Mac.getInstance("HmacSHA1");
-            SecretKeySpec signingKey = new SecretKeySpec(key, "HmacSHA1");
-            mac.init(signingKey);
             byte[] messageBytes = message.getBytes("utf-8");
-            byte[] result = mac.doFinal(messageBytes);
+            SigningMac signing = borrowMac(key);
+            byte[] result = signing.mac.doFinal(messageBytes);
+            giveBack(signing);
             int len = result.length;
             char[] hexChars = new char[len * 2];
 
@@ -78,6 +81,51 @@ public class Crypto {
 
     }
 
+    /**
+     * The idle HMAC-SHA1, shared by all the threads, each initialized with the
+     * last key it used. A Mac is reset by doFinal, so it can be reused as long
+     * as the key does not change, which saves the provider lookup and key
+     * setup of each signature. At most MAX_IDLE_MACS are kept, however many
+     * threads, virtual or not, sign concurrently.
+     */
+    private static final Queue<SigningMac> idleMacs = new ConcurrentLinkedQueue<SigningMac>();
+    private static final AtomicInteger idleMacsCount = new AtomicInteger();
+    static final int MAX_IDLE_MACS = 32;
+
+    static class SigningMac {
+        byte[] key;
+        final Mac mac;
+
+        SigningMac(Mac mac) {
+            this.mac = mac;
+        }
+    }
+
+    /**
+     * @return an idle Mac initialized with the key, or a new one.
+     */
+    static SigningMac borrowMac(byte[] key) throws Exception {
+        SigningMac signing = idleMacs.poll();
+        if (signing == null) {
+            signing = new SigningMac(Mac.getInstance("HmacSHA1"));
+        } else {
+            idleMacsCount.decrementAndGet();
+        }
+        if (!Arrays.equals(signing.key, key)) {
+            signing.mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            signing.key = key.clone();
+        }
+        return signing;
+    }
+
+    static void giveBack(SigningMac signing) {
+        if (idleMacsCount.incrementAndGet() <= MAX_IDLE_MACS) {
+            idleMacs.offer(signing);
+        } else {
+            idleMacsCount.decrementAndGet();
+        }
+    }
+
     /**
         * Create a password hash using the default hashing algorithm
         * @param input The password
@@ -3,11 +3,11 @@ package play.mvc;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.Future;
@@ -21,7 +21,6 @@ import com.jamonapi.MonitorFactory;
 import play.Invoker.Suspend;
 import play.Logger;
 import play.Play;
-import play.cache.CacheFor;
 import play.classloading.enhancers.ControllersEnhancer;
 import play.classloading.enhancers.ControllersEnhancer.ControllerInstrumentation;
 import play.classloading.enhancers.ControllersEnhancer.ControllerSupport;
@@ -82,17 +81,15 @@ public class ActionInvoker {
 
         // Find the action method
         try {
-            Method actionMethod = null;
-            Object[] ca = getActionMethod(request.action);//找到方法
-            actionMethod = (Method) ca[1];
-            request.controller = ((Class) ca[0]).getName().substring(12).replace("$", "");
-            request.controllerClass = ((Class) ca[0]);
-            request.actionMethod = actionMethod.getName();
-            request.action = request.controller + "." + request.actionMethod;
-            request.invokedMethod = actionMethod;
+            ActionPlan plan = ActionPlan.get(request.action);//找到方法
+            request.controller = plan.controller;
+            request.controllerClass = (Class) plan.controllerClass;
+            request.actionMethod = plan.actionMethod.getName();
+            request.action = plan.action;
+            request.invokedMethod = plan.actionMethod;
 
             if (Logger.isTraceEnabled()) {
-                Logger.trace("------- %s", actionMethod);
+                Logger.trace("------- %s", plan.actionMethod);
             }
 
             request.resolved = true;
@@ -110,7 +107,8 @@ public class ActionInvoker {
         try {
 
             resolve(request, response);//设置request请求的方法名,参数等等
-            Method actionMethod = request.invokedMethod;
+            ActionPlan plan = ActionPlan.get(request.action);
+            Method actionMethod = plan.actionMethod;
 
             // 1. Prepare request params
             Scope.Params.current().__mergeWith(request.routeArgs);
@@ -141,31 +139,43 @@ public class ActionInvoker {
             // 3. Invoke the action
             try {
                 // @Before
-                handleBefores(request);
+                handleBefores(plan);
 
                 // Action
 
                 Result actionResult = null;
                 String cacheKey = null;
+                boolean computing = false;
 
                 // Check the cache (only for GET or HEAD)
-                if ((request.method.equals("GET") || request.method.equals("HEAD")) && actionMethod.isAnnotationPresent(CacheFor.class)) {
-                    cacheKey = actionMethod.getAnnotation(CacheFor.class).id();
-                    if ("".equals(cacheKey)) {
-                        cacheKey = "urlcache:" + request.url + request.querystring;//缓存的key 按每个url的请求
+                if ((request.method.equals("GET") || request.method.equals("HEAD")) && plan.cacheFor != null) {
+                    cacheKey = ActionResultCache.key(plan.cacheFor, request);
+                    ActionResultCache.CachedResponse cached = ActionResultCache.get(cacheKey);
+                    if (cached == null || !cached.isFresh()) {
+                        // A single request computes it, the others serve the
+                        // stale response or wait for the new one
+                        computing = ActionResultCache.lock(cacheKey);
+                        if (!computing && cached == null) {
+                            cached = ActionResultCache.await(cacheKey, plan.waitSeconds * 1000L);
+                            // No entry: the request computing it failed and
+                            // this one took over
+                            computing = cached == null;
+                        }
+                    }
+                    if (cached != null && !computing) {
+                        actionResult = cached.result();
                     }
-                    actionResult = (Result) play.cache.Cache.get(cacheKey);
                 }
 
                 if (actionResult == null) {//先从缓存取结果,如果没有在调用url
                     ControllerInstrumentation.initActionCall();
                     try {
-                        inferResult(invokeControllerMethod(actionMethod));//创建controller类并调用url对应的方法
+                        inferResult(invokeControllerMethod(plan.actionInvoker, null));//创建controller类并调用url对应的方法
                     } catch (Result result) {
                         actionResult = result;
                         // Cache it if needed
                         if (cacheKey != null) {
-                            play.cache.Cache.set(cacheKey, actionResult, actionMethod.getAnnotation(CacheFor.class).value());
+                            actionResult = ActionResultCache.store(cacheKey, plan.cacheSeconds, plan.staleSeconds, result, request, response);
                         }
                     } catch (InvocationTargetException ex) {
                         // It's a Result ? (expected)
@@ -173,35 +183,31 @@ public class ActionInvoker {
                             actionResult = (Result) ex.getTargetException();
                             // Cache it if needed
                             if (cacheKey != null) {
-                                play.cache.Cache.set(cacheKey, actionResult, actionMethod.getAnnotation(CacheFor.class).value());
+                                actionResult = ActionResultCache.store(cacheKey, plan.cacheSeconds, plan.staleSeconds, actionResult, request,
+                                        response);
                             }
 
                         } else {
                             // @Catch
                             Object[] args = new Object[] { ex.getTargetException() };
-                            List<Method> catches = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Catch.class);
                             ControllerInstrumentation.stopActionCall();
-                            for (Method mCatch : catches) {
-                                Class[] exceptions = mCatch.getAnnotation(Catch.class).value();
-                                if (exceptions.length == 0) {
-                                    exceptions = new Class[] { Exception.class };
-                                }
-                                for (Class exception : exceptions) {
-                                    if (exception.isInstance(args[0])) {
-                                        mCatch.setAccessible(true);
-                                        inferResult(invokeControllerMethod(mCatch, args));
-                                        break;
-                                    }
+                            for (ActionPlan.Interceptor aCatch : plan.catches) {
+                                if (aCatch.catches(ex.getTargetException())) {
+                                    inferResult(invokeControllerMethod(aCatch.invoker, args));
                                 }
                             }
 
                             throw ex;
                         }
+                    } finally {
+                        if (computing) {
+                            ActionResultCache.unlock(cacheKey);
+                        }
                     }
                 }
 
                 // @After
-                handleAfters(request);
+                handleAfters(plan);
 
                 monitor.stop();
                 monitor = null;
@@ -266,7 +272,7 @@ public class ActionInvoker {
         }
     }
 
-    private static boolean isActionMethod(Method method) {
+    static boolean isActionMethod(Method method) {
         if (method.isAnnotationPresent(Before.class)) {
             return false;
         }
@@ -285,71 +291,17 @@ public class ActionInvoker {
         return true;
     }
 
-    private static void handleBefores(Http.Request request) throws Exception {
-        List<Method> befores = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Before.class);
+    private static void handleBefores(ActionPlan plan) throws Exception {
         ControllerInstrumentation.stopActionCall();
-        for (Method before : befores) {
-            String[] unless = before.getAnnotation(Before.class).unless();
-            String[] only = before.getAnnotation(Before.class).only();
-            boolean skip = false;
-            for (String un : only) {
-                if (!un.contains(".")) {
-                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = false;
-                    break;
-                } else {
-                    skip = true;
-                }
-            }
-            for (String un : unless) {
-                if (!un.contains(".")) {
-                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = true;
-                    break;
-                }
-            }
-            if (!skip) {
-                before.setAccessible(true);
-                inferResult(invokeControllerMethod(before));
-            }
+        for (ActionPlan.Interceptor before : plan.befores) {
+            inferResult(invokeControllerMethod(before.invoker, null));
         }
     }
 
-    private static void handleAfters(Http.Request request) throws Exception {
-        List<Method> afters = Java.findAllAnnotatedMethods(Controller.getControllerClass(), After.class);
+    private static void handleAfters(ActionPlan plan) throws Exception {
         ControllerInstrumentation.stopActionCall();
-        for (Method after : afters) {
-            String[] unless = after.getAnnotation(After.class).unless();
-            String[] only = after.getAnnotation(After.class).only();
-            boolean skip = false;
-            for (String un : only) {
-                if (!un.contains(".")) {
-                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = false;
-                    break;
-                } else {
-                    skip = true;
-                }
-            }
-            for (String un : unless) {
-                if (!un.contains(".")) {
-                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = true;
-                    break;
-                }
-            }
-            if (!skip) {
-                after.setAccessible(true);
-                inferResult(invokeControllerMethod(after));
-            }
+        for (ActionPlan.Interceptor after : plan.afters) {
+            inferResult(invokeControllerMethod(after.invoker, null));
         }
     }
 
@@ -372,46 +324,17 @@ public class ActionInvoker {
         }
 
         try {
-            List<Method> allFinally = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Finally.class);
+            ActionPlan plan = ActionPlan.get(request.action);
             ControllerInstrumentation.stopActionCall();
-            for (Method aFinally : allFinally) {
-                String[] unless = aFinally.getAnnotation(Finally.class).unless();
-                String[] only = aFinally.getAnnotation(Finally.class).only();
-                boolean skip = false;
-                for (String un : only) {
-                    if (!un.contains(".")) {
-                        un = aFinally.getDeclaringClass().getName().substring(12) + "." + un;
-                    }
-                    if (un.equals(request.action)) {
-                        skip = false;
-                        break;
-                    } else {
-                        skip = true;
-                    }
-                }
-                for (String un : unless) {
-                    if (!un.contains(".")) {
-                        un = aFinally.getDeclaringClass().getName().substring(12) + "." + un;
-                    }
-                    if (un.equals(request.action)) {
-                        skip = true;
-                        break;
-                    }
-                }
-                if (!skip) {
-                    aFinally.setAccessible(true);
-
-                    // check if method accepts Throwable as only parameter
-                    Class[] parameterTypes = aFinally.getParameterTypes();
-                    if (parameterTypes.length == 1 && parameterTypes[0] == Throwable.class) {
-                        // invoking @Finally method with caughtException as
-                        // parameter
-                        invokeControllerMethod(aFinally, new Object[] { caughtException });
-                    } else {
-                        // invoce @Finally-method the regular way without
-                        // caughtException
-                        invokeControllerMethod(aFinally, null);
-                    }
+            for (ActionPlan.Interceptor aFinally : plan.finallies) {
+                if (aFinally.takesThrowable) {
+                    // invoking @Finally method with caughtException as
+                    // parameter
+                    invokeControllerMethod(aFinally.invoker, new Object[] { caughtException });
+                } else {
+                    // invoce @Finally-method the regular way without
+                    // caughtException
+                    invokeControllerMethod(aFinally.invoker, null);
                 }
             }
         } catch (InvocationTargetException ex) {
@@ -460,41 +383,36 @@ public class ActionInvoker {
     }
 
     public static Object invokeControllerMethod(Method method, Object[] forceArgs) throws Exception {
-        boolean isStatic = Modifier.isStatic(method.getModifiers());
-        String declaringClassName = method.getDeclaringClass().getName();
-        boolean isProbablyScala = declaringClassName.contains("$");
+        return invokeControllerMethod(MethodInvoker.reflective(method, Http.Request.current().controllerClass), forceArgs);
+    }
 
+    static Object invokeControllerMethod(MethodInvoker invoker, Object[] forceArgs) throws Exception {
         Http.Request request = Http.Request.current();
 
-        if (!isStatic && request.controllerInstance == null) {
+        if (!invoker.isStatic && request.controllerInstance == null) {
             request.controllerInstance = request.controllerClass.newInstance();//创建controller类
         }
 
-        Object[] args = forceArgs != null ? forceArgs : getActionMethodArgs(method, request.controllerInstance);
+        Object[] args = forceArgs != null ? forceArgs : getActionMethodArgs(invoker.method, request.controllerInstance);
 
-        if (isProbablyScala) {
-            try {
-                Object scalaInstance = request.controllerClass.getDeclaredField("MODULE$").get(null);
-                if (declaringClassName.endsWith("$class")) {
-                    args[0] = scalaInstance; // Scala trait method
-                } else {
-                    request.controllerInstance = (Controller) scalaInstance; // Scala
-                                                                             // object
-                                                                             // method
-                }
-            } catch (NoSuchFieldException e) {
-                // not Scala
+        if (invoker.scalaInstance != null) {
+            if (invoker.scalaTrait) {
+                args[0] = invoker.scalaInstance; // Scala trait method
+            } else {
+                request.controllerInstance = (Controller) invoker.scalaInstance; // Scala
+                                                                                 // object
+                                                                                 // method
             }
         }
 
-        return invoke(method, request.controllerInstance, args);//调用controller方法
+        return invoke(invoker, request.controllerInstance, args);//调用controller方法
     }
 
-    static Object invoke(Method method, Object instance, Object[] realArgs) throws Exception {
-        if (isActionMethod(method)) {
-            return invokeWithContinuation(method, instance, realArgs);
+    static Object invoke(MethodInvoker invoker, Object instance, Object[] realArgs) throws Exception {
+        if (invoker.isAction) {
+            return invokeWithContinuation(invoker, instance, realArgs);
         } else {
-            return method.invoke(instance, realArgs);
+            return invoker.invoke(instance, realArgs);
         }
     }
 
@@ -507,7 +425,7 @@ public class ActionInvoker {
     public static final String CONTINUATIONS_STORE_VALIDATIONS = "__CONTINUATIONS_STORE_VALIDATIONS";
     static final String CONTINUATIONS_STORE_VALIDATIONPLUGIN_KEYS = "__CONTINUATIONS_STORE_VALIDATIONPLUGIN_KEYS";
 
-    static Object invokeWithContinuation(Method method, Object instance, Object[] realArgs) throws Exception {
+    static Object invokeWithContinuation(MethodInvoker invoker, Object instance, Object[] realArgs) throws Exception {
         // Callback case
         if (Http.Request.current().args.containsKey(A)) {
 
@@ -517,11 +435,11 @@ public class ActionInvoker {
             Scope.RenderArgs renderArgs = (Scope.RenderArgs) Request.current().args.remove(ActionInvoker.CONTINUATIONS_STORE_RENDER_ARGS);
             Scope.RenderArgs.current.set(renderArgs);
             if (f == null) {
-                method = instance.getClass().getDeclaredMethod("invoke");
+                Method method = instance.getClass().getDeclaredMethod("invoke");
                 method.setAccessible(true);
                 return method.invoke(instance);
             } else {
-                method = instance.getClass().getDeclaredMethod("invoke", Object.class);
+                Method method = instance.getClass().getDeclaredMethod("invoke", Object.class);
                 method.setAccessible(true);
                 return method.invoke(instance, f.get());
             }
@@ -542,11 +460,11 @@ public class ActionInvoker {
             pStackRecorder.isRestoring = !pStackRecorder.isEmpty();
 
             // Execute code
-            result = method.invoke(instance, realArgs);
+            result = invoker.invoke(instance, realArgs);
 
             if (pStackRecorder.isCapturing) {
                 if (pStackRecorder.isEmpty()) {
-                    throw new IllegalStateException("stack corruption. Is " + method + " instrumented for javaflow?");
+                    throw new IllegalStateException("stack corruption. Is " + invoker.method + " instrumented for javaflow?");
                 }
                 Object trigger = pStackRecorder.value;
                 Continuation nextContinuation = new Continuation(pStackRecorder);
@@ -573,7 +491,20 @@ public class ActionInvoker {
         return result;
     }
 
+    /**
+     * @return the controller class and the action method, from the
+     *         {@link ActionPlan} of the action if it is already built. The
+     *         plan is not built here, only when the action is invoked.
+     */
     public static Object[] getActionMethod(String fullAction) {
+        ActionPlan plan = ActionPlan.cached(fullAction);
+        if (plan != null) {
+            return new Object[] { plan.controllerClass, plan.actionMethod };
+        }
+        return findActionMethod(fullAction);
+    }
+
+    static Object[] findActionMethod(String fullAction) {
         Method actionMethod = null;
         Class controllerClass = null;
         try {
@@ -621,24 +552,33 @@ public class ActionInvoker {
             return rArgs;
         }
 
-        rArgs = new Object[method.getParameterTypes().length];
-        for (int i = 0; i < method.getParameterTypes().length; i++) {
+        Class<?>[] types = method.getParameterTypes();
+        Type[] genericTypes = method.getGenericParameterTypes();
+        Annotation[][] annotations = method.getParameterAnnotations();
+        // The tree of all the parameters, built once for the request
+        RootParamNode root = null;
+        rArgs = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
 
-            Class<?> type = method.getParameterTypes()[i];
-            Map<String, String[]> params = new HashMap<String, String[]>();
+            Class<?> type = types[i];
+            RootParamNode paramNode;
 
             // In case of simple params, we don't want to parse the body.
             if (type.equals(String.class) || Number.class.isAssignableFrom(type) || type.isPrimitive()) {
+                Map<String, String[]> params = new HashMap<String, String[]>();
                 params.put(paramsNames[i], Scope.Params.current().getAll(paramsNames[i]));
+                paramNode = ParamNode.convert(params);
             } else {
-                params.putAll(Scope.Params.current().all());
+                if (root == null) {
+                    root = Scope.Params.current().getRootParamNode();
+                }
+                paramNode = root;
+            }
+            if (Logger.isTraceEnabled()) {
+                Logger.trace("getActionMethodArgs name [" + paramsNames[i] + "] annotation [" + Utils.join(annotations[i], " ") + "]");
             }
-            Logger.trace("getActionMethodArgs name [" + paramsNames[i] + "] annotation ["
-                    + Utils.join(method.getParameterAnnotations()[i], " ") + "]");
 
-            RootParamNode root = ParamNode.convert(params);
-            rArgs[i] = Binder.bind(root, paramsNames[i], method.getParameterTypes()[i], method.getGenericParameterTypes()[i],
-                    method.getParameterAnnotations()[i], new Binder.MethodAndParamInfo(o, method, i + 1));
+            rArgs[i] = Binder.bind(paramNode, paramsNames[i], type, genericTypes[i], annotations[i], new Binder.MethodAndParamInfo(o, method, i + 1));
         }
 
         CachedBoundActionMethodArgs.current().storeActionMethodArgs(method, rArgs);
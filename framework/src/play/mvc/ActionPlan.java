@@ -0,0 +1,232 @@
+package play.mvc;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import play.Play;
+import play.cache.CacheFor;
+import play.classloading.ApplicationClassloaderState;
+import play.libs.Time;
+import play.utils.Java;
+
+/**
+ * What {@link ActionInvoker} runs for an action: the action method, its
+ * <code>@CacheFor</code> annotation, and the interceptors of the controller
+ * applying to this action, in order and already made accessible.
+ * <p>
+ * The plans are built on the first call of each action, and built again once
+ * the application classes are reloaded.
+ * </p>
+ */
+public class ActionPlan {
+
+    private static final ConcurrentHashMap<String, ActionPlan> plans = new ConcurrentHashMap<String, ActionPlan>();
+    /**
+     * The invokers of the methods, shared by the actions of a controller.
+     */
+    private static final ConcurrentHashMap<Method, MethodInvoker> invokers = new ConcurrentHashMap<Method, MethodInvoker>();
+
+    /**
+     * An interceptor method of the controller.
+     */
+    public static class Interceptor {
+
+        public final Method method;
+        public final MethodInvoker invoker;
+        /**
+         * The exceptions handled by a <code>@Catch</code> method.
+         */
+        public final Class<?>[] exceptions;
+        /**
+         * Whether a <code>@Finally</code> method takes the caught exception.
+         */
+        public final boolean takesThrowable;
+
+        Interceptor(Method method, Class<?>[] exceptions, Class<?> controllerClass) {
+            method.setAccessible(true);
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            this.method = method;
+            this.invoker = invoker(method, controllerClass);
+            this.exceptions = exceptions;
+            this.takesThrowable = parameterTypes.length == 1 && parameterTypes[0] == Throwable.class;
+        }
+
+        /**
+         * @return true if this <code>@Catch</code> method handles the
+         *         exception.
+         */
+        public boolean catches(Throwable e) {
+            for (Class<?> exception : exceptions) {
+                if (exception.isInstance(e)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public final Class<?> controllerClass;
+    /**
+     * The controller name, without the <code>controllers.</code> package.
+     */
+    public final String controller;
+    public final Method actionMethod;
+    public final MethodInvoker actionInvoker;
+    /**
+     * The full action name, <code>Controller.action</code>.
+     */
+    public final String action;
+    /**
+     * The <code>@CacheFor</code> annotation of the action, or null.
+     */
+    public final CacheFor cacheFor;
+    /**
+     * The durations of the <code>@CacheFor</code> annotation, in seconds.
+     */
+    public final int cacheSeconds;
+    public final int staleSeconds;
+    public final int waitSeconds;
+    public final List<Interceptor> befores;
+    public final List<Interceptor> afters;
+    public final List<Interceptor> finallies;
+    public final List<Interceptor> catches;
+
+    private final ApplicationClassloaderState state;
+
+    ActionPlan(Class<?> controllerClass, Method actionMethod, ApplicationClassloaderState state) {
+        this.controllerClass = controllerClass;
+        this.controller = controllerClass.getName().substring(12).replace("$", "");
+        this.actionMethod = actionMethod;
+        this.actionInvoker = invoker(actionMethod, controllerClass);
+        this.action = controller + "." + actionMethod.getName();
+        this.cacheFor = actionMethod.getAnnotation(CacheFor.class);
+        this.cacheSeconds = cacheFor == null ? 0 : Time.parseDuration(cacheFor.value());
+        this.staleSeconds = cacheFor == null || "".equals(cacheFor.staleWhileRevalidate()) ? 0 : Time.parseDuration(cacheFor.staleWhileRevalidate());
+        this.waitSeconds = cacheFor == null ? 0 : Time.parseDuration(cacheFor.waitTimeout());
+        this.state = state;
+
+        List<Interceptor> interceptors = new ArrayList<Interceptor>();
+        for (Method before : Java.findAllAnnotatedMethods(controllerClass, Before.class)) {
+            Before annotation = before.getAnnotation(Before.class);
+            if (applies(annotation.only(), annotation.unless(), before.getDeclaringClass().getName().substring(12).replace("$", ""))) {
+                interceptors.add(new Interceptor(before, null, controllerClass));
+            }
+        }
+        this.befores = Collections.unmodifiableList(interceptors);
+
+        interceptors = new ArrayList<Interceptor>();
+        for (Method after : Java.findAllAnnotatedMethods(controllerClass, After.class)) {
+            After annotation = after.getAnnotation(After.class);
+            if (applies(annotation.only(), annotation.unless(), after.getDeclaringClass().getName().substring(12))) {
+                interceptors.add(new Interceptor(after, null, controllerClass));
+            }
+        }
+        this.afters = Collections.unmodifiableList(interceptors);
+
+        interceptors = new ArrayList<Interceptor>();
+        for (Method aFinally : Java.findAllAnnotatedMethods(controllerClass, Finally.class)) {
+            Finally annotation = aFinally.getAnnotation(Finally.class);
+            if (applies(annotation.only(), annotation.unless(), aFinally.getDeclaringClass().getName().substring(12))) {
+                interceptors.add(new Interceptor(aFinally, null, controllerClass));
+            }
+        }
+        this.finallies = Collections.unmodifiableList(interceptors);
+
+        interceptors = new ArrayList<Interceptor>();
+        for (Method aCatch : Java.findAllAnnotatedMethods(controllerClass, Catch.class)) {
+            Class<?>[] exceptions = aCatch.getAnnotation(Catch.class).value();
+            if (exceptions.length == 0) {
+                exceptions = new Class<?>[] { Exception.class };
+            }
+            interceptors.add(new Interceptor(aCatch, exceptions, controllerClass));
+        }
+        this.catches = Collections.unmodifiableList(interceptors);
+    }
+
+    /**
+     * @param only
+     *            The actions intercepted, all of them if empty
+     * @param unless
+     *            The actions not intercepted
+     * @param declaringController
+     *            The controller name completing the action names without
+     *            controller
+     * @return true if the interceptor applies to this action.
+     */
+    private boolean applies(String[] only, String[] unless, String declaringController) {
+        boolean skip = false;
+        for (String un : only) {
+            if (!un.contains(".")) {
+                un = declaringController + "." + un;
+            }
+            if (un.equals(action)) {
+                skip = false;
+                break;
+            } else {
+                skip = true;
+            }
+        }
+        for (String un : unless) {
+            if (!un.contains(".")) {
+                un = declaringController + "." + un;
+            }
+            if (un.equals(action)) {
+                skip = true;
+                break;
+            }
+        }
+        return !skip;
+    }
+
+    private static MethodInvoker invoker(Method method, Class<?> controllerClass) {
+        MethodInvoker invoker = invokers.get(method);
+        // A Scala object or trait method is settled for its controller
+        if (invoker == null || (invoker.controllerClass != controllerClass && method.getDeclaringClass().getName().contains("$"))) {
+            invoker = MethodInvoker.of(method, controllerClass);
+            invokers.put(method, invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * @param fullAction
+     *            The action, as <code>Controller.action</code>
+     * @return the plan of the action, built if the action was not called yet
+     *         or the classes were reloaded.
+     * @throws play.exceptions.ActionNotFoundException
+     *             if there is no such action.
+     */
+    public static ActionPlan get(String fullAction) {
+        ApplicationClassloaderState current = Play.classloader.currentState;
+        ActionPlan plan = plans.get(fullAction);
+        if (plan != null && plan.state.equals(current)) {
+            return plan;
+        }
+        if (plan != null) {
+            // The classes were reloaded
+            plans.clear();
+            invokers.clear();
+        }
+        Object[] controllerAndMethod = ActionInvoker.findActionMethod(fullAction);
+        plan = new ActionPlan((Class<?>) controllerAndMethod[0], (Method) controllerAndMethod[1], current);
+        plans.put(plan.action, plan);
+        // Also under the name it was asked with, e.g. with the controllers
+        // package or another case
+        plans.putIfAbsent(fullAction, plan);
+        return plan;
+    }
+
+    /**
+     * @param fullAction
+     *            The action, as <code>Controller.action</code>
+     * @return the plan of the action if it is already built and up to date,
+     *         or null.
+     */
+    static ActionPlan cached(String fullAction) {
+        ActionPlan plan = plans.get(fullAction);
+        return plan != null && plan.state.equals(Play.classloader.currentState) ? plan : null;
+    }
+}
@@ -0,0 +1,270 @@
+package play.mvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import play.cache.Cache;
+import play.cache.CacheFor;
+import play.exceptions.UnexpectedException;
+import play.i18n.Lang;
+import play.libs.Codec;
+import play.mvc.results.Error;
+import play.mvc.results.Result;
+
+/**
+ * The responses of the actions annotated with {@link CacheFor}.
+ * <p>
+ * A response is stored in the cache as its status, content type, headers and
+ * body bytes, with a strong ETag computed from the body, and replayed by a
+ * {@link Result} that answers 304 Not Modified to a matching If-None-Match.
+ * </p>
+ * <p>
+ * Each entry is fresh for the duration of the annotation, then stale for its
+ * <code>staleWhileRevalidate</code> duration. Only one request per key and
+ * per JVM recomputes a missing or stale entry: the other requests are served
+ * the stale entry, or wait for the new one when there is none. If the request
+ * computing it fails, one of the waiting requests computes it in turn.
+ * </p>
+ */
+class ActionResultCache {
+
+    private static final ConcurrentHashMap<String, CountDownLatch> computing = new ConcurrentHashMap<String, CountDownLatch>();
+
+    /**
+     * The cache key of the request: the id of the annotation or the URL, and
+     * the values the response varies with.
+     */
+    static String key(CacheFor cacheFor, Http.Request request) {
+        StringBuilder key = new StringBuilder("urlcache:");
+        if ("".equals(cacheFor.id())) {
+            key.append(request.url).append(request.querystring);
+        } else {
+            key.append(cacheFor.id());
+        }
+        for (String name : cacheFor.varyHeaders()) {
+            Http.Header header = request.headers.get(name.toLowerCase());
+            key.append("|h:").append(name).append('=').append(header == null ? "" : header.value());
+        }
+        for (String name : cacheFor.varyCookies()) {
+            Http.Cookie cookie = request.cookies.get(name);
+            key.append("|c:").append(name).append('=').append(cookie == null ? "" : cookie.value);
+        }
+        if (cacheFor.varyLang()) {
+            key.append("|l:").append(Lang.get());
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the entry of the key, stale or not, or null if there is none or
+     *         it is too old to be served.
+     */
+    static CachedResponse get(String key) {
+        CachedResponse cached = (CachedResponse) Cache.get(key);
+        if (cached != null && cached.staleUntil < System.currentTimeMillis()) {
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * @return whether the current request is the one computing the entry of
+     *         the key, in which case it must call {@link #unlock(String)}.
+     */
+    static boolean lock(String key) {
+        return computing.putIfAbsent(key, new CountDownLatch(1)) == null;
+    }
+
+    static void unlock(String key) {
+        CountDownLatch latch = computing.remove(key);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Waits for the request computing the entry of the key. If it ends
+     * without storing the entry, the first waiting request to lock the key
+     * computes it, the others keep waiting.
+     *
+     * @param timeoutMillis
+     *            How long to wait in all
+     * @return the new entry, or null if the current request now computes it,
+     *         in which case it must call {@link #unlock(String)}.
+     * @throws Error
+     *             a 503 error if the entry is not stored in time.
+     */
+    static CachedResponse await(String key, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (;;) {
+            CountDownLatch latch = computing.get(key);
+            if (latch == null) {
+                CachedResponse cached = get(key);
+                if (cached != null) {
+                    return cached;
+                }
+                if (lock(key)) {
+                    // It may have been stored since
+                    cached = get(key);
+                    if (cached != null) {
+                        unlock(key);
+                    }
+                    return cached;
+                }
+                continue;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            try {
+                if (remaining <= 0 || !latch.await(remaining, TimeUnit.MILLISECONDS)) {
+                    throw new Error(Http.StatusCode.SERVICE_UNAVAILABLE, "Timed out waiting for the cached response");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Error(Http.StatusCode.SERVICE_UNAVAILABLE, "Interrupted while waiting for the cached response");
+            }
+        }
+    }
+
+    /**
+     * Applies the result of the action to an empty response and caches it,
+     * unless it is streamed or sets cookies.
+     *
+     * @return the result replaying the response.
+     */
+    static Result store(String key, int freshSeconds, int staleSeconds, Result result, Http.Request request, Http.Response response) {
+        Http.Response captured = new Http.Response();
+        captured.status = response.status;
+        captured.contentType = response.contentType;
+        captured.encoding = response.encoding;
+        captured.out = new ByteArrayOutputStream();
+        result.apply(request, captured);
+
+        if (captured.direct != null || !captured.cookies.isEmpty() || captured.chunked) {
+            return new CapturedResult(captured);
+        }
+        long now = System.currentTimeMillis();
+        CachedResponse cached = new CachedResponse(captured, now + freshSeconds * 1000L, now + (freshSeconds + staleSeconds) * 1000L);
+        Cache.set(key, cached, (freshSeconds + staleSeconds) + "s");
+        return cached.result();
+    }
+
+    /**
+     * A response as stored in the cache.
+     */
+    static class CachedResponse implements Serializable {
+
+        final int status;
+        final String contentType;
+        final HashMap<String, ArrayList<String>> headers = new HashMap<String, ArrayList<String>>();
+        final byte[] body;
+        final String etag;
+        final long freshUntil;
+        final long staleUntil;
+
+        CachedResponse(Http.Response response, long freshUntil, long staleUntil) {
+            this.status = response.status;
+            this.contentType = response.contentType;
+            for (Map.Entry<String, Http.Header> header : response.headers.entrySet()) {
+                headers.put(header.getKey(), new ArrayList<String>(header.getValue().values));
+            }
+            this.body = response.out.toByteArray();
+            this.etag = status == 200 && !headers.containsKey("ETag") ? etag(body) : null;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() <= freshUntil;
+        }
+
+        Result result() {
+            return new CachedResult(this);
+        }
+    }
+
+    static String etag(byte[] body) {
+        try {
+            return "\"" + Codec.byteToHexString(MessageDigest.getInstance("SHA-1").digest(body)) + "\"";
+        } catch (Exception e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    /**
+     * Whether the If-None-Match header of the request matches the ETag.
+     */
+    static boolean matches(Http.Request request, String etag) {
+        Http.Header ifNoneMatch = request.headers.get("if-none-match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String value : ifNoneMatch.values) {
+            for (String tag : value.split(",")) {
+                tag = tag.trim();
+                if (tag.equals(etag) || tag.equals("*")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static class CachedResult extends Result {
+
+        final CachedResponse cached;
+
+        CachedResult(CachedResponse cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public void apply(Http.Request request, Http.Response response) {
+            for (Map.Entry<String, ArrayList<String>> header : cached.headers.entrySet()) {
+                response.headers.put(header.getKey(), new Http.Header(header.getKey(), new ArrayList<String>(header.getValue())));
+            }
+            if (cached.etag != null) {
+                response.setHeader("ETag", cached.etag);
+                if (matches(request, cached.etag)) {
+                    response.status = Http.StatusCode.NOT_MODIFIED;
+                    return;
+                }
+            }
+            response.status = cached.status;
+            if (cached.contentType != null) {
+                response.contentType = cached.contentType;
+            }
+            response.out.write(cached.body, 0, cached.body.length);
+        }
+    }
+
+    /**
+     * Copies a response that is not cached to the actual response.
+     */
+    static class CapturedResult extends Result {
+
+        final Http.Response captured;
+
+        CapturedResult(Http.Response captured) {
+            this.captured = captured;
+        }
+
+        @Override
+        public void apply(Http.Request request, Http.Response response) {
+            response.status = captured.status;
+            response.contentType = captured.contentType;
+            response.headers.putAll(captured.headers);
+            response.cookies.putAll(captured.cookies);
+            response.direct = captured.direct;
+            response.chunked = captured.chunked;
+            byte[] body = captured.out.toByteArray();
+            response.out.write(body, 0, body.length);
+        }
+    }
+}
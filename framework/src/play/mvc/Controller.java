@@ -1142,6 +1142,7 @@ public class Controller implements ControllerSupport {
             Map params = (Map) Request.current().args.remove(ActionInvoker.CONTINUATIONS_STORE_PARAMS);
             Scope.Params.current().all().clear();
             Scope.Params.current().all().putAll(params);
+            Scope.Params.current().rootParamsNodeIsGenerated = false;
 
             // Validations
             Validation validation = (Validation) Request.current().args.remove(ActionInvoker.CONTINUATIONS_STORE_VALIDATIONS);
@@ -1,17 +1,35 @@
 package play.mvc;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.codec.binary.Base64;
+
+import play.exceptions.UnexpectedException;
 
 /**
  * Provides operations around the encoding and decoding of Cookie data.
  */
 public class CookieDataCodec {
 
+    static final String BINARY_PREFIX = "~";
+    private static final int BINARY_MAX_SIZE = 64 * 1024;
+
     /** 
      * Cookie session parser for cookie created by version 1.2.5 or before.
      * <p>We need it to support old Play 1.2.5 session data encoding so that the cookie data doesn't become invalid when
@@ -36,12 +54,23 @@ public class CookieDataCodec {
             return;
         }
 
-        String[] keyValues = data.split("&");
-        for (String keyValue : keyValues) {
-            String[] splitted = keyValue.split("=", 2);
-            if (splitted.length == 2) {
-                map.put(URLDecoder.decode(splitted[0], "utf-8"), URLDecoder.decode(splitted[1], "utf-8"));
+        if (data.startsWith(BINARY_PREFIX)) {
+            decodeBinary(map, data);
+            return;
+        }
+
+        int length = data.length();
+        int start = 0;
+        while (start < length) {
+            int end = data.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            int equals = data.indexOf('=', start);
+            if (equals >= 0 && equals < end) {
+                map.put(urlDecode(data, start, equals), urlDecode(data, equals + 1, end));
             }
+            start = end + 1;
         }
     }
 
@@ -55,16 +84,108 @@ public class CookieDataCodec {
         String separator = "";
         for (Map.Entry<String, String> entry : map.entrySet()) {
             if (entry.getValue() != null) {
-                data.append(separator)
-                        .append(URLEncoder.encode(entry.getKey(), "utf-8"))
-                        .append("=")
-                        .append(URLEncoder.encode(entry.getValue(), "utf-8"));
+                data.append(separator);
+                urlEncode(data, entry.getKey());
+                data.append("=");
+                urlEncode(data, entry.getValue());
                 separator = "&";
             }
         }
         return data.toString();
     }
 
+    /**
+     * Encodes the data in the compact format: the entries, deflated and
+     * encoded in URL safe Base64 after a '~', which the URL encoding never
+     * produces. {@link #decode(Map, String)} reads both formats.
+     * 
+     * @param map the data to encode.
+     * @return the encoded data.
+     */
+    public static String encodeBinary(Map<String, String> map) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+            DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                if (entry.getValue() != null) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+            out.close();
+            deflater.end();
+            return BINARY_PREFIX + Base64.encodeBase64URLSafeString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    private static void decodeBinary(Map<String, String> map, String data) {
+        Inflater inflater = new Inflater(true);
+        try {
+            byte[] deflated = Base64.decodeBase64(data.substring(BINARY_PREFIX.length()));
+            // The inflated data is bounded, and the input must be consumed
+            // as the Inflater needs an extra byte to finish raw data
+            InputStream in = new InflaterInputStream(new SequenceInputStream(new ByteArrayInputStream(deflated), new ByteArrayInputStream(
+                    new byte[1])), inflater);
+            byte[] inflated = new byte[BINARY_MAX_SIZE];
+            int size = 0;
+            int read;
+            while ((read = in.read(inflated, size, inflated.length - size)) > 0) {
+                size += read;
+                if (size == inflated.length) {
+                    throw new IllegalArgumentException("Cookie data too large");
+                }
+            }
+            DataInputStream entries = new DataInputStream(new ByteArrayInputStream(inflated, 0, size));
+            while (entries.available() > 0) {
+                map.put(entries.readUTF(), entries.readUTF());
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupted cookie data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * URLDecoder.decode of a part of the data, which does not copy the parts
+     * that have nothing to decode.
+     */
+    static String urlDecode(String data, int start, int end) throws UnsupportedEncodingException {
+        for (int i = start; i < end; i++) {
+            char c = data.charAt(i);
+            if (c == '%' || c == '+') {
+                return URLDecoder.decode(data.substring(start, end), "utf-8");
+            }
+        }
+        return data.substring(start, end);
+    }
+
+    /**
+     * URLEncoder.encode, which appends the characters it would not change
+     * without converting them.
+     */
+    static void urlEncode(StringBuilder data, String value) throws UnsupportedEncodingException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == ' ') {
+                data.append('+');
+            } else if (isUnreserved(c)) {
+                data.append(c);
+            } else {
+                data.append(URLEncoder.encode(value.substring(i), "utf-8"));
+                return;
+            }
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
     /**
      * Constant time for same length String comparison, to prevent timing attacks
      */
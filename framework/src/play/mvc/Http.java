@@ -60,6 +60,7 @@ public class Http {
         public static final int NOT_IMPLEMENTED = 501;
         public static final int OVERLOADED = 502;
         public static final int GATEWAY_TIMEOUT = 503;
+        public static final int SERVICE_UNAVAILABLE = 503;
 
         public static boolean success(int code) {
             return code / 100 == 2;
@@ -623,7 +624,10 @@ public class Http {
          */
         public Map<String, Http.Cookie> cookies = new HashMap<String, Cookie>(16);
         /**
-         * Response body stream
+         * Response body stream. It can be read until the end of the
+         * invocation, including by the plugins once the response is sent
+         * (<code>invocationFinally</code>), but changing it then has no
+         * effect on the response.
          */
         public ByteArrayOutputStream out;
         /**
@@ -881,6 +885,14 @@ public class Http {
         public void onWriteChunk(F.Action<Object> handler) {
             writeChunkHandlers.add(handler);
         }
+
+        /**
+         * @return whether the server can send this response in chunks with
+         *         {@link #writeChunk(Object)}.
+         */
+        public boolean canWriteChunks() {
+            return !writeChunkHandlers.isEmpty();
+        }
     }
 
     /**
@@ -0,0 +1,22 @@
+package play.mvc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Run the actions of a controller, or a single action, in a named executor
+ * pool of the {@link play.Invoker}, configured with
+ * <code>play.pool.&lt;name&gt;.size</code> and
+ * <code>play.pool.&lt;name&gt;.queue</code>.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+public @interface InvokerPool {
+
+    /**
+     * @return the name of the pool.
+     */
+    String value();
+}
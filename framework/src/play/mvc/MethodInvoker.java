@@ -0,0 +1,306 @@
+package play.mvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import play.Logger;
+
+/**
+ * Calls an action or an interceptor of a controller. Everything known from the
+ * method is settled when the invoker is created: whether it is static, an
+ * action, a Scala object or trait method.
+ * <p>
+ * The invokers of the public methods of public classes are small classes
+ * generated with javassist, calling the method directly: no reflection, and
+ * one call site per method instead of the shared <code>Method.invoke</code>
+ * one. The other methods are called by reflection. Either way, the exceptions
+ * thrown by the method are wrapped in an {@link InvocationTargetException}, as
+ * by <code>Method.invoke</code>.
+ * </p>
+ */
+public abstract class MethodInvoker {
+
+    private static final AtomicInteger generated = new AtomicInteger();
+    /**
+     * The loader of the invokers generated for the classes of each class
+     * loader. It lives as long as its invokers: the application class loader
+     * can be collected once the classes are reloaded.
+     */
+    private static final Map<ClassLoader, WeakReference<DefiningClassLoader>> loaders = new WeakHashMap<ClassLoader, WeakReference<DefiningClassLoader>>();
+
+    Method method;
+    Class<?> controllerClass;
+    boolean isStatic;
+    boolean isAction;
+    /**
+     * The Scala object of the controller, if the method is a Scala object or
+     * trait method.
+     */
+    Object scalaInstance;
+    boolean scalaTrait;
+
+    protected MethodInvoker() {
+    }
+
+    /**
+     * @param instance
+     *            The controller, ignored for a static method
+     * @param args
+     *            The arguments, as many as the method parameters
+     * @return the value returned by the method, null for a void method.
+     */
+    public final Object invoke(Object instance, Object[] args) throws Exception {
+        try {
+            return call(instance, args);
+        } catch (InvocationTargetException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    protected abstract Object call(Object instance, Object[] args) throws Throwable;
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return true if the method is called without reflection.
+     */
+    public boolean isGenerated() {
+        return !(this instanceof Reflective);
+    }
+
+    /**
+     * @param method
+     *            The action or interceptor
+     * @param controllerClass
+     *            The controller the method is called on
+     * @return a generated invoker if the method can be called from another
+     *         class, a reflective one otherwise.
+     */
+    public static MethodInvoker of(Method method, Class<?> controllerClass) {
+        if (isCallable(method)) {
+            try {
+                return settle(generate(method), method, controllerClass);
+            } catch (Throwable e) {
+                Logger.debug(e, "Cannot generate the invoker of %s, using reflection", method);
+            }
+        }
+        return reflective(method, controllerClass);
+    }
+
+    /**
+     * @return an invoker calling the method by reflection.
+     */
+    public static MethodInvoker reflective(Method method, Class<?> controllerClass) {
+        return settle(new Reflective(), method, controllerClass);
+    }
+
+    private static MethodInvoker settle(MethodInvoker invoker, Method method, Class<?> controllerClass) {
+        invoker.method = method;
+        invoker.controllerClass = controllerClass;
+        invoker.isStatic = Modifier.isStatic(method.getModifiers());
+        invoker.isAction = ActionInvoker.isActionMethod(method);
+        String declaringClassName = method.getDeclaringClass().getName();
+        if (declaringClassName.contains("$") && controllerClass != null) {
+            try {
+                invoker.scalaInstance = controllerClass.getDeclaredField("MODULE$").get(null);
+                invoker.scalaTrait = declaringClassName.endsWith("$class");
+            } catch (NoSuchFieldException e) {
+                // not Scala
+            } catch (IllegalAccessException e) {
+                // not Scala
+            }
+        }
+        return invoker;
+    }
+
+    /**
+     * The generated class lives in a child class loader, so it can only see
+     * the public members of the public classes.
+     */
+    private static boolean isCallable(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (!Modifier.isPublic(method.getModifiers()) || !isPublic(declaringClass) || declaringClass.isInterface()) {
+            return false;
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (!isPublic(parameterType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPublic(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+    }
+
+    private static MethodInvoker generate(Method method) throws Exception {
+        Class<?> declaringClass = method.getDeclaringClass();
+        String name = MethodInvoker.class.getName() + "$" + declaringClass.getSimpleName() + "$" + method.getName() + "$"
+                + generated.incrementAndGet();
+        ClassFile file = new ClassFile(false, name, MethodInvoker.class.getName());
+        file.setMajorVersion(ClassFile.JAVA_5);
+        file.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.FINAL);
+        ConstPool pool = file.getConstPool();
+
+        MethodInfo constructor = new MethodInfo(pool, "<init>", "()V");
+        constructor.setAccessFlags(AccessFlag.PUBLIC);
+        Bytecode code = new Bytecode(pool, 1, 1);
+        code.addAload(0);
+        code.addInvokespecial(MethodInvoker.class.getName(), "<init>", "()V");
+        code.addOpcode(Opcode.RETURN);
+        constructor.setCodeAttribute(code.toCodeAttribute());
+        file.addMethod(constructor);
+
+        // Object call(Object instance, Object[] args)
+        MethodInfo call = new MethodInfo(pool, "call", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;");
+        call.setAccessFlags(AccessFlag.PROTECTED);
+        code = new Bytecode(pool, 0, 3);
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        if (!isStatic) {
+            code.addAload(1);
+            code.addCheckcast(declaringClass.getName());
+        }
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        StringBuilder descriptor = new StringBuilder("(");
+        for (int i = 0; i < parameterTypes.length; i++) {
+            code.addAload(2);
+            code.addIconst(i);
+            code.addOpcode(Opcode.AALOAD);
+            unbox(code, parameterTypes[i]);
+            descriptor.append(descriptor(parameterTypes[i]));
+        }
+        descriptor.append(')').append(descriptor(method.getReturnType()));
+        if (isStatic) {
+            code.addInvokestatic(declaringClass.getName(), method.getName(), descriptor.toString());
+        } else {
+            code.addInvokevirtual(declaringClass.getName(), method.getName(), descriptor.toString());
+        }
+        box(code, method.getReturnType());
+        code.addOpcode(Opcode.ARETURN);
+        CodeAttribute attribute = code.toCodeAttribute();
+        attribute.setMaxStack(attribute.computeMaxStack());
+        call.setCodeAttribute(attribute);
+        file.addMethod(call);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        file.write(new DataOutputStream(bytes));
+        Class<?> invokerClass = loaderFor(declaringClass.getClassLoader()).define(name, bytes.toByteArray());
+        return (MethodInvoker) invokerClass.newInstance();
+    }
+
+    static synchronized DefiningClassLoader loaderFor(ClassLoader parent) {
+        WeakReference<DefiningClassLoader> reference = loaders.get(parent);
+        DefiningClassLoader loader = reference == null ? null : reference.get();
+        if (loader == null) {
+            loader = new DefiningClassLoader(parent);
+            loaders.put(parent, new WeakReference<DefiningClassLoader>(loader));
+        }
+        return loader;
+    }
+
+    private static void unbox(Bytecode code, Class<?> type) {
+        if (!type.isPrimitive()) {
+            if (type != Object.class) {
+                code.addCheckcast(type.getName());
+            }
+            return;
+        }
+        String wrapper = wrapper(type).getName();
+        code.addCheckcast(wrapper);
+        code.addInvokevirtual(wrapper, type.getName() + "Value", "()" + descriptor(type));
+    }
+
+    private static void box(Bytecode code, Class<?> type) {
+        if (type == void.class) {
+            code.addOpcode(Opcode.ACONST_NULL);
+        } else if (type.isPrimitive()) {
+            Class<?> wrapper = wrapper(type);
+            code.addInvokestatic(wrapper.getName(), "valueOf", "(" + descriptor(type) + ")" + descriptor(wrapper));
+        }
+    }
+
+    private static Class<?> wrapper(Class<?> primitive) {
+        if (primitive == int.class) {
+            return Integer.class;
+        }
+        if (primitive == long.class) {
+            return Long.class;
+        }
+        if (primitive == boolean.class) {
+            return Boolean.class;
+        }
+        if (primitive == double.class) {
+            return Double.class;
+        }
+        if (primitive == float.class) {
+            return Float.class;
+        }
+        if (primitive == short.class) {
+            return Short.class;
+        }
+        if (primitive == byte.class) {
+            return Byte.class;
+        }
+        return Character.class;
+    }
+
+    static String descriptor(Class<?> type) {
+        if (type.isArray()) {
+            return type.getName().replace('.', '/');
+        }
+        if (type == void.class) {
+            return "V";
+        }
+        if (type.isPrimitive()) {
+            if (type == boolean.class) {
+                return "Z";
+            }
+            if (type == long.class) {
+                return "J";
+            }
+            return String.valueOf(Character.toUpperCase(type.getName().charAt(0)));
+        }
+        return "L" + type.getName().replace('.', '/') + ";";
+    }
+
+    static class DefiningClassLoader extends ClassLoader {
+
+        DefiningClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    static class Reflective extends MethodInvoker {
+
+        @Override
+        protected Object call(Object instance, Object[] args) throws Throwable {
+            return method.invoke(instance, args);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package play.mvc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import play.Play;
+import play.mvc.Router.Route;
+
+/**
+ * Compiled dispatcher for the routes table.
+ * <p>
+ * Routes are indexed by HTTP method and, inside each method, by the static
+ * leading segments of their path in a prefix trie. A lookup only returns the
+ * routes that can possibly match a request path, in the order they were
+ * declared in the routes file, so the caller can keep running
+ * {@link Route#matches(String, String, String, String)} on the few candidates
+ * left and first-match-wins semantics are preserved.
+ * </p>
+ * <p>
+ * A trie is an immutable snapshot of the routes list: it is rebuilt by the
+ * {@link Router} whenever the routes change.
+ * </p>
+ */
+final class RouteTrie {
+
+    /**
+     * Characters that end the literal part of a route path, as the path is
+     * used as a regular expression (or contains <code>{arg}</code>
+     * placeholders).
+     */
+    private static final String REGEX_CHARS = "\\.[]{}()*+?^$|";
+
+    private final Route[] routes;
+    private final Map<String, Node> byMethod = new HashMap<String, Node>(8);
+    /** Routes declared with <code>*</code>, used for methods no route declares */
+    private final Node anyMethod = new Node();
+    /** Every route, used when no method is given */
+    private final Node allMethods = new Node();
+
+    RouteTrie(List<Route> routes) {
+        this.routes = routes.toArray(new Route[routes.size()]);
+        Set<String> methods = new HashSet<String>(8);
+        for (Route route : this.routes) {
+            if (route.method != null && !route.method.equals("*")) {
+                methods.add(route.method.toUpperCase());
+            }
+        }
+        // A HEAD request is served by GET routes
+        if (methods.contains("GET")) {
+            methods.add("HEAD");
+        }
+        for (String method : methods) {
+            byMethod.put(method, new Node());
+        }
+        for (int i = 0; i < this.routes.length; i++) {
+            Route route = this.routes[i];
+            List<String> segments = staticSegments(route.path);
+            allMethods.insert(segments, i);
+            if (route.method == null || route.method.equals("*")) {
+                anyMethod.insert(segments, i);
+            }
+            for (Map.Entry<String, Node> entry : byMethod.entrySet()) {
+                if (accepts(route, entry.getKey())) {
+                    entry.getValue().insert(segments, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of routes this trie was built from.
+     */
+    int size() {
+        return routes.length;
+    }
+
+    /**
+     * Find the routes that may match a request.
+     *
+     * @param method
+     *            The request method, or null to consider all routes.
+     * @param path
+     *            The request path.
+     * @return The candidate routes, in routes file order.
+     */
+    List<Route> candidates(String method, String path) {
+        Node root = allMethods;
+        if (method != null) {
+            root = byMethod.get(method);
+            if (root == null) {
+                root = byMethod.get(method.toUpperCase());
+            }
+            if (root == null) {
+                root = anyMethod;
+            }
+        }
+        // Same normalization as Route.matches
+        if (path.equals(Play.ctxPath)) {
+            path = path + "/";
+        }
+
+        // Collect the routes registered along the path; only segments
+        // followed by a '/' are walked, as route segments are indexed the
+        // same way.
+        List<Node> found = new ArrayList<Node>(4);
+        int total = 0;
+        Node node = root;
+        int start = path.startsWith("/") ? 1 : -1;
+        while (node != null) {
+            if (node.size > 0) {
+                found.add(node);
+                total += node.size;
+            }
+            if (start < 0) {
+                break;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                break;
+            }
+            node = node.children.get(path.substring(start, end));
+            start = end + 1;
+        }
+
+        if (total == 0) {
+            return Collections.emptyList();
+        }
+        int[] indexes = new int[total];
+        int pos = 0;
+        for (Node routesAtNode : found) {
+            System.arraycopy(routesAtNode.routes, 0, indexes, pos, routesAtNode.size);
+            pos += routesAtNode.size;
+        }
+        if (found.size() > 1) {
+            Arrays.sort(indexes);
+        }
+        List<Route> candidates = new ArrayList<Route>(total);
+        for (int index : indexes) {
+            candidates.add(routes[index]);
+        }
+        return candidates;
+    }
+
+    /**
+     * Same method rules as {@link Route#matches(String, String, String, String)}.
+     */
+    private static boolean accepts(Route route, String method) {
+        return route.method == null || route.method.equals("*") || method.equalsIgnoreCase(route.method)
+                || (method.equals("HEAD") && "GET".equalsIgnoreCase(route.method));
+    }
+
+    /**
+     * Extract the leading path segments of a route that are plain text and
+     * followed by a '/', ie. the segments any matching request path must
+     * start with.
+     */
+    static List<String> staticSegments(String path) {
+        if (path == null || !path.startsWith("/")) {
+            return Collections.emptyList();
+        }
+        int end = path.length();
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (REGEX_CHARS.indexOf(c) > -1) {
+                end = i;
+                // A quantifier makes the previous character optional
+                boolean quantifier = c == '?' || c == '*' || c == '+'
+                        || (c == '{' && i + 1 < path.length() && Character.isDigit(path.charAt(i + 1)));
+                if (quantifier) {
+                    end--;
+                }
+                break;
+            }
+        }
+        List<String> segments = new ArrayList<String>(4);
+        int start = 1;
+        int slash;
+        while (start <= end && (slash = path.indexOf('/', start)) > -1 && slash < end) {
+            segments.add(path.substring(start, slash));
+            start = slash + 1;
+        }
+        return segments;
+    }
+
+    private static final class Node {
+
+        final Map<String, Node> children = new HashMap<String, Node>(4);
+        int[] routes = new int[0];
+        int size;
+
+        void insert(List<String> segments, int index) {
+            Node node = this;
+            for (String segment : segments) {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            node.add(index);
+        }
+
+        private void add(int index) {
+            if (size == routes.length) {
+                routes = Arrays.copyOf(routes, Math.max(4, size * 2));
+            }
+            routes[size++] = index;
+        }
+    }
+}
@@ -6,9 +6,12 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang.StringUtils;
@@ -54,11 +57,35 @@ public class Router {
      */
     public static void load(String prefix) {
         routes.clear();
-        actionRoutesCache.clear();
+        clearReverseCaches();
         parse(Play.routes, prefix);//重新载入routes
         lastLoading = System.currentTimeMillis();
         // Plugins
         Play.pluginCollection.onRoutesLoaded();
+        compileRoutes();
+    }
+
+    /**
+     * Build the route dispatcher from the current routes list. This is done
+     * when the routes file is loaded, and lazily after any route is added.
+     */
+    public static void compileRoutes() {
+        routeTrie = new RouteTrie(routes);
+    }
+
+    private static void routesChanged() {
+        routeTrie = null;
+        clearReverseCaches();
+    }
+
+    static RouteTrie routeTrie() {
+        RouteTrie trie = routeTrie;
+        // Also catches routes added directly to the routes list
+        if (trie == null || trie.size() != routes.size()) {
+            trie = new RouteTrie(routes);
+            routeTrie = trie;
+        }
+        return trie;
     }
 
     /**
@@ -85,6 +112,7 @@ public class Router {
             position = routes.size();
         }
         routes.add(position, getRoute(method, path, action, params, headers));
+        routesChanged();
     }
 
     /**
@@ -129,6 +157,7 @@ public class Router {
      */
     public static void appendRoute(String method, String path, String action, String params, String headers, String sourceFile, int line) {
         routes.add(getRoute(method, path, action, params, headers, sourceFile, line));
+        routesChanged();
     }
 
     public static Route getRoute(String method, String path, String action, String params, String headers) {
@@ -156,6 +185,7 @@ public class Router {
      */
     public static void prependRoute(String method, String path, String action, String params, String headers) {
         routes.add(0, getRoute(method, path, action, params, headers));
+        routesChanged();
     }
 
     /**
@@ -250,8 +280,14 @@ public class Router {
      */
     public static List<Route> routes = new CopyOnWriteArrayList<Route>();//线程安全的当add
 
+    /**
+     * Routes indexed by method and static path segments, so a request only
+     * runs the patterns of the routes it may match.
+     */
+    private static volatile RouteTrie routeTrie;
+
     public static void routeOnlyStatic(Http.Request request) {
-        for (Route route : routes) {
+        for (Route route : routeTrie().candidates(request.method, request.path)) {
             try {
                 if (route.matches(request.method, request.path, request.format, request.domain) != null) {
                     break;
@@ -282,7 +318,7 @@ public class Router {
                 request.method = matcher.group("method");
             }
         }
-        for (Route route : routes) {
+        for (Route route : routeTrie().candidates(request.method, request.path)) {
             Map<String, String> args = route.matches(request.method, request.path, request.format, request.domain);
             if (args != null) {
                 request.routeArgs = args;
@@ -314,6 +350,51 @@ public class Router {
         throw new NotFound(request.method, request.path);
     }
 
+    /**
+     * Find the action a request would be routed to, without changing the
+     * request and without throwing for static and 404 routes.
+     *
+     * @return the action, or null if no route matches or if the request is
+     *         served by a static or 404 route.
+     */
+    public static String actionFor(Http.Request request) {
+        String method = request.method;
+        if (request.querystring != null && methodOverride.matches(request.querystring)) {
+            Matcher matcher = methodOverride.matcher(request.querystring);
+            if (matcher.matches()) {
+                method = matcher.group("method");
+            }
+        }
+        String action = actionFor(method, request.path, request.format, request.domain);
+        if (action == null && method.equalsIgnoreCase("head")) {
+            action = actionFor("GET", request.path, request.format, request.domain);
+        }
+        return action;
+    }
+
+    private static String actionFor(String method, String path, String format, String domain) {
+        for (Route route : routeTrie().candidates(method, path)) {
+            if (route.staticDir != null || route.action.equals("404")) {
+                // Served without an action: no need to resolve the file
+                if (route.matcher(method, path, format, domain) != null) {
+                    return null;
+                }
+                continue;
+            }
+            Map<String, String> args = route.matches(method, path, format, domain);
+            if (args != null) {
+                String action = route.action;
+                if (action.indexOf("{") > -1) {
+                    for (String arg : args.keySet()) {
+                        action = action.replace("{" + arg + "}", args.get(arg));
+                    }
+                }
+                return action;
+            }
+        }
+        return null;
+    }
+
     public static Map<String, String> route(String method, String path) {
         return route(method, path, null, null);
     }
@@ -323,7 +404,7 @@ public class Router {
     }
 
     public static Map<String, String> route(String method, String path, String headers, String host) {
-        for (Route route : routes) {
+        for (Route route : routeTrie().candidates(method, path)) {
             Map<String, String> args = route.matches(method, path, headers, host);
             if (args != null) {
                 args.put("action", route.action);
@@ -437,12 +518,11 @@ public class Router {
                 }
             }
         }
-        List<ActionRoute> matchingRoutes = getActionRoutes(action);
-        for (ActionRoute actionRoute : matchingRoutes) {
-            Route route = actionRoute.route;
-            args.putAll(actionRoute.args);
+        for (ReverseRoute reverseRoute : getReverseRoutes(action, args)) {
+            Route route = reverseRoute.route;
+            args.putAll(reverseRoute.args);
 
-            List<String> inPathArgs = new ArrayList<String>(16);
+            List<String> inPathArgs = new ArrayList<String>(route.args.size());
             boolean allRequiredArgsAreHere = true;
             // les noms de parametres matchent ils ?
             for (Route.Arg arg : route.args) {
@@ -454,15 +534,11 @@ public class Router {
                     // See [#344] for more into. This is not optimal and
                     // should retough. However,
                     // it allows us to do things like {(.*}}.domain.com
-                    String host = route.host.replaceAll("\\{", "").replaceAll("\\}", "");
-                    if (host.equals(arg.name) || host.matches(arg.name)) {
-                        args.remove(arg.name);
-                        route.host = Http.Request.current() == null ? "" : Http.Request.current().domain;
-                        break;
-                    } else {
-                        allRequiredArgsAreHere = false;
-                        break;
-                    }
+                    // The candidate routes are only kept when this is the
+                    // case (see findReverseRoutes).
+                    args.remove(arg.name);
+                    route.host = Http.Request.current() == null ? "" : Http.Request.current().domain;
+                    break;
                 } else {
                     if (value instanceof List<?>) {
                         @SuppressWarnings("unchecked")
@@ -492,11 +568,8 @@ public class Router {
             }
             if (allRequiredArgsAreHere) {
                 StringBuilder queryString = new StringBuilder();
-                String path = route.path;
-                String host = route.host;
-                if (path.endsWith("/?")) {
-                    path = path.substring(0, path.length() - 2);
-                }
+                Map<String, String> pathValues = new HashMap<String, String>(inPathArgs.size());
+                Map<String, String> hostValues = new HashMap<String, String>(inPathArgs.size());
                 for (Map.Entry<String, Object> entry : args.entrySet()) {
                     String key = entry.getKey();
                     Object value = entry.getValue();
@@ -504,22 +577,17 @@ public class Router {
                         if (List.class.isAssignableFrom(value.getClass())) {
                             @SuppressWarnings("unchecked")
                             List<Object> vals = (List<Object>) value;
-                            path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", vals.get(0).toString()).replace("$", "\\$");
+                            pathValues.put(key, vals.get(0).toString());
                         } else {
+                            String encoded;
                             try {
-                                path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(value.toString(), encoding)
-                                        .replace("$", "\\$").replace("%3A", ":").replace("%40", "@").replace("+", "%20"));
+                                encoded = URLEncoder.encode(value.toString(), encoding);
                             } catch (UnsupportedEncodingException e) {
-                                path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}",
-                                        value.toString().replace("$", "\\$").replace("%3A", ":").replace("%40", "@").replace("+", "%20"));
-                            }
-                            try {
-                                host = host.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(value.toString(), encoding)
-                                        .replace("$", "\\$").replace("%3A", ":").replace("%40", "@").replace("+", "%20"));
-                            } catch (UnsupportedEncodingException e) {
-                                host = host.replaceAll("\\{(<[^>]+>)?" + key + "\\}",
-                                        value.toString().replace("$", "\\$").replace("%3A", ":").replace("%40", "@").replace("+", "%20"));
+                                encoded = value.toString();
                             }
+                            encoded = encoded.replace("%3A", ":").replace("%40", "@").replace("+", "%20");
+                            pathValues.put(key, encoded);
+                            hostValues.put(key, encoded);
                         }
                     } else if (route.staticArgs.containsKey(key)) {
                         // Do nothing -> The key is static
@@ -531,51 +599,28 @@ public class Router {
                             @SuppressWarnings("unchecked")
                             List<Object> vals = (List<Object>) value;
                             for (Object object : vals) {
-                                try {
-                                    queryString.append(URLEncoder.encode(key, encoding));
-                                    queryString.append("=");
-                                    String objStr = object.toString();
-                                    // Special case to handle jsAction
-                                    // tag
-                                    if (objStr.startsWith(":") && objStr.length() > 1) {
-                                        queryString.append(':');
-                                        objStr = objStr.substring(1);
-                                    }
-                                    queryString.append(URLEncoder.encode(objStr + "", encoding));
-                                    queryString.append("&");
-                                } catch (UnsupportedEncodingException ex) {
-                                }
+                                appendQueryStringParameter(queryString, key, object, encoding);
                             }
                         } else if (value.getClass().equals(Default.class)) {
                             // Skip defaults in queryString
                         } else {
-                            try {
-                                queryString.append(URLEncoder.encode(key, encoding));
-                                queryString.append("=");
-                                String objStr = value.toString();
-                                // Special case to handle jsAction tag
-                                if (objStr.startsWith(":") && objStr.length() > 1) {
-                                    queryString.append(':');
-                                    objStr = objStr.substring(1);
-                                }
-                                queryString.append(URLEncoder.encode(objStr + "", encoding));
-                                queryString.append("&");
-                            } catch (UnsupportedEncodingException ex) {
-                            }
+                            appendQueryStringParameter(queryString, key, value, encoding);
                         }
                     }
                 }
-                String qs = queryString.toString();
-                if (qs.endsWith("&")) {
-                    qs = qs.substring(0, qs.length() - 1);
+                StringBuilder url = new StringBuilder(route.pathTemplate.source.length() + queryString.length() + 32);
+                route.pathTemplate.append(url, pathValues);
+                if (queryString.length() > 0) {
+                    // Remove the trailing &
+                    url.append('?').append(queryString, 0, queryString.length() - 1);
                 }
                 ActionDefinition actionDefinition = new ActionDefinition();
-                actionDefinition.url = qs.length() == 0 ? path : path + "?" + qs;
+                actionDefinition.url = url.toString();
                 actionDefinition.method = route.method == null || route.method.equals("*") ? "GET" : route.method.toUpperCase();
                 actionDefinition.star = "*".equals(route.method);
                 actionDefinition.action = action;
                 actionDefinition.args = argsbackup;
-                actionDefinition.host = host;
+                actionDefinition.host = route.hostTemplate().apply(hostValues);
                 return actionDefinition;
             }
         }
@@ -583,8 +628,41 @@ public class Router {
         throw new NoRouteFoundException(action, args);
     }
 
+    private static void appendQueryStringParameter(StringBuilder queryString, String key, Object value, String encoding) {
+        try {
+            queryString.append(URLEncoder.encode(key, encoding));
+            queryString.append("=");
+            String objStr = value.toString();
+            // Special case to handle jsAction tag
+            if (objStr.startsWith(":") && objStr.length() > 1) {
+                queryString.append(':');
+                objStr = objStr.substring(1);
+            }
+            queryString.append(URLEncoder.encode(objStr + "", encoding));
+            queryString.append("&");
+        } catch (UnsupportedEncodingException ex) {
+        }
+    }
+
+    /**
+     * Maximum number of (action, argument names) entries kept by the reverse
+     * routing cache.
+     */
+    static final int REVERSE_CACHE_SIZE = 4096;
+
     private static final Map<String, List<ActionRoute>> actionRoutesCache = new ConcurrentHashMap<String, List<ActionRoute>>();
 
+    /**
+     * Routes that can be reversed for an action, keyed on the action and the
+     * names of the non null arguments given.
+     */
+    private static final Map<String, List<ReverseRoute>> reverseRoutesCache = new ConcurrentHashMap<String, List<ReverseRoute>>();
+
+    private static void clearReverseCaches() {
+        actionRoutesCache.clear();
+        reverseRoutesCache.clear();
+    }
+
     private static List<ActionRoute> getActionRoutes(String action) {
         List<ActionRoute> matchingRoutes = actionRoutesCache.get(action);
         if (matchingRoutes == null) {
@@ -617,11 +695,80 @@ public class Router {
         return matchingRoutes;
     }
 
+    private static List<ReverseRoute> getReverseRoutes(String action, Map<String, Object> args) {
+        List<String> names = new ArrayList<String>(args.size());
+        for (Map.Entry<String, Object> entry : args.entrySet()) {
+            if (entry.getValue() != null) {
+                names.add(entry.getKey());
+            }
+        }
+        Collections.sort(names);
+        StringBuilder key = new StringBuilder(action);
+        for (String name : names) {
+            key.append('\u0000').append(name);
+        }
+        String cacheKey = key.toString();
+        List<ReverseRoute> reverseRoutes = reverseRoutesCache.get(cacheKey);
+        if (reverseRoutes == null) {
+            reverseRoutes = findReverseRoutes(getActionRoutes(action), new HashSet<String>(names));
+            if (reverseRoutesCache.size() >= REVERSE_CACHE_SIZE) {
+                reverseRoutesCache.clear();
+            }
+            reverseRoutesCache.put(cacheKey, reverseRoutes);
+        }
+        return reverseRoutes;
+    }
+
+    /**
+     * Keep the routes of an action whose arguments can all be given a value
+     * from the argument names.
+     */
+    private static List<ReverseRoute> findReverseRoutes(List<ActionRoute> actionRoutes, Set<String> names) {
+        List<ReverseRoute> reverseRoutes = new ArrayList<ReverseRoute>(actionRoutes.size());
+        // The args of the action routes are added to the reverse arguments,
+        // including the ones of the routes that do not match.
+        Map<String, String> actionArgs = new HashMap<String, String>(4);
+        for (ActionRoute actionRoute : actionRoutes) {
+            Route route = actionRoute.route;
+            actionArgs.putAll(actionRoute.args);
+            names.addAll(actionRoute.args.keySet());
+            boolean allRequiredArgsAreHere = true;
+            for (Route.Arg arg : route.args) {
+                if (!names.contains(arg.name)) {
+                    String host = route.host.replaceAll("\\{", "").replaceAll("\\}", "");
+                    allRequiredArgsAreHere = host.equals(arg.name) || host.matches(arg.name);
+                    break;
+                }
+            }
+            for (String staticKey : route.staticArgs.keySet()) {
+                if (!staticKey.equals("format") && !names.contains(staticKey)) {
+                    allRequiredArgsAreHere = false;
+                    break;
+                }
+            }
+            if (allRequiredArgsAreHere) {
+                ReverseRoute reverseRoute = new ReverseRoute();
+                reverseRoute.route = route;
+                reverseRoute.args = new HashMap<String, String>(actionArgs);
+                reverseRoutes.add(reverseRoute);
+            }
+        }
+        return reverseRoutes;
+    }
+
     private static final class ActionRoute {
         private Route route;
         private Map<String, String> args = new HashMap<String, String>(2);
     }
 
+    private static final class ReverseRoute {
+        private Route route;
+        /**
+         * The args of this action route and of the ones before it
+         */
+        private Map<String, String> args;
+    }
+
     public static class ActionDefinition {
 
         /**
@@ -731,6 +878,8 @@ public class Router {
         List<String> formats = new ArrayList<String>(1);
         String host;
         Arg hostArg = null;
+        UrlTemplate pathTemplate;
+        private UrlTemplate hostTemplate;
         public int routesFileLine;
         public String routesFile;
         static Pattern customRegexPattern = new Pattern("\\{([a-zA-Z_][a-zA-Z_0-9]*)\\}");
@@ -837,7 +986,22 @@ public class Router {
                     }
                 }
                 actionPattern = new Pattern(patternString, REFlags.IGNORE_CASE);
+                // Reverse routing
+                pathTemplate = new UrlTemplate(path.endsWith("/?") ? path.substring(0, path.length() - 2) : path);
+            }
+        }
+
+        /**
+         * The host is rewritten when reversing a route with a regex host name,
+         * so its template is checked against the current value.
+         */
+        UrlTemplate hostTemplate() {
+            UrlTemplate template = hostTemplate;
+            if (template == null || !template.source.equals(host)) {
+                template = new UrlTemplate(host);
+                hostTemplate = template;
             }
+            return template;
         }
 
         public void addParams(String params) {
@@ -888,6 +1052,35 @@ public class Router {
             return matches(method, path, accept, null);
         }
 
+        /**
+         * @return the matcher of the path if the route matches the request,
+         *         else null. Unlike matches, static and 404 routes do not
+         *         throw.
+         */
+        Matcher matcher(String method, String path, String accept, String domain) {
+            // Normalize
+            if (path.equals(Play.ctxPath)) {
+                path = path + "/";
+            }
+            // If method is HEAD and we have a GET
+            if (method == null || this.method.equals("*") || method.equalsIgnoreCase(this.method)
+                    || (method.equalsIgnoreCase("head") && ("get").equalsIgnoreCase(this.method))) {
+
+                Matcher matcher = pattern.matcher(path);
+
+                boolean hostMatches = (domain == null);
+                if (domain != null) {
+
+                    Matcher hostMatcher = hostPattern.matcher(domain);
+                    hostMatches = hostMatcher.matches();
+                }
+                if (matcher.matches() && contains(accept) && hostMatches) {
+                    return matcher;
+                }
+            }
+            return null;
+        }
+
         /**
          * Check if the parts of a HTTP request equal this Route.
          *
@@ -907,62 +1100,50 @@ public class Router {
             if (path.equals(Play.ctxPath)) {
                 path = path + "/";
             }
-            // If method is HEAD and we have a GET
-            if (method == null || this.method.equals("*") || method.equalsIgnoreCase(this.method)
-                    || (method.equalsIgnoreCase("head") && ("get").equalsIgnoreCase(this.method))) {
-
-                Matcher matcher = pattern.matcher(path);
-
-                boolean hostMatches = (domain == null);
-                if (domain != null) {
-
-                    Matcher hostMatcher = hostPattern.matcher(domain);
-                    hostMatches = hostMatcher.matches();
+            Matcher matcher = matcher(method, path, accept, domain);
+            // Extract the host variable
+            if (matcher != null) {
+                // 404
+                if (action.equals("404")) {
+                    throw new NotFound(method, path);
                 }
-                // Extract the host variable
-                if (matcher.matches() && contains(accept) && hostMatches) {
-                    // 404
-                    if (action.equals("404")) {
-                        throw new NotFound(method, path);
+                // Static dir
+                if (staticDir != null) {
+                    String resource = null;
+                    if (!staticFile) {
+                        resource = matcher.group("resource");
                     }
-                    // Static dir
-                    if (staticDir != null) {
-                        String resource = null;
-                        if (!staticFile) {
-                            resource = matcher.group("resource");
-                        }
-                        try {
-                            String root = new File(staticDir).getCanonicalPath();
-                            String urlDecodedResource = Utils.urlDecodePath(resource);
-                            String childResourceName = staticDir + (staticFile ? "" : "/" + urlDecodedResource);
-                            String child = new File(childResourceName).getCanonicalPath();
-                            if (child.startsWith(root)) {
-                                throw new RenderStatic(childResourceName);
-                            }
-                        } catch (IOException e) {
+                    try {
+                        String root = new File(staticDir).getCanonicalPath();
+                        String urlDecodedResource = Utils.urlDecodePath(resource);
+                        String childResourceName = staticDir + (staticFile ? "" : "/" + urlDecodedResource);
+                        String child = new File(childResourceName).getCanonicalPath();
+                        if (child.startsWith(root)) {
+                            throw new RenderStatic(childResourceName);
                         }
-                        throw new NotFound(resource);
-                    } else {
-                        Map<String, String> localArgs = new HashMap<String, String>();
-                        for (Arg arg : args) {
-                            // FIXME: Careful with the arguments that are not
-                            // matching as they are part of the hostname
-                            // Defaultvalue indicates it is a one of these urls.
-                            // This is a trick and should be changed.
-                            if (arg.defaultValue == null) {
-                                localArgs.put(arg.name, Utils.urlDecodePath(matcher.group(arg.name)));
-                            }
-                        }
-                        if (hostArg != null && domain != null) {
-                            // Parse the hostname and get only the part we are
-                            // interested in
-                            String routeValue = hostArg.defaultValue.replaceAll("\\{.*}", "");
-                            domain = domain.replace(routeValue, "");
-                            localArgs.put(hostArg.name, domain);
+                    } catch (IOException e) {
+                    }
+                    throw new NotFound(resource);
+                } else {
+                    Map<String, String> localArgs = new HashMap<String, String>();
+                    for (Arg arg : args) {
+                        // FIXME: Careful with the arguments that are not
+                        // matching as they are part of the hostname
+                        // Defaultvalue indicates it is a one of these urls.
+                        // This is a trick and should be changed.
+                        if (arg.defaultValue == null) {
+                            localArgs.put(arg.name, Utils.urlDecodePath(matcher.group(arg.name)));
                         }
-                        localArgs.putAll(staticArgs);
-                        return localArgs;
                     }
+                    if (hostArg != null && domain != null) {
+                        // Parse the hostname and get only the part we are
+                        // interested in
+                        String routeValue = hostArg.defaultValue.replaceAll("\\{.*}", "");
+                        domain = domain.replace(routeValue, "");
+                        localArgs.put(hostArg.name, domain);
+                    }
+                    localArgs.putAll(staticArgs);
+                    return localArgs;
                 }
             }
             return null;
@@ -4,6 +4,7 @@ import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -12,6 +13,7 @@ import java.util.UUID;
 
 import play.Logger;
 import play.Play;
+import play.cache.ConcurrentCacheImpl;
 import play.data.binding.Binder;
 import play.data.binding.ParamNode;
 import play.data.binding.RootParamNode;
@@ -35,6 +37,22 @@ public class Scope {
     public static final String COOKIE_EXPIRE = Play.configuration.getProperty("application.session.maxAge");
     public static final boolean SESSION_HTTPONLY = Play.configuration.getProperty("application.session.httpOnly", "false").toLowerCase().equals("true");
     public static final boolean SESSION_SEND_ONLY_IF_CHANGED = Play.configuration.getProperty("application.session.sendOnlyIfChanged", "false").toLowerCase().equals("true");
+    public static final boolean SESSION_BINARY = Play.configuration.getProperty("application.session.format", "url").toLowerCase().equals("binary");
+    public static final int SESSION_CACHE_SIZE = Integer.parseInt(Play.configuration.getProperty("application.session.cacheSize", "1000").trim());
+
+    /**
+     * Sets the cookies of the current session and flash on the current
+     * response. Results that render after the action returned call it again
+     * so that the changes made while rendering are sent too.
+     */
+    public static void saveCurrent() {
+        if (Session.current() != null) {
+            Session.current().save();
+        }
+        if (Flash.current() != null) {
+            Flash.current().save();
+        }
+    }
 
     /**
      * Flash scope
@@ -151,6 +169,40 @@ public class Scope {
         }
     }
 
+    /**
+     * The data of the session cookies whose signature was verified, by cookie
+     * value, so that a client sending the same cookie again is not verified
+     * and decoded again. The data is only reused with the secret it was
+     * verified with. The cache holds <code>application.session.cacheSize</code>
+     * sessions, 1000 by default, 0 disables it.
+     */
+    static class DecodedSession {
+
+        static ConcurrentCacheImpl cache = SESSION_CACHE_SIZE > 0 ? ConcurrentCacheImpl.withMaxEntries(SESSION_CACHE_SIZE) : null;
+
+        final String secretKey;
+        final Map<String, String> data;
+
+        DecodedSession(String secretKey, Map<String, String> data) {
+            this.secretKey = secretKey;
+            this.data = data;
+        }
+
+        static DecodedSession get(String cookieValue) {
+            if (cache == null) {
+                return null;
+            }
+            DecodedSession decoded = (DecodedSession) cache.get(cookieValue);
+            return decoded != null && decoded.secretKey.equals(Play.secretKey) ? decoded : null;
+        }
+
+        static void put(String cookieValue, Map<String, String> data) {
+            if (cache != null) {
+                cache.set(cookieValue, new DecodedSession(Play.secretKey, Collections.unmodifiableMap(new HashMap<String, String>(data))), 0);
+            }
+        }
+    }
+
     /**
      * Session scope
      */
@@ -173,8 +225,12 @@ public class Scope {
 				    if(firstDashIndex > -1) {
                     	String sign = value.substring(0, firstDashIndex);
                     	String data = value.substring(firstDashIndex + 1);
-                    	if (CookieDataCodec.safeEquals(sign, Crypto.sign(data, Play.secretKey.getBytes()))) {
+                    	DecodedSession decoded = DecodedSession.get(value);
+                    	if (decoded != null) {
+                            session.data.putAll(decoded.data);
+                    	} else if (CookieDataCodec.safeEquals(sign, Crypto.sign(data, Play.secretKey.getBytes()))) {
                             CookieDataCodec.decode(session.data, data);
+                            DecodedSession.put(value, session.data);
                     	}
 					} 
                     if (COOKIE_EXPIRE != null) {
@@ -252,7 +308,7 @@ public class Scope {
                 return;
             }
             try {
-                String sessionData = CookieDataCodec.encode(data);
+                String sessionData = SESSION_BINARY ? CookieDataCodec.encodeBinary(data) : CookieDataCodec.encode(data);
                 String sign = Crypto.sign(sessionData, Play.secretKey.getBytes());
                 if (COOKIE_EXPIRE == null) {
                     Http.Response.current().setCookie(COOKIE_PREFIX + "_SESSION", sign + "-" + sessionData, null, "/", null, COOKIE_SECURE, SESSION_HTTPONLY);
@@ -485,12 +541,16 @@ public class Scope {
             for (Map.Entry<String, String[]> entry : map.entrySet()) {
                 Utils.Maps.mergeValueInMap(data, entry.getKey(), entry.getValue());
             }
+            // make sure rootsParamsNode is regenerated if needed
+            rootParamsNodeIsGenerated = false;
         }
 
         void __mergeWith(Map<String, String> map) {
             for (Map.Entry<String, String> entry : map.entrySet()) {
                 Utils.Maps.mergeValueInMap(data, entry.getKey(), entry.getValue());
             }
+            // make sure rootsParamsNode is regenerated if needed
+            rootParamsNodeIsGenerated = false;
         }
 
         public String urlEncode() {
@@ -0,0 +1,94 @@
+package play.mvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A route path (or host) precompiled for reverse routing: the literal parts
+ * of the path and the <code>{arg}</code> / <code>{&lt;regex&gt;arg}</code>
+ * slots between them, so a URL is built with a single pass into a
+ * {@link StringBuilder} instead of one regex replacement per argument.
+ */
+final class UrlTemplate {
+
+    final String source;
+    private final String[] literals;
+    private final String[] names;
+    private final String[] placeholders;
+
+    UrlTemplate(String source) {
+        this.source = source;
+        List<String> literals = new ArrayList<String>(4);
+        List<String> names = new ArrayList<String>(4);
+        List<String> placeholders = new ArrayList<String>(4);
+        int start = 0;
+        int i = 0;
+        while (i < source.length()) {
+            int end = source.charAt(i) == '{' ? slotEnd(source, i) : -1;
+            if (end < 0) {
+                i++;
+                continue;
+            }
+            String placeholder = source.substring(i, end + 1);
+            int nameStart = placeholder.startsWith("{<") ? placeholder.indexOf('>') + 1 : 1;
+            literals.add(source.substring(start, i));
+            names.add(placeholder.substring(nameStart, placeholder.length() - 1));
+            placeholders.add(placeholder);
+            start = end + 1;
+            i = start;
+        }
+        literals.add(source.substring(start));
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.names = names.toArray(new String[names.size()]);
+        this.placeholders = placeholders.toArray(new String[placeholders.size()]);
+    }
+
+    /**
+     * @return the index of the closing brace of the slot starting at
+     *         <code>start</code>, or -1 if there is no slot there.
+     */
+    private static int slotEnd(String source, int start) {
+        int i = start + 1;
+        if (i < source.length() && source.charAt(i) == '<') {
+            i = source.indexOf('>', i);
+            if (i < 0) {
+                return -1;
+            }
+            i++;
+        }
+        int nameStart = i;
+        while (i < source.length() && (Character.isLetterOrDigit(source.charAt(i)) || source.charAt(i) == '_')) {
+            i++;
+        }
+        if (i == nameStart || i >= source.length() || source.charAt(i) != '}') {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Append the URL to the builder.
+     *
+     * @param values
+     *            The already encoded value of each slot. Slots with no value
+     *            are left as they are in the route.
+     */
+    void append(StringBuilder out, Map<String, String> values) {
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            String value = values.get(names[i]);
+            out.append(value == null ? placeholders[i] : value);
+        }
+        out.append(literals[names.length]);
+    }
+
+    String apply(Map<String, String> values) {
+        if (names.length == 0) {
+            return source;
+        }
+        StringBuilder out = new StringBuilder(source.length() + 16 * names.length);
+        append(out, values);
+        return out.toString();
+    }
+}
@@ -29,6 +29,10 @@ public class Error extends Result {
         this.status = status;
     }
 
+    public int getStatus() {
+        return status;
+    }
+
     public void apply(Request request, Response response) {
         response.status = status;
         String format = request.format;
@@ -1,41 +1,125 @@
 package play.mvc.results;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
 import java.util.Map;
 
+import play.Play;
+import play.exceptions.PlayException;
 import play.exceptions.UnexpectedException;
 import play.libs.MimeTypes;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
+import play.mvc.Scope;
 import play.templates.Template;
 
 /**
  * 200 OK with a template rendering
+ * <p>
+ * With <code>play.templates.streaming=true</code>, the template is rendered
+ * when the result is applied, and sent in chunks while it is rendered if the
+ * server supports it. The session and flash are saved again once the template
+ * has run, before the first chunk sends the headers, so that the changes made
+ * by the template (e.g. an authenticity token) are kept.
+ * </p>
  */
 public class RenderTemplate extends Result {
 
     private String name;
     private String content;
+    private Template template;
+    private Map<String, Object> args;
 
     public RenderTemplate(Template template, Map<String, Object> args) {
         this.name = template.name;
         if (args.containsKey("out")) {
             throw new RuntimeException("Assertion failed! args shouldn't contain out");
         }
-        this.content = template.render(args);
+        if (isStreamed(Response.current())) {
+            this.template = template;
+            this.args = new HashMap<String, Object>(args);
+        } else {
+            this.content = template.render(args);
+        }
+    }
+
+    static boolean isStreamed(Response response) {
+        return response != null && response.canWriteChunks() && Boolean.parseBoolean(Play.configuration.getProperty("play.templates.streaming"));
     }
 
     public void apply(Request request, Response response) {
         try {
             final String contentType = MimeTypes.getContentType(name, "text/plain");
-            response.out.write(content.getBytes(getEncoding()));
+            if (content == null && isStreamed(response)) {
+                // The headers are sent with the first chunk
+                setContentTypeIfNotSet(response, contentType);
+                ChunkWriter writer = new ChunkWriter(response);
+                template.render(args, writer);
+                if (!writer.chunked) {
+                    Scope.saveCurrent();
+                }
+                return;
+            }
+            response.out.write(getContent().getBytes(getEncoding()));
             setContentTypeIfNotSet(response, contentType);
+        } catch (PlayException e) {
+            throw e;
         } catch (Exception e) {
             throw new UnexpectedException(e);
         }
     }
 
     public String getContent() {
+        if (content == null) {
+            content = template.render(args);
+        }
         return content;
     }
 
+    /**
+     * Sends each flushed output as a chunk, or writes the output to the
+     * response as usual if it is closed before being flushed.
+     */
+    static class ChunkWriter extends Writer {
+
+        private final Response response;
+        private final StringBuilder pending = new StringBuilder();
+        private boolean chunked;
+
+        ChunkWriter(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            pending.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            pending.append(str, off, off + len);
+        }
+
+        @Override
+        public void flush() {
+            if (pending.length() > 0) {
+                if (!chunked) {
+                    Scope.saveCurrent();
+                }
+                response.writeChunk(pending.toString());
+                pending.setLength(0);
+                chunked = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (chunked) {
+                flush();
+            } else {
+                response.out.write(pending.toString().getBytes(response.encoding));
+            }
+        }
+    }
 }
@@ -0,0 +1,186 @@
+package play.server;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_RANGE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.TRANSFER_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.VARY;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.HttpContentCompressor;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMessage;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+
+import play.Play;
+
+/**
+ * Compresses the dynamic responses, negotiating the encoding with the
+ * <code>Accept-Encoding</code> request header.
+ * <p>
+ * A response is compressed when it is not already encoded, not chunked, not
+ * a range response, has a compressible content type and is at least
+ * <code>http.compression.minSize</code> bytes long (1KB by default). The
+ * compression level is set by <code>http.compression.level</code> (6 by
+ * default, 0 disables the compression).
+ * </p>
+ * <p>
+ * The ETag of a compressed response gets the encoding as suffix, so each
+ * encoding has its own entity tag. The suffix is removed from the
+ * <code>If-None-Match</code> request header so the application still sees its
+ * own tags. Static files are compressed ahead of time, see
+ * {@link StaticResourceCache}.
+ * </p>
+ */
+public class CompressionHandler extends HttpContentCompressor {
+
+    private static final String[] ENCODINGS = { "gzip", "deflate", "br" };
+
+    private final int level;
+    private final int minSize;
+
+    public CompressionHandler() {
+        super(level());
+        this.level = level();
+        this.minSize = minSize();
+    }
+
+    static int level() {
+        return Integer.parseInt(Play.configuration.getProperty("http.compression.level", "6"));
+    }
+
+    static int minSize() {
+        return Integer.parseInt(Play.configuration.getProperty("http.compression.minSize", "1024"));
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof HttpRequest) {
+            stripEtagEncodings((HttpRequest) e.getMessage());
+        }
+        super.messageReceived(ctx, e);
+    }
+
+    @Override
+    protected EncoderEmbedder<ChannelBuffer> newContentEncoder(HttpMessage msg, String acceptEncoding) throws Exception {
+        if (level == 0 || msg.isChunked() || msg.headers().contains(TRANSFER_ENCODING) || msg.headers().contains(CONTENT_RANGE)) {
+            return null;
+        }
+        if (msg instanceof HttpResponse && ((HttpResponse) msg).getStatus().equals(HttpResponseStatus.PARTIAL_CONTENT)) {
+            return null;
+        }
+        if (msg.getContent().readableBytes() < minSize || !isCompressible(msg.headers().get(CONTENT_TYPE))) {
+            return null;
+        }
+        EncoderEmbedder<ChannelBuffer> encoder = super.newContentEncoder(msg, acceptEncoding);
+        if (encoder != null) {
+            String etag = msg.headers().get(ETAG);
+            if (etag != null) {
+                msg.headers().set(ETAG, etagWithEncoding(etag, getTargetContentEncoding(acceptEncoding)));
+            }
+            msg.headers().add(VARY, HttpHeaders.Names.ACCEPT_ENCODING);
+        }
+        return encoder;
+    }
+
+    /**
+     * @return true for the text based content types worth compressing.
+     */
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        int semicolon = type.indexOf(';');
+        if (semicolon > -1) {
+            type = type.substring(0, semicolon).trim();
+        }
+        return type.startsWith("text/") || type.endsWith("+xml") || type.endsWith("+json") || type.equals("application/json")
+                || type.equals("application/javascript") || type.equals("application/x-javascript") || type.equals("application/xml");
+    }
+
+    /**
+     * Find the preferred encoding among the ones available.
+     *
+     * @param acceptEncoding
+     *            The Accept-Encoding request header
+     * @param available
+     *            The available encodings, by order of preference
+     * @return the encoding to use, or null for the identity.
+     */
+    public static String negotiate(String acceptEncoding, String... available) {
+        if (acceptEncoding == null || acceptEncoding.length() == 0) {
+            return null;
+        }
+        String best = null;
+        int bestIndex = -1;
+        float bestQuality = 0;
+        float wildcard = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String name = part.trim();
+            float quality = 1;
+            int semicolon = name.indexOf(';');
+            if (semicolon > -1) {
+                String parameter = name.substring(semicolon + 1).trim();
+                name = name.substring(0, semicolon).trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equals("*")) {
+                wildcard = quality;
+                continue;
+            }
+            for (int i = 0; i < available.length; i++) {
+                // Same quality: use the order of preference
+                if (available[i].equalsIgnoreCase(name)
+                        && (quality > bestQuality || (quality == bestQuality && quality > 0 && i < bestIndex))) {
+                    best = available[i];
+                    bestIndex = i;
+                    bestQuality = quality;
+                }
+            }
+        }
+        if (best == null && wildcard > 0 && available.length > 0) {
+            best = available[0];
+        }
+        return best;
+    }
+
+    /**
+     * Add the encoding to an entity tag: <code>"tag"</code> becomes
+     * <code>"tag-gzip"</code>.
+     */
+    public static String etagWithEncoding(String etag, String encoding) {
+        if (etag.endsWith("\"")) {
+            return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+        }
+        return etag + "-" + encoding;
+    }
+
+    /**
+     * Remove the encodings from the entity tags of the If-None-Match header.
+     */
+    public static void stripEtagEncodings(HttpRequest request) {
+        String ifNoneMatch = request.headers().get(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            String stripped = ifNoneMatch;
+            for (String encoding : ENCODINGS) {
+                stripped = stripped.replace("-" + encoding + "\"", "\"");
+            }
+            if (!stripped.equals(ifNoneMatch)) {
+                request.headers().set(IF_NONE_MATCH, stripped);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package play.server;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
@@ -29,6 +30,14 @@ import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
 public class FileService  {
 
     public static void serve(File localFile, HttpRequest nettyRequest, HttpResponse nettyResponse, ChannelHandlerContext ctx, Request request, Response response, Channel channel) throws FileNotFoundException {
+        serve(localFile, MimeTypes.getContentType(localFile.getName(), "text/plain"), nettyRequest, nettyResponse, ctx, request, response, channel);
+    }
+
+    /**
+     * Serve a file with the given content type, used for the encoded
+     * versions of a file.
+     */
+    public static void serve(File localFile, String contentType, HttpRequest nettyRequest, HttpResponse nettyResponse, ChannelHandlerContext ctx, Request request, Response response, Channel channel) throws FileNotFoundException {
         final RandomAccessFile raf = new RandomAccessFile(localFile, "r");
         try {
             long fileLength = raf.length();
@@ -37,7 +46,7 @@ public class FileService  {
             
             if(Logger.isTraceEnabled()) {
                 Logger.trace("keep alive %s", String.valueOf(isKeepAlive));
-                Logger.trace("content type %s", (response.contentType != null ? response.contentType : MimeTypes.getContentType(localFile.getName(), "text/plain")));
+                Logger.trace("content type %s", (response.contentType != null ? response.contentType : contentType));
             }
             
             if (!nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
@@ -51,7 +60,7 @@ public class FileService  {
             if (response.contentType != null) {
                 nettyResponse.headers().set(CONTENT_TYPE, response.contentType);
             } else {
-                nettyResponse.headers().set(CONTENT_TYPE, (MimeTypes.getContentType(localFile.getName(), "text/plain")));
+                nettyResponse.headers().set(CONTENT_TYPE, contentType);
             }
 
             nettyResponse.headers().set(HttpHeaders.Names.ACCEPT_RANGES, HttpHeaders.Values.BYTES);
@@ -61,7 +70,7 @@ public class FileService  {
 
             // Write the content.
             if (!nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
-                ChunkedInput chunkedInput = getChunckedInput(raf, MimeTypes.getContentType(localFile.getName(), "text/plain"), channel, nettyRequest, nettyResponse);
+                ChunkedInput chunkedInput = getChunckedInput(raf, contentType, channel, nettyRequest, nettyResponse);
                 if (channel.isOpen()) {
                     channel.write(nettyResponse);
                     writeFuture = channel.write(chunkedInput);
@@ -91,6 +100,29 @@ public class FileService  {
         }
     }
     
+    /**
+     * Serve a file content already in memory.
+     */
+    public static void serve(ChannelBuffer content, String contentType, HttpRequest nettyRequest, HttpResponse nettyResponse, Response response, Channel channel) {
+        boolean isKeepAlive = HttpHeaders.isKeepAlive(nettyRequest) && nettyRequest.getProtocolVersion().equals(HttpVersion.HTTP_1_1);
+
+        nettyResponse.headers().set(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(content.readableBytes()));
+        nettyResponse.headers().set(CONTENT_TYPE, response.contentType != null ? response.contentType : contentType);
+        nettyResponse.headers().set(HttpHeaders.Names.ACCEPT_RANGES, HttpHeaders.Values.BYTES);
+        if (!nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
+            nettyResponse.setContent(content);
+        }
+
+        if (channel.isOpen()) {
+            ChannelFuture writeFuture = channel.write(nettyResponse);
+            if (!isKeepAlive) {
+                writeFuture.addListener(ChannelFutureListener.CLOSE);
+            }
+        } else {
+            Logger.debug("Try to write on a closed channel[keepAlive:%s]: Remote host may have closed the connection", String.valueOf(isKeepAlive));
+        }
+    }
+
     public static ChunkedInput getChunckedInput(RandomAccessFile raf, String contentType, Channel channel, HttpRequest nettyRequest, HttpResponse nettyResponse) throws IOException {
         if(ByteRangeInput.accepts(nettyRequest)) {
             ByteRangeInput server = new ByteRangeInput(raf, contentType, nettyRequest);
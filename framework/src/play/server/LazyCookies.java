@@ -0,0 +1,100 @@
+package play.server;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.netty.handler.codec.http.cookie.Cookie;
+import org.jboss.netty.handler.codec.http.cookie.ServerCookieDecoder;
+
+import play.mvc.Http;
+
+/**
+ * The cookies of a request, decoded from the <code>Cookie</code> header on
+ * first use. Asking for a cookie whose name is not in the header does not
+ * decode it.
+ */
+public class LazyCookies extends AbstractMap<String, Http.Cookie> implements Serializable {
+
+    private transient String header;
+    private Map<String, Http.Cookie> cookies;
+
+    /**
+     * @param header
+     *            The <code>Cookie</code> header, or null
+     */
+    public LazyCookies(String header) {
+        this.header = header;
+    }
+
+    @Override
+    public Http.Cookie get(Object key) {
+        if (cookies == null && (header == null || !(key instanceof String) || header.indexOf((String) key) < 0)) {
+            return null;
+        }
+        return cookies().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Http.Cookie put(String key, Http.Cookie value) {
+        return cookies().put(key, value);
+    }
+
+    @Override
+    public Http.Cookie remove(Object key) {
+        return cookies().remove(key);
+    }
+
+    @Override
+    public int size() {
+        return cookies().size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Http.Cookie>> entrySet() {
+        return cookies().entrySet();
+    }
+
+    private Map<String, Http.Cookie> cookies() {
+        if (cookies == null) {
+            cookies = decode(header);
+            header = null;
+        }
+        return cookies;
+    }
+
+    /**
+     * @return the cookies of the header, by name.
+     */
+    public static Map<String, Http.Cookie> decode(String header) {
+        Map<String, Http.Cookie> cookies = new HashMap<String, Http.Cookie>(16);
+        if (header != null) {
+            Set<Cookie> cookieSet = ServerCookieDecoder.STRICT.decode(header);
+            if (cookieSet != null) {
+                for (Cookie cookie : cookieSet) {
+                    Http.Cookie playCookie = new Http.Cookie();
+                    playCookie.name = cookie.name();
+                    playCookie.path = cookie.path();
+                    playCookie.domain = cookie.domain();
+                    playCookie.secure = cookie.isSecure();
+                    playCookie.value = cookie.value();
+                    playCookie.httpOnly = cookie.isHttpOnly();
+                    cookies.put(playCookie.name, playCookie);
+                }
+            }
+        }
+        return cookies;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new HashMap<String, Http.Cookie>(cookies());
+    }
+}
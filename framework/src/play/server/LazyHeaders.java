@@ -0,0 +1,117 @@
+package play.server;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+
+import play.mvc.Http;
+
+/**
+ * The headers of a request as a map of {@link Http.Header} by lower case name,
+ * read from the Netty headers when they are asked for. The whole map is only
+ * built when it is iterated or modified.
+ */
+public class LazyHeaders extends AbstractMap<String, Http.Header> implements Serializable {
+
+    private transient HttpHeaders nettyHeaders;
+    private final Map<String, Http.Header> headers = new HashMap<String, Http.Header>(8);
+    private boolean complete;
+
+    public LazyHeaders(HttpHeaders nettyHeaders) {
+        this.nettyHeaders = nettyHeaders;
+    }
+
+    @Override
+    public Http.Header get(Object key) {
+        if (complete || !(key instanceof String)) {
+            return headers.get(key);
+        }
+        String name = (String) key;
+        Http.Header header = headers.get(name);
+        if (header != null) {
+            return header;
+        }
+        if (!isLowerCase(name)) {
+            // The names are lower case, the Netty headers are not
+            return null;
+        }
+        List<String> values = nettyHeaders.getAll(name);
+        if (values.isEmpty()) {
+            return null;
+        }
+        header = new Http.Header(name, values);
+        headers.put(name, header);
+        return header;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Http.Header put(String key, Http.Header value) {
+        complete();
+        return headers.put(key, value);
+    }
+
+    @Override
+    public Http.Header remove(Object key) {
+        complete();
+        return headers.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        complete = true;
+        nettyHeaders = null;
+        headers.clear();
+    }
+
+    @Override
+    public int size() {
+        complete();
+        return headers.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Http.Header>> entrySet() {
+        complete();
+        return headers.entrySet();
+    }
+
+    private void complete() {
+        if (complete) {
+            return;
+        }
+        for (String key : nettyHeaders.names()) {
+            String name = key.toLowerCase();
+            if (!headers.containsKey(name)) {
+                headers.put(name, new Http.Header(name, nettyHeaders.getAll(key)));
+            }
+        }
+        complete = true;
+        nettyHeaders = null;
+    }
+
+    private static boolean isLowerCase(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        complete();
+        return new HashMap<String, Http.Header>(headers);
+    }
+}
@@ -0,0 +1,25 @@
+package play.server;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+
+import play.data.parsing.MultipartBody;
+
+/**
+ * A multipart request whose body was parsed while it was received, by the
+ * {@link StreamChunkAggregator}.
+ */
+public class MultipartHttpRequest extends DefaultHttpRequest {
+
+    public final MultipartBody body;
+
+    public MultipartHttpRequest(HttpRequest request, MultipartBody body, long contentLength) {
+        super(request.getProtocolVersion(), request.getMethod(), request.getUri());
+        headers().set(request.headers());
+        headers().set(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(contentLength));
+        setContent(ChannelBuffers.EMPTY_BUFFER);
+        this.body = body;
+    }
+}
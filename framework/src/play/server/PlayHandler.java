@@ -1,7 +1,9 @@
 package play.server;
 
 import static org.jboss.netty.buffer.ChannelBuffers.wrappedBuffer;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_ENCODING;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CACHE_CONTROL;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_ENCODING;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.COOKIE;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.DATE;
@@ -13,6 +15,7 @@ import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.LAST_MODIFIED;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.SERVER;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.SET_COOKIE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.VARY;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -31,11 +34,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
@@ -61,7 +63,6 @@ import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
 import org.jboss.netty.handler.codec.http.cookie.Cookie;
 import org.jboss.netty.handler.codec.http.cookie.DefaultCookie;
-import org.jboss.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import org.jboss.netty.handler.codec.http.cookie.ServerCookieEncoder;
 import org.jboss.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
@@ -77,9 +78,11 @@ import org.jboss.netty.handler.stream.ChunkedWriteHandler;
 
 import play.Invoker;
 import play.Invoker.InvocationContext;
+import play.Invoker.Suspend;
 import play.Logger;
 import play.Play;
 import play.data.binding.CachedBoundActionMethodArgs;
+import play.data.parsing.MultipartBody;
 import play.data.validation.Validation;
 import play.exceptions.PlayException;
 import play.exceptions.UnexpectedException;
@@ -167,7 +170,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 final Request request = parseRequest(ctx, nettyRequest, messageEvent);
 
                 // Buffered in memory output
-                response.out = new ByteArrayOutputStream();
+                response.out = new ResponseBuffer(request);
 
                 // Direct output (will be set later)
                 response.direct = null;
@@ -185,6 +188,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 boolean raw = Play.pluginCollection.rawInvocation(request, response);
                 if (raw) {
                     copyResponse(ctx, request, response, nettyRequest);
+                    ResponseBuffer.discard(response.out);
                 } else {
 
                     // Deleguate to Play framework//每个请求都调用一个线程
@@ -192,6 +196,9 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
                 }
 
+            } catch (RejectedExecutionException ex) {
+                Logger.warn("Request rejected: %s", ex.getMessage());
+                serve503(ctx, nettyRequest);
             } catch (Exception ex) {
                 Logger.warn(ex, "Exception on request. serving 500 back");
                 serve500(ex, ctx, nettyRequest);
@@ -209,8 +216,6 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         }
     }
 
-    private static final Map<String, RenderStatic> staticPathsCache = new HashMap<String, RenderStatic>();
-
     public class NettyInvocation extends Invoker.Invocation {
 
         private final ChannelHandlerContext ctx;
@@ -218,6 +223,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         private final Response response;
         private final HttpRequest nettyRequest;
         private final MessageEvent event;
+        private volatile boolean suspended;
 
         public NettyInvocation(Request request, Response response, ChannelHandlerContext ctx, HttpRequest nettyRequest, MessageEvent e) {
             this.ctx = ctx;
@@ -248,13 +254,9 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 if (Play.mode == Play.Mode.DEV) {
                     Router.detectChanges(Play.ctxPath);
                 }
-                if (Play.mode == Play.Mode.PROD
-                        && staticPathsCache.containsKey(request.domain + " " + request.method + " " + request.path)) {
-                    RenderStatic rs = null;
-                    synchronized (staticPathsCache) {
-                        rs = staticPathsCache.get(request.domain + " " + request.method + " " + request.path);
-                    }
-                    serveStatic(rs, ctx, request, response, nettyRequest, event);
+                StaticResourceCache.Resource resource = StaticResourceCache.get(request.domain, request.method, request.path);
+                if (resource != null) {
+                    serveStatic(null, resource, ctx, request, response, nettyRequest, event);
                     if (Logger.isTraceEnabled()) {
                         Logger.trace("init: end false");
                     }
@@ -269,12 +271,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 }
                 return false;
             } catch (RenderStatic rs) {
-                if (Play.mode == Play.Mode.PROD) {
-                    synchronized (staticPathsCache) {
-                        staticPathsCache.put(request.domain + " " + request.method + " " + request.path, rs);
-                    }
-                }
-                serveStatic(rs, ctx, request, response, nettyRequest, this.event);
+                serveStatic(rs, null, ctx, request, response, nettyRequest, this.event);
                 if (Logger.isTraceEnabled()) {
                     Logger.trace("init: end false");
                 }
@@ -294,6 +291,16 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                     request.invokedMethod.getDeclaringClass().getAnnotations());
         }
 
+        @Override
+        public String getPoolName() {
+            // The request is routed later, on the pool thread: here, on the
+            // I/O thread, only when some actions have their own pool
+            if (!Play.started || !Invoker.hasNamedPools()) {
+                return null;
+            }
+            return Invoker.getActionPool(Router.actionFor(request)).name;
+        }
+
         @Override
         public void run() {
             try {
@@ -302,7 +309,13 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 }
                 super.run();
             } catch (Exception e) {
-                serve500(e, ctx, nettyRequest);
+                if (response.chunked) {
+                    // The status and the first chunks are sent already
+                    Logger.error(e, "Error while streaming %s %s, closing the connection", request.method, request.url);
+                    ctx.getChannel().close();
+                } else {
+                    serve500(e, ctx, nettyRequest);
+                }
             }
             if (Logger.isTraceEnabled()) {
                 Logger.trace("run: end");
@@ -338,6 +351,26 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 Logger.trace("execute: end");
             }
         }
+
+        @Override
+        public void suspend(Suspend suspendRequest) {
+            suspended = true;
+            super.suspend(suspendRequest);
+        }
+
+        @Override
+        public void _finally() {
+            try {
+                super._finally();
+            } finally {
+                // The plugins may read the response until here
+                if (suspended) {
+                    suspended = false;
+                } else {
+                    ResponseBuffer.discard(response.out);
+                }
+            }
+        }
     }
 
     void saveExceededSizeError(HttpRequest nettyRequest, Request request, Response response) {
@@ -424,18 +457,16 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             Logger.trace("writeResponse: begin");
         }
 
-        byte[] content = null;
-
         final boolean keepAlive = isKeepAlive(nettyRequest);
+        ResponseBuffer buffer = response.out instanceof ResponseBuffer ? (ResponseBuffer) response.out : null;
         if (nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
-            content = new byte[0];
+            nettyResponse.setContent(ChannelBuffers.EMPTY_BUFFER);
+        } else if (buffer != null) {
+            nettyResponse.setContent(buffer.content());
         } else {
-            content = response.out.toByteArray();
+            nettyResponse.setContent(ChannelBuffers.wrappedBuffer(response.out.toByteArray()));
         }
 
-        ChannelBuffer buf = ChannelBuffers.copiedBuffer(content);
-        nettyResponse.setContent(buf);
-
         if (!nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
             if (Logger.isTraceEnabled()) {
                 Logger.trace("writeResponse: content length [" + response.out.size() + "]");
@@ -451,6 +482,10 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                     String.valueOf(keepAlive));
         }
 
+        if (buffer != null) {
+            buffer.releaseWhenWritten(f);
+        }
+
         // Decide whether to close the connection or not.
         if (f != null && !keepAlive) {
             // Close the connection when the whole content is written out.
@@ -556,17 +591,84 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
     }
 
     static String getRemoteIPAddress(MessageEvent e) {
-        String fullAddress = ((InetSocketAddress) e.getRemoteAddress()).getAddress().getHostAddress();
-        if (fullAddress.matches("/[0-9]+[.][0-9]+[.][0-9]+[.][0-9]+[:][0-9]+")) {
-            fullAddress = fullAddress.substring(1);
-            fullAddress = fullAddress.substring(0, fullAddress.indexOf(":"));
-        } else if (fullAddress.matches(".*[%].*")) {
-            fullAddress = fullAddress.substring(0, fullAddress.indexOf("%"));
-        }
-        return fullAddress;
+        return remoteIPAddress(((InetSocketAddress) e.getRemoteAddress()).getAddress().getHostAddress());
+    }
+
+    /**
+     * Strips the slash and port of a "/a.b.c.d:port" address and the scope of
+     * an IPv6 address.
+     */
+    static String remoteIPAddress(String fullAddress) {
+        int length = fullAddress.length();
+        if (length > 0 && fullAddress.charAt(0) == '/') {
+            int colon = fullAddress.indexOf(':');
+            if (colon > 1 && colon < length - 1 && isDigits(fullAddress, colon + 1, length) && isIPv4(fullAddress, 1, colon)) {
+                return fullAddress.substring(1, colon);
+            }
+        }
+        int percent = fullAddress.indexOf('%');
+        return percent < 0 ? fullAddress : fullAddress.substring(0, percent);
+    }
+
+    private static boolean isIPv4(String s, int start, int end) {
+        int dots = 0;
+        int from = start;
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == '.') {
+                if (i == from) {
+                    return false;
+                }
+                dots++;
+                from = i + 1;
+            } else if (!isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return dots == 3 && from < end;
+    }
+
+    private static boolean isDigits(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return start < end;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Whether the host is 127.0.0.1, with or without a port.
+     */
+    static boolean isLoopbackHost(String host) {
+        if (host == null || !host.startsWith("127.0.0.1")) {
+            return false;
+        }
+        int length = host.length();
+        int i = 9;
+        if (i < length && host.charAt(i) == ':') {
+            i++;
+        }
+        for (; i < length; i++) {
+            if (!isDigit(host.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public Request parseRequest(ChannelHandlerContext ctx, HttpRequest nettyRequest, MessageEvent messageEvent) throws Exception {
+        return parseRequest(nettyRequest, (InetSocketAddress) messageEvent.getRemoteAddress());
+    }
+
+    /**
+     * Builds the Play request. The headers and cookies are read from the Netty
+     * request when they are first used, and the body is read from its buffer.
+     */
+    Request parseRequest(HttpRequest nettyRequest, InetSocketAddress remoteSocketAddress) throws Exception {
         if (Logger.isTraceEnabled()) {
             Logger.trace("parseRequest: begin");
             Logger.trace("parseRequest: URI = " + nettyRequest.getUri());
@@ -603,7 +705,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             querystring = uri.substring(i + 1);
         }
 
-        String remoteAddress = getRemoteIPAddress(messageEvent);
+        String remoteAddress = remoteIPAddress(remoteSocketAddress.getAddress().getHostAddress());
         String method = nettyRequest.getMethod().getName();
 
         if (nettyRequest.headers().get("X-HTTP-Method-Override") != null) {
@@ -612,7 +714,10 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
         InputStream body = null;
         ChannelBuffer b = nettyRequest.getContent();
-        if (b instanceof FileChannelBuffer) {
+        if (nettyRequest instanceof MultipartHttpRequest) {
+            // Already parsed by the StreamChunkAggregator
+            body = ((MultipartHttpRequest) nettyRequest).body;
+        } else if (b instanceof FileChannelBuffer) {
             FileChannelBuffer buffer = (FileChannelBuffer) b;
             // An error occurred
             Integer max = Integer.valueOf(Play.configuration.getProperty("play.netty.maxContentLength", "-1"));
@@ -623,17 +728,14 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             }
 
         } else {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            IOUtils.copy(new ChannelBufferInputStream(b), out);
-            byte[] n = out.toByteArray();
-            body = new ByteArrayInputStream(n);
+            // Read in place, the aggregated content is not shared
+            body = new ChannelBufferInputStream(b.duplicate());
         }
 
         String host = nettyRequest.headers().get(HOST);
         boolean isLoopback = false;
         try {
-            isLoopback = ((InetSocketAddress) messageEvent.getRemoteAddress()).getAddress().isLoopbackAddress()
-                    && host.matches("^127\\.0\\.0\\.1:?[0-9]*$");
+            isLoopback = remoteSocketAddress.getAddress().isLoopbackAddress() && isLoopbackHost(host);
         } catch (Exception e) {
             // ignore it
         }
@@ -673,7 +775,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         boolean secure = false;
 
         final Request request = Request.createRequest(remoteAddress, method, path, querystring, contentType, body, uri, host, isLoopback,
-                port, domain, secure, getHeaders(nettyRequest), getCookies(nettyRequest));
+                port, domain, secure, new LazyHeaders(nettyRequest.headers()), new LazyCookies(nettyRequest.headers().get(COOKIE)));
 
         if (Logger.isTraceEnabled()) {
             Logger.trace("parseRequest: end");
@@ -698,24 +800,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
     }
 
     protected static Map<String, Http.Cookie> getCookies(HttpRequest nettyRequest) {
-        Map<String, Http.Cookie> cookies = new HashMap<String, Http.Cookie>(16);
-        String value = nettyRequest.headers().get(COOKIE);
-        if (value != null) {
-            Set<Cookie> cookieSet = ServerCookieDecoder.STRICT.decode(value);
-            if (cookieSet != null) {
-                for (Cookie cookie : cookieSet) {
-                    Http.Cookie playCookie = new Http.Cookie();
-                    playCookie.name = cookie.name();
-                    playCookie.path = cookie.path();
-                    playCookie.domain = cookie.domain();
-                    playCookie.secure = cookie.isSecure();
-                    playCookie.value = cookie.value();
-                    playCookie.httpOnly = cookie.isHttpOnly();
-                    cookies.put(playCookie.name, playCookie);
-                }
-            }
-        }
-        return cookies;
+        return LazyCookies.decode(nettyRequest.headers().get(COOKIE));
     }
 
     @Override
@@ -801,6 +886,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
         Request request = Request.current();
         Response response = Response.current();
+        ResponseBuffer.discard(response.out);
 
         String encoding = response.encoding;
 
@@ -887,8 +973,40 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         }
     }
 
+    /**
+     * Answer with a 503 error, when the request is rejected because too many
+     * requests are waiting for its pool.
+     */
+    public static void serve503(ChannelHandlerContext ctx, HttpRequest nettyRequest) {
+        Request request = Request.current();
+        if (request != null && request.body instanceof MultipartBody) {
+            ((MultipartBody) request.body).delete();
+        }
+        HttpResponse nettyResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SERVICE_UNAVAILABLE);
+        if (exposePlayServer) {
+            nettyResponse.headers().set(SERVER, signature);
+        }
+        nettyResponse.headers().set(CONTENT_TYPE, "text/plain; charset=utf-8");
+        byte[] bytes = "Service Unavailable".getBytes(Charset.forName("utf-8"));
+        nettyResponse.setContent(ChannelBuffers.wrappedBuffer(bytes));
+        setContentLength(nettyResponse, bytes.length);
+        ChannelFuture writeFuture = ctx.getChannel().write(nettyResponse);
+        if (!isKeepAlive(nettyRequest)) {
+            writeFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
     public void serveStatic(RenderStatic renderStatic, ChannelHandlerContext ctx, Request request, Response response,
             HttpRequest nettyRequest, MessageEvent e) {
+        serveStatic(renderStatic, null, ctx, request, response, nettyRequest, e);
+    }
+
+    /**
+     * Serve a static file, either from the static resources cache or from the
+     * file of a static route (in which case it is added to the cache).
+     */
+    private void serveStatic(RenderStatic renderStatic, StaticResourceCache.Resource resource, ChannelHandlerContext ctx,
+            Request request, Response response, HttpRequest nettyRequest, MessageEvent e) {
         if (Logger.isTraceEnabled()) {
             Logger.trace("serveStatic: begin");
         }
@@ -898,23 +1016,40 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             nettyResponse.headers().set(SERVER, signature);
         }
         try {
-            VirtualFile file = Play.getVirtualFile(renderStatic.file);
-            if (file != null && file.exists() && file.isDirectory()) {
+            VirtualFile file = resource == null ? Play.getVirtualFile(renderStatic.file) : resource.file;
+            if (resource == null && file != null && file.exists() && file.isDirectory()) {
                 file = file.child("index.html");
                 if (file != null) {
                     renderStatic.file = file.relativePath();
                 }
             }
-            if ((file == null || !file.exists())) {
+            if (resource == null && (file == null || !file.exists())) {
                 serve404(new NotFound("The file " + renderStatic.file + " does not exist"), ctx, request, nettyRequest);
             } else {
                 boolean raw = Play.pluginCollection.serveStatic(file, request, response);
                 if (raw) {
                     copyResponse(ctx, request, response, nettyRequest);
                 } else {
-                    final File localFile = file.getRealFile();
+                    if (resource == null) {
+                        resource = StaticResourceCache.put(request.domain, request.method, request.path, file);
+                    }
                     final boolean keepAlive = isKeepAlive(nettyRequest);
-                    nettyResponse = addEtag(nettyRequest, nettyResponse, localFile);
+                    // Ranges are served from the file itself
+                    boolean ranged = FileService.ByteRangeInput.accepts(nettyRequest);
+                    StaticResourceCache.Variant variant = ranged ? null : resource.variant(nettyRequest.headers().get(ACCEPT_ENCODING));
+                    if (resource.isCompressible()) {
+                        nettyResponse.headers().set(VARY, ACCEPT_ENCODING);
+                    }
+                    // Each encoding has its own entity tag, but they all
+                    // match the file
+                    CompressionHandler.stripEtagEncodings(nettyRequest);
+                    nettyResponse = addEtag(nettyRequest, nettyResponse, resource.etag, resource.lastModified, resource.lastModifiedHeader);
+                    if (variant != null) {
+                        if (nettyResponse.headers().contains(ETAG)) {
+                            nettyResponse.headers().set(ETAG, variant.etag);
+                        }
+                        nettyResponse.headers().set(CONTENT_ENCODING, variant.encoding);
+                    }
 
                     if (nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
                         Channel ch = e.getChannel();
@@ -926,7 +1061,14 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                             writeFuture.addListener(ChannelFutureListener.CLOSE);
                         }
                     } else {
-                        FileService.serve(localFile, nettyRequest, nettyResponse, ctx, request, response, e.getChannel());
+                        ChannelBuffer content = variant != null ? variant.content() : resource.content();
+                        if (content != null && !ranged) {
+                            FileService.serve(content, resource.contentType, nettyRequest, nettyResponse, response, e.getChannel());
+                        } else if (variant != null) {
+                            FileService.serve(variant.file, resource.contentType, nettyRequest, nettyResponse, ctx, request, response, e.getChannel());
+                        } else {
+                            FileService.serve(resource.localFile, nettyRequest, nettyResponse, ctx, request, response, e.getChannel());
+                        }
                     }
                 }
 
@@ -980,6 +1122,12 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
     }
 
     private static HttpResponse addEtag(HttpRequest nettyRequest, HttpResponse httpResponse, File file) {
+        long last = file.lastModified();
+        final String etag = "\"" + last + "-" + file.hashCode() + "\"";
+        return addEtag(nettyRequest, httpResponse, etag, last, null);
+    }
+
+    private static HttpResponse addEtag(HttpRequest nettyRequest, HttpResponse httpResponse, String etag, long last, String lastModified) {
         if (Play.mode == Play.Mode.DEV) {
             httpResponse.headers().set(CACHE_CONTROL, "no-cache");
         } else {
@@ -994,8 +1142,6 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             }
         }
         boolean useEtag = Play.configuration.getProperty("http.useETag", "true").equals("true");
-        long last = file.lastModified();
-        final String etag = "\"" + last + "-" + file.hashCode() + "\"";
         if (!isModified(etag, last, nettyRequest)) {
             if (nettyRequest.getMethod().equals(HttpMethod.GET)) {
                 httpResponse.setStatus(HttpResponseStatus.NOT_MODIFIED);
@@ -1005,7 +1151,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             }
 
         } else {
-            httpResponse.headers().set(LAST_MODIFIED, Utils.getHttpDateFormatter().format(new Date(last)));
+            httpResponse.headers().set(LAST_MODIFIED, lastModified != null ? lastModified : Utils.getHttpDateFormatter().format(new Date(last)));
             if (useEtag) {
                 httpResponse.headers().set(ETAG, etag);
             }
@@ -0,0 +1,378 @@
+package play.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import play.Play;
+import play.mvc.Http.Request;
+
+/**
+ * The in memory output of a response (<code>response.out</code>), made of
+ * fixed size chunks taken from a shared pool.
+ * <p>
+ * The chunks are handed to the channel as they are, without copying them into
+ * a single array, and go back to the pool once the response is written. At
+ * most <code>http.responseBuffer.poolSize</code> idle chunks (1024 by
+ * default, 0 to disable the pool) are kept.
+ * </p>
+ * <p>
+ * The chunks needed by a response are reserved on the first write, from a
+ * moving average of the size of the previous responses of the same action.
+ * </p>
+ * <p>
+ * The content can still be read once it is sent, e.g. by the plugins, until
+ * the end of the invocation: the chunks go back to the pool once the invocation
+ * is finished and the content is written. Changing the content after it is
+ * sent first copies it to new chunks, and has no effect on the response.
+ * </p>
+ */
+public class ResponseBuffer extends ByteArrayOutputStream {
+
+    static final int CHUNK_SIZE = 8192;
+    static final int MAX_RESERVED_CHUNKS = 32;
+    static final int MAX_ACTIONS = 1000;
+
+    private static final Queue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+    private static final AtomicLong allocated = new AtomicLong();
+    private static final AtomicLong borrowed = new AtomicLong();
+    private static final AtomicLong returned = new AtomicLong();
+    private static final Map<String, AtomicInteger> averageSizes = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final Request request;
+    private List<byte[]> chunks = new ArrayList<byte[]>(4);
+    /**
+     * The chunks handed to the channel, until they are written.
+     */
+    private List<byte[]> sending;
+    private int size;
+    private boolean finished;
+    private boolean released;
+
+    /**
+     * @param request
+     *            The request, whose action gives the expected response size.
+     *            May be null.
+     */
+    public ResponseBuffer(Request request) {
+        super(0);
+        this.request = request;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        ensureWritable(1);
+        chunks.get(size / CHUNK_SIZE)[size % CHUNK_SIZE] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureWritable(len);
+        while (len > 0) {
+            int position = size % CHUNK_SIZE;
+            int n = Math.min(len, CHUNK_SIZE - position);
+            System.arraycopy(b, off, chunks.get(size / CHUNK_SIZE), position, n);
+            size += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    public void writeBytes(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        checkNotFinished();
+        for (int i = 0, remaining = size; remaining > 0; i++, remaining -= CHUNK_SIZE) {
+            out.write(chunks.get(i), 0, Math.min(remaining, CHUNK_SIZE));
+        }
+    }
+
+    /**
+     * Empty the buffer, keeping its chunks for the next writes.
+     */
+    @Override
+    public synchronized void reset() {
+        checkNotFinished();
+        if (chunks == sending) {
+            chunks = new ArrayList<byte[]>(4);
+        }
+        size = 0;
+    }
+
+    @Override
+    public synchronized byte[] toByteArray() {
+        checkNotFinished();
+        byte[] content = new byte[size];
+        for (int i = 0, offset = 0; offset < size; i++, offset += CHUNK_SIZE) {
+            System.arraycopy(chunks.get(i), 0, content, offset, Math.min(size - offset, CHUNK_SIZE));
+        }
+        return content;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return new String(toByteArray());
+    }
+
+    @Override
+    public synchronized String toString(String charsetName) throws UnsupportedEncodingException {
+        return new String(toByteArray(), charsetName);
+    }
+
+    public synchronized String toString(Charset charset) {
+        return new String(toByteArray(), charset);
+    }
+
+    /**
+     * Hand the content to the channel. The chunks go back to the pool once
+     * they are written, see {@link #releaseWhenWritten(ChannelFuture)}, and
+     * the buffer is finished, see {@link #finish()}.
+     *
+     * @return the content, as a composite of the chunks.
+     */
+    public synchronized ChannelBuffer content() {
+        checkNotFinished();
+        if (sending != null) {
+            throw new IllegalStateException("The response content is already being sent");
+        }
+        sending = chunks;
+        recordSize(action(), size);
+        if (size == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        ChannelBuffer[] buffers = new ChannelBuffer[(size + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ChannelBuffers.wrappedBuffer(chunks.get(i), 0, Math.min(size - i * CHUNK_SIZE, CHUNK_SIZE));
+        }
+        // Gathering writes, so the chunks are not merged before being sent
+        return ChannelBuffers.wrappedBuffer(true, buffers);
+    }
+
+    /**
+     * Give the sent chunks back to the pool once they are written and the
+     * buffer is finished.
+     *
+     * @param future
+     *            The future of the write, or null if the content was not
+     *            written.
+     */
+    public void releaseWhenWritten(ChannelFuture future) {
+        if (future == null) {
+            written();
+            return;
+        }
+        future.addListener(new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                written();
+            }
+        });
+    }
+
+    private synchronized void written() {
+        List<byte[]> written = sending;
+        sending = null;
+        // Still the content of the buffer until it is finished
+        if (written != null && (written != chunks || finished)) {
+            giveBack(written);
+        }
+    }
+
+    /**
+     * End of the invocation: the content can't be used anymore, and the
+     * chunks go back to the pool, once written if they are being sent.
+     */
+    public synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (chunks != sending) {
+            giveBack(chunks);
+        }
+    }
+
+    /**
+     * Give all the chunks back to the pool, even if they are being sent.
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        finished = true;
+        giveBack(chunks);
+        if (sending != null) {
+            giveBack(sending);
+        }
+    }
+
+    /**
+     * Finish the buffer of a response, once the invocation is over or if the
+     * response won't be sent, see {@link #finish()}.
+     */
+    public static void discard(OutputStream out) {
+        if (out instanceof ResponseBuffer) {
+            ((ResponseBuffer) out).finish();
+        }
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("The response is finished");
+        }
+    }
+
+    private void ensureWritable(int length) {
+        checkNotFinished();
+        if (chunks == sending) {
+            detach();
+        }
+        if (chunks.isEmpty()) {
+            int expected = Math.max(length, expectedSize(action()));
+            int reserved = Math.min(MAX_RESERVED_CHUNKS, (expected + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            for (int i = 0; i < reserved; i++) {
+                chunks.add(borrow());
+            }
+        }
+        while (chunks.size() * CHUNK_SIZE - size < length) {
+            chunks.add(borrow());
+        }
+    }
+
+    /**
+     * Copy the content to new chunks, as the sent chunks must not change.
+     */
+    private void detach() {
+        List<byte[]> copy = new ArrayList<byte[]>(chunks.size());
+        for (int i = 0, offset = 0; offset < size; i++, offset += CHUNK_SIZE) {
+            byte[] chunk = borrow();
+            System.arraycopy(chunks.get(i), 0, chunk, 0, Math.min(size - offset, CHUNK_SIZE));
+            copy.add(chunk);
+        }
+        chunks = copy;
+    }
+
+    private String action() {
+        return request == null || request.action == null ? "" : request.action;
+    }
+
+    static byte[] borrow() {
+        borrowed.incrementAndGet();
+        byte[] chunk = pool.poll();
+        if (chunk != null) {
+            pooled.decrementAndGet();
+            return chunk;
+        }
+        allocated.incrementAndGet();
+        return new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Give back and forget the chunks of a list.
+     */
+    private static void giveBack(List<byte[]> chunks) {
+        for (byte[] chunk : chunks) {
+            giveBack(chunk);
+        }
+        chunks.clear();
+    }
+
+    static void giveBack(byte[] chunk) {
+        returned.incrementAndGet();
+        if (pooled.incrementAndGet() <= poolSize()) {
+            pool.offer(chunk);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the moving average of the responses size for this action, or 0
+     *         if there is none yet.
+     */
+    static int expectedSize(String action) {
+        AtomicInteger average = averageSizes.get(action);
+        return average == null ? 0 : average.get();
+    }
+
+    static void recordSize(String action, int size) {
+        AtomicInteger average = averageSizes.get(action);
+        if (average == null) {
+            if (averageSizes.size() >= MAX_ACTIONS) {
+                return;
+            }
+            average = new AtomicInteger(size);
+            averageSizes.put(action, average);
+            return;
+        }
+        // Weight of 1/8 for the last response, racing updates may be lost
+        int current = average.get();
+        average.set(current + (size - current) / 8);
+    }
+
+    static int poolSize() {
+        return Integer.parseInt(Play.configuration.getProperty("http.responseBuffer.poolSize", "1024"));
+    }
+
+    /**
+     * @return the number of chunks ever allocated.
+     */
+    public static long allocatedChunks() {
+        return allocated.get();
+    }
+
+    /**
+     * @return the number of idle chunks in the pool.
+     */
+    public static int pooledChunks() {
+        return pooled.get();
+    }
+
+    /**
+     * @return the number of chunks taken from the pool and not given back
+     *         yet. It should stay close to the number of responses being
+     *         written, a growing value means a leak.
+     */
+    public static long outstandingChunks() {
+        return borrowed.get() - returned.get();
+    }
+
+    /**
+     * Empty the pool and forget the responses sizes.
+     */
+    public static void clear() {
+        pool.clear();
+        pooled.set(0);
+        averageSizes.clear();
+    }
+}
@@ -0,0 +1,354 @@
+package play.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import play.Logger;
+import play.Play;
+import play.cache.ConcurrentCacheImpl;
+import play.libs.Codec;
+import play.libs.MimeTypes;
+import play.libs.Time;
+import play.mvc.Router;
+import play.utils.Utils;
+import play.vfs.VirtualFile;
+
+/**
+ * Cache of the static resources served by the {@link PlayHandler}.
+ * <p>
+ * The requests are mapped to the files they resolved to, for at most
+ * <code>http.staticCache.maxEntries</code> requests (10000 by default). A file
+ * is kept with its ETag, Last-Modified date and content type, and the content
+ * itself for files smaller than <code>http.staticCache.inMemoryMaxSize</code>
+ * bytes (64KB by default, 0 to disable), for at most
+ * <code>http.staticCache.maxFiles</code> files (1000 by default). A cache hit
+ * is served without touching the file system, and the requests for the same
+ * file, from any domain, share its content.
+ * </p>
+ * <p>
+ * In DEV mode an entry is checked against the file timestamp on each hit. In
+ * PROD mode it is checked every <code>http.staticCache.refresh</code> (1mn by
+ * default).
+ * </p>
+ * <p>
+ * Compressible files get encoded variants: the <code>.br</code> and
+ * <code>.gz</code> files next to them when they are up to date, or else a
+ * gzip version generated once into <code>tmp/compressed</code>.
+ * </p>
+ */
+public class StaticResourceCache {
+
+    private static final ConcurrentCacheImpl requests = ConcurrentCacheImpl.withMaxEntries(Long.parseLong(Play.configuration.getProperty(
+            "http.staticCache.maxEntries", "10000")));
+    private static final ConcurrentCacheImpl resources = ConcurrentCacheImpl.withMaxEntries(Long.parseLong(Play.configuration.getProperty(
+            "http.staticCache.maxFiles", "1000")));
+
+    /**
+     * The file resolved for a request, as long as the routes are not reloaded.
+     */
+    private static class Route {
+
+        final String file;
+        final long routesLoading;
+
+        Route(String file) {
+            this.file = file;
+            this.routesLoading = Router.lastLoading;
+        }
+    }
+
+    public static class Resource {
+
+        public final VirtualFile file;
+        public final File localFile;
+        public final long lastModified;
+        public final long length;
+        public final String etag;
+        public final String lastModifiedHeader;
+        public final String contentType;
+        /**
+         * The file content, or null if the file is too big to be kept in
+         * memory.
+         */
+        private final ChannelBuffer content;
+        private volatile long nextCheck;
+        private Variant brotli;
+        private Variant gzip;
+
+        Resource(VirtualFile file, File localFile, long lastModified, long length, ChannelBuffer content) {
+            this.file = file;
+            this.localFile = localFile;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.etag = "\"" + lastModified + "-" + localFile.hashCode() + "\"";
+            this.lastModifiedHeader = Utils.getHttpDateFormatter().format(new Date(lastModified));
+            this.contentType = MimeTypes.getContentType(localFile.getName(), "text/plain");
+            this.content = content;
+            this.nextCheck = System.currentTimeMillis() + refreshInterval();
+        }
+
+        /**
+         * @return the file content, or null if it must be read from the file.
+         */
+        public ChannelBuffer content() {
+            return content == null ? null : content.duplicate();
+        }
+
+        /**
+         * @return true if the file has changed since it was cached.
+         */
+        boolean isModified() {
+            return localFile.lastModified() != lastModified || localFile.length() != length;
+        }
+
+        /**
+         * @return true if encoded variants of this file may be served.
+         */
+        public boolean isCompressible() {
+            return CompressionHandler.isCompressible(contentType);
+        }
+
+        /**
+         * @param acceptEncoding
+         *            The Accept-Encoding request header.
+         * @return the encoded variant to serve, or null to serve the file
+         *         itself.
+         */
+        public Variant variant(String acceptEncoding) {
+            if (brotli == null && gzip == null) {
+                return null;
+            }
+            String encoding = brotli == null ? CompressionHandler.negotiate(acceptEncoding, "gzip")
+                    : gzip == null ? CompressionHandler.negotiate(acceptEncoding, "br") : CompressionHandler.negotiate(acceptEncoding, "br", "gzip");
+            if (encoding == null) {
+                return null;
+            }
+            return encoding.equals("br") ? brotli : gzip;
+        }
+    }
+
+    /**
+     * An encoded version of a static file.
+     */
+    public static class Variant {
+
+        public final String encoding;
+        public final File file;
+        public final String etag;
+        private final ChannelBuffer content;
+
+        Variant(String encoding, File file, String etag, ChannelBuffer content) {
+            this.encoding = encoding;
+            this.file = file;
+            this.etag = etag;
+            this.content = content;
+        }
+
+        /**
+         * @return the encoded content, or null if it must be read from the
+         *         file.
+         */
+        public ChannelBuffer content() {
+            return content == null ? null : content.duplicate();
+        }
+    }
+
+    static String key(String domain, String method, String path) {
+        return domain + " " + method + " " + path;
+    }
+
+    /**
+     * @return the cached resource for a request, or null if it is not cached
+     *         or has changed.
+     */
+    public static Resource get(String domain, String method, String path) {
+        String key = key(domain, method, path);
+        Route route = (Route) requests.get(key);
+        if (route == null) {
+            return null;
+        }
+        if (route.routesLoading != Router.lastLoading) {
+            requests.delete(key);
+            return null;
+        }
+        return resource(route.file);
+    }
+
+    /**
+     * @return the cached resource for a file, or null if it is not cached or
+     *         has changed.
+     */
+    private static Resource resource(String path) {
+        Resource resource = (Resource) resources.get(path);
+        if (resource == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (Play.mode == Play.Mode.DEV || now > resource.nextCheck) {
+            if (resource.isModified()) {
+                resources.delete(path);
+                return null;
+            }
+            resource.nextCheck = now + refreshInterval();
+        }
+        return resource;
+    }
+
+    /**
+     * Resolve and cache the resource served for a request.
+     *
+     * @return the cached resource.
+     */
+    public static Resource put(String domain, String method, String path, VirtualFile file) {
+        File localFile = file.getRealFile();
+        String filePath = localFile.getAbsolutePath();
+        // Another request may have loaded the file already
+        Resource resource = (Resource) resources.get(filePath);
+        if (resource == null || resource.isModified()) {
+            resource = load(file, localFile);
+            resources.set(filePath, resource, 0);
+        }
+        requests.set(key(domain, method, path), new Route(filePath), 0);
+        return resource;
+    }
+
+    private static Resource load(VirtualFile file, File localFile) {
+        long lastModified = localFile.lastModified();
+        long length = localFile.length();
+        ChannelBuffer content = read(localFile);
+        Resource resource = new Resource(file, localFile, lastModified, length, content);
+        if (resource.isCompressible() && length >= CompressionHandler.minSize()) {
+            resource.brotli = sibling(resource, "br");
+            resource.gzip = sibling(resource, "gz");
+            if (resource.gzip == null) {
+                resource.gzip = generateGzip(resource);
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * @return the precompressed file next to the resource, if it is up to
+     *         date.
+     */
+    private static Variant sibling(Resource resource, String extension) {
+        File file = new File(resource.localFile.getPath() + "." + extension);
+        if (!file.isFile() || file.lastModified() < resource.lastModified) {
+            return null;
+        }
+        String encoding = extension.equals("gz") ? "gzip" : extension;
+        return new Variant(encoding, file, CompressionHandler.etagWithEncoding(resource.etag, encoding), read(file));
+    }
+
+    /**
+     * Compress the resource into the tmp directory, or only in memory when
+     * there is no tmp directory. The file is compressed as it is read, so its
+     * size does not matter.
+     */
+    private static Variant generateGzip(Resource resource) {
+        File file = null;
+        if (Play.tmpDir != null && !Play.readOnlyTmp) {
+            String name = Codec.hexSHA1(resource.localFile.getAbsolutePath()) + "-" + resource.lastModified + ".gz";
+            file = new File(new File(Play.tmpDir, "compressed"), name);
+        }
+        try {
+            if (file == null) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                if (!gzip(resource.localFile, compressed, inMemoryMaxSize())) {
+                    return null;
+                }
+                return new Variant("gzip", null, CompressionHandler.etagWithEncoding(resource.etag, "gzip"),
+                        ChannelBuffers.unmodifiableBuffer(ChannelBuffers.wrappedBuffer(compressed.toByteArray())));
+            }
+            if (!file.isFile()) {
+                // Write to a temporary file first, as the same file may be
+                // compressed concurrently
+                File tmp = new File(file.getPath() + "." + Thread.currentThread().getId());
+                gzip(resource.localFile, FileUtils.openOutputStream(tmp), -1);
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                }
+            }
+        } catch (IOException e) {
+            Logger.warn(e, "Cannot compress static file %s", resource.localFile);
+            return null;
+        }
+        return new Variant("gzip", file, CompressionHandler.etagWithEncoding(resource.etag, "gzip"), read(file));
+    }
+
+    /**
+     * Compress a file block by block into a stream, closed once done.
+     *
+     * @param maxSize
+     *            The maximum compressed size, -1 for no limit
+     * @return false if the compression stopped at the maximum size.
+     */
+    static boolean gzip(File source, OutputStream target, long maxSize) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(target);
+        InputStream in = null;
+        GZIPOutputStream gzip = null;
+        try {
+            in = new FileInputStream(source);
+            gzip = new GZIPOutputStream(out) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            };
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                gzip.write(buffer, 0, read);
+                if (maxSize != -1 && out.getByteCount() > maxSize) {
+                    return false;
+                }
+            }
+            gzip.close();
+            return maxSize == -1 || out.getByteCount() <= maxSize;
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(gzip == null ? out : gzip);
+        }
+    }
+
+    /**
+     * @return the content of a file small enough to be kept in memory, or
+     *         null.
+     */
+    private static ChannelBuffer read(File file) {
+        if (file.length() > inMemoryMaxSize()) {
+            return null;
+        }
+        try {
+            return ChannelBuffers.unmodifiableBuffer(ChannelBuffers.wrappedBuffer(FileUtils.readFileToByteArray(file)));
+        } catch (IOException e) {
+            Logger.warn(e, "Cannot read static file %s, it will be served from disk", file);
+            return null;
+        }
+    }
+
+    public static void clear() {
+        requests.clear();
+        resources.clear();
+    }
+
+    static long inMemoryMaxSize() {
+        return Long.parseLong(Play.configuration.getProperty("http.staticCache.inMemoryMaxSize", "65536"));
+    }
+
+    static long refreshInterval() {
+        return Time.parseDuration(Play.configuration.getProperty("http.staticCache.refresh", "1mn")) * 1000L;
+    }
+}
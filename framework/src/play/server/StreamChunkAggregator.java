@@ -1,17 +1,41 @@
 package play.server;
 
 import org.apache.commons.io.IOUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpChunk;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpMessage;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import play.Logger;
 import play.Play;
+import play.data.parsing.MultipartStreamParser;
+import play.utils.HTTP;
 
 import java.io.*;
 import java.util.List;
 import java.util.UUID;
 
+/**
+ * Aggregates the chunks of a request body into a file.
+ * <p>
+ * With <code>play.netty.multipart.streaming</code> enabled, a
+ * <code>multipart/form-data</code> body is instead parsed as the chunks are
+ * received: the files are written to temporary files and the action gets the
+ * uploads without parsing the body again. A request bigger than
+ * <code>play.netty.maxContentLength</code>, or with a field bigger than
+ * <code>play.netty.multipart.maxFieldSize</code> or a file bigger than
+ * <code>play.netty.multipart.maxFileSize</code>, is then rejected as soon as
+ * the limit is exceeded.
+ * </p>
+ */
 public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
 
     private volatile HttpMessage currentMessage;
@@ -19,6 +43,11 @@ public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
     private final static int maxContentLength = Integer.valueOf(Play.configuration.getProperty("play.netty.maxContentLength", "-1"));
     private volatile File file;
 
+    private final boolean streamMultipart = Boolean.parseBoolean(Play.configuration.getProperty("play.netty.multipart.streaming", "false"));
+    private volatile MultipartStreamParser parser;
+    private volatile long received;
+    private volatile boolean rejected;
+
     /**
      * Creates a new instance.
      */
@@ -32,11 +61,18 @@ public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
             return;
         }
 
+        if (rejected) {
+            // The connection is being closed, ignore the rest of the body
+            return;
+        }
+
         HttpMessage currentMessage = this.currentMessage;
         File localFile = this.file;
         if (currentMessage == null) {
             HttpMessage m = (HttpMessage) msg;
-            if (m.isChunked()) {
+            if (m.isChunked() && isStreamedMultipart(m)) {
+                startMultipart(ctx, (HttpRequest) m);
+            } else if (m.isChunked()) {
                 final String localName = UUID.randomUUID().toString();
                 // A chunked message - remove 'Transfer-Encoding' header,
                 // initialize the cumulative buffer, and wait for incoming chunks.
@@ -52,6 +88,8 @@ public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
                 // Not a chunked message - pass through.
                 ctx.sendUpstream(e);
             }
+        } else if (parser != null) {
+            parseMultipart(ctx, e, (HttpChunk) msg);
         } else {
             // TODO: If less that threshold then in memory
             // Merge the received chunk into the content of the current message.
@@ -80,5 +118,102 @@ public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
         }
 
     }
+
+    private boolean isStreamedMultipart(HttpMessage message) {
+        if (!streamMultipart || !(message instanceof HttpRequest) || Play.tmpDir == null || Play.readOnlyTmp) {
+            return false;
+        }
+        String contentType = message.headers().get(HttpHeaders.Names.CONTENT_TYPE);
+        return contentType != null && contentType.toLowerCase().startsWith("multipart/form-data")
+                && MultipartStreamParser.boundary(contentType) != null;
+    }
+
+    private void startMultipart(ChannelHandlerContext ctx, HttpRequest request) {
+        String length = request.headers().get(HttpHeaders.Names.CONTENT_LENGTH);
+        if (maxContentLength != -1 && length != null && Long.parseLong(length.trim()) > maxContentLength) {
+            reject(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        List<String> encodings = request.headers().getAll(HttpHeaders.Names.TRANSFER_ENCODING);
+        encodings.remove(HttpHeaders.Values.CHUNKED);
+        if (encodings.isEmpty()) {
+            request.headers().remove(HttpHeaders.Names.TRANSFER_ENCODING);
+        }
+        String contentType = request.headers().get(HttpHeaders.Names.CONTENT_TYPE);
+        String encoding = HTTP.parseContentType(contentType).encoding;
+        this.currentMessage = request;
+        this.received = 0;
+        this.parser = new MultipartStreamParser(MultipartStreamParser.boundary(contentType), encoding == null ? Play.defaultWebEncoding : encoding,
+                Long.parseLong(Play.configuration.getProperty("play.netty.multipart.maxFieldSize", "1048576")),
+                Long.parseLong(Play.configuration.getProperty("play.netty.multipart.maxFileSize", "-1")));
+    }
+
+    private void parseMultipart(ChannelHandlerContext ctx, MessageEvent e, HttpChunk chunk) {
+        ChannelBuffer content = chunk.getContent();
+        int length = content.readableBytes();
+        received += length;
+        try {
+            if (maxContentLength != -1 && received > maxContentLength) {
+                throw new MultipartStreamParser.LimitExceededException("The request is bigger than " + maxContentLength + " bytes");
+            }
+            if (content.hasArray()) {
+                parser.feed(content.array(), content.arrayOffset() + content.readerIndex(), length);
+            } else {
+                byte[] bytes = new byte[length];
+                content.getBytes(content.readerIndex(), bytes);
+                parser.feed(bytes, 0, length);
+            }
+            if (chunk.isLast()) {
+                HttpRequest request = new MultipartHttpRequest((HttpRequest) currentMessage, parser.finish(), received);
+                this.parser = null;
+                this.currentMessage = null;
+                Channels.fireMessageReceived(ctx, request, e.getRemoteAddress());
+            }
+        } catch (MultipartStreamParser.LimitExceededException ex) {
+            Logger.debug("Multipart request rejected: %s", ex.getMessage());
+            reject(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+        } catch (IOException ex) {
+            Logger.debug(ex, "Multipart request rejected");
+            reject(ctx, HttpResponseStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Answer with an error without waiting for the rest of the body, and
+     * close the connection.
+     * <p>
+     * The request never went up the pipeline, so the response is encoded here
+     * and written downstream from this handler: the handlers after this one,
+     * like the compression that expects a response per request, never see it.
+     * </p>
+     */
+    private void reject(ChannelHandlerContext ctx, HttpResponseStatus status) {
+        abortMultipart();
+        rejected = true;
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+        response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, "0");
+        EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(new HttpResponseEncoder());
+        encoder.offer(response);
+        encoder.finish();
+        ChannelFuture future = Channels.future(ctx.getChannel());
+        future.addListener(ChannelFutureListener.CLOSE);
+        Channels.write(ctx, future, encoder.poll());
+    }
+
+    private void abortMultipart() {
+        MultipartStreamParser parser = this.parser;
+        if (parser != null) {
+            parser.abort();
+            this.parser = null;
+            this.currentMessage = null;
+        }
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        abortMultipart();
+        super.channelClosed(ctx, e);
+    }
 }
 
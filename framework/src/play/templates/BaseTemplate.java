@@ -65,6 +65,24 @@ public abstract class BaseTemplate extends Template {
         return false;
     }
 
+    /**
+     * Loads the template from the {@link TemplateArchive}.
+     *
+     * @return whether it was in the archive, with the same source.
+     */
+    public boolean loadFromArchive() {
+        try {
+            byte[] bc = TemplateArchive.getBytecode(name, source);
+            if (bc != null) {
+                directLoad(bc);
+                return true;
+            }
+        } catch (Exception e) {
+            Logger.warn(e, "Cannot load %s from the template archive", name);
+        }
+        return false;
+    }
+
     abstract void directLoad(byte[] code) throws Exception;
 
     void throwException(Throwable e) {
@@ -98,6 +116,11 @@ public abstract class BaseTemplate extends Template {
     public static ThreadLocal<Map<Object, Object>> layoutData = new ThreadLocal<Map<Object, Object>>();
     public static ThreadLocal<BaseTemplate> currentTemplate = new ThreadLocal<BaseTemplate>();
 
+    /**
+     * Written by #{doLayout}, then replaced by the body of the layout
+     */
+    static final String LAYOUT_MARKER = "____%LAYOUT%____";
+
     public static class RawData {
 
         public String data;
@@ -327,7 +327,12 @@ public class FastTags {
     }
 
     public static void _doLayout(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
-        out.print("____%LAYOUT%____");
+        StreamingWriter streaming = StreamingWriter.current();
+        if (streaming != null && streaming.layoutBody != null) {
+            out.print(streaming.layoutBody);
+        } else {
+            out.print(BaseTemplate.LAYOUT_MARKER);
+        }
     }
 
     public static void _get(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
@@ -385,6 +390,11 @@ public class FastTags {
                 ct = ct.substring(0, ct.lastIndexOf("/"));
                 name = ct + name.substring(1);
             }
+            StreamingWriter streaming = StreamingWriter.current();
+            if (streaming != null && !streaming.hold()) {
+                throw new TemplateExecutionException(template.template, fromLine, "#{extends} must come before the first "
+                        + StreamingWriter.CHUNK_SIZE + " characters of a streamed template", new TagInternalException("Output already streamed"));
+            }
             BaseTemplate.layout.set((BaseTemplate) TemplateLoader.load(name));
         } catch (TemplateNotFoundException e) {
             throw new TemplateNotFoundException(e.getPath(), template.template, fromLine);
@@ -35,8 +35,10 @@ import play.utils.HTML;
 import play.utils.Java;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.*;
@@ -83,6 +85,7 @@ public class GroovyTemplate extends BaseTemplate {
 
     @SuppressWarnings("unchecked")
     void directLoad(byte[] code) throws Exception {
+        TemplateArchive.record(name, source, code);
         TClassLoader tClassLoader = new TClassLoader();
         String[] lines = new String(code, "utf-8").split("\n");
         this.linesMatrix = (HashMap<Integer, Integer>) Java.deserialize(Codec.decodeBASE64(lines[1]));
@@ -153,7 +156,9 @@ public class GroovyTemplate extends BaseTemplate {
                     sb.append("\n");
                 }
                 // Cache
-                BytecodeCache.cacheBytecode(sb.toString().getBytes("utf-8"), name, source);
+                byte[] bytecode = sb.toString().getBytes("utf-8");
+                BytecodeCache.cacheBytecode(bytecode, name, source);
+                TemplateArchive.record(name, source, bytecode);
                 compiledTemplate = tClassLoader.loadClass(groovyClassesForThisTemplate.get(0).getName());
                 if (System.getProperty("precompile") != null) {
                     try {
@@ -220,17 +225,73 @@ public class GroovyTemplate extends BaseTemplate {
         return binding;
     }
     
+    /**
+     * Renders the template while writing its output to the writer, in chunks.
+     * A template extending a layout is rendered first in memory, then its
+     * layouts are streamed.
+     */
     @Override
-    protected String internalRender(Map<String, Object> args) {
+    public void render(Map<String, Object> args, Writer out) {
+        StreamingWriter writer = new StreamingWriter(out);
+        StreamingWriter.current.set(writer);
+        try {
+            stream(new HashMap<String, Object>(args), writer, null);
+            writer.close();
+        } catch (IOException e) {
+            throw new UnexpectedException(e);
+        } finally {
+            StreamingWriter.current.remove();
+            currentTemplate.remove();
+        }
+    }
+
+    void stream(Map<String, Object> args, StreamingWriter writer, String layoutBody) throws IOException {
         compile();
 
-        Binding binding = this.setUpBindingVariables(args);
-        
-        // If current response-object is present, add _response_encoding'
-        Http.Response currentResponse = Http.Response.current();
-        if (currentResponse != null) {
-            binding.setVariable("_response_encoding", currentResponse.encoding);
+        Binding binding = bind(args);
+        layout.set(null);
+        binding.setProperty("out", new PrintWriter(writer));
+        currentTemplate.set(this);
+        if (!args.containsKey("_body") && !args.containsKey("_isLayout") && !args.containsKey("_isInclude")) {
+            layoutData.set(new HashMap<Object, Object>());
+            TagContext.init();
+        }
+        writer.layoutBody = layoutBody;
+        execute(binding);
+
+        BaseTemplate layoutTemplate = layout.get();
+        if (layoutTemplate != null) {
+            // #{extends} held the output: it is the body of the layout
+            Map<String, Object> layoutArgs = new HashMap<String, Object>(args);
+            layoutArgs.remove("out");
+            layoutArgs.put("_isLayout", true);
+            String body = writer.release();
+            writer.trim();
+            if (layoutTemplate instanceof GroovyTemplate) {
+                ((GroovyTemplate) layoutTemplate).stream(layoutArgs, writer, body);
+            } else {
+                String layoutR = layoutTemplate.internalRender(layoutArgs);
+                int pos = layoutR.indexOf(LAYOUT_MARKER);
+                writer.append(pos >= 0 ? layoutR.substring(0, pos) + body + layoutR.substring(pos + LAYOUT_MARKER.length()) : layoutR);
+            }
         }
+    }
+
+    @Override
+    protected String internalRender(Map<String, Object> args) {
+        if (!args.containsKey("out") && StreamingWriter.current.get() != null) {
+            // A template rendered in memory while another one is streamed
+            StreamingWriter streaming = StreamingWriter.current.get();
+            StreamingWriter.current.remove();
+            try {
+                return internalRender(args);
+            } finally {
+                StreamingWriter.current.set(streaming);
+            }
+        }
+        compile();
+
+        Binding binding = bind(args);
         StringWriter writer = null;
         Boolean applyLayouts = false;
 
@@ -252,6 +313,43 @@ public class GroovyTemplate extends BaseTemplate {
             layoutData.set(new HashMap<Object, Object>());
             TagContext.init();
         }
+        execute(binding);
+        if (applyLayouts && layout.get() != null) {
+            Map<String, Object> layoutArgs = new HashMap<String, Object>(args);
+            layoutArgs.remove("out");
+            layoutArgs.put("_isLayout", true);
+            String layoutR = layout.get().internalRender(layoutArgs);
+
+            // Must replace '____%LAYOUT%____' inside the string layoutR with the content from writer..
+            final int pos = layoutR.indexOf(LAYOUT_MARKER);
+            if (pos >=0) {
+                // prepending and appending directly to writer/buffer to prevent us
+                // from having to duplicate the string.
+                // this makes us use half of the memory!
+                writer.getBuffer().insert(0,layoutR.substring(0,pos));
+                writer.append(layoutR.substring(pos+LAYOUT_MARKER.length()));
+                return writer.toString().trim();
+            }
+            return layoutR;
+        }
+        if (writer != null) {
+            return writer.toString();
+        }
+        return null;
+    }
+
+    private Binding bind(Map<String, Object> args) {
+        Binding binding = this.setUpBindingVariables(args);
+
+        // If current response-object is present, add _response_encoding'
+        Http.Response currentResponse = Http.Response.current();
+        if (currentResponse != null) {
+            binding.setVariable("_response_encoding", currentResponse.encoding);
+        }
+        return binding;
+    }
+
+    private void execute(Binding binding) {
         ExecutableTemplate t = (ExecutableTemplate) InvokerHelper.createScript(compiledTemplate, binding);
         t.init(this);
         Monitor monitor = null;
@@ -289,29 +387,6 @@ public class GroovyTemplate extends BaseTemplate {
                 monitor.stop();
             }
         }
-        if (applyLayouts && layout.get() != null) {
-            Map<String, Object> layoutArgs = new HashMap<String, Object>(args);
-            layoutArgs.remove("out");
-            layoutArgs.put("_isLayout", true);
-            String layoutR = layout.get().internalRender(layoutArgs);
-
-            // Must replace '____%LAYOUT%____' inside the string layoutR with the content from writer..
-            final String whatToFind = "____%LAYOUT%____";
-            final int pos = layoutR.indexOf(whatToFind);
-            if (pos >=0) {
-                // prepending and appending directly to writer/buffer to prevent us
-                // from having to duplicate the string.
-                // this makes us use half of the memory!
-                writer.getBuffer().insert(0,layoutR.substring(0,pos));
-                writer.append(layoutR.substring(pos+whatToFind.length()));
-                return writer.toString().trim();
-            }
-            return layoutR;
-        }
-        if (writer != null) {
-            return writer.toString();
-        }
-        return null;
     }
 
     protected Throwable cleanStackTrace(Throwable e) {
@@ -460,6 +535,31 @@ public class GroovyTemplate extends BaseTemplate {
             return (val != null) ? val.toString() : "";
         }
 
+        /**
+         * Prints a value like <code>out.print(__safeFaster(val))</code>, but
+         * HTML values are escaped straight to the output
+         */
+        public void __safePrint(Writer out, Object val) throws IOException {
+            if (val instanceof RawData) {
+                out.write(((RawData) val).data);
+                return;
+            }
+            if (extension != null) {
+                SafeFormatter formatter = safeFormatters.get(extension);
+                if (formatter != null && formatter.getClass() == SafeHTMLFormatter.class && val != null && !TagContext.hasParentTag("verbatim")) {
+                    HTML.htmlEscape(val.toString(), out);
+                    return;
+                }
+                if (formatter != null) {
+                    out.write(String.valueOf(formatter.format(template, val)));
+                    return;
+                }
+            }
+            if (val != null) {
+                out.write(val.toString());
+            }
+        }
+
         public String __getMessage(Object[] val) {
             if (val==null) {
                 throw new NullPointerException("You are trying to resolve a message with an expression " +
@@ -20,7 +20,7 @@ import java.util.regex.Pattern;
  */
 public class GroovyTemplateCompiler extends TemplateCompiler {
 
-    public static List<String> extensionsClassnames = new ArrayList<String>();
+    public static volatile List<String> extensionsClassnames = new ArrayList<String>();
 
     // [#714] The groovy-compiler complaints if a line is more than 65535 unicode units long..
     // Have to split it if it is really that big
@@ -30,12 +30,13 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
     @Override
     public BaseTemplate compile(BaseTemplate template) {
         try {
-            extensionsClassnames.clear();
-            extensionsClassnames.addAll( Play.pluginCollection.addTemplateExtensions());
+            // A new list, as templates can be compiled in parallel
+            List<String> classnames = new ArrayList<String>(Play.pluginCollection.addTemplateExtensions());
             List<Class> extensionsClasses = Play.classloader.getAssignableClasses(JavaExtensions.class);
             for (Class extensionsClass : extensionsClasses) {
-                extensionsClassnames.add(extensionsClass.getName());
+                classnames.add(extensionsClass.getName());
             }
+            extensionsClassnames = classnames;
         } catch (Throwable e) {
             //
         }
@@ -222,7 +223,7 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
     @Override
     protected void expr() {
         String expr = parser.getToken().trim();
-        print(";out.print(__safeFaster("+expr+"))");
+        print(";__safePrint(out, "+expr+")");
         markLine(parser.getLine());
         println();
     }
@@ -0,0 +1,161 @@
+package play.templates;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The output of a template rendered with {@link Template#render(java.util.Map, Writer)}.
+ * <p>
+ * The output is buffered, and written then flushed to the underlying writer
+ * every {@link #CHUNK_SIZE} characters. A template extending a layout is
+ * rendered first in memory, since the layout needs its <code>#{set}</code>
+ * values, and then the layout is streamed with the body inserted by
+ * <code>#{doLayout}</code>. A tag that needs the whole output can call
+ * {@link #buffer()} to write it all at once when the rendering ends.
+ * </p>
+ */
+public class StreamingWriter extends Writer {
+
+    static final int CHUNK_SIZE = 8192;
+
+    static final ThreadLocal<StreamingWriter> current = new ThreadLocal<StreamingWriter>();
+
+    private final Writer out;
+    private final StringBuilder buffer = new StringBuilder(CHUNK_SIZE);
+    private boolean streamed;
+    private boolean held;
+    private boolean buffered;
+    private boolean trim;
+    String layoutBody;
+
+    public StreamingWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * @return the writer of the template being streamed by this thread, or
+     *         null.
+     */
+    public static StreamingWriter current() {
+        return current.get();
+    }
+
+    /**
+     * Stops streaming: the rest of the output is written when the rendering
+     * ends.
+     *
+     * @return whether nothing was written yet, so that the whole output is
+     *         buffered.
+     */
+    public boolean buffer() {
+        buffered = true;
+        return !streamed;
+    }
+
+    /**
+     * Keeps the output in memory until it is released, to render the body
+     * of a layout.
+     *
+     * @return false if some output was already written.
+     */
+    boolean hold() {
+        if (streamed) {
+            return false;
+        }
+        held = true;
+        return true;
+    }
+
+    /**
+     * @return the output held since {@link #hold()}, which is then forgotten.
+     */
+    String release() {
+        String content = buffer.toString();
+        buffer.setLength(0);
+        held = false;
+        return content;
+    }
+
+    /**
+     * Strips the leading and trailing whitespace of the output, as layouts
+     * do.
+     */
+    void trim() {
+        trim = true;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        buffer.append((char) c);
+        if (buffer.length() >= CHUNK_SIZE) {
+            stream(false);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        buffer.append(cbuf, off, len);
+        if (buffer.length() >= CHUNK_SIZE) {
+            stream(false);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        buffer.append(str, off, off + len);
+        if (buffer.length() >= CHUNK_SIZE) {
+            stream(false);
+        }
+    }
+
+    private void stream(boolean last) throws IOException {
+        if (held || (buffered && !last)) {
+            return;
+        }
+        int start = 0;
+        int end = buffer.length();
+        if (trim) {
+            if (!streamed) {
+                while (start < end && buffer.charAt(start) <= ' ') {
+                    start++;
+                }
+            }
+            // Trailing whitespace is only written if more output follows
+            while (end > start && buffer.charAt(end - 1) <= ' ') {
+                end--;
+            }
+        }
+        if (!last && end > start && Character.isHighSurrogate(buffer.charAt(end - 1))) {
+            end--;
+        }
+        if (end > start) {
+            out.write(buffer.substring(start, end));
+            if (!last) {
+                out.flush();
+            }
+            streamed = true;
+        }
+        if (last) {
+            buffer.setLength(0);
+        } else {
+            buffer.delete(0, end);
+        }
+    }
+
+    /**
+     * Templates flushing their output don't force a chunk.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Writes the rest of the output and closes the underlying writer.
+     */
+    @Override
+    public void close() throws IOException {
+        held = false;
+        stream(true);
+        out.close();
+    }
+}
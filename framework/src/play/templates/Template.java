@@ -1,8 +1,12 @@
 package play.templates;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
+import play.exceptions.UnexpectedException;
+
 public abstract class Template {
 
     public String name;
@@ -27,6 +31,22 @@ public abstract class Template {
     }
 
 
+    /**
+     * Renders the template to a writer, which is closed at the end. This
+     * implementation renders the whole template first; templates that can
+     * write their output while rendering override it.
+     * @param args map containing data binding info
+     * @param out the writer
+     */
+    public void render(Map<String, Object> args, Writer out) {
+        try {
+            out.write(render(args));
+            out.close();
+        } catch (IOException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
     /**
      * The internal rendering method - When one templated calls another template,
      * this method is used. The input args-map is constantly being modified, as different
@@ -0,0 +1,192 @@
+package play.templates;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import play.Logger;
+import play.Play;
+import play.classloading.BytecodeCache;
+import play.exceptions.UnexpectedException;
+
+/**
+ * An archive of compiled templates, written by <code>play precompile</code>,
+ * or at startup with <code>play.templates.archive.write=true</code> when it is
+ * missing, and loaded when the application starts in PROD mode.
+ * <p>
+ * The archive is a zip file, <code>precompiled/templates.zip</code> by default
+ * (<code>play.templates.archive</code>), holding the same bytecode as the
+ * bytecode cache for each template, with the hash of its source. A template
+ * is only loaded from the archive if its source did not change, so the
+ * archive can be shared by all the nodes running the same application. An
+ * archive written by another version of Play is ignored.
+ * </p>
+ */
+public class TemplateArchive {
+
+    static final String VERSION_ENTRY = "META-INF/play-templates";
+    static final String FORMAT = "1";
+
+    private static volatile Map<String, byte[]> entries = Collections.emptyMap();
+    private static volatile Map<String, byte[]> recorded;
+
+    public static File file() {
+        return Play.getFile(Play.configuration.getProperty("play.templates.archive", "precompiled/templates.zip"));
+    }
+
+    static String version() {
+        return FORMAT + "\n" + Play.version;
+    }
+
+    /**
+     * Loads the archive, if there is one.
+     *
+     * @return whether an archive was loaded.
+     */
+    public static boolean load() {
+        return load(file());
+    }
+
+    public static boolean load(File file) {
+        if (file == null || !file.exists()) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        Map<String, byte[]> loaded = new HashMap<String, byte[]>();
+        String version = null;
+        ZipInputStream in = null;
+        try {
+            in = new ZipInputStream(new FileInputStream(file));
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                byte[] content = IOUtils.toByteArray(in);
+                if (VERSION_ENTRY.equals(entry.getName())) {
+                    version = new String(content, "utf-8");
+                } else {
+                    loaded.put(entry.getName(), content);
+                }
+            }
+        } catch (IOException e) {
+            Logger.warn(e, "Cannot read the template archive %s", file);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        if (!version().equals(version)) {
+            Logger.warn("Ignoring the template archive %s, written by another version of Play", file);
+            return false;
+        }
+        entries = loaded;
+        if (Logger.isTraceEnabled()) {
+            Logger.trace("%sms to load %d templates from %s", System.currentTimeMillis() - start, loaded.size(), file);
+        }
+        return true;
+    }
+
+    public static void clear() {
+        entries = Collections.emptyMap();
+    }
+
+    /**
+     * @return the bytecode of the template, or null if it is not in the
+     *         archive or its source changed.
+     */
+    public static byte[] getBytecode(String name, String source) {
+        byte[] entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        int separator = 0;
+        while (separator < entry.length && entry[separator] != 0) {
+            separator++;
+        }
+        try {
+            if (separator == entry.length || !BytecodeCache.hash(source).equals(new String(entry, 0, separator, "utf-8"))) {
+                return null;
+            }
+        } catch (IOException e) {
+            throw new UnexpectedException(e);
+        }
+        byte[] bytecode = new byte[entry.length - separator - 1];
+        System.arraycopy(entry, separator + 1, bytecode, 0, bytecode.length);
+        return bytecode;
+    }
+
+    /**
+     * Records the bytecode of the templates compiled or loaded from now on,
+     * until they are written.
+     */
+    public static void record() {
+        recorded = new ConcurrentHashMap<String, byte[]>();
+    }
+
+    static void record(String name, String source, byte[] bytecode) {
+        Map<String, byte[]> recording = recorded;
+        if (recording == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream entry = new ByteArrayOutputStream(bytecode.length + 40);
+            entry.write(BytecodeCache.hash(source).getBytes("utf-8"));
+            entry.write(0);
+            entry.write(bytecode);
+            recording.put(name, entry.toByteArray());
+        } catch (IOException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    /**
+     * Writes the recorded templates to the archive.
+     *
+     * @return the number of templates written.
+     */
+    public static int write() {
+        return write(file());
+    }
+
+    public static int write(File file) {
+        Map<String, byte[]> recording = recorded;
+        recorded = null;
+        if (recording == null) {
+            return 0;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        ZipOutputStream out = null;
+        try {
+            out = new ZipOutputStream(new FileOutputStream(tmp));
+            out.putNextEntry(new ZipEntry(VERSION_ENTRY));
+            out.write(version().getBytes("utf-8"));
+            out.closeEntry();
+            for (Map.Entry<String, byte[]> entry : new TreeMap<String, byte[]>(recording).entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+        } catch (IOException e) {
+            throw new UnexpectedException("Cannot write the template archive " + file, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        Logger.info("%d templates written to %s", recording.size(), file);
+        return recording.size();
+    }
+}
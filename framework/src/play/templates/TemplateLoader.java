@@ -1,29 +1,50 @@
 package play.templates;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.Collections;
 
 import play.Logger;
 import play.Play;
 import play.vfs.VirtualFile;
 import play.exceptions.TemplateCompilationException;
 import play.exceptions.TemplateNotFoundException;
+import play.exceptions.UnexpectedException;
 
 /**
  * Load templates
+ * <p>
+ * The loaded templates are registered in concurrent maps, so that looking up
+ * a compiled template does not lock. A template is compiled once even if
+ * several threads load it at the same time, and its file is only checked for
+ * changes in DEV mode.
+ * </p>
  */
 public class TemplateLoader {
 
-    protected static Map<String, BaseTemplate> templates = new HashMap<String, BaseTemplate>();
+    protected static Map<String, BaseTemplate> templates = new ConcurrentHashMap<String, BaseTemplate>();
     /**
      * See getUniqueNumberForTemplateFile() for more info
      */
     private static AtomicLong nextUniqueNumber = new AtomicLong(1000);//we start on 1000
-    private static Map<String, String> templateFile2UniqueNumber = Collections.synchronizedMap(new HashMap<String, String>());
+    private static ConcurrentMap<String, String> templateFile2UniqueNumber = new ConcurrentHashMap<String, String>();
+    /**
+     * The templates being compiled, by key
+     */
+    private static ConcurrentMap<String, FutureTask<BaseTemplate>> compiling = new ConcurrentHashMap<String, FutureTask<BaseTemplate>>();
+    /**
+     * The files of the templates found by path, in PROD mode
+     */
+    private static ConcurrentMap<String, VirtualFile> resolved = new ConcurrentHashMap<String, VirtualFile>();
 
     /**
      * All loaded templates is cached in the templates-list using a key.
@@ -46,7 +67,10 @@ public class TemplateLoader {
         if (uniqueNumber == null) {
             //this is the first time we see this path - must assign a unique number to it.
             uniqueNumber = Long.toString(nextUniqueNumber.getAndIncrement());
-            templateFile2UniqueNumber.put(path, uniqueNumber);
+            String assigned = templateFile2UniqueNumber.putIfAbsent(path, uniqueNumber);
+            if (assigned != null) {
+                return assigned;
+            }
         }
         return uniqueNumber;
     }
@@ -56,7 +80,7 @@ public class TemplateLoader {
      * @param file A VirtualFile
      * @return The executable template
      */
-    public static Template load(VirtualFile file) {
+    public static Template load(final VirtualFile file) {
         // Try with plugin
         Template pluginProvided = Play.pluginCollection.loadTemplate(file);
         if (pluginProvided != null) {
@@ -66,33 +90,89 @@ public class TemplateLoader {
         // Use default engine
         final String fileRelativePath = file.relativePath();
         final String key = getUniqueNumberForTemplateFile(fileRelativePath);
-        if (!templates.containsKey(key) || templates.get(key).compiledTemplate == null) {
-            if (Play.usePrecompiled) {
-                BaseTemplate template = new GroovyTemplate(fileRelativePath.replaceAll("\\{(.*)\\}", "from_$1").replace(":", "_").replace("..", "parent"), "");
-                try {
-                    template.loadPrecompiled();
+        BaseTemplate template = templates.get(key);
+        if (template == null || template.compiledTemplate == null) {
+            template = compileOnce(key, new Callable<BaseTemplate>() {
+                public BaseTemplate call() {
+                    return loadTemplate(file);
+                }
+            });
+        } else if (Play.mode == Play.Mode.DEV && template.timestamp < file.lastModified()) {
+            template = compileOnce(key, new Callable<BaseTemplate>() {
+                public BaseTemplate call() {
+                    return new GroovyTemplateCompiler().compile(file);
+                }
+            });
+        }
+        if (template == null) {
+            throw new TemplateNotFoundException(fileRelativePath);
+        }
+        return template;
+    }
+
+    /**
+     * Compiles a template and registers it, unless another thread is
+     * compiling it already: then waits for its template.
+     * @param key The template key
+     * @param compiler Compiles the template
+     * @return The compiled template
+     */
+    static BaseTemplate compileOnce(final String key, final Callable<BaseTemplate> compiler) {
+        FutureTask<BaseTemplate> task = new FutureTask<BaseTemplate>(new Callable<BaseTemplate>() {
+            public BaseTemplate call() throws Exception {
+                BaseTemplate template = compiler.call();
+                if (template != null) {
                     templates.put(key, template);
-                    return template;
-                } catch(Exception e) {
-                    Logger.warn("Precompiled template %s not found, trying to load it dynamically...", file.relativePath());
                 }
+                return template;
             }
-            BaseTemplate template = new GroovyTemplate(fileRelativePath, file.contentAsString());
-            if (template.loadFromCache()) {
-                templates.put(key, template);
-            } else {
-                templates.put(key, new GroovyTemplateCompiler().compile(file));
+        });
+        FutureTask<BaseTemplate> running = compiling.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                compiling.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-        } else {
-            BaseTemplate template = templates.get(key);
-            if (Play.mode == Play.Mode.DEV && template.timestamp < file.lastModified()) {
-                templates.put(key, new GroovyTemplateCompiler().compile(file));
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
+            throw new UnexpectedException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new UnexpectedException(e);
         }
-        if (templates.get(key) == null) {
-            throw new TemplateNotFoundException(fileRelativePath);
+    }
+
+    /**
+     * Load the template of a file from the precompiled templates, the template
+     * archive or the bytecode cache, or else parse it
+     * @param file A VirtualFile
+     * @return The template, not registered
+     */
+    static BaseTemplate loadTemplate(VirtualFile file) {
+        final String fileRelativePath = file.relativePath();
+        if (Play.usePrecompiled) {
+            BaseTemplate template = new GroovyTemplate(fileRelativePath.replaceAll("\\{(.*)\\}", "from_$1").replace(":", "_").replace("..", "parent"), "");
+            try {
+                template.loadPrecompiled();
+                return template;
+            } catch(Exception e) {
+                Logger.warn("Precompiled template %s not found, trying to load it dynamically...", file.relativePath());
+            }
         }
-        return templates.get(key);
+        BaseTemplate template = new GroovyTemplate(fileRelativePath, file.contentAsString());
+        if (template.loadFromArchive() || template.loadFromCache()) {
+            return template;
+        }
+        return new GroovyTemplateCompiler().compile(file);
     }
 
     /**
@@ -101,24 +181,30 @@ public class TemplateLoader {
      * @param source The template source
      * @return A Template
      */
-    public static BaseTemplate load(String key, String source) {
-        if (!templates.containsKey(key) || templates.get(key).compiledTemplate == null) {
-            BaseTemplate template = new GroovyTemplate(key, source);
-            if (template.loadFromCache()) {
-                templates.put(key, template);
-            } else {
-                templates.put(key, new GroovyTemplateCompiler().compile(template));
-            }
-        } else {
-            BaseTemplate template = new GroovyTemplate(key, source);
-            if (Play.mode == Play.Mode.DEV) {
-                templates.put(key, new GroovyTemplateCompiler().compile(template));
-            }
+    public static BaseTemplate load(String key, final String source) {
+        BaseTemplate template = templates.get(key);
+        if (template == null || template.compiledTemplate == null) {
+            final BaseTemplate toCompile = new GroovyTemplate(key, source);
+            template = compileOnce(key, new Callable<BaseTemplate>() {
+                public BaseTemplate call() {
+                    if (toCompile.loadFromCache()) {
+                        return toCompile;
+                    }
+                    return new GroovyTemplateCompiler().compile(toCompile);
+                }
+            });
+        } else if (Play.mode == Play.Mode.DEV) {
+            final BaseTemplate toCompile = new GroovyTemplate(key, source);
+            template = compileOnce(key, new Callable<BaseTemplate>() {
+                public BaseTemplate call() {
+                    return new GroovyTemplateCompiler().compile(toCompile);
+                }
+            });
         }
-        if (templates.get(key) == null) {
+        if (template == null) {
             throw new TemplateNotFoundException(key);
         }
-        return templates.get(key);
+        return template;
     }
 
     /**
@@ -148,6 +234,7 @@ public class TemplateLoader {
      */
     public static void cleanCompiledCache() {
         templates.clear();
+        resolved.clear();
     }
 
     /**
@@ -164,6 +251,10 @@ public class TemplateLoader {
      * @return The executable template
      */
     public static Template load(String path) {
+        VirtualFile file = resolved.get(path);
+        if (file != null) {
+            return TemplateLoader.load(file);
+        }
         Template template = null;
         for (VirtualFile vf : Play.templatesPath) {
             if (vf == null) {
@@ -177,6 +268,7 @@ public class TemplateLoader {
             }
             if (templateExists) {
                 template = TemplateLoader.load(tf);
+                file = tf;
                 break;
             }
         }
@@ -195,10 +287,15 @@ public class TemplateLoader {
             VirtualFile tf = Play.getVirtualFile(path);
             if (tf != null && tf.exists()) {
                 template = TemplateLoader.load(tf);
+                file = tf;
             } else {
                 throw new TemplateNotFoundException(path);
             }
         }
+        if (Play.mode == Play.Mode.PROD) {
+            // Files are not added nor removed in PROD mode
+            resolved.put(path, file);
+        }
         return template;
     }
 
@@ -207,42 +304,118 @@ public class TemplateLoader {
      * @return A list of executable templates
      */
     public static List<Template> getAllTemplate() {
-        List<Template> res = new ArrayList<Template>();
+        List<VirtualFile> files = new ArrayList<VirtualFile>();
         for (VirtualFile virtualFile : Play.templatesPath) {
-            scan(res, virtualFile);
+            scan(files, virtualFile);
         }
+        List<Template> res = compileAll(files, warmupThreads());
+        List<VirtualFile> routes = new ArrayList<VirtualFile>();
         for (VirtualFile root : Play.roots) {
             VirtualFile vf = root.child("conf/routes");
             if (vf != null && vf.exists()) {
-                Template template = load(vf);
-                if (template != null) {
-                    template.compile();
-                }
+                routes.add(vf);
             }
         }
+        compileAll(routes, 1);
         return res;
     }
 
-    private static void scan(List<Template> templates, VirtualFile current) {
+    /**
+     * The number of threads compiling the templates at startup: the number of
+     * processors when precompiling or with
+     * <code>play.templates.warmup=parallel</code>, else 1.
+     */
+    static int warmupThreads() {
+        if (System.getProperty("precompile") != null || "parallel".equals(Play.configuration.getProperty("play.templates.warmup"))) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return 1;
+    }
+
+    private static void scan(List<VirtualFile> files, VirtualFile current) {
         if (!current.isDirectory() && !current.getName().startsWith(".")) {
-            long start = System.currentTimeMillis();
-            Template template = load(current);
-            if (template != null) {
-                try {
-                    template.compile();
+            files.add(current);
+        } else if (!current.getName().startsWith(".")) {
+            for (VirtualFile virtualFile : current.list()) {
+                scan(files, virtualFile);
+            }
+        }
+    }
+
+    /**
+     * Load and compile the templates of the files, in parallel if there are
+     * several threads. The templates are registered by the calling thread.
+     */
+    static List<Template> compileAll(List<VirtualFile> files, int threads) {
+        List<Template> res = new ArrayList<Template>(files.size());
+        if (threads <= 1 || files.size() <= 1) {
+            for (VirtualFile file : files) {
+                long start = System.currentTimeMillis();
+                Template template = load(file);
+                if (template != null) {
+                    compile(template);
                     if (Logger.isTraceEnabled()) {
-                        Logger.trace("%sms to load %s", System.currentTimeMillis() - start, current.getName());
+                        Logger.trace("%sms to load %s", System.currentTimeMillis() - start, file.getName());
                     }
-                } catch (TemplateCompilationException e) {
-                    Logger.error("Template %s does not compile at line %d", e.getTemplate().name, e.getLineNumber());
-                    throw e;
+                    res.add(template);
                 }
-                templates.add(template);
             }
-        } else if (!current.getName().startsWith(".")) {
-            for (VirtualFile virtualFile : current.list()) {
-                scan(templates, virtualFile);
+            return res;
+        }
+
+        final ClassLoader classLoader = Play.classloader;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Object> loaded = new ArrayList<Object>(files.size());
+            for (final VirtualFile file : files) {
+                Template pluginProvided = Play.pluginCollection.loadTemplate(file);
+                BaseTemplate registered = templates.get(getUniqueNumberForTemplateFile(file.relativePath()));
+                if (pluginProvided != null || (registered != null && registered.compiledTemplate != null)) {
+                    loaded.add(file);
+                    continue;
+                }
+                loaded.add(executor.submit(new Callable<BaseTemplate>() {
+                    public BaseTemplate call() {
+                        Thread.currentThread().setContextClassLoader(classLoader);
+                        BaseTemplate template = loadTemplate(file);
+                        compile(template);
+                        return template;
+                    }
+                }));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                Object template = loaded.get(i);
+                if (template instanceof Future) {
+                    BaseTemplate compiled = (BaseTemplate) ((Future<?>) template).get();
+                    templates.put(getUniqueNumberForTemplateFile(files.get(i).relativePath()), compiled);
+                    res.add(compiled);
+                } else {
+                    Template t = load(files.get(i));
+                    if (t != null) {
+                        compile(t);
+                        res.add(t);
+                    }
+                }
             }
+            return res;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new UnexpectedException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new UnexpectedException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void compile(Template template) {
+        try {
+            template.compile();
+        } catch (TemplateCompilationException e) {
+            Logger.error("Template %s does not compile at line %d", e.getTemplate().name, e.getLineNumber());
+            throw e;
         }
     }
 }
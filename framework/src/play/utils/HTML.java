@@ -2,6 +2,7 @@ package play.utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,6 +40,17 @@ public class HTML {
      */
     private static final HtmlCharacterEntityReferences characterEntityReferences = new HtmlCharacterEntityReferences();
 
+    /*
+     * The reference of each character that has one, by character.
+     */
+    private static final String[] references = new String[10000];
+
+    static {
+        for (char c = 0; c < references.length; c++) {
+            references[c] = characterEntityReferences.convertToReference(c);
+        }
+    }
+
     /**
      * Turn special characters into HTML character references.
      * Handles complete character set defined in HTML 4.01 recommendation.
@@ -49,23 +61,64 @@ public class HTML {
      * http://www.w3.org/TR/html4/sgml/entities.html
      * </a>
      * @param input the (unescaped) input string
-     * @return the escaped string
+     * @return the escaped string, or the input itself if nothing had to be escaped
      */
     public static String htmlEscape(String input) {
         if (input == null) {
             return null;
         }
-        StringBuffer escaped = new StringBuffer(input.length() * 2);
+        int first = firstReference(input);
+        if (first < 0) {
+            return input;
+        }
+        StringBuilder escaped = new StringBuilder(input.length() + 32);
+        int start = 0;
+        for (int i = first; i < input.length(); i++) {
+            char character = input.charAt(i);
+            if (character < references.length && references[character] != null) {
+                escaped.append(input, start, i).append(references[character]);
+                start = i + 1;
+            }
+        }
+        return escaped.append(input, start, input.length()).toString();
+    }
+
+    /**
+     * Writes the input with its special characters turned into HTML
+     * character references, like {@link #htmlEscape(String)}, without
+     * building the escaped string.
+     * @param input the (unescaped) input string
+     * @param out where the escaped input is written
+     */
+    public static void htmlEscape(String input, Writer out) throws IOException {
+        int first = firstReference(input);
+        if (first < 0) {
+            out.write(input);
+            return;
+        }
+        int start = 0;
+        for (int i = first; i < input.length(); i++) {
+            char character = input.charAt(i);
+            if (character < references.length && references[character] != null) {
+                out.write(input, start, i - start);
+                out.write(references[character]);
+                start = i + 1;
+            }
+        }
+        out.write(input, start, input.length() - start);
+    }
+
+    /**
+     * @return the index of the first character to escape, or -1.
+     */
+    private static int firstReference(String input) {
         for (int i = 0; i < input.length(); i++) {
             char character = input.charAt(i);
-            String reference = characterEntityReferences.convertToReference(character);
-            if (reference != null) {
-                escaped.append(reference);
-            } else {
-                escaped.append(character);
+            if (character < references.length && references[character] != null) {
+                return i;
             }
         }
-        return escaped.toString();
+        return -1;
     }
 
     public static class HtmlCharacterEntityReferences {
@@ -0,0 +1,326 @@
+package play.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import play.Logger;
+import play.Play;
+
+/**
+ * A scheduled executor running each task on a new thread, typically a
+ * virtual thread (see {@link #virtualThreadFactory(String)}).
+ * <p>
+ * The scheduler threads only wait for the delayed tasks and start them. The
+ * periodic tasks are run one at a time: the scheduler thread waits for the
+ * end of each run before planning the next one. At most
+ * <code>maxConcurrency</code> tasks run at the same time (-1 for no maximum),
+ * the next ones wait for a running task to complete.
+ * </p>
+ */
+public class ThreadPerTaskExecutor extends ScheduledThreadPoolExecutor {
+
+    private static Boolean virtualThreadsSupported;
+
+    private final ThreadFactory taskThreads;
+    private final int maxConcurrency;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<Runnable>();
+    private final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    /**
+     * @param schedulerThreads
+     *            The number of platform threads waiting for the delayed tasks
+     * @param name
+     *            The name of the threads
+     * @param maxConcurrency
+     *            The maximum number of tasks running at the same time, -1 for
+     *            no maximum
+     * @param taskThreads
+     *            The factory of the threads running the tasks
+     */
+    public ThreadPerTaskExecutor(int schedulerThreads, String name, int maxConcurrency, ThreadFactory taskThreads) {
+        super(schedulerThreads, new PThreadFactory(name + "-scheduler"), new ThreadPoolExecutor.AbortPolicy());
+        this.taskThreads = taskThreads;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return true if <code>play.pool.virtual</code> is set and the JVM
+     *         supports virtual threads.
+     */
+    public static boolean useVirtualThreads() {
+        if (!Boolean.parseBoolean(Play.configuration.getProperty("play.pool.virtual", "false"))) {
+            return false;
+        }
+        boolean checked = virtualThreadsSupported != null;
+        if (virtualThreadFactory("play") == null) {
+            if (!checked) {
+                Logger.warn("play.pool.virtual is set but Java %s has no virtual threads, thread pools are used", System.getProperty("java.version"));
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a factory of virtual threads named after the name, or null if
+     *         the JVM has no virtual threads.
+     */
+    public static ThreadFactory virtualThreadFactory(String name) {
+        if (Boolean.FALSE.equals(virtualThreadsSupported)) {
+            return null;
+        }
+        try {
+            // Thread.ofVirtual().name(name + "-virtual-", 1).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-virtual-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            virtualThreadsSupported = true;
+            return factory;
+        } catch (Exception e) {
+            // Before Java 21, or a preview feature not enabled
+            virtualThreadsSupported = false;
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of running tasks.
+     */
+    @Override
+    public int getActiveCount() {
+        return running.get();
+    }
+
+    /**
+     * @return the number of tasks waiting for a running task to complete.
+     */
+    public int getWaitingCount() {
+        return waiting.size();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return completed.get();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        start(command);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        FutureTask<Object> future = new FutureTask<Object>(task, null);
+        start(future);
+        return future;
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        FutureTask<T> future = new FutureTask<T>(task, result);
+        start(future);
+        return future;
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<T>(task);
+        start(future);
+        return future;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(new FutureTask<Object>(command, null), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return schedule(new FutureTask<V>(callable), delay, unit);
+    }
+
+    private <V> ScheduledFuture<V> schedule(final FutureTask<V> task, long delay, TimeUnit unit) {
+        ScheduledFuture<?> timer = super.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                start(task);
+            }
+        }, delay, unit);
+        return new ScheduledTask<V>(timer, task);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return super.scheduleAtFixedRate(runAndWait(command), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return super.scheduleWithFixedDelay(runAndWait(command), initialDelay, delay, unit);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = new ArrayList<Runnable>(super.shutdownNow());
+        for (Runnable task = waiting.poll(); task != null; task = waiting.poll()) {
+            tasks.add(task);
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return tasks;
+    }
+
+    /**
+     * Run a periodic task on its own thread, the scheduler thread waiting for
+     * its end.
+     */
+    private Runnable runAndWait(final Runnable command) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                FutureTask<Object> task = new FutureTask<Object>(command, null);
+                running.incrementAndGet();
+                launch(task);
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    task.cancel(true);
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // Stops the next runs, as with a thread pool
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        };
+    }
+
+    private void start(Runnable task) {
+        if (isShutdown()) {
+            throw new RejectedExecutionException("The executor is shut down");
+        }
+        if (maxConcurrency == -1) {
+            running.incrementAndGet();
+            launch(task);
+        } else {
+            waiting.offer(task);
+            startWaitingTasks();
+        }
+    }
+
+    private void startWaitingTasks() {
+        while (!waiting.isEmpty()) {
+            int count = running.get();
+            if (count >= maxConcurrency) {
+                return;
+            }
+            if (!running.compareAndSet(count, count + 1)) {
+                continue;
+            }
+            Runnable task = waiting.poll();
+            if (task == null) {
+                running.decrementAndGet();
+            } else {
+                launch(task);
+            }
+        }
+    }
+
+    /**
+     * Start a thread for the task, already counted as running.
+     */
+    private void launch(final Runnable task) {
+        Thread thread = taskThreads.newThread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    threads.remove(Thread.currentThread());
+                    completed.incrementAndGet();
+                    running.decrementAndGet();
+                    if (maxConcurrency != -1) {
+                        startWaitingTasks();
+                    }
+                }
+            }
+        });
+        threads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * A delayed task: its delay is the one of the timer, its result the one
+     * of the task.
+     */
+    static class ScheduledTask<V> implements ScheduledFuture<V> {
+
+        private final ScheduledFuture<?> timer;
+        private final FutureTask<V> task;
+
+        ScheduledTask(ScheduledFuture<?> timer, FutureTask<V> task) {
+            this.timer = timer;
+            this.task = task;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return timer.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return timer.compareTo(o);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            timer.cancel(false);
+            return task.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return task.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return task.isDone();
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            return task.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return task.get(timeout, unit);
+        }
+    }
+}
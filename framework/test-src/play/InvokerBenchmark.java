@@ -0,0 +1,146 @@
+package play;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import play.Invoker.InvocationContext;
+import play.Invoker.Suspend;
+import play.mvc.Http.Request;
+import play.mvc.Scope.Session;
+import play.utils.PThreadFactory;
+import play.utils.ThreadPerTaskExecutor;
+
+/**
+ * Load test of the invoker on an action blocked 20ms on I/O: the default pool
+ * of platform threads against a virtual thread per invocation
+ * (<code>play.pool.virtual</code>, Java 21+). One invocation out of ten is
+ * suspended once, and each one checks that its request and session thread
+ * locals survive the blocking call and the suspension. Run it with
+ * <code>java -cp ... play.InvokerBenchmark [invocations] [platform threads]</code>.
+ */
+public class InvokerBenchmark {
+
+    private static final long BLOCKING_IO_MILLIS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int invocations = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        Play.configuration = new Properties();
+
+        ThreadFactory virtual = ThreadPerTaskExecutor.virtualThreadFactory("bench");
+        if (virtual == null) {
+            System.out.println("No virtual threads in Java " + System.getProperty("java.version") + ", using a platform thread per invocation");
+        }
+        ThreadFactory perTask = virtual != null ? virtual : new PThreadFactory("bench");
+
+        ScheduledThreadPoolExecutor executor = Invoker.executor;
+        Invoker.Pool pool = Invoker.defaultPool;
+        try {
+            // Warm-up
+            run(new ScheduledThreadPoolExecutor(threads, new PThreadFactory("bench"), new ThreadPoolExecutor.AbortPolicy()), invocations / 10);
+            run(new ThreadPerTaskExecutor(1, "bench", -1, perTask), invocations / 10);
+
+            long platform = run(new ScheduledThreadPoolExecutor(threads, new PThreadFactory("bench"), new ThreadPoolExecutor.AbortPolicy()), invocations);
+            long threadPerTask = run(new ThreadPerTaskExecutor(1, "bench", -1, perTask), invocations);
+
+            System.out.println(String.format("%d invocations blocked %dms: %d platform threads %6d req/s, %s thread per invocation %6d req/s", invocations,
+                    BLOCKING_IO_MILLIS, threads, invocations * 1000L / platform, virtual != null ? "virtual" : "platform", invocations * 1000L / threadPerTask));
+        } finally {
+            Invoker.executor = executor;
+            Invoker.defaultPool = pool;
+        }
+    }
+
+    /**
+     * @return the time to complete all the invocations, in milliseconds.
+     */
+    private static long run(ScheduledThreadPoolExecutor executor, int invocations) throws InterruptedException {
+        Invoker.executor = executor;
+        Invoker.defaultPool = new Invoker.Pool("default", executor, -1);
+        CountDownLatch done = new CountDownLatch(invocations);
+        AtomicInteger errors = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < invocations; i++) {
+            Invoker.invoke(new BlockingInvocation(i, i % 10 == 0, done, errors));
+        }
+        done.await();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdownNow();
+        if (errors.get() > 0) {
+            throw new IllegalStateException(errors.get() + " invocations lost their thread locals");
+        }
+        return Math.max(1, elapsed);
+    }
+
+    /**
+     * Binds a request and a session, blocks, then checks they are still
+     * bound to the thread.
+     */
+    static class BlockingInvocation extends Invoker.Invocation {
+
+        final int id;
+        final CountDownLatch done;
+        final AtomicInteger errors;
+        boolean suspend;
+
+        BlockingInvocation(int id, boolean suspend, CountDownLatch done, AtomicInteger errors) {
+            this.id = id;
+            this.suspend = suspend;
+            this.done = done;
+            this.errors = errors;
+        }
+
+        @Override
+        public boolean init() {
+            // The application is not started
+            InvocationContext.current.set(getInvocationContext());
+            return true;
+        }
+
+        @Override
+        public void execute() throws Exception {
+            Request request = new Request();
+            request.action = "Application.index" + id;
+            Session session = new Session();
+            Request.current.set(request);
+            Session.current.set(session);
+            Thread.sleep(BLOCKING_IO_MILLIS);
+            if (Request.current() != request || Session.current() != session) {
+                errors.incrementAndGet();
+            }
+            if (suspend) {
+                suspend = false;
+                throw new Suspend(10);
+            }
+        }
+
+        @Override
+        public void onSuccess() throws Exception {
+            super.onSuccess();
+            done.countDown();
+        }
+
+        @Override
+        public void onException(Throwable e) {
+            errors.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void _finally() {
+            super._finally();
+            Request.current.remove();
+            Session.current.remove();
+        }
+
+        @Override
+        public InvocationContext getInvocationContext() {
+            return new InvocationContext("Benchmark");
+        }
+    }
+}
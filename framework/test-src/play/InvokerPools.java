@@ -0,0 +1,12 @@
+package play;
+
+/**
+ * Creates the named pools again from the current configuration, for the tests
+ * outside this package.
+ */
+public class InvokerPools {
+
+    public static void reset() {
+        Invoker.initPools();
+    }
+}
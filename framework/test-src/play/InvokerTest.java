@@ -0,0 +1,122 @@
+package play;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Invoker.InvocationContext;
+
+public class InvokerTest {
+
+    private Play.Mode mode;
+
+    @Before
+    public void setUp() {
+        mode = Play.mode;
+        Play.configuration = new Properties();
+        Play.mode = Play.Mode.PROD;
+        Play.configuration.setProperty("play.pool.reports.size", "1");
+        Play.configuration.setProperty("play.pool.reports.queue", "1");
+        Play.configuration.setProperty("play.pool.reports.actions", "Reports.*, Application.export");
+        Invoker.initPools();
+    }
+
+    @After
+    public void tearDown() {
+        Play.configuration = new Properties();
+        Invoker.initPools();
+        Play.mode = mode;
+    }
+
+    /**
+     * Waits for the latch before its (empty) execution.
+     */
+    static class WaitingInvocation extends Invoker.Invocation {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release;
+
+        WaitingInvocation(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public String getPoolName() {
+            return "reports";
+        }
+
+        @Override
+        protected void preInit() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean init() {
+            return false;
+        }
+
+        @Override
+        public InvocationContext getInvocationContext() {
+            return new InvocationContext("test");
+        }
+
+        @Override
+        public void execute() {
+        }
+    }
+
+    @Test
+    public void actionsAreAssignedToPools() {
+        Invoker.Pool reports = Invoker.getPool("reports");
+        assertEquals("reports", reports.name);
+        assertSame(reports, Invoker.getActionPool("Reports.monthly"));
+        assertSame(reports, Invoker.getActionPool("application.export"));
+        assertSame(Invoker.defaultPool, Invoker.getActionPool("Application.index"));
+        assertSame(Invoker.defaultPool, Invoker.getActionPool(null));
+        assertSame(Invoker.defaultPool, Invoker.getPool("unknown"));
+        assertEquals(2, Invoker.getPools().size());
+    }
+
+    @Test
+    public void invocationsAreRejectedWhenTheQueueIsFull() throws Exception {
+        Invoker.Pool reports = Invoker.getPool("reports");
+        CountDownLatch release = new CountDownLatch(1);
+        WaitingInvocation running = new WaitingInvocation(release);
+        Future<?> first = Invoker.invoke(running);
+        assertTrue(running.started.await(5, TimeUnit.SECONDS));
+        assertEquals(1, reports.getActiveCount());
+
+        Future<?> second = Invoker.invoke(new WaitingInvocation(release));
+        assertEquals(1, reports.getQueueSize());
+        try {
+            Invoker.invoke(new WaitingInvocation(release));
+            fail("The queue is full");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        assertEquals(1, reports.getRejectedCount());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(0, reports.getQueueSize());
+        assertEquals(2, reports.getStartedCount());
+        assertTrue(reports.getAverageWaitTime() >= 0);
+    }
+}
@@ -0,0 +1,151 @@
+package play.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class ConcurrentCacheImplTest {
+
+    @Test
+    public void addSetReplaceAndDelete() {
+        ConcurrentCacheImpl cache = new ConcurrentCacheImpl(100, false);
+        cache.add("key", "first", 0);
+        cache.add("key", "second", 0);
+        assertThat(cache.get("key")).isEqualTo("first");
+
+        cache.replace("other", "value", 0);
+        assertThat(cache.get("other")).isNull();
+        cache.replace("key", "third", 0);
+        assertThat(cache.get("key")).isEqualTo("third");
+
+        cache.set("key", "fourth", 0);
+        assertThat(cache.get("key")).isEqualTo("fourth");
+        assertThat(cache.get(new String[] { "key", "other" })).hasSize(2);
+
+        cache.delete("key");
+        assertThat(cache.get("key")).isNull();
+        assertThat(cache.getHitCount()).isEqualTo(4);
+        assertThat(cache.getMissCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void verifyThatTTLSurvivesIncrDecr() throws Exception {
+        ConcurrentCacheImpl cache = new ConcurrentCacheImpl(100, false);
+        assertThat(cache.incr("counter", 1)).isEqualTo(-1);
+        cache.add("counter", 1, 1);
+        assertThat(cache.incr("counter", 4)).isEqualTo(5);
+        assertThat(cache.decr("counter", 3)).isEqualTo(2);
+        assertThat(cache.get("counter")).isEqualTo(2L);
+
+        Thread.sleep(1100);
+        assertThat(cache.get("counter")).isNull();
+        assertThat(cache.getExpirationCount()).isEqualTo(1);
+        // An expired entry can be added again
+        cache.add("counter", 1, 0);
+        assertThat(cache.get("counter")).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws Exception {
+        final ConcurrentCacheImpl cache = new ConcurrentCacheImpl(100, false);
+        cache.set("counter", 0, 0);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 10000; j++) {
+                        cache.incr("counter", 1);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(cache.get("counter")).isEqualTo(80000L);
+    }
+
+    @Test
+    public void numberOfEntriesIsBounded() {
+        ConcurrentCacheImpl cache = new ConcurrentCacheImpl(100, false);
+        for (int i = 0; i < 1000; i++) {
+            cache.set("key" + i, i, 0);
+        }
+        assertThat(cache.size()).isEqualTo(100);
+        assertThat(cache.getWeightedSize()).isEqualTo(100);
+        assertThat(cache.getEvictionCount()).isEqualTo(900);
+    }
+
+    @Test
+    public void frequentlyUsedEntriesSurviveAScan() {
+        ConcurrentCacheImpl cache = new ConcurrentCacheImpl(100, false);
+        for (int i = 0; i < 50; i++) {
+            cache.set("hot" + i, i, 0);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get("hot" + i);
+            }
+        }
+        // Read once each, these would flush a LRU cache
+        for (int i = 0; i < 1000; i++) {
+            cache.set("scan" + i, i, 0);
+            cache.get("scan" + i);
+        }
+        int hot = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot" + i) != null) {
+                hot++;
+            }
+        }
+        assertThat(hot).isGreaterThanOrEqualTo(45);
+        assertThat(cache.size()).isEqualTo(100);
+    }
+
+    @Test
+    public void sizeInBytesIsBounded() {
+        ConcurrentCacheImpl cache = new ConcurrentCacheImpl(100000, true);
+        byte[] fragment = new byte[10000];
+        for (int i = 0; i < 100; i++) {
+            cache.set("fragment" + i, fragment, 0);
+        }
+        assertThat(cache.getWeightedSize()).isLessThanOrEqualTo(100000);
+        assertThat(cache.size()).isEqualTo(9);
+
+        // Bigger than the whole cache
+        cache.set("big", new byte[200000], 0);
+        assertThat(cache.get("big")).isNull();
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        ConcurrentCacheImpl cache = new ConcurrentCacheImpl(100, false);
+        for (int i = 0; i < 50; i++) {
+            cache.set("key" + i, i, 0);
+        }
+        cache.clear();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getWeightedSize()).isEqualTo(0);
+        cache.set("key", "value", 0);
+        assertThat(cache.get("key")).isEqualTo("value");
+    }
+
+    @Test
+    public void sizeEstimates() {
+        assertThat(ConcurrentCacheImpl.estimateSize("abcd")).isEqualTo(48);
+        assertThat(ConcurrentCacheImpl.estimateSize(new byte[100])).isEqualTo(116);
+        assertThat(ConcurrentCacheImpl.estimateSize(new Object())).isEqualTo(ConcurrentCacheImpl.DEFAULT_VALUE_SIZE);
+    }
+}
@@ -0,0 +1,149 @@
+package play.cache;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads keys following a Zipf distribution from a remote cache answering in
+ * 200us, with and without a near cache in front of it, and prints the
+ * average read latency and the number of remote calls. 1% of the operations
+ * are writes. Run it with
+ * <code>java -cp ... play.cache.NearCacheBenchmark</code>.
+ */
+public class NearCacheBenchmark {
+
+    private static final int KEYS = 10000;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 50000;
+    private static final long REMOTE_LATENCY_NANOS = 200000;
+
+    /**
+     * A local cache slowed down as a network round trip.
+     */
+    static class SlowCache extends ConcurrentCacheImpl {
+
+        final AtomicLong calls = new AtomicLong();
+
+        SlowCache() {
+            super(KEYS * 2, false);
+        }
+
+        private void roundTrip() {
+            calls.incrementAndGet();
+            LockSupport.parkNanos(REMOTE_LATENCY_NANOS);
+        }
+
+        @Override
+        public Object get(String key) {
+            roundTrip();
+            return super.get(key);
+        }
+
+        @Override
+        public Map<String, Object> get(String[] keys) {
+            roundTrip();
+            return super.get(keys);
+        }
+
+        @Override
+        public void set(String key, Object value, int expiration) {
+            roundTrip();
+            super.set(key, value, expiration);
+        }
+
+        @Override
+        public long incr(String key, int by) {
+            roundTrip();
+            return super.incr(key, by);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (double skew : new double[] { 0.8, 1.0, 1.2 }) {
+            int[] keys = zipf(skew, THREADS * OPERATIONS);
+
+            SlowCache remote = new SlowCache();
+            fill(remote);
+            long direct = run(remote, keys);
+            long directCalls = remote.calls.get();
+
+            remote = new SlowCache();
+            fill(remote);
+            NearCacheImpl near = new NearCacheImpl(remote, 1000, 5, 1000);
+            long cached = run(near, keys);
+            long cachedCalls = remote.calls.get();
+
+            System.out.println(String.format("zipf %.1f: remote %6d ns/op %8d calls, near cache %6d ns/op %8d calls (%.1f%% local hits)", skew,
+                    direct, directCalls, cached, cachedCalls, near.getLocalCache().getHitRatio() * 100));
+        }
+    }
+
+    private static void fill(ConcurrentCacheImpl remote) {
+        for (int i = 0; i < KEYS; i++) {
+            remote.add("fragment" + i, "<div>fragment " + i + "</div>", 0);
+        }
+    }
+
+    /**
+     * @return the average operation time, in nanoseconds.
+     */
+    private static long run(final CacheImpl cache, final int[] keys) throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        final AtomicLong total = new AtomicLong();
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t * OPERATIONS;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        String key = "fragment" + keys[offset + i];
+                        if (i % 100 == 99) {
+                            cache.set(key, "<div>updated</div>", 0);
+                        } else if (cache.get(key) == null) {
+                            throw new IllegalStateException("Missing " + key);
+                        }
+                    }
+                    total.addAndGet(System.nanoTime() - start);
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return total.get() / (THREADS * OPERATIONS);
+    }
+
+    /**
+     * @return key indexes following a Zipf distribution of the skew.
+     */
+    private static int[] zipf(double skew, int count) {
+        double[] cumulative = new double[KEYS];
+        double sum = 0;
+        for (int i = 0; i < KEYS; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(42);
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            double target = random.nextDouble() * sum;
+            int low = 0;
+            int high = KEYS - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            keys[i] = low;
+        }
+        return keys;
+    }
+}
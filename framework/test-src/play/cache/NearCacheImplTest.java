@@ -0,0 +1,117 @@
+package play.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class NearCacheImplTest {
+
+    /**
+     * Stands for memcached, shared by the servers.
+     */
+    static class RemoteCache extends ConcurrentCacheImpl {
+
+        int reads;
+
+        RemoteCache() {
+            super(1000, false);
+        }
+
+        @Override
+        public Object get(String key) {
+            reads++;
+            return super.get(key);
+        }
+
+        @Override
+        public Map<String, Object> get(String[] keys) {
+            reads++;
+            Map<String, Object> result = super.get(keys);
+            reads -= keys.length;
+            return result;
+        }
+    }
+
+    private RemoteCache remote;
+
+    @Before
+    public void setUp() {
+        remote = new RemoteCache();
+    }
+
+    @Test
+    public void readsAreServedLocally() {
+        NearCacheImpl cache = new NearCacheImpl(remote, 100, 60, 60000);
+        cache.set("key", "value", 0);
+        assertThat(cache.get("key")).isEqualTo("value");
+        int reads = remote.reads;
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.get("key")).isEqualTo("value");
+        }
+        assertThat(remote.reads).isEqualTo(reads);
+        assertThat(cache.getRemoteReadCount()).isEqualTo(1);
+
+        // Missing values are not kept
+        assertThat(cache.get("missing")).isNull();
+        assertThat(cache.get("missing")).isNull();
+        assertThat(cache.getRemoteReadCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void bulkReadsOnlyAskTheMissingKeys() {
+        NearCacheImpl cache = new NearCacheImpl(remote, 100, 60, 60000);
+        remote.set("a", "1", 0);
+        remote.set("b", "2", 0);
+        cache.get("a");
+        int reads = remote.reads;
+        Map<String, Object> values = cache.get(new String[] { "a", "b" });
+        assertThat(values.get("a")).isEqualTo("1");
+        assertThat(values.get("b")).isEqualTo("2");
+        assertThat(remote.reads).isEqualTo(reads + 1);
+    }
+
+    @Test
+    public void localWritesAreSeenAtOnce() {
+        NearCacheImpl cache = new NearCacheImpl(remote, 100, 60, 60000);
+        cache.set("key", "first", 0);
+        assertThat(cache.get("key")).isEqualTo("first");
+        cache.set("key", "second", 0);
+        assertThat(cache.get("key")).isEqualTo("second");
+        cache.delete("key");
+        assertThat(cache.get("key")).isNull();
+
+        cache.set("counter", 1, 0);
+        assertThat(cache.get("counter")).isEqualTo(1);
+        cache.incr("counter", 1);
+        assertThat(cache.get("counter")).isEqualTo(2L);
+    }
+
+    @Test
+    public void writesOfOtherServersAreSeenAfterTheVersionCheck() throws Exception {
+        NearCacheImpl server1 = new NearCacheImpl(remote, 100, 60, 100);
+        NearCacheImpl server2 = new NearCacheImpl(remote, 100, 60, 100);
+        server1.set("key", "first", 0);
+        assertThat(server2.get("key")).isEqualTo("first");
+
+        server1.set("key", "second", 0);
+        Thread.sleep(150);
+        assertThat(server2.get("key")).isEqualTo("second");
+        assertThat(server2.getStaleReadCount()).isEqualTo(1);
+        assertThat(server1.getVersion("key")).isEqualTo(server2.getVersion("key"));
+    }
+
+    @Test
+    public void localValuesExpire() throws Exception {
+        NearCacheImpl cache = new NearCacheImpl(remote, 100, 1, 60000);
+        cache.set("key", "first", 0);
+        assertThat(cache.get("key")).isEqualTo("first");
+        // Written by another server, without a version change
+        remote.set("key", "second", 0);
+        assertThat(cache.get("key")).isEqualTo("first");
+        Thread.sleep(1100);
+        assertThat(cache.get("key")).isEqualTo("second");
+    }
+}
@@ -0,0 +1,76 @@
+package play.data.binding;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import play.PlayBuilder;
+
+/**
+ * Binds 5 bean arguments from a form of 200 fields, building the parameter
+ * tree once per argument with the regular expression split, as
+ * ActionInvoker did, then once per request, and prints the time per request.
+ * Run it with
+ * <code>java -cp ... play.data.binding.BinderBenchmark [requests]</code>.
+ */
+public class BinderBenchmark {
+
+    private static final int BEANS = 5;
+    private static final int FIELDS = 40;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        new PlayBuilder().build();
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        for (int bean = 0; bean < BEANS; bean++) {
+            for (int field = 0; field < FIELDS; field++) {
+                String name = field % 4 == 0 ? "bean" + bean + "[extra][f" + field + "]" : "bean" + bean + ".f" + field;
+                params.put(name, new String[] { String.valueOf(field) });
+            }
+            params.put("bean" + bean + ".a", new String[] { "value" });
+            params.put("bean" + bean + ".b", new String[] { "42" });
+        }
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < requests; r++) {
+                for (int bean = 0; bean < BEANS; bean++) {
+                    sink = Binder.bind(regexTree(new HashMap<String, String[]>(params)), "bean" + bean, Data1.class, Data1.class, null);
+                }
+            }
+            long perArgument = (System.nanoTime() - start) / requests;
+
+            start = System.nanoTime();
+            for (int r = 0; r < requests; r++) {
+                RootParamNode root = ParamNode.convert(params);
+                for (int bean = 0; bean < BEANS; bean++) {
+                    sink = Binder.bind(root, "bean" + bean, Data1.class, Data1.class, null);
+                }
+            }
+            long perRequest = (System.nanoTime() - start) / requests;
+
+            System.out.println(String.format("round %d: tree per argument %7d ns, tree per request %7d ns", round, perArgument, perRequest));
+        }
+    }
+
+    /**
+     * The tree as ParamNode.convert built it with a regular expression.
+     */
+    private static RootParamNode regexTree(Map<String, String[]> params) {
+        RootParamNode root = new RootParamNode(params);
+        for (Map.Entry<String, String[]> e : params.entrySet()) {
+            ParamNode parent = root;
+            for (String name : e.getKey().split("[\\.\\[\\]]+")) {
+                ParamNode node = parent.getChild(name);
+                if (node == null) {
+                    node = new ParamNode(name);
+                    parent.addChild(node);
+                }
+                parent = node;
+            }
+            parent.setValue(e.getValue(), e.getKey());
+        }
+        return root;
+    }
+}
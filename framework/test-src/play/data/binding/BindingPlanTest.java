@@ -0,0 +1,121 @@
+package play.data.binding;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import play.PlayBuilder;
+
+public class BindingPlanTest {
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+    }
+
+    @Test
+    public void plansAreBuiltOnce() {
+        BindingPlan plan = BindingPlan.get(Data1.class, Data1.class, null, null);
+        assertThat(BindingPlan.get(Data1.class, Data1.class, null, null)).isSameAs(plan);
+        assertThat(BindingPlan.get(Data1.class, Data1.class, new Annotation[0], null)).isNotSameAs(plan);
+
+        // Until the classes are reloaded
+        new PlayBuilder().build();
+        assertThat(BindingPlan.get(Data1.class, Data1.class, null, null)).isNotSameAs(plan);
+    }
+
+    @Test
+    public void beanPropertiesArePlanned() {
+        BindingPlan plan = BindingPlan.get(Data1.class, Data1.class, null, null);
+        Map<String, BindingPlan.Property> properties = new HashMap<String, BindingPlan.Property>();
+        for (BindingPlan.Property property : plan.properties(Data1.class)) {
+            properties.put(property.name, property);
+        }
+        assertThat(properties.keySet()).containsOnly("a", "b");
+        assertThat(properties.get("b").plan.clazz).isEqualTo(int.class);
+        assertThat(plan.properties(Data1.class)).isSameAs(plan.properties(Data1.class));
+    }
+
+    @Test
+    public void annotationsAreResolved() throws Exception {
+        Annotation[] annotations = Annotated.class.getField("values").getAnnotations();
+        BindingPlan plan = BindingPlan.get(List.class, Annotated.class.getField("values").getGenericType(), annotations, null);
+        assertThat(plan.hasAs).isTrue();
+        assertThat(plan.separator).isEqualTo(",");
+        assertThat(plan.isCollection).isTrue();
+        assertThat(plan.element().clazz).isEqualTo(Integer.class);
+
+        annotations = Annotated.class.getField("hidden").getAnnotations();
+        assertThat(BindingPlan.get(String.class, String.class, annotations, null).noBinding).isTrue();
+
+        annotations = Annotated.class.getField("data").getAnnotations();
+        assertThat(BindingPlan.get(Data1.class, Data1.class, annotations, null).asBinder).isEqualTo(Data3.TestGenericTypeBinder.class);
+    }
+
+    @Test
+    public void bindingUsesThePlans() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("bean.values", new String[] { "1,2,3" });
+        params.put("bean.hidden", new String[] { "secret" });
+        params.put("bean.name", new String[] { "name" });
+        RootParamNode root = ParamNode.convert(params);
+        Annotated bean = new Annotated();
+        Binder.bindBean(root, "bean", bean);
+        assertThat(bean.values).containsExactly(1, 2, 3);
+        assertThat(bean.hidden).isNull();
+        assertThat(bean.name).isEqualTo("name");
+    }
+
+    @Test
+    public void bindersAreInstantiatedForEachBinding() {
+        CountingBinder.instances.clear();
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("bean.counted", new String[] { "value" });
+        for (int i = 0; i < 2; i++) {
+            Counted bean = new Counted();
+            Binder.bindBean(ParamNode.convert(params), "bean", bean);
+            assertThat(bean.counted).isEqualTo("value");
+        }
+        assertThat(CountingBinder.instances).hasSize(2);
+        assertThat(CountingBinder.instances.get(0)).isNotSameAs(CountingBinder.instances.get(1));
+    }
+
+    public static class CountingBinder implements TypeBinder<String> {
+
+        static final List<CountingBinder> instances = new ArrayList<CountingBinder>();
+
+        @Override
+        public Object bind(String name, Annotation[] annotations, String value, Class actualClass, Type genericType) {
+            instances.add(this);
+            return value;
+        }
+    }
+
+    public static class Counted {
+
+        @As(binder = CountingBinder.class)
+        public String counted;
+    }
+
+    public static class Annotated {
+
+        @As(",")
+        public List<Integer> values;
+
+        @NoBinding
+        public String hidden;
+
+        public String name;
+
+        @As(binder = Data3.TestGenericTypeBinder.class)
+        public Data1 data;
+    }
+}
@@ -0,0 +1,34 @@
+package play.data.binding;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ParamNodeTest {
+
+    @Test
+    public void keysAreSplitAsWithTheRegularExpression() {
+        String[] keys = { "a", "a.b.c", "a[b].c", "a[b][c]", "a.b[c]", "a..b", "[a]", ".a", "a.", "a[]", "", ".", "...", "a[0].b[1]",
+                "user.address[home].street", "]a[" };
+        for (String key : keys) {
+            assertThat(ParamNode.splitKey(key)).as(key).isEqualTo(key.split("[\\.\\[\\]]+"));
+        }
+    }
+
+    @Test
+    public void treeIsBuiltFromTheKeys() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("user.name", new String[] { "name" });
+        params.put("user[address][city]", new String[] { "city" });
+        params.put("id", new String[] { "1" });
+        RootParamNode root = ParamNode.convert(params);
+        assertThat(root.getChild("user.name").getValues()).containsOnly("name");
+        assertThat(root.getChild("user.address.city").getValues()).containsOnly("city");
+        assertThat(root.getChild("user").getAllChildrenKeys()).containsOnly("name", "address");
+        assertThat(root.getChild("id").getOriginalKey()).isEqualTo("id");
+        assertThat(root.getChild("missing")).isNull();
+    }
+}
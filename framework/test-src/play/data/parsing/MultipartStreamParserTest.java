@@ -0,0 +1,133 @@
+package play.data.parsing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.data.Upload;
+import play.mvc.Http.Request;
+
+public class MultipartStreamParserTest {
+
+    private static final String BODY = "preamble\r\n"
+            + "--XyZ\r\n"
+            + "Content-Disposition: form-data; name=\"title\"\r\n"
+            + "\r\n"
+            + "Hello\r\nworld\r\n"
+            + "--XyZ \r\n"
+            + "Content-Disposition: form-data; name=\"photo\"; filename=\"cat.txt\"\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "\r\n"
+            + "meow --XyZ meow\r\n"
+            + "--XyZ\r\n"
+            + "Content-Disposition: form-data; name=\"empty\"; filename=\"\"\r\n"
+            + "\r\n"
+            + "\r\n"
+            + "--XyZ--\r\n"
+            + "epilogue";
+
+    @Before
+    public void setUp() throws Exception {
+        Play.configuration = new Properties();
+        Play.tmpDir = new File(System.getProperty("java.io.tmpdir"), "play-multipart-" + System.nanoTime());
+        Play.readOnlyTmp = false;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(Play.tmpDir);
+        Play.tmpDir = null;
+    }
+
+    private static MultipartStreamParser parse(String body, int chunkSize, long maxFieldSize, long maxFileSize) throws IOException {
+        MultipartStreamParser parser = new MultipartStreamParser(MultipartStreamParser.boundary("multipart/form-data; boundary=XyZ"), "utf-8",
+                maxFieldSize, maxFileSize);
+        byte[] bytes = body.getBytes("utf-8");
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            parser.feed(bytes, i, Math.min(chunkSize, bytes.length - i));
+        }
+        return parser;
+    }
+
+    @Test
+    public void partsAreParsedWhateverTheChunkSize() throws Exception {
+        for (int chunkSize : new int[] { 1, 3, 7, 64, 8192 }) {
+            MultipartBody body = parse(BODY, chunkSize, -1, -1).finish();
+            Request request = new Request();
+            request.encoding = "utf-8";
+            Map<String, String[]> params = body.parse(request);
+
+            assertArrayEquals(new String[] { "Hello\r\nworld" }, params.get("title"));
+            assertArrayEquals(new String[] { "photo" }, params.get("photo"));
+            assertEquals(2, body.getUploads().size());
+
+            Upload photo = body.getUploads().get(0);
+            assertEquals("cat.txt", photo.getFileName());
+            assertEquals("text/plain", photo.getContentType());
+            assertFalse(photo.isInMemory());
+            assertEquals("meow --XyZ meow", FileUtils.readFileToString(photo.asFile()));
+            assertTrue(photo.asFile().getPath().startsWith(Play.tmpDir.getPath()));
+            assertEquals(body.getUploads(), request.args.get("__UPLOADS"));
+
+            // No file was sent for this field
+            assertEquals("", body.getUploads().get(1).getFileName());
+            assertNull(body.getUploads().get(1).asFile());
+
+            body.delete();
+            assertFalse(photo.asFile().exists());
+        }
+    }
+
+    @Test
+    public void truncatedBodyIsRejected() throws Exception {
+        MultipartStreamParser parser = parse(BODY.substring(0, BODY.indexOf("--XyZ--")), 64, -1, -1);
+        try {
+            parser.finish();
+            fail("The body is not complete");
+        } catch (IOException e) {
+            // Expected
+        }
+        parser.abort();
+    }
+
+    @Test
+    public void tooBigFieldsAreRejected() throws Exception {
+        try {
+            parse(BODY, 64, 5, -1);
+            fail("The title is too big");
+        } catch (MultipartStreamParser.LimitExceededException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void tooBigFilesAreRejected() throws Exception {
+        try {
+            parse(BODY, 64, -1, 10);
+            fail("The photo is too big");
+        } catch (MultipartStreamParser.LimitExceededException e) {
+            // Expected
+        }
+        parse(BODY, 64, -1, 15).abort();
+    }
+
+    @Test
+    public void boundaryIsReadFromTheContentType() {
+        assertEquals("abc", MultipartStreamParser.boundary("multipart/form-data; charset=utf-8; boundary=\"abc\""));
+        assertNull(MultipartStreamParser.boundary("multipart/form-data"));
+    }
+}
@@ -0,0 +1,61 @@
+package play.data.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+
+public class TempFilePluginTest {
+
+    @Before
+    public void setUp() {
+        Play.tmpDir = new File(System.getProperty("java.io.tmpdir"), "play-tempfile-" + System.nanoTime());
+        Play.readOnlyTmp = false;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(Play.tmpDir);
+        Play.tmpDir = null;
+    }
+
+    @Test
+    public void foldersCreatedByManyThreadsAreDistinct() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<File>> folders = new ArrayList<Future<File>>();
+            for (int i = 0; i < 200; i++) {
+                folders.add(executor.submit(new Callable<File>() {
+                    public File call() {
+                        return TempFilePlugin.newTempFolder();
+                    }
+                }));
+            }
+            Set<String> names = new HashSet<String>();
+            for (Future<File> folder : folders) {
+                String name = folder.get().getName();
+                assertTrue(name, name.matches("[0-9]+_[0-9]{10}"));
+                names.add(name);
+            }
+            assertEquals(200, names.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package play.db.helper;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+public class JdbcBatchWriterTest {
+
+    @Test
+    public void rowsAreWrittenInBatches() throws Exception {
+        JdbcDataSource database = new JdbcDataSource();
+        database.setURL("jdbc:h2:mem:jdbcBatchWriter");
+        Connection connection = database.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("create table line (id int, text varchar(20))");
+
+            JdbcBatchWriter writer = new JdbcBatchWriter(connection, "insert into line values (?, ?)", 4);
+            for (int i = 0; i < 10; i++) {
+                writer.add(i, "line" + i);
+            }
+            assertThat(writer.count()).isEqualTo(8);
+            writer.close();
+            assertThat(writer.count()).isEqualTo(10);
+
+            ResultSet result = statement.executeQuery("select count(*), max(text) from line");
+            result.next();
+            assertThat(result.getInt(1)).isEqualTo(10);
+            assertThat(result.getString(2)).isEqualTo("line9");
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+}
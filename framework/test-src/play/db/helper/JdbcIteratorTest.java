@@ -0,0 +1,46 @@
+package play.db.helper;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+public class JdbcIteratorTest {
+
+    @Test
+    public void streamedRowsCloseTheirStatement() throws Exception {
+        JdbcDataSource database = new JdbcDataSource();
+        database.setURL("jdbc:h2:mem:jdbcIterator");
+        Connection connection = database.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("create table line (id int, text varchar(20))");
+            for (int i = 0; i < 10; i++) {
+                statement.execute("insert into line values (" + i + ", 'line" + i + "')");
+            }
+            statement.close();
+
+            ResultSet result = JdbcHelper.stream(connection, 3, "select text from line where id >= ? order by id", Arrays.<Object> asList(5));
+            assertThat(result.getType()).isEqualTo(ResultSet.TYPE_FORWARD_ONLY);
+            assertThat(result.getStatement().getFetchSize()).isEqualTo(3);
+            JdbcIterator<String> iterator = new JdbcIterator<String>(result, JdbcResultFactories.buildPrimitive(String.class));
+            iterator.closeStatement = true;
+            Statement query = result.getStatement();
+            List<String> texts = new ArrayList<String>();
+            for (String text : iterator) {
+                texts.add(text);
+            }
+            assertThat(texts).containsExactly("line5", "line6", "line7", "line8", "line9");
+            assertThat(query.isClosed()).isTrue();
+        } finally {
+            connection.close();
+        }
+    }
+}
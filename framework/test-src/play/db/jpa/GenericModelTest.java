@@ -0,0 +1,111 @@
+package play.db.jpa;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Entity;
+import javax.persistence.ManyToMany;
+
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.data.binding.Binder;
+import play.data.binding.ParamNode;
+import play.data.binding.RootParamNode;
+import play.data.validation.Validation;
+
+public class GenericModelTest {
+
+    @Entity
+    public static class Tag extends Model {
+        public String name;
+    }
+
+    @Entity
+    public static class Post extends Model {
+        public String title;
+        @ManyToMany
+        public List<Tag> tags;
+    }
+
+    public List<Tag> selection;
+
+    private final List<Long> tagIds = new ArrayList<Long>();
+
+    @Before
+    public void setUp() {
+        InMemoryJPA.start(Tag.class, Post.class);
+        for (int i = 0; i < 5; i++) {
+            Tag tag = new Tag();
+            tag.name = "tag" + i;
+            InMemoryJPA.em().persist(tag);
+            tagIds.add(tag.id);
+        }
+        InMemoryJPA.em().flush();
+        InMemoryJPA.em().clear();
+    }
+
+    @After
+    public void tearDown() {
+        InMemoryJPA.stop();
+    }
+
+    private static List<String> names(List<Tag> tags) {
+        List<String> names = new ArrayList<String>();
+        for (Tag tag : tags) {
+            names.add(tag.name);
+        }
+        return names;
+    }
+
+    @Test
+    public void associationsAreLoadedWithOneQueryInTheSubmittedOrder() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("post.title", new String[] { "Hello" });
+        params.put("post.tags.id", new String[] { tagIds.get(3).toString(), "", tagIds.get(0).toString(), "999", tagIds.get(3).toString() });
+        Statistics statistics = InMemoryJPA.statistics();
+
+        Post post = (Post) GenericModel.edit(ParamNode.convert(params), "post", new Post(), new Annotation[0]);
+
+        assertThat(statistics.getQueryExecutionCount()).isEqualTo(1);
+        assertThat(post.title).isEqualTo("Hello");
+        assertThat(names(post.tags)).containsExactly("tag3", "tag0", "tag3");
+        assertThat(Validation.error("post.tags").getMessageKey()).isEqualTo("validation.notFound");
+    }
+
+    @Test
+    public void keysAreLoadedInBatches() {
+        List<Object> keys = new ArrayList<Object>();
+        for (long id = 0; id < 2 * GenericModel.BIND_BATCH_SIZE + 1; id++) {
+            keys.add(id);
+        }
+        Statistics statistics = InMemoryJPA.statistics();
+        assertThat(GenericModel.findByKeys(Tag.class, "id", keys)).hasSize(5);
+        assertThat(statistics.getQueryExecutionCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void entityCollectionsAreBoundWithOneQuery() throws Exception {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("selection[0].id", new String[] { tagIds.get(2).toString() });
+        params.put("selection[1].id", new String[] { tagIds.get(4).toString() });
+        params.put("selection[1].name", new String[] { "renamed" });
+        params.put("selection[2].name", new String[] { "new" });
+        RootParamNode root = ParamNode.convert(params);
+        Statistics statistics = InMemoryJPA.statistics();
+
+        List<Tag> selection = (List<Tag>) Binder.bind(root, "selection", List.class, getClass().getField("selection").getGenericType(), new Annotation[0]);
+
+        assertThat(statistics.getQueryExecutionCount()).isEqualTo(1);
+        assertThat(names(selection)).containsExactly("tag2", "renamed", "new");
+        assertThat(selection.get(0).id).isEqualTo(tagIds.get(2));
+        assertThat(selection.get(2).id).isNull();
+    }
+}
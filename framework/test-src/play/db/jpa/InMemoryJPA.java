@@ -0,0 +1,96 @@
+package play.db.jpa;
+
+import java.util.Properties;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.ejb.Ejb3Configuration;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+
+import play.Invoker;
+import play.Play;
+import play.PlayBuilder;
+import play.data.validation.Validation;
+import play.data.validation.ValidationPlugin;
+import play.db.DBConfig;
+import play.plugins.PluginCollection;
+
+/**
+ * Starts JPA on an in-memory H2 database with the given entities, for the
+ * tests and benchmarks of the JPA support.
+ */
+public class InMemoryJPA {
+
+    private static int databases;
+
+    public static void start(Class<?>... entities) {
+        start(null, entities);
+    }
+
+    /**
+     * @param replica the database of the read-only transactions, or null
+     */
+    public static void start(DataSource replica, Class<?>... entities) {
+        new PlayBuilder().build();
+        Play.pluginCollection = new PluginCollection() {
+            {
+                addPlugin(new JPAPlugin());
+            }
+        };
+        Ejb3Configuration cfg = new Ejb3Configuration();
+        Properties properties = new Properties();
+        properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.put("hibernate.hbm2ddl.auto", "create");
+        properties.put("hibernate.generate_statistics", "true");
+        properties.put("javax.persistence.validation.mode", "none");
+        cfg.configure(properties);
+        ReadOnlyRoutingDataSource readOnlyRouting = null;
+        if (replica != null) {
+            readOnlyRouting = new ReadOnlyRoutingDataSource(newDatabase(), replica);
+            cfg.setDataSource(readOnlyRouting);
+        } else {
+            cfg.setDataSource(newDatabase());
+        }
+        for (Class<?> entity : entities) {
+            cfg.addAnnotatedClass(entity);
+        }
+        JPA.addConfiguration(DBConfig.defaultDbConfigName, cfg, readOnlyRouting);
+        Invoker.InvocationContext.current.set(new Invoker.InvocationContext("test"));
+        new ValidationPlugin().beforeInvocation();
+    }
+
+    /**
+     * @return a new, empty, in-memory database
+     */
+    public static DataSource newDatabase() {
+        JdbcDataSource database = new JdbcDataSource();
+        database.setURL("jdbc:h2:mem:jpa" + (databases++) + ";DB_CLOSE_DELAY=-1");
+        database.setUser("sa");
+        database.setPassword("");
+        return database;
+    }
+
+    public static void stop() {
+        JPA.closeTx(true);
+        JPA.clearJPAContext();
+        JPA.close();
+        Invoker.InvocationContext.current.remove();
+        Validation.current.remove();
+    }
+
+    public static EntityManager em() {
+        return JPA.em();
+    }
+
+    /**
+     * @return the statistics of the database, cleared
+     */
+    public static Statistics statistics() {
+        Statistics statistics = ((HibernateEntityManagerFactory) JPA.em().getEntityManagerFactory()).getSessionFactory().getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+}
@@ -0,0 +1,105 @@
+package play.db.jpa;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.sql.DataSource;
+
+import play.db.helper.JdbcBatchWriter;
+
+/**
+ * Compares the throughput of inserting rows one at a time and in batches on
+ * an in-memory H2 database: entities saved with save() in a loop or with
+ * JPA.batch, and rows written with a prepared statement executed for each row
+ * or with a JdbcBatchWriter. Run it with
+ * <code>java -cp ... play.db.jpa.JPABatchBenchmark</code>.
+ */
+public class JPABatchBenchmark {
+
+    private static final int ROWS = 20000;
+    private static final int BATCH_SIZE = 500;
+
+    @Entity
+    public static class Event extends GenericModel {
+        @Id
+        @GeneratedValue
+        public Long id;
+        public String name;
+        public int amount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        InMemoryJPA.start(Event.class);
+        DataSource database = InMemoryJPA.newDatabase();
+        Connection connection = database.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("create table event (id bigint, name varchar(255), amount int)");
+            statement.close();
+            connection.setAutoCommit(false);
+            for (int round = 0; round < 3; round++) {
+                long saved = save(false);
+                long batched = save(true);
+                long executed = write(connection, false);
+                long written = write(connection, true);
+                System.out.println(String.format("save() %6d rows/s, JPA.batch %6d rows/s - JDBC row at a time %7d rows/s, JdbcBatchWriter %7d rows/s",
+                        perSecond(saved), perSecond(batched), perSecond(executed), perSecond(written)));
+            }
+        } finally {
+            connection.close();
+            InMemoryJPA.stop();
+        }
+    }
+
+    private static long perSecond(long nanos) {
+        return ROWS * 1000000000L / nanos;
+    }
+
+    private static long save(boolean batch) {
+        List<Event> events = new ArrayList<Event>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Event event = new Event();
+            event.name = "event" + i;
+            event.amount = i;
+            events.add(event);
+        }
+        long start = System.nanoTime();
+        if (batch) {
+            JPA.batch(events, BATCH_SIZE);
+        } else {
+            for (Event event : events) {
+                event.save();
+            }
+        }
+        JPA.closeTx(false);
+        return System.nanoTime() - start;
+    }
+
+    private static long write(Connection connection, boolean batch) throws Exception {
+        long start = System.nanoTime();
+        if (batch) {
+            JdbcBatchWriter writer = new JdbcBatchWriter(connection, "insert into event values (?, ?, ?)", BATCH_SIZE);
+            for (int i = 0; i < ROWS; i++) {
+                writer.add((long) i, "event" + i, i);
+            }
+            writer.close();
+        } else {
+            PreparedStatement statement = connection.prepareStatement("insert into event values (?, ?, ?)");
+            for (int i = 0; i < ROWS; i++) {
+                statement.setObject(1, (long) i);
+                statement.setObject(2, "event" + i);
+                statement.setObject(3, i);
+                statement.executeUpdate();
+            }
+            statement.close();
+        }
+        connection.commit();
+        return System.nanoTime() - start;
+    }
+}
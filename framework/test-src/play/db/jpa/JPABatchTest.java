@@ -0,0 +1,102 @@
+package play.db.jpa;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.CascadeType;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.OneToOne;
+
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JPABatchTest {
+
+    @Entity
+    public static class Row extends GenericModel {
+        @Id
+        @GeneratedValue
+        public Long id;
+        public String value;
+        @OneToOne(cascade = CascadeType.PERSIST)
+        public Cell cell;
+    }
+
+    @Entity
+    public static class Cell extends GenericModel {
+        @Id
+        @GeneratedValue
+        public Long id;
+    }
+
+    @Before
+    public void setUp() {
+        InMemoryJPA.start(Row.class, Cell.class);
+    }
+
+    @After
+    public void tearDown() {
+        InMemoryJPA.stop();
+    }
+
+    private static List<Row> rows(int count) {
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < count; i++) {
+            Row row = new Row();
+            row.value = "row" + i;
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    public void entitiesAreSavedWithOneFlushPerBatch() {
+        List<Row> rows = rows(25);
+        Statistics statistics = InMemoryJPA.statistics();
+
+        JPA.batch(rows, 10);
+
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(25);
+        assertThat(statistics.getFlushCount()).isEqualTo(3);
+        assertThat(InMemoryJPA.em().contains(rows.get(24))).isFalse();
+        assertThat(InMemoryJPA.em().createQuery("select count(*) from " + Row.class.getName()).getSingleResult()).isEqualTo(25L);
+    }
+
+    @Test
+    public void cascadedEntitiesAreDetached() {
+        List<Row> rows = rows(3);
+        for (Row row : rows) {
+            row.cell = new Cell();
+        }
+
+        JPA.batch(rows, 2);
+
+        for (Row row : rows) {
+            assertThat(InMemoryJPA.em().contains(row.cell)).isFalse();
+        }
+        assertThat(InMemoryJPA.em().createQuery("select count(*) from " + Cell.class.getName()).getSingleResult()).isEqualTo(3L);
+    }
+
+    @Test
+    public void detachedEntitiesAreUpdated() {
+        List<Row> rows = rows(5);
+        JPA.batch(rows, 10);
+        List<Row> updated = new ArrayList<Row>();
+        for (Row row : rows) {
+            row.value = row.value.toUpperCase();
+            updated.add(InMemoryJPA.em().merge(row));
+        }
+        Statistics statistics = InMemoryJPA.statistics();
+
+        JPA.batch(updated, 2);
+
+        assertThat(statistics.getEntityUpdateCount()).isEqualTo(5);
+        assertThat(InMemoryJPA.em().find(Row.class, rows.get(4).id).value).isEqualTo("ROW4");
+    }
+}
@@ -0,0 +1,94 @@
+package play.db.jpa;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.sql.DataSource;
+
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Test;
+
+import play.db.DBConfig;
+
+public class JPAContextTest {
+
+    @Entity
+    public static class Item extends GenericModel {
+        @Id
+        public Long id;
+        public String name;
+    }
+
+    @After
+    public void tearDown() {
+        InMemoryJPA.stop();
+    }
+
+    private static JPAConfig config() {
+        return JPA.getJPAConfig(DBConfig.defaultDbConfigName);
+    }
+
+    private static void insert(DataSource database, String name) throws Exception {
+        Connection connection = database.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("create table if not exists JPAContextTest$Item (id bigint not null, name varchar(255), primary key (id))");
+            statement.execute("insert into JPAContextTest$Item values (1, '" + name + "')");
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void theEntityManagerIsOpenedOnFirstUse() {
+        InMemoryJPA.start(Item.class);
+        Statistics statistics = InMemoryJPA.statistics();
+        JPA.closeTx(false);
+        statistics.clear();
+
+        JPAContext context = config().getJPAContext();
+        assertThat(context.isOpen()).isFalse();
+        assertThat(context.isInsideTransaction()).isTrue();
+        context.closeTx(false);
+        assertThat(statistics.getSessionOpenCount()).isEqualTo(0);
+        assertThat(statistics.getConnectCount()).isEqualTo(0);
+        assertThat(config().threadHasJPAContext()).isFalse();
+
+        context = config().getJPAContext();
+        context.setRollbackOnly();
+        Item item = new Item();
+        item.id = 1L;
+        item.name = "rolled back";
+        context.em().persist(item);
+        assertThat(context.isOpen()).isTrue();
+        context.closeTx(false);
+        assertThat(statistics.getSessionOpenCount()).isEqualTo(1);
+        assertThat(JPA.em().find(Item.class, 1L)).isNull();
+    }
+
+    @Test
+    public void readOnlyContextsUseTheReplica() throws Exception {
+        DataSource replica = InMemoryJPA.newDatabase();
+        insert(replica, "replica");
+        InMemoryJPA.start(replica, Item.class);
+        Item item = new Item();
+        item.id = 1L;
+        item.name = "primary";
+        JPA.em().persist(item);
+        JPA.closeTx(false);
+
+        JPAContext context = config().getJPAContext(true);
+        assertThat(context.em().find(Item.class, 1L).name).isEqualTo("replica");
+        context.closeTx(false);
+
+        context = config().getJPAContext(false);
+        assertThat(context.em().find(Item.class, 1L).name).isEqualTo("primary");
+        context.closeTx(false);
+    }
+}
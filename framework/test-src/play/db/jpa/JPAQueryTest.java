@@ -0,0 +1,88 @@
+package play.db.jpa;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.db.DBConfig;
+import play.db.jpa.GenericModel.JPAQuery;
+
+public class JPAQueryTest {
+
+    @Entity
+    public static class Line extends GenericModel {
+        @Id
+        @GeneratedValue
+        public Long id;
+        public String text;
+    }
+
+    @Before
+    public void setUp() {
+        InMemoryJPA.start(Line.class);
+        for (int i = 0; i < 25; i++) {
+            Line line = new Line();
+            line.text = "line" + i;
+            InMemoryJPA.em().persist(line);
+        }
+        InMemoryJPA.em().flush();
+        InMemoryJPA.em().clear();
+    }
+
+    @After
+    public void tearDown() {
+        InMemoryJPA.stop();
+    }
+
+    private static JPAQuery all() {
+        return JPA.getJPAConfig(DBConfig.defaultDbConfigName).jpql.find(Line.class.getName(), "order by id", null);
+    }
+
+    @Test
+    public void resultsAreDetachedBatchByBatch() {
+        JPAScrollIterator<Line> lines = all().scroll(10);
+        List<String> texts = new ArrayList<String>();
+        Line first = null;
+        for (Line line : lines) {
+            if (first == null) {
+                first = line;
+            }
+            assertThat(InMemoryJPA.em().contains(first)).isEqualTo(texts.size() < 10);
+            texts.add(line.text);
+        }
+        assertThat(texts).hasSize(25);
+        assertThat(texts.get(0)).isEqualTo("line0");
+        assertThat(texts.get(24)).isEqualTo("line24");
+        assertThat(lines.hasNext()).isFalse();
+        lines.close();
+    }
+
+    @Test
+    public void changesAreFlushedBeforeClearing() {
+        for (Line line : all().<Line>stream()) {
+            line.text = line.text.toUpperCase();
+        }
+        InMemoryJPA.em().flush();
+        InMemoryJPA.em().clear();
+        assertThat(all().<Line>first().text).isEqualTo("LINE0");
+    }
+
+    @Test
+    public void projectionsAreStreamed() {
+        JPAQuery query = new JPAQuery(InMemoryJPA.em().createQuery("select l.text, l.id from " + Line.class.getName() + " l order by l.id"));
+        JPAScrollIterator<Object[]> rows = query.scroll(4);
+        assertThat(rows.next()[0]).isEqualTo("line0");
+        assertThat(rows.next()[0]).isEqualTo("line1");
+        rows.close();
+        assertThat(rows.hasNext()).isFalse();
+    }
+}
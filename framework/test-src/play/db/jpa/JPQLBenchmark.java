@@ -0,0 +1,107 @@
+package play.db.jpa;
+
+import java.util.List;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Query;
+
+import play.db.DBConfig;
+
+/**
+ * Measures the overhead of the <code>Model.find("byNameAndAge", ...)</code>
+ * finders: first the JPQL generation alone, generated at each call as before
+ * or taken from the cache, then the finders run on an in-memory H2 database,
+ * where Hibernate parses the JPQL unless its query plan cache hits. Run it
+ * with <code>java -cp ... play.db.jpa.JPQLBenchmark</code>.
+ */
+public class JPQLBenchmark {
+
+    private static final int GENERATIONS = 1000000;
+    private static final int FINDS = 20000;
+
+    private static final String[] FINDERS = { "byName", "byNameAndAgeGreaterThan", "byNameLikeOrderByAgeDesc", "name = ?1 and age < ?2" };
+    private static final Object[][] PARAMS = { { "person1" }, { "person1", 20 }, { "person%" }, { "person1", 50 } };
+
+    @Entity
+    public static class Person extends GenericModel {
+        @Id
+        @GeneratedValue
+        public Long id;
+        public String name;
+        public int age;
+    }
+
+    public static void main(String[] args) throws Exception {
+        InMemoryJPA.start(Person.class);
+        try {
+            JPQL jpql = JPA.getJPAConfig(DBConfig.defaultDbConfigName).jpql;
+            for (int i = 0; i < 100; i++) {
+                Person person = new Person();
+                person.name = "person" + i;
+                person.age = i;
+                InMemoryJPA.em().persist(person);
+            }
+            InMemoryJPA.em().flush();
+            InMemoryJPA.em().clear();
+            for (int round = 0; round < 3; round++) {
+                generate(jpql, false, GENERATIONS / 10);
+                long generated = generate(jpql, false, GENERATIONS);
+                generate(jpql, true, GENERATIONS / 10);
+                long cached = generate(jpql, true, GENERATIONS);
+                find(jpql, false, FINDS / 10);
+                long found = find(jpql, false, FINDS);
+                find(jpql, true, FINDS / 10);
+                long foundCached = find(jpql, true, FINDS);
+                System.out.println(String.format("JPQL generated %4d ns, cached %4d ns - find generated %6d ns, cached %6d ns",
+                        generated / GENERATIONS, cached / GENERATIONS, found / FINDS, foundCached / FINDS));
+            }
+        } finally {
+            InMemoryJPA.stop();
+        }
+    }
+
+    private static long generate(JPQL jpql, boolean cached, int iterations) {
+        String entity = Person.class.getName();
+        int length = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            int finder = i % FINDERS.length;
+            String query = cached ? jpql.createFindByQuery(entity, entity, FINDERS[finder], PARAMS[finder])
+                    : jpql.buildFindByQuery(entity, FINDERS[finder], PARAMS[finder]);
+            length += query.length();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (length == 0) {
+            throw new IllegalStateException();
+        }
+        return elapsed;
+    }
+
+    private static long find(JPQL jpql, boolean cached, int iterations) {
+        String entity = Person.class.getName();
+        int results = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            int finder = i % FINDERS.length;
+            List<?> found;
+            if (cached) {
+                found = jpql.find(entity, FINDERS[finder], PARAMS[finder]).fetch(1);
+            } else {
+                // As before: the JPQL generated twice, for the query and for the JPAQuery
+                jpql.buildFindByQuery(entity, FINDERS[finder], PARAMS[finder]);
+                Query q = jpql.em().createQuery(jpql.buildFindByQuery(entity, FINDERS[finder], PARAMS[finder]));
+                q.setMaxResults(1);
+                found = jpql.bindParameters(q, PARAMS[finder]).getResultList();
+            }
+            results += found.size();
+            InMemoryJPA.em().clear();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (results == 0) {
+            throw new IllegalStateException();
+        }
+        return elapsed;
+    }
+}
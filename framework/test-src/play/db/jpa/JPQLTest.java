@@ -49,4 +49,21 @@ public class JPQLTest {
 
     }
 	
-}
\ No newline at end of file
+    @Test
+    public void generatedQueriesAreCached() {
+        String query = jpql.createFindByQuery("Person", "Person", "byNameAndAgeGreaterThan", "Bob", 20);
+        assertEquals("from Person where name = ?1 AND age > ?2", query);
+        assertSame(query, jpql.createFindByQuery("Person", "Person", "byNameAndAgeGreaterThan", "Alice", 30));
+        assertEquals("select count(*) from Person where name = ?1", jpql.createCountQuery("Person", "Person", "byName", "Bob"));
+        assertEquals("delete from Person where name = ?1", jpql.createDeleteQuery("Person", "Person", "name", "Bob"));
+    }
+
+    @Test
+    public void cachedQueriesDependOnTheNumberOfParameters() {
+        assertEquals("from Person where name = ?1", jpql.createFindByQuery("Person", "Person", "name", "Bob"));
+        assertEquals("from Person where name = null", jpql.createFindByQuery("Person", "Person", "name", (Object[]) null));
+        assertEquals("from Person where name", jpql.createFindByQuery("Person", "Person", "name", "Bob", "Alice"));
+        assertEquals("from Person", jpql.createFindByQuery("Person", "Person", null));
+    }
+
+}
@@ -0,0 +1,56 @@
+package play.libs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+public class CryptoTest {
+
+    private static String hmac(String message, byte[] key) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(key, "HmacSHA1"));
+        return Codec.byteToHexString(mac.doFinal(message.getBytes("utf-8")));
+    }
+
+    @Test
+    public void macsAreReusedWithTheirKey() throws Exception {
+        byte[] first = "first secret".getBytes("utf-8");
+        byte[] second = "second secret".getBytes("utf-8");
+        assertEquals(hmac("message", first), Crypto.sign("message", first));
+        assertEquals(hmac("message", second), Crypto.sign("message", second));
+        assertEquals(hmac("other", first), Crypto.sign("other", first));
+        assertEquals("message", Crypto.sign("message", new byte[0]));
+    }
+
+    @Test
+    public void macsAreSharedByTheThreads() throws Exception {
+        final byte[] key = "secret".getBytes("utf-8");
+        ExecutorService executor = Executors.newFixedThreadPool(Crypto.MAX_IDLE_MACS * 2);
+        try {
+            List<Future<String>> signatures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 1000; i++) {
+                final String message = "message" + i;
+                signatures.add(executor.submit(new Callable<String>() {
+                    public String call() {
+                        return Crypto.sign(message, key);
+                    }
+                }));
+            }
+            for (int i = 0; i < signatures.size(); i++) {
+                assertEquals(hmac("message" + i, key), signatures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package play.mvc;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import play.PlayBuilder;
+import play.cache.CacheFor;
+import play.utils.Java;
+
+/**
+ * Resolves the interceptors of an action of a controller with 10 of them, as
+ * ActionInvoker did on each request (annotated methods lookup, filtering of
+ * the <code>only</code> and <code>unless</code> names, accessibility) and
+ * from its {@link ActionPlan}, and prints the time per request. Run it with
+ * <code>java -cp ... play.mvc.ActionInvokerBenchmark [requests]</code>.
+ */
+public class ActionInvokerBenchmark {
+
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        new PlayBuilder().build();
+        Method action = Intercepted.class.getMethod("index");
+        String fullAction = Intercepted.class.getName().substring(12).replace("$", "") + ".index";
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                sink += perRequest(Intercepted.class, action, fullAction);
+            }
+            long perRequest = (System.nanoTime() - start) / requests;
+
+            start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                ActionPlan plan = new ActionPlan(Intercepted.class, action, null);
+                sink += plan.befores.size();
+            }
+            long build = (System.nanoTime() - start) / requests;
+
+            ActionPlan plan = new ActionPlan(Intercepted.class, action, null);
+            start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                sink += planned(plan);
+            }
+            long planned = (System.nanoTime() - start) / requests;
+
+            System.out.println(String.format("round %d: per request %5d ns, plan build %5d ns, precompiled plan %5d ns", round, perRequest, build,
+                    planned));
+        }
+    }
+
+    /**
+     * The interceptors lookup of each request before the plans.
+     */
+    private static int perRequest(Class<?> controllerClass, Method action, String fullAction) {
+        int count = action.isAnnotationPresent(CacheFor.class) ? 1 : 0;
+        List<Method> befores = Java.findAllAnnotatedMethods(controllerClass, Before.class);
+        for (Method before : befores) {
+            String[] unless = before.getAnnotation(Before.class).unless();
+            String[] only = before.getAnnotation(Before.class).only();
+            boolean skip = false;
+            for (String un : only) {
+                if (!un.contains(".")) {
+                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
+                }
+                if (un.equals(fullAction)) {
+                    skip = false;
+                    break;
+                } else {
+                    skip = true;
+                }
+            }
+            for (String un : unless) {
+                if (!un.contains(".")) {
+                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
+                }
+                if (un.equals(fullAction)) {
+                    skip = true;
+                    break;
+                }
+            }
+            if (!skip) {
+                before.setAccessible(true);
+                count++;
+            }
+        }
+        List<Method> afters = Java.findAllAnnotatedMethods(controllerClass, After.class);
+        for (Method after : afters) {
+            String[] unless = after.getAnnotation(After.class).unless();
+            String[] only = after.getAnnotation(After.class).only();
+            boolean skip = false;
+            for (String un : only) {
+                if (!un.contains(".")) {
+                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
+                }
+                if (un.equals(fullAction)) {
+                    skip = false;
+                    break;
+                } else {
+                    skip = true;
+                }
+            }
+            for (String un : unless) {
+                if (!un.contains(".")) {
+                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
+                }
+                if (un.equals(fullAction)) {
+                    skip = true;
+                    break;
+                }
+            }
+            if (!skip) {
+                after.setAccessible(true);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int planned(ActionPlan plan) {
+        int count = plan.cacheFor != null ? 1 : 0;
+        for (ActionPlan.Interceptor before : plan.befores) {
+            count += before.method.getModifiers() & 1;
+        }
+        for (ActionPlan.Interceptor after : plan.afters) {
+            count += after.method.getModifiers() & 1;
+        }
+        return count;
+    }
+
+    public static class Intercepted extends Controller {
+
+        @Before(priority = 0)
+        static void authenticate() {
+        }
+
+        @Before(priority = 1)
+        static void locale() {
+        }
+
+        @Before(priority = 2, unless = "login")
+        static void checkAccess() {
+        }
+
+        @Before(priority = 3, only = { "index", "show" })
+        static void loadUser() {
+        }
+
+        @Before(priority = 4, only = "edit")
+        static void loadForm() {
+        }
+
+        @Before(priority = 5, unless = { "login", "logout" })
+        static void menu() {
+        }
+
+        @Before(priority = 6)
+        static void headers() {
+        }
+
+        @After
+        static void timing() {
+        }
+
+        @After(only = "index")
+        static void audit() {
+        }
+
+        @After(unless = "logout")
+        static void flush() {
+        }
+
+        public static void index() {
+        }
+    }
+}
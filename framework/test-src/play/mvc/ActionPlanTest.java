@@ -0,0 +1,109 @@
+package play.mvc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import play.PlayBuilder;
+
+public class ActionPlanTest {
+
+    @org.junit.Before
+    public void setUp() {
+        new PlayBuilder().build();
+    }
+
+    private static ActionPlan plan(Class<?> controllerClass, String action) throws Exception {
+        return new ActionPlan(controllerClass, controllerClass.getMethod(action), null);
+    }
+
+    private static List<String> names(List<ActionPlan.Interceptor> interceptors) {
+        List<String> names = new ArrayList<String>();
+        for (ActionPlan.Interceptor interceptor : interceptors) {
+            names.add(interceptor.method.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void interceptorsAreFilteredByAction() throws Exception {
+        ActionPlan index = plan(Shop.class, "index");
+        // Controllers are expected in the controllers package, 12 characters long
+        assertThat(index.action).isEqualTo("ionPlanTestShop.index");
+        assertThat(names(index.befores)).containsExactly("first", "always", "onlyIndex");
+        assertThat(names(index.afters)).containsExactly("after");
+
+        ActionPlan buy = plan(Shop.class, "buy");
+        assertThat(names(buy.befores)).containsExactly("first", "always", "unlessIndex");
+        assertThat(buy.cacheFor).isNull();
+        assertThat(index.cacheFor).isNotNull();
+    }
+
+    @Test
+    public void catchesAndFinalliesAreResolved() throws Exception {
+        ActionPlan plan = plan(Shop.class, "index");
+        assertThat(plan.catches).hasSize(2);
+        ActionPlan.Interceptor illegalState = plan.catches.get(0).method.getName().equals("illegalState") ? plan.catches.get(0) : plan.catches.get(1);
+        ActionPlan.Interceptor any = illegalState == plan.catches.get(0) ? plan.catches.get(1) : plan.catches.get(0);
+        assertThat(illegalState.catches(new IllegalStateException())).isTrue();
+        assertThat(illegalState.catches(new IllegalArgumentException())).isFalse();
+        assertThat(any.catches(new IllegalArgumentException())).isTrue();
+
+        assertThat(plan.finallies).hasSize(1);
+        assertThat(plan.finallies.get(0).takesThrowable).isTrue();
+        assertThat(plan.befores.get(0).takesThrowable).isFalse();
+    }
+
+    @Test
+    public void interceptorsAreAccessible() throws Exception {
+        ActionPlan plan = plan(Shop.class, "index");
+        Method hidden = plan.befores.get(1).method;
+        assertThat(hidden.isAccessible()).isTrue();
+    }
+
+    public static class Shop extends Controller {
+
+        @Before(priority = 1)
+        static void always() {
+        }
+
+        @Before(priority = 0)
+        public static void first() {
+        }
+
+        @Before(priority = 2, only = "index")
+        public static void onlyIndex() {
+        }
+
+        @Before(priority = 2, unless = "index")
+        public static void unlessIndex() {
+        }
+
+        @After
+        public static void after() {
+        }
+
+        @Catch(IllegalStateException.class)
+        public static void illegalState(Throwable e) {
+        }
+
+        @Catch
+        public static void any(Throwable e) {
+        }
+
+        @Finally
+        public static void done(Throwable e) {
+        }
+
+        @play.cache.CacheFor
+        public static void index() {
+        }
+
+        public static void buy() {
+        }
+    }
+}
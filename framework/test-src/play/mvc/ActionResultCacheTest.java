@@ -0,0 +1,214 @@
+package play.mvc;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.PlayBuilder;
+import play.cache.Cache;
+import play.cache.CacheFor;
+import play.cache.CacheImpl;
+import play.cache.ConcurrentCacheImpl;
+import play.i18n.Lang;
+import play.mvc.results.Error;
+import play.mvc.results.RenderText;
+import play.mvc.results.Result;
+
+public class ActionResultCacheTest {
+
+    private CacheImpl cacheImpl;
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        cacheImpl = Cache.cacheImpl;
+        Cache.cacheImpl = ConcurrentCacheImpl.withMaxEntries(100);
+        Http.Response.current.set(response());
+    }
+
+    @After
+    public void tearDown() {
+        Cache.cacheImpl = cacheImpl;
+        Lang.current.remove();
+        Http.Response.current.remove();
+    }
+
+    private static CacheFor cacheFor(String action) throws Exception {
+        return ActionResultCacheTest.class.getDeclaredMethod(action).getAnnotation(CacheFor.class);
+    }
+
+    private static Http.Request request(String url) {
+        Http.Request request = new Http.Request();
+        request.url = url;
+        request.querystring = "";
+        return request;
+    }
+
+    private static Http.Response response() {
+        Http.Response response = new Http.Response();
+        response.out = new ByteArrayOutputStream();
+        return response;
+    }
+
+    @CacheFor("1h")
+    static void byUrl() {
+    }
+
+    @CacheFor(value = "1h", id = "home", varyHeaders = "Accept", varyCookies = "theme", varyLang = true)
+    static void varying() {
+    }
+
+    @Test
+    public void keysVaryWithTheSelectedValues() throws Exception {
+        assertThat(ActionResultCache.key(cacheFor("byUrl"), request("/a"))).isNotEqualTo(ActionResultCache.key(cacheFor("byUrl"), request("/b")));
+
+        Lang.current.set("fr");
+        Http.Request request = request("/a");
+        String key = ActionResultCache.key(cacheFor("varying"), request);
+        assertThat(ActionResultCache.key(cacheFor("varying"), request("/b"))).isEqualTo(key);
+
+        request.headers.put("accept", new Http.Header("accept", "application/json"));
+        String withHeader = ActionResultCache.key(cacheFor("varying"), request);
+        assertThat(withHeader).isNotEqualTo(key);
+
+        Http.Cookie theme = new Http.Cookie();
+        theme.name = "theme";
+        theme.value = "dark";
+        request.cookies.put("theme", theme);
+        String withCookie = ActionResultCache.key(cacheFor("varying"), request);
+        assertThat(withCookie).isNotEqualTo(withHeader);
+
+        Lang.current.set("en");
+        assertThat(ActionResultCache.key(cacheFor("varying"), request)).isNotEqualTo(withCookie);
+    }
+
+    @Test
+    public void responsesAreStoredAsBytesWithAnETag() throws Exception {
+        Http.Request request = request("/a");
+        Http.Response response = response();
+        Result result = ActionResultCache.store("key", 60, 0, new RenderText("cached"), request, response);
+        result.apply(request, response);
+        assertThat(response.out.toString()).isEqualTo("cached");
+        String etag = response.getHeader("ETag");
+        assertThat(etag).startsWith("\"").endsWith("\"");
+
+        ActionResultCache.CachedResponse cached = ActionResultCache.get("key");
+        assertThat(cached.isFresh()).isTrue();
+        assertThat(new String(cached.body)).isEqualTo("cached");
+
+        response = response();
+        cached.result().apply(request, response);
+        assertThat(response.status).isEqualTo(200);
+        assertThat(response.contentType).startsWith("text/plain");
+        assertThat(response.out.toString()).isEqualTo("cached");
+
+        request.headers.put("if-none-match", new Http.Header("if-none-match", "\"other\", " + etag));
+        response = response();
+        cached.result().apply(request, response);
+        assertThat(response.status).isEqualTo(Http.StatusCode.NOT_MODIFIED);
+        assertThat(response.out.size()).isEqualTo(0);
+        assertThat(response.getHeader("ETag")).isEqualTo(etag);
+    }
+
+    @Test
+    public void responsesSettingCookiesAreNotCached() {
+        Http.Request request = request("/a");
+        Result result = ActionResultCache.store("cookie", 60, 0, new Result() {
+            @Override
+            public void apply(Http.Request request, Http.Response response) {
+                response.setCookie("name", "value");
+                response.status = 201;
+            }
+        }, request, response());
+        assertThat(ActionResultCache.get("cookie")).isNull();
+
+        Http.Response response = response();
+        result.apply(request, response);
+        assertThat(response.status).isEqualTo(201);
+        assertThat(response.cookies.get("name").value).isEqualTo("value");
+    }
+
+    @Test
+    public void staleResponsesAreServedUntilTheyAreTooOld() throws Exception {
+        ActionResultCache.store("stale", 0, 60, new RenderText("stale"), request("/a"), response());
+        ActionResultCache.store("expired", 0, 0, new RenderText("expired"), request("/a"), response());
+        Thread.sleep(5);
+
+        ActionResultCache.CachedResponse cached = ActionResultCache.get("stale");
+        assertThat(cached).isNotNull();
+        assertThat(cached.isFresh()).isFalse();
+        assertThat(ActionResultCache.get("expired")).isNull();
+    }
+
+    @Test
+    public void aSingleRequestComputesAnEntry() throws Exception {
+        assertThat(ActionResultCache.lock("flight")).isTrue();
+        assertThat(ActionResultCache.lock("flight")).isFalse();
+
+        final AtomicReference<ActionResultCache.CachedResponse> awaited = new AtomicReference<ActionResultCache.CachedResponse>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                awaited.set(ActionResultCache.await("flight", 5000));
+                done.countDown();
+            }
+        };
+        waiting.start();
+        Thread.sleep(50);
+        assertThat(done.getCount()).isEqualTo(1);
+
+        ActionResultCache.store("flight", 60, 0, new RenderText("computed"), request("/a"), response());
+        ActionResultCache.unlock("flight");
+        waiting.join(5000);
+        assertThat(new String(awaited.get().body)).isEqualTo("computed");
+        assertThat(ActionResultCache.lock("flight")).isTrue();
+        ActionResultCache.unlock("flight");
+    }
+
+    @Test
+    public void aWaitingRequestTakesOverAFailedComputation() throws Exception {
+        assertThat(ActionResultCache.lock("failing")).isTrue();
+        final AtomicReference<ActionResultCache.CachedResponse> awaited = new AtomicReference<ActionResultCache.CachedResponse>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                awaited.set(ActionResultCache.await("failing", 5000));
+                done.countDown();
+            }
+        };
+        waiting.start();
+        Thread.sleep(50);
+
+        // Failed: nothing stored
+        ActionResultCache.unlock("failing");
+        waiting.join(5000);
+        assertThat(done.getCount()).isEqualTo(0);
+        assertThat(awaited.get()).isNull();
+        // The waiting request now computes it
+        assertThat(ActionResultCache.lock("failing")).isFalse();
+        ActionResultCache.unlock("failing");
+    }
+
+    @Test
+    public void theWaitIsBounded() throws Exception {
+        assertThat(ActionResultCache.lock("slow")).isTrue();
+        try {
+            ActionResultCache.await("slow", 20);
+            fail("expected a 503 error");
+        } catch (Error e) {
+            assertThat(e.getStatus()).isEqualTo(503);
+            assertThat(e.getMessage()).contains("Timed out");
+        } finally {
+            ActionResultCache.unlock("slow");
+        }
+    }
+}
@@ -187,4 +187,50 @@ public class CookieDataCodecTest {
 
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void hand_written_decoder_agrees_with_url_decoder() throws UnsupportedEncodingException {
+        String[] datas = { "", "a", "a=", "=b", "a=b=c", "a=b&&c=d", "a=b&", "&a=b", "a+b=c%20d", "k%C3%A9=v%E2%82%AC&x=y+z" };
+        for (String data : datas) {
+            Map<String, String> expected = new HashMap<String, String>();
+            for (String keyValue : data.split("&")) {
+                String[] splitted = keyValue.split("=", 2);
+                if (splitted.length == 2) {
+                    expected.put(java.net.URLDecoder.decode(splitted[0], "utf-8"), java.net.URLDecoder.decode(splitted[1], "utf-8"));
+                }
+            }
+            Map<String, String> outMap = new HashMap<String, String>();
+            decode(outMap, data);
+            assertThat(outMap).as(data).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void hand_written_encoder_agrees_with_url_encoder() throws UnsupportedEncodingException {
+        String[] values = { "", "plain", "with space", "a.b-c*d_e", "k\u00e9", "a&b=c", "\u20ac end", "~tilde" };
+        for (String value : values) {
+            StringBuilder data = new StringBuilder();
+            CookieDataCodec.urlEncode(data, value);
+            assertThat(data.toString()).as(value).isEqualTo(URLEncoder.encode(value, "utf-8"));
+        }
+    }
+
+    @Test
+    public void binary_format_round_trips() throws UnsupportedEncodingException {
+        final Map<String, String> inMap = new HashMap<String, String>();
+        for (int i = 0; i < 50; i++) {
+            inMap.put("key" + i, "value \u00e9 " + i);
+        }
+        final String data = CookieDataCodec.encodeBinary(inMap);
+        assertThat(data).startsWith("~");
+        assertThat(data.length()).isLessThan(encode(inMap).length());
+        final Map<String, String> outMap = new HashMap<String, String>();
+        decode(outMap, data);
+        assertThat(outMap).isEqualTo(inMap);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corrupted_binary_data_is_rejected() throws UnsupportedEncodingException {
+        decode(new HashMap<String, String>(), "~bm90IGRlZmxhdGVk");
+    }
+}
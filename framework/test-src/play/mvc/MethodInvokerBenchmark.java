@@ -0,0 +1,131 @@
+package play.mvc;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Calls 10 interceptors and an action the way ActionInvoker did on each
+ * request (modifiers and Scala checks, then <code>Method.invoke</code>) and
+ * through their {@link MethodInvoker}s, generated or reflective, and prints
+ * the time per request. Run it with
+ * <code>java -cp ... play.mvc.MethodInvokerBenchmark [requests]</code>.
+ */
+public class MethodInvokerBenchmark {
+
+    private static final String[] METHODS = { "i0", "i1", "i2", "i3", "i4", "i5", "i6", "i7", "i8", "i9" };
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Method[] methods = new Method[METHODS.length + 1];
+        MethodInvoker[] generated = new MethodInvoker[methods.length];
+        MethodInvoker[] reflective = new MethodInvoker[methods.length];
+        for (int i = 0; i < METHODS.length; i++) {
+            methods[i] = Invoked.class.getMethod(METHODS[i]);
+        }
+        methods[METHODS.length] = Invoked.class.getMethod("action", int.class, String.class);
+        for (int i = 0; i < methods.length; i++) {
+            generated[i] = MethodInvoker.of(methods[i], Invoked.class);
+            reflective[i] = MethodInvoker.reflective(methods[i], Invoked.class);
+        }
+        Object[] noArgs = new Object[0];
+        Object[] actionArgs = new Object[] { 42, "name" };
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < requests; r++) {
+                for (int i = 0; i < methods.length; i++) {
+                    sink += (Integer) perCall(methods[i], i == METHODS.length ? actionArgs : noArgs);
+                }
+            }
+            long perCall = (System.nanoTime() - start) / requests;
+
+            start = System.nanoTime();
+            for (int r = 0; r < requests; r++) {
+                for (int i = 0; i < methods.length; i++) {
+                    sink += (Integer) reflective[i].invoke(null, i == METHODS.length ? actionArgs : noArgs);
+                }
+            }
+            long reflection = (System.nanoTime() - start) / requests;
+
+            start = System.nanoTime();
+            for (int r = 0; r < requests; r++) {
+                for (int i = 0; i < methods.length; i++) {
+                    sink += (Integer) generated[i].invoke(null, i == METHODS.length ? actionArgs : noArgs);
+                }
+            }
+            long direct = (System.nanoTime() - start) / requests;
+
+            System.out.println(String.format("round %d: per call checks %5d ns, reflective invokers %5d ns, generated invokers %5d ns", round,
+                    perCall, reflection, direct));
+        }
+    }
+
+    /**
+     * The checks and the call of each method before the invokers.
+     */
+    private static Object perCall(Method method, Object[] args) throws Exception {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        String declaringClassName = method.getDeclaringClass().getName();
+        // As for a top level controller: the MODULE$ lookup, failing for a
+        // nested class, would dominate the time
+        boolean isProbablyScala = declaringClassName.replace(MethodInvokerBenchmark.class.getName() + "$", "").contains("$");
+        Object instance = isStatic ? null : new Invoked();
+        if (isProbablyScala) {
+            try {
+                instance = Invoked.class.getDeclaredField("MODULE$").get(null);
+            } catch (NoSuchFieldException e) {
+                // not Scala
+            }
+        }
+        return method.invoke(instance, args);
+    }
+
+    public static class Invoked extends Controller {
+
+        public static int i0() {
+            return 0;
+        }
+
+        public static int i1() {
+            return 1;
+        }
+
+        public static int i2() {
+            return 2;
+        }
+
+        public static int i3() {
+            return 3;
+        }
+
+        public static int i4() {
+            return 4;
+        }
+
+        public static int i5() {
+            return 5;
+        }
+
+        public static int i6() {
+            return 6;
+        }
+
+        public static int i7() {
+            return 7;
+        }
+
+        public static int i8() {
+            return 8;
+        }
+
+        public static int i9() {
+            return 9;
+        }
+
+        public static int action(int id, String name) {
+            return id + name.length();
+        }
+    }
+}
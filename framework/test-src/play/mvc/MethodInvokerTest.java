@@ -0,0 +1,117 @@
+package play.mvc;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+public class MethodInvokerTest {
+
+    private static MethodInvoker invoker(Class<?> type, String name, Class<?>... parameterTypes) throws Exception {
+        return MethodInvoker.of(type.getDeclaredMethod(name, parameterTypes), type);
+    }
+
+    @Test
+    public void staticMethodsAreCalledWithoutReflection() throws Exception {
+        MethodInvoker invoker = invoker(Invoked.class, "sum", int.class, long.class, Integer.class);
+        assertThat(invoker.isGenerated()).isTrue();
+        assertThat(invoker.isStatic).isTrue();
+        assertThat(invoker.invoke(null, new Object[] { 1, 2L, 3 })).isEqualTo(6L);
+
+        invoker = invoker(Invoked.class, "join", String[].class, char.class);
+        assertThat(invoker.isGenerated()).isTrue();
+        assertThat(invoker.invoke(null, new Object[] { new String[] { "a", "b" }, '-' })).isEqualTo("a-b");
+
+        invoker = invoker(Invoked.class, "nothing");
+        assertThat(invoker.invoke(null, new Object[0])).isNull();
+    }
+
+    @Test
+    public void theInvokersOfAClassLoaderShareTheirLoader() throws Exception {
+        MethodInvoker sum = invoker(Invoked.class, "sum", int.class, long.class, Integer.class);
+        MethodInvoker name = invoker(Invoked.class, "name", boolean.class);
+        assertThat(sum.getClass().getClassLoader()).isSameAs(name.getClass().getClassLoader());
+        assertThat(sum.getClass().getClassLoader().getParent()).isSameAs(Invoked.class.getClassLoader());
+    }
+
+    @Test
+    public void instanceMethodsAreCalledOnTheController() throws Exception {
+        MethodInvoker invoker = invoker(Invoked.class, "name", boolean.class);
+        assertThat(invoker.isGenerated()).isTrue();
+        assertThat(invoker.isStatic).isFalse();
+        assertThat(invoker.invoke(new Invoked(), new Object[] { true })).isEqualTo("INVOKED");
+    }
+
+    @Test
+    public void exceptionsAreWrappedAsByReflection() throws Exception {
+        MethodInvoker invoker = invoker(Invoked.class, "fail");
+        try {
+            invoker.invoke(null, new Object[0]);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getTargetException()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void nonPublicMethodsAreCalledByReflection() throws Exception {
+        Method hidden = Invoked.class.getDeclaredMethod("hidden");
+        hidden.setAccessible(true);
+        MethodInvoker invoker = MethodInvoker.of(hidden, Invoked.class);
+        assertThat(invoker.isGenerated()).isFalse();
+        assertThat(invoker.invoke(null, new Object[0])).isEqualTo("hidden");
+    }
+
+    @Test
+    public void interceptorsAreNotActions() throws Exception {
+        assertThat(invoker(Invoked.class, "nothing").isAction).isTrue();
+        assertThat(invoker(Invoked.class, "check").isAction).isFalse();
+    }
+
+    @Test
+    public void scalaObjectsAreSettledOnce() throws Exception {
+        MethodInvoker invoker = invoker(ActionInvokerTest.TestScalaObject$.class, "objectMethod");
+        assertThat(invoker.scalaInstance).isSameAs(ActionInvokerTest.TestScalaObject$.MODULE$);
+        assertThat(invoker.scalaTrait).isFalse();
+
+        invoker = MethodInvoker.of(ActionInvokerTest.TestScalaTrait$class.class.getMethod("traitMethod", Object.class),
+                ActionInvokerTest.TestScalaObject$.class);
+        assertThat(invoker.scalaTrait).isTrue();
+        assertThat(invoker.invoke(null, new Object[] { invoker.scalaInstance })).isEqualTo("static-with-object");
+
+        assertThat(invoker(Invoked.class, "nothing").scalaInstance).isNull();
+    }
+
+    public static class Invoked extends Controller {
+
+        public static long sum(int a, long b, Integer c) {
+            return a + b + c;
+        }
+
+        public static String join(String[] values, char separator) {
+            return values[0] + separator + values[1];
+        }
+
+        public static void nothing() {
+        }
+
+        public static void fail() {
+            throw new IllegalStateException();
+        }
+
+        @play.mvc.Before
+        public static void check() {
+        }
+
+        static String hidden() {
+            return "hidden";
+        }
+
+        public String name(boolean upper) {
+            return upper ? "INVOKED" : "invoked";
+        }
+    }
+}
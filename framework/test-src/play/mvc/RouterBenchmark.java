@@ -0,0 +1,85 @@
+package play.mvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import play.Play;
+import play.mvc.Router.Route;
+
+/**
+ * Compares the compiled route dispatcher with a linear scan of the routes
+ * list, for 10, 100 and 1000 routes. Run it with
+ * <code>java -cp ... play.mvc.RouterBenchmark</code>.
+ */
+public class RouterBenchmark {
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 200000;
+
+    public static void main(String[] args) {
+        Play.configuration = new Properties();
+        for (int size : new int[] { 10, 100, 1000 }) {
+            List<Route> routes = routes(size);
+            RouteTrie trie = new RouteTrie(routes);
+            String[] paths = paths(size);
+
+            run(routes, trie, paths, WARMUP, true);
+            long scan = run(routes, trie, paths, ITERATIONS, false);
+            run(routes, trie, paths, WARMUP, false);
+            long compiled = run(routes, trie, paths, ITERATIONS, true);
+
+            System.out.println(String.format("%5d routes: scan %8d ns/op, trie %6d ns/op", size, scan / ITERATIONS, compiled / ITERATIONS));
+        }
+    }
+
+    private static long run(List<Route> routes, RouteTrie trie, String[] paths, int iterations, boolean useTrie) {
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < iterations; i++) {
+            String path = paths[i % paths.length];
+            List<Route> candidates = useTrie ? trie.candidates("GET", path) : routes;
+            for (Route route : candidates) {
+                Map<String, String> args = route.matches("GET", path, null, null);
+                if (args != null) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        if (found != iterations) {
+            throw new IllegalStateException("Only " + found + " of " + iterations + " requests were routed");
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * A typical routes file: resources with a show/edit/create route each,
+     * followed by the catch-all route.
+     */
+    private static List<Route> routes(int size) {
+        List<Route> routes = new ArrayList<Route>(size);
+        for (int i = 0; routes.size() < size - 1; i++) {
+            String resource = "/resource" + i;
+            routes.add(Router.getRoute("GET", resource + "/{<[0-9]+>id}", "Resource" + i + ".show", null, null));
+            routes.add(Router.getRoute("GET", resource + "/{id}/edit", "Resource" + i + ".edit", null, null));
+            routes.add(Router.getRoute("POST", resource + "/?", "Resource" + i + ".create", null, null));
+        }
+        while (routes.size() > size - 1) {
+            routes.remove(routes.size() - 1);
+        }
+        routes.add(Router.getRoute("*", "/{controller}/{action}", "{controller}.{action}", null, null));
+        return routes;
+    }
+
+    private static String[] paths(int size) {
+        int resources = Math.max(1, (size - 1) / 3);
+        String[] paths = new String[64];
+        for (int i = 0; i < paths.length; i++) {
+            int resource = (i * 7919) % resources;
+            paths[i] = i % 8 == 7 ? "/application/index" : i % 2 == 0 ? "/resource" + resource + "/" + i : "/resource" + resource + "/" + i + "/edit";
+        }
+        return paths;
+    }
+}
@@ -8,6 +8,8 @@ import play.mvc.Http.Request;
 import play.mvc.results.NotFound;
 import play.mvc.results.RenderStatic;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -127,6 +129,93 @@ public class RouterTest {
         assertTrue("Musicfile [" + musicRequest.domain + "] from the right domain must be found", canRenderFile(musicRequest));
     }
     
+    @Test
+    public void test_routesAreMatchedInDeclarationOrder() {
+        Play.configuration = new Properties();
+        Router.routes.clear();
+        Router.appendRoute("GET", "/users/{id}", "Users.show", null, null, null, 0);
+        Router.appendRoute("GET", "/users/new", "Users.blank", null, null, null, 0);
+        Router.appendRoute("*", "/users/{id}/edit", "Users.edit", null, null, null, 0);
+        Router.appendRoute("POST", "/users/?", "Users.create", null, null, null, 0);
+        Router.appendRoute("GET", "/{controller}/{action}", "{controller}.{action}", null, null, null, 0);
+
+        // The first declared route wins even if a later one is more specific
+        assertEquals("Users.show", Router.route("GET", "/users/new").get("action"));
+        assertEquals("Users.edit", Router.route("PUT", "/users/12/edit").get("action"));
+        assertEquals("Users.create", Router.route("POST", "/users").get("action"));
+        assertEquals("Users.create", Router.route("POST", "/users/").get("action"));
+        assertEquals("{controller}.{action}", Router.route("GET", "/books/list").get("action"));
+        assertEquals("Users.show", Router.route("HEAD", "/users/3").get("action"));
+        assertNull(Router.route("DELETE", "/users/3").get("action"));
+        assertNull(Router.route("GET", "/books/list/more").get("action"));
+
+        // Routes added after the trie was built are taken into account
+        Router.prependRoute("DELETE", "/users/{id}", "Users.delete");
+        assertEquals("Users.delete", Router.route("DELETE", "/users/3").get("action"));
+    }
+
+    @Test
+    public void test_staticSegments() {
+        assertThat(RouteTrie.staticSegments("/")).isEmpty();
+        assertThat(RouteTrie.staticSegments("/users")).isEmpty();
+        assertThat(RouteTrie.staticSegments("/users/?")).isEmpty();
+        assertThat(RouteTrie.staticSegments("/users/{id}")).containsExactly("users");
+        assertThat(RouteTrie.staticSegments("/api/v1/users/{<[0-9]+>id}")).containsExactly("api", "v1", "users");
+        assertThat(RouteTrie.staticSegments("/public/")).containsExactly("public");
+        assertThat(RouteTrie.staticSegments("/a/b.txt")).containsExactly("a");
+        assertThat(RouteTrie.staticSegments("/a/b/{2}")).containsExactly("a");
+    }
+
+    @Test
+    public void test_reverse() {
+        Play.configuration = new Properties();
+        Router.routes.clear();
+        Router.appendRoute("GET", "/users/{<[0-9]+>id}", "Users.show", null, null, null, 0);
+        Router.appendRoute("GET", "/users/{name}/?", "Users.byName", null, null, null, 0);
+        Router.appendRoute("GET", "/users/{name}", "Users.show", null, null, null, 0);
+        Router.appendRoute("GET", "/{controller}/{action}", "{controller}.{action}", null, null, null, 0);
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("id", 12);
+        args.put("page", 2);
+        Router.ActionDefinition definition = Router.reverse("Users.show", args);
+        assertEquals("/users/12?page=2", definition.url);
+        assertEquals("GET", definition.method);
+
+        // The id constraint is checked on each call
+        args = new HashMap<String, Object>();
+        args.put("id", "bob");
+        args.put("name", "bob smith");
+        assertEquals("/users/bob%20smith?id=bob", Router.reverse("Users.show", args).url);
+
+        args = new HashMap<String, Object>();
+        args.put("name", "bob");
+        assertEquals("/users/bob", Router.reverse("Users.byName", args).url);
+        assertEquals("/books/list", Router.reverse("Books.list").url);
+
+        // Routes added later are taken into account
+        Router.prependRoute("GET", "/people/{<[0-9]+>id}", "Users.show");
+        args = new HashMap<String, Object>();
+        args.put("id", 12);
+        assertEquals("/people/12", Router.reverse("Users.show", args).url);
+    }
+
+    @Test
+    public void test_reverseWithANullStaticArg() {
+        Play.configuration = new Properties();
+        Router.routes.clear();
+        Router.appendRoute("GET", "/books/first", "Books.list", "(page:'1')", null, null, 0);
+        Router.appendRoute("GET", "/books", "Books.list", null, null, null, 0);
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("page", "1");
+        assertEquals("/books/first", Router.reverse("Books.list", args).url);
+
+        // A null value doesn't match the static arg: the next route is used
+        args.put("page", null);
+        assertEquals("/books", Router.reverse("Books.list", args).url);
+    }
+
     public boolean canRenderFile(Request request){
         try {
             Router.route(request);
@@ -105,6 +105,67 @@ public class SessionTest {
         assertNotNull(Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION"));
     }
 
+    private static Session restoreFrom(String cookieValue) {
+        mockRequestAndResponse();
+        Cookie cookie = new Cookie();
+        cookie.name = Scope.COOKIE_PREFIX + "_SESSION";
+        cookie.value = cookieValue;
+        Request.current().cookies.put(cookie.name, cookie);
+        return Session.restore();
+    }
+
+    @Test
+    public void testVerifiedSessionsAreCached() throws Exception {
+        boolean started = Play.started;
+        Play.started = true;
+        Play.secretKey = "0112358";
+        try {
+            HashMap<String, String> data = new HashMap<String, String>();
+            data.put("username", "Carol");
+            String sessionData = CookieDataCodec.encode(data);
+            String value = Crypto.sign(sessionData, Play.secretKey.getBytes()) + "-" + sessionData;
+
+            long hits = Scope.DecodedSession.cache.getHitCount();
+            assertEquals("Carol", restoreFrom(value).get("username"));
+            assertEquals(hits, Scope.DecodedSession.cache.getHitCount());
+
+            Session session = restoreFrom(value);
+            assertEquals(hits + 1, Scope.DecodedSession.cache.getHitCount());
+            assertEquals("Carol", session.get("username"));
+            // The cached data is copied
+            session.put("username", "Dave");
+            assertEquals("Carol", restoreFrom(value).get("username"));
+
+            // Not with another secret
+            Play.secretKey = "13213455";
+            assertNull(restoreFrom(value).get("username"));
+
+            // Nor without a valid signature
+            assertNull(restoreFrom("0" + value.substring(1)).get("username"));
+        } finally {
+            Play.started = started;
+        }
+    }
+
+    @Test
+    public void testBinarySessionsAreRestored() throws Exception {
+        boolean started = Play.started;
+        Play.started = true;
+        Play.secretKey = "0112358";
+        try {
+            HashMap<String, String> data = new HashMap<String, String>();
+            data.put("username", "Erin");
+            data.put("cart", "1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20");
+            String sessionData = CookieDataCodec.encodeBinary(data);
+            String value = Crypto.sign(sessionData, Play.secretKey.getBytes()) + "-" + sessionData;
+            Session session = restoreFrom(value);
+            assertEquals("Erin", session.get("username"));
+            assertEquals(data.get("cart"), session.get("cart"));
+        } finally {
+            Play.started = started;
+        }
+    }
+
     @After
     public void restoreDefault() {
         final boolean SESSION_SEND_ONLY_IF_CHANGED = Play.configuration.getProperty("application.session.sendOnlyIfChanged", "false").toLowerCase().equals("true"); 
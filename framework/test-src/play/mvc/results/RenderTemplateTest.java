@@ -0,0 +1,196 @@
+package play.mvc.results;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.PlayBuilder;
+import play.exceptions.UnexpectedException;
+import play.libs.F;
+import play.mvc.Http;
+import play.mvc.Scope;
+import play.templates.FastTags;
+import play.templates.StreamingWriter;
+import play.templates.Template;
+
+public class RenderTemplateTest {
+
+    private final List<Object> chunks = new ArrayList<Object>();
+    private Http.Response response;
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        Play.configuration.setProperty("play.templates.streaming", "true");
+        response = new Http.Response();
+        response.out = new ByteArrayOutputStream();
+        response.onWriteChunk(new F.Action<Object>() {
+            @Override
+            public void invoke(Object chunk) {
+                chunks.add(chunk);
+            }
+        });
+        Http.Response.current.set(response);
+        Http.Request.current.set(new Http.Request());
+        Play.secretKey = "secret";
+    }
+
+    @After
+    public void tearDown() {
+        Http.Response.current.remove();
+        Http.Request.current.remove();
+        Scope.Session.current.remove();
+        Scope.Flash.current.remove();
+    }
+
+    /**
+     * Writes <code>size</code> characters, 100 at a time
+     */
+    static class Sized extends Template {
+
+        int renders;
+
+        Sized() {
+            name = "page.html";
+        }
+
+        @Override
+        public void compile() {
+        }
+
+        @Override
+        public void render(Map<String, Object> args, Writer out) {
+            renders++;
+            StreamingWriter writer = new StreamingWriter(out);
+            try {
+                for (int i = 0; i < (Integer) args.get("size"); i += 100) {
+                    writer.write(StringUtils.repeat("x", 100));
+                }
+                writer.close();
+            } catch (IOException e) {
+                throw new UnexpectedException(e);
+            }
+        }
+
+        @Override
+        protected String internalRender(Map<String, Object> args) {
+            renders++;
+            return StringUtils.repeat("x", (Integer) args.get("size"));
+        }
+    }
+
+    /**
+     * Renders <code>#{authenticityToken/}</code> at the top of a page of
+     * <code>size</code> characters
+     */
+    static class Form extends Sized {
+
+        @Override
+        public void render(Map<String, Object> args, Writer out) {
+            StreamingWriter writer = new StreamingWriter(out);
+            PrintWriter printer = new PrintWriter(writer);
+            FastTags._authenticityToken(new HashMap<Object, Object>(), null, printer, null, 1);
+            printer.flush();
+            super.render(args, writer);
+        }
+    }
+
+    private void assertTheTokenIsInTheSessionCookie() {
+        String token = Scope.Session.current().getAuthenticityToken();
+        Http.Cookie cookie = response.cookies.get(Scope.COOKIE_PREFIX + "_SESSION");
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.value).contains(token);
+    }
+
+    private static Map<String, Object> size(int size) {
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("size", size);
+        return args;
+    }
+
+    @Test
+    public void largePagesAreSentInChunks() {
+        Sized template = new Sized();
+        RenderTemplate result = new RenderTemplate(template, size(20000));
+        assertThat(template.renders).isEqualTo(0);
+
+        result.apply(new Http.Request(), response);
+        assertThat(response.contentType).startsWith("text/html");
+        assertThat(chunks.size()).isGreaterThan(1);
+        assertThat(StringUtils.join(chunks, "")).hasSize(20000);
+        assertThat(((ByteArrayOutputStream) response.out).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void smallPagesAreBuffered() {
+        new RenderTemplate(new Sized(), size(100)).apply(new Http.Request(), response);
+        assertThat(chunks).isEmpty();
+        assertThat(((ByteArrayOutputStream) response.out).size()).isEqualTo(100);
+    }
+
+    @Test
+    public void pagesAreRenderedRightAwayWithoutStreaming() {
+        Play.configuration.setProperty("play.templates.streaming", "false");
+        Sized template = new Sized();
+        RenderTemplate result = new RenderTemplate(template, size(20000));
+        assertThat(template.renders).isEqualTo(1);
+        result.apply(new Http.Request(), response);
+        assertThat(chunks).isEmpty();
+        assertThat(result.getContent()).hasSize(20000);
+    }
+
+    @Test
+    public void responsesThatCannotBeChunkedAreBuffered() {
+        Sized template = new Sized();
+        RenderTemplate result = new RenderTemplate(template, size(20000));
+        Http.Response buffered = new Http.Response();
+        buffered.out = new ByteArrayOutputStream();
+        result.apply(new Http.Request(), buffered);
+        assertThat(chunks).isEmpty();
+        assertThat(((ByteArrayOutputStream) buffered.out).size()).isEqualTo(20000);
+        assertThat(template.renders).isEqualTo(1);
+    }
+
+    @Test
+    public void theSessionChangedByAStreamedTemplateIsSaved() {
+        Scope.Session.current.set(new Scope.Session());
+        Scope.Flash.current.set(new Scope.Flash());
+        new RenderTemplate(new Form(), size(100)).apply(new Http.Request(), response);
+        assertThat(chunks).isEmpty();
+        assertTheTokenIsInTheSessionCookie();
+    }
+
+    @Test
+    public void theSessionIsSavedBeforeTheFirstChunk() {
+        Scope.Session.current.set(new Scope.Session());
+        Scope.Flash.current.set(new Scope.Flash());
+        response = new Http.Response();
+        response.out = new ByteArrayOutputStream();
+        Http.Response.current.set(response);
+        response.onWriteChunk(new F.Action<Object>() {
+            @Override
+            public void invoke(Object chunk) {
+                if (chunks.isEmpty()) {
+                    assertTheTokenIsInTheSessionCookie();
+                }
+                chunks.add(chunk);
+            }
+        });
+        new RenderTemplate(new Form(), size(20000)).apply(new Http.Request(), response);
+        assertThat(chunks.size()).isGreaterThan(1);
+        assertTheTokenIsInTheSessionCookie();
+    }
+}
@@ -0,0 +1,118 @@
+package play.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+
+public class CompressionHandlerTest {
+
+    @Before
+    public void setUp() {
+        Play.configuration = new Properties();
+    }
+
+    /**
+     * Send a request accepting gzip and then the response through a new
+     * handler.
+     *
+     * @return the response as written
+     */
+    private static HttpResponse send(HttpResponse response) {
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new CompressionHandler());
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        request.headers().set("Accept-Encoding", "gzip, deflate");
+        embedder.offer(request);
+        assertEquals(request, embedder.poll());
+        embedder.getPipeline().getChannel().write(response);
+        return (HttpResponse) embedder.poll();
+    }
+
+    private static HttpResponse response(HttpResponseStatus status, int length) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.headers().set("Content-Type", "text/html; charset=utf-8");
+        response.headers().set("ETag", "\"abc\"");
+        response.setContent(ChannelBuffers.copiedBuffer(StringUtils.repeat("a", length).getBytes()));
+        return response;
+    }
+
+    @Test
+    public void bigResponsesAreCompressed() {
+        HttpResponse response = send(response(HttpResponseStatus.OK, 2000));
+        assertEquals("gzip", response.headers().get("Content-Encoding"));
+        assertEquals("\"abc-gzip\"", response.headers().get("ETag"));
+        assertEquals("Accept-Encoding", response.headers().get("Vary"));
+        assertTrue(response.getContent().readableBytes() < 2000);
+    }
+
+    @Test
+    public void smallResponsesAreNotCompressed() {
+        HttpResponse response = send(response(HttpResponseStatus.OK, 1000));
+        assertNull(response.headers().get("Content-Encoding"));
+        assertEquals("\"abc\"", response.headers().get("ETag"));
+        assertNull(response.headers().get("Vary"));
+
+        Play.configuration.setProperty("http.compression.minSize", "100");
+        assertEquals("gzip", send(response(HttpResponseStatus.OK, 1000)).headers().get("Content-Encoding"));
+    }
+
+    @Test
+    public void rangesAreNotCompressed() {
+        HttpResponse partial = response(HttpResponseStatus.PARTIAL_CONTENT, 2000);
+        assertNull(send(partial).headers().get("Content-Encoding"));
+
+        HttpResponse range = response(HttpResponseStatus.OK, 2000);
+        range.headers().set("Content-Range", "bytes 0-1999/4000");
+        HttpResponse response = send(range);
+        assertNull(response.headers().get("Content-Encoding"));
+        assertEquals(2000, response.getContent().readableBytes());
+    }
+
+    @Test
+    public void negotiate() {
+        assertNull(CompressionHandler.negotiate(null, "br", "gzip"));
+        assertNull(CompressionHandler.negotiate("identity", "br", "gzip"));
+        assertEquals("gzip", CompressionHandler.negotiate("gzip, deflate", "br", "gzip"));
+        assertEquals("br", CompressionHandler.negotiate("gzip, deflate, br", "br", "gzip"));
+        assertEquals("gzip", CompressionHandler.negotiate("br;q=0.5, gzip", "br", "gzip"));
+        assertNull(CompressionHandler.negotiate("gzip;q=0", "br", "gzip"));
+        assertEquals("br", CompressionHandler.negotiate("*", "br", "gzip"));
+    }
+
+    @Test
+    public void compressibleContentTypes() {
+        assertTrue(CompressionHandler.isCompressible("text/html; charset=utf-8"));
+        assertTrue(CompressionHandler.isCompressible("application/json"));
+        assertTrue(CompressionHandler.isCompressible("image/svg+xml"));
+        assertFalse(CompressionHandler.isCompressible("image/png"));
+        assertFalse(CompressionHandler.isCompressible(null));
+    }
+
+    @Test
+    public void etagsHaveOneTagPerEncoding() {
+        assertEquals("\"123-456-gzip\"", CompressionHandler.etagWithEncoding("\"123-456\"", "gzip"));
+        assertEquals("W/\"abc-br\"", CompressionHandler.etagWithEncoding("W/\"abc\"", "br"));
+
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        request.headers().set("If-None-Match", "\"123-456-gzip\", \"abc-br\", \"def\"");
+        CompressionHandler.stripEtagEncodings(request);
+        assertEquals("\"123-456\", \"abc\", \"def\"", request.headers().get("If-None-Match"));
+    }
+}
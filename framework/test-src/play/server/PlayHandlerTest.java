@@ -0,0 +1,191 @@
+package play.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.InvokerPools;
+import play.Play;
+import play.PlayBuilder;
+import play.PlayPlugin;
+import play.mvc.Http;
+import play.mvc.Router;
+import play.plugins.PluginCollection;
+import play.vfs.VirtualFile;
+
+public class PlayHandlerTest {
+
+    private File root;
+    private final BlockingQueue<Object[]> writes = new LinkedBlockingQueue<Object[]>();
+
+    @Before
+    public void setUp() throws Exception {
+        Properties configuration = new Properties();
+        configuration.setProperty("play.pool.slow.size", "1");
+        configuration.setProperty("play.pool.slow.actions", "Application.slow");
+        new PlayBuilder().withConfiguration(configuration).build();
+        // Read by the PlayHandler static initializer
+        Play.mode = Play.Mode.PROD;
+        Play.pluginCollection = new PluginCollection();
+        root = new File(FileUtils.getTempDirectory(), "playHandlerTest" + System.nanoTime());
+        FileUtils.writeStringToFile(new File(root, "public/app.css"), "body { color: red; }");
+        Play.roots = new ArrayList<VirtualFile>();
+        Play.roots.add(VirtualFile.open(root));
+        Router.routes.clear();
+        Router.addRoute("GET", "/public/", "staticDir:public");
+        Router.addRoute("GET", "/favicon.ico", "404");
+        Router.addRoute("GET", "/slow", "Application.slow");
+        InvokerPools.reset();
+        Play.started = true;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Play.started = false;
+        Play.configuration = new Properties();
+        InvokerPools.reset();
+        Router.routes.clear();
+        StaticResourceCache.clear();
+        FileUtils.deleteDirectory(root);
+    }
+
+    private static Http.Request request(String path) {
+        return Http.Request.createRequest(null, "GET", path, "", null, null, null, "localhost", false, 80, "localhost", false, null,
+                null);
+    }
+
+    private String poolOf(String path) {
+        return new PlayHandler().new NettyInvocation(request(path), new Http.Response(), null, null, null).getPoolName();
+    }
+
+    @Test
+    public void staticAnd404RoutesUseTheMainPool() {
+        assertThat(poolOf("/public/app.css")).isEqualTo("default");
+        assertThat(poolOf("/public/missing.css")).isEqualTo("default");
+        assertThat(poolOf("/favicon.ico")).isEqualTo("default");
+        assertThat(poolOf("/slow")).isEqualTo("slow");
+    }
+
+    @Test
+    public void noRoutingWithoutNamedPools() {
+        Play.configuration = new Properties();
+        InvokerPools.reset();
+        assertThat(poolOf("/slow")).isNull();
+    }
+
+    /**
+     * @return a fake answering the given methods, null or false for others
+     */
+    private static <T> T fake(Class<T> type, final Object... answers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                for (int i = 0; i < answers.length; i += 2) {
+                    if (method.getName().equals(answers[i])) {
+                        Object answer = answers[i + 1];
+                        return answer instanceof InvocationHandler ? ((InvocationHandler) answer).invoke(proxy, method, args) : answer;
+                    }
+                }
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+            }
+        }));
+    }
+
+    private void send(String path) throws Exception {
+        final Thread ioThread = Thread.currentThread();
+        final ChannelFuture future = fake(ChannelFuture.class);
+        Channel channel = fake(Channel.class, "isConnected", true, "isOpen", true, "write", new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                writes.add(new Object[] { Thread.currentThread() == ioThread, args[0] });
+                return future;
+            }
+        });
+        ChannelHandlerContext ctx = fake(ChannelHandlerContext.class, "getChannel", channel);
+        HttpRequest nettyRequest = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, path);
+        nettyRequest.headers().set("Host", "localhost");
+        MessageEvent event = fake(MessageEvent.class, "getMessage", nettyRequest, "getChannel", channel, "getRemoteAddress",
+                new InetSocketAddress("127.0.0.1", 1234));
+
+        new PlayHandler().messageReceived(ctx, event);
+    }
+
+    private HttpResponse response() throws Exception {
+        Object[] write = writes.poll(5, TimeUnit.SECONDS);
+        assertThat(write).isNotNull();
+        assertThat(write[0]).as("answered on the I/O thread").isEqualTo(false);
+        return (HttpResponse) write[1];
+    }
+
+    @Test
+    public void staticRoutesAreServedFromThePool() throws Exception {
+        send("/public/app.css");
+        assertThat(response().getStatus()).isEqualTo(HttpResponseStatus.OK);
+    }
+
+    @Test
+    public void pluginsReadTheResponseAfterItIsSent() throws Exception {
+        final List<String> read = new ArrayList<String>();
+        final PlayPlugin plugin = new PlayPlugin() {
+            @Override
+            public boolean serveStatic(VirtualFile file, Http.Request request, Http.Response response) {
+                response.print("served by the plugin");
+                return true;
+            }
+
+            @Override
+            public void invocationFinally() {
+                read.add(Http.Response.current().out.toString());
+            }
+        };
+        Play.pluginCollection = new PluginCollection() {
+            {
+                addPlugin(plugin);
+            }
+        };
+        send("/public/app.css");
+        HttpResponse response = response();
+        assertThat(response.getStatus()).isEqualTo(HttpResponseStatus.OK);
+        assertThat(response.getContent().toString(Charset.forName("utf-8"))).isEqualTo("served by the plugin");
+        // Read once the invocation is over
+        for (int i = 0; i < 100 && read.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(read).containsExactly("served by the plugin");
+    }
+
+    @Test
+    public void notFoundRoutesAreHandedToThePool() throws Exception {
+        send("/favicon.ico");
+        // The 404 page itself needs the templates, not available here
+        List<Object[]> sync = new ArrayList<Object[]>(writes);
+        for (Object[] write : sync) {
+            assertThat(write[0]).as("answered on the I/O thread").isEqualTo(false);
+        }
+        assertThat(response().getStatus()).isNotEqualTo(HttpResponseStatus.OK);
+    }
+}
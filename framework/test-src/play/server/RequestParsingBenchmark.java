@@ -0,0 +1,138 @@
+package play.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+
+import play.Play;
+import play.PlayBuilder;
+import play.mvc.Http;
+
+/**
+ * Parses a browser-like request of 12 headers, 5 cookies and a 2kB body and
+ * reads two headers and a cookie from it, first with the headers, cookies and
+ * body copied as PlayHandler did, then with the lazy views, and prints the
+ * time and the bytes allocated per request. Run it with
+ * <code>java -cp ... play.server.RequestParsingBenchmark [requests]</code>.
+ */
+public class RequestParsingBenchmark {
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        new PlayBuilder().build();
+        Play.mode = Play.Mode.PROD;
+        HttpRequest nettyRequest = nettyRequest();
+        InetSocketAddress remote = new InetSocketAddress("10.0.0.1", 51234);
+        PlayHandler handler = new PlayHandler();
+
+        for (int round = 0; round < 5; round++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int r = 0; r < requests; r++) {
+                Http.Request request = Http.Request.createRequest(legacyRemoteAddress(remote), "POST", "/path", "a=b", null,
+                        legacyBody(nettyRequest), "/path?a=b", "localhost", false, 9000, "localhost", false, legacyHeaders(nettyRequest),
+                        PlayHandler.getCookies(nettyRequest));
+                use(request);
+            }
+            long eagerTime = (System.nanoTime() - start) / requests;
+            long eagerBytes = (allocatedBytes() - bytes) / requests;
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int r = 0; r < requests; r++) {
+                use(handler.parseRequest(nettyRequest, remote));
+            }
+            long lazyTime = (System.nanoTime() - start) / requests;
+            long lazyBytes = (allocatedBytes() - bytes) / requests;
+
+            System.out.println(String.format("round %d: eager %6d ns %7d bytes, lazy %6d ns %7d bytes", round, eagerTime, eagerBytes, lazyTime,
+                    lazyBytes));
+        }
+    }
+
+    private static void use(Http.Request request) {
+        sink = request.headers.get("accept");
+        sink = request.headers.get("user-agent");
+        sink = request.cookies.get("PLAY_SESSION");
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static HttpRequest nettyRequest() {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/path?a=b");
+        request.headers().add("Host", "localhost:9000");
+        request.headers().add("User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:120.0) Gecko/20100101 Firefox/120.0");
+        request.headers().add("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+        request.headers().add("Accept-Language", "en-US,en;q=0.5");
+        request.headers().add("Accept-Encoding", "gzip, deflate, br");
+        request.headers().add("Connection", "keep-alive");
+        request.headers().add("Referer", "http://localhost:9000/form");
+        request.headers().add("Upgrade-Insecure-Requests", "1");
+        request.headers().add("Cache-Control", "max-age=0");
+        request.headers().add("Content-Type", "application/x-www-form-urlencoded");
+        request.headers().add("Content-Length", "2048");
+        request.headers().add("Cookie", "PLAY_SESSION=0123456789abcdef-___ID=abc; PLAY_FLASH=; PLAY_ERRORS=; _ga=GA1.1.123.456; theme=dark");
+        byte[] body = new byte[2048];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+        request.setContent(ChannelBuffers.wrappedBuffer(body));
+        return request;
+    }
+
+    /**
+     * The address as PlayHandler.getRemoteIPAddress computed it.
+     */
+    private static String legacyRemoteAddress(InetSocketAddress remote) {
+        String fullAddress = remote.getAddress().getHostAddress();
+        if (fullAddress.matches("/[0-9]+[.][0-9]+[.][0-9]+[.][0-9]+[:][0-9]+")) {
+            fullAddress = fullAddress.substring(1);
+            fullAddress = fullAddress.substring(0, fullAddress.indexOf(":"));
+        } else if (fullAddress.matches(".*[%].*")) {
+            fullAddress = fullAddress.substring(0, fullAddress.indexOf("%"));
+        }
+        return fullAddress;
+    }
+
+    /**
+     * The body as PlayHandler.parseRequest copied it.
+     */
+    private static ByteArrayInputStream legacyBody(HttpRequest nettyRequest) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtils.copy(new ChannelBufferInputStream(nettyRequest.getContent().duplicate()), out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    /**
+     * The headers as PlayHandler.getHeaders copied them.
+     */
+    private static Map<String, Http.Header> legacyHeaders(HttpRequest nettyRequest) {
+        Map<String, Http.Header> headers = new HashMap<String, Http.Header>(16);
+        for (String key : nettyRequest.headers().names()) {
+            Http.Header hd = new Http.Header();
+            hd.name = key.toLowerCase();
+            hd.values = new ArrayList<String>();
+            for (String next : nettyRequest.headers().getAll(key)) {
+                hd.values.add(next);
+            }
+            headers.put(hd.name, hd);
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,121 @@
+package play.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.PlayBuilder;
+import play.mvc.Http;
+
+public class RequestParsingTest {
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        // Read by the PlayHandler static initializer
+        Play.mode = Play.Mode.DEV;
+    }
+
+    private static HttpRequest nettyRequest() {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/path?a=b");
+        request.headers().add("Host", "127.0.0.1:9000");
+        request.headers().add("Accept", "text/html");
+        request.headers().add("X-Custom", "1");
+        request.headers().add("X-Custom", "2");
+        request.headers().add("Cookie", "PLAY_SESSION=abc; other=def");
+        request.setContent(ChannelBuffers.wrappedBuffer("body".getBytes()));
+        return request;
+    }
+
+    @Test
+    public void requestIsParsed() throws Exception {
+        Http.Request request = new PlayHandler().parseRequest(nettyRequest(), new InetSocketAddress("127.0.0.1", 1234));
+        assertThat(request.path).isEqualTo("/path");
+        assertThat(request.querystring).isEqualTo("a=b");
+        assertThat(request.remoteAddress).isEqualTo("127.0.0.1");
+        assertThat(request.isLoopback).isTrue();
+        assertThat(request.port).isEqualTo(9000);
+        assertThat(request.headers.get("accept").value()).isEqualTo("text/html");
+        assertThat(request.headers.get("x-custom").values).containsExactly("1", "2");
+        assertThat(request.headers.get("Accept")).isNull();
+        assertThat(request.cookies.get("PLAY_SESSION").value).isEqualTo("abc");
+        assertThat(IOUtils.toString(request.body)).isEqualTo("body");
+    }
+
+    @Test
+    public void headersAreMaterialisedWhenIterated() {
+        LazyHeaders headers = new LazyHeaders(nettyRequest().headers());
+        Http.Header accept = headers.get("accept");
+        assertThat(headers.get("accept")).isSameAs(accept);
+        assertThat(headers.containsKey("missing")).isFalse();
+        assertThat(headers.keySet()).containsOnly("host", "accept", "x-custom", "cookie");
+        assertThat(headers.get("accept")).isSameAs(accept);
+
+        headers.remove("accept");
+        assertThat(headers.get("accept")).isNull();
+        headers.put("new", new Http.Header("new", "value"));
+        assertThat(headers.get("new").value()).isEqualTo("value");
+    }
+
+    @Test
+    public void cookiesAreDecodedWhenNeeded() {
+        LazyCookies cookies = new LazyCookies("PLAY_SESSION=abc; other=def");
+        assertThat(cookies.get("missing")).isNull();
+        assertThat(cookies.get("other").value).isEqualTo("def");
+        assertThat(cookies.keySet()).containsOnly("PLAY_SESSION", "other");
+        assertThat(new LazyCookies(null).isEmpty()).isTrue();
+
+        Http.Cookie cookie = new Http.Cookie();
+        cookie.name = "added";
+        LazyCookies lazy = new LazyCookies("a=b");
+        lazy.put("added", cookie);
+        assertThat(lazy.keySet()).containsOnly("a", "added");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lazyMapsAreSerializedAsHashMaps() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(new LazyHeaders(nettyRequest().headers()));
+        oos.writeObject(new LazyCookies("a=b"));
+        oos.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Map<String, Http.Header> headers = (Map<String, Http.Header>) in.readObject();
+        Map<String, Http.Cookie> cookies = (Map<String, Http.Cookie>) in.readObject();
+        assertThat(headers.get("accept").value()).isEqualTo("text/html");
+        assertThat(cookies.get("a").value).isEqualTo("b");
+    }
+
+    @Test
+    public void remoteAddressesAreParsedWithoutRegularExpressions() {
+        assertThat(PlayHandler.remoteIPAddress("10.0.0.1")).isEqualTo("10.0.0.1");
+        assertThat(PlayHandler.remoteIPAddress("/10.0.0.1:9000")).isEqualTo("10.0.0.1");
+        assertThat(PlayHandler.remoteIPAddress("fe80:0:0:0:1%eth0")).isEqualTo("fe80:0:0:0:1");
+        assertThat(PlayHandler.remoteIPAddress("0:0:0:0:0:0:0:1")).isEqualTo("0:0:0:0:0:0:0:1");
+        assertThat(PlayHandler.remoteIPAddress("/10.0.0:9000")).isEqualTo("/10.0.0:9000");
+
+        assertThat(PlayHandler.isLoopbackHost("127.0.0.1")).isTrue();
+        assertThat(PlayHandler.isLoopbackHost("127.0.0.1:9000")).isTrue();
+        assertThat(PlayHandler.isLoopbackHost("127.0.0.1:")).isTrue();
+        assertThat(PlayHandler.isLoopbackHost("127.0.0.10")).isTrue();
+        assertThat(PlayHandler.isLoopbackHost("127.0.0.1.example.com")).isFalse();
+        assertThat(PlayHandler.isLoopbackHost("localhost")).isFalse();
+        assertThat(PlayHandler.isLoopbackHost(null)).isFalse();
+    }
+}
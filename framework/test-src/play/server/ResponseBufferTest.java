@@ -0,0 +1,176 @@
+package play.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.mvc.Http.Request;
+
+public class ResponseBufferTest {
+
+    private long outstanding;
+
+    @Before
+    public void setUp() {
+        Play.configuration = new Properties();
+        ResponseBuffer.clear();
+        outstanding = ResponseBuffer.outstandingChunks();
+    }
+
+    @After
+    public void tearDown() {
+        ResponseBuffer.clear();
+    }
+
+    private long outstandingChunks() {
+        return ResponseBuffer.outstandingChunks() - outstanding;
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void contentSpansSeveralChunks() throws Exception {
+        byte[] expected = bytes(ResponseBuffer.CHUNK_SIZE * 2 + 10);
+        ResponseBuffer buffer = new ResponseBuffer(null);
+        buffer.write(expected[0]);
+        buffer.write(expected, 1, expected.length - 1);
+        assertEquals(expected.length, buffer.size());
+        assertArrayEquals(expected, buffer.toByteArray());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        assertArrayEquals(expected, out.toByteArray());
+
+        ChannelBuffer content = buffer.content();
+        byte[] sent = new byte[content.readableBytes()];
+        content.readBytes(sent);
+        assertArrayEquals(expected, sent);
+        buffer.release();
+    }
+
+    @Test
+    public void resetKeepsTheChunks() throws Exception {
+        ResponseBuffer buffer = new ResponseBuffer(null);
+        buffer.write("first".getBytes("utf-8"));
+        buffer.reset();
+        buffer.write("second".getBytes("utf-8"));
+        assertEquals("second", buffer.toString("utf-8"));
+        assertEquals(1, outstandingChunks());
+        buffer.release();
+    }
+
+    @Test
+    public void chunksAreReusedOnceReleased() throws Exception {
+        ResponseBuffer buffer = new ResponseBuffer(null);
+        buffer.write(bytes(100));
+        buffer.content();
+        buffer.releaseWhenWritten(null);
+        // Until the end of the invocation
+        assertEquals(1, outstandingChunks());
+        buffer.finish();
+        assertEquals(0, outstandingChunks());
+        assertEquals(1, ResponseBuffer.pooledChunks());
+
+        long allocated = ResponseBuffer.allocatedChunks();
+        buffer = new ResponseBuffer(null);
+        buffer.write(bytes(100));
+        assertEquals(allocated, ResponseBuffer.allocatedChunks());
+        assertEquals(0, ResponseBuffer.pooledChunks());
+
+        // A buffer that won't be sent is released, once
+        ResponseBuffer.discard(buffer);
+        ResponseBuffer.discard(buffer);
+        assertEquals(0, outstandingChunks());
+        assertEquals(1, ResponseBuffer.pooledChunks());
+    }
+
+    @Test
+    public void sentContentIsReadableUntilFinished() throws Exception {
+        ResponseBuffer buffer = new ResponseBuffer(null);
+        buffer.write("sent".getBytes("utf-8"));
+        ChannelBuffer content = buffer.content();
+        assertEquals("sent", buffer.toString("utf-8"));
+        assertEquals(4, buffer.size());
+
+        // Changing it does not change what is being sent
+        buffer.write('!');
+        assertEquals("sent!", buffer.toString("utf-8"));
+        buffer.reset();
+        buffer.write("other".getBytes("utf-8"));
+        assertEquals("other", buffer.toString("utf-8"));
+        assertEquals("sent", content.toString(Charset.forName("utf-8")));
+        assertEquals(2, outstandingChunks());
+
+        // Finished before the sent chunks are written
+        buffer.finish();
+        assertEquals(1, outstandingChunks());
+        buffer.releaseWhenWritten(null);
+        assertEquals(0, outstandingChunks());
+        try {
+            buffer.toByteArray();
+            fail("The response is finished");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void sentContentIsNotReleasedByDiscard() throws Exception {
+        ResponseBuffer buffer = new ResponseBuffer(null);
+        buffer.write(1);
+        buffer.content();
+        ResponseBuffer.discard(buffer);
+        assertEquals(1, outstandingChunks());
+        try {
+            buffer.write(2);
+            fail("The content has been sent");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        buffer.release();
+    }
+
+    @Test
+    public void poolIsBounded() throws Exception {
+        Play.configuration.setProperty("http.responseBuffer.poolSize", "1");
+        ResponseBuffer buffer = new ResponseBuffer(null);
+        buffer.write(bytes(ResponseBuffer.CHUNK_SIZE * 3));
+        buffer.release();
+        assertEquals(0, outstandingChunks());
+        assertEquals(1, ResponseBuffer.pooledChunks());
+    }
+
+    @Test
+    public void chunksAreReservedFromThePreviousResponsesSize() throws Exception {
+        Request request = new Request();
+        request.action = "Application.index";
+        ResponseBuffer buffer = new ResponseBuffer(request);
+        buffer.write(bytes(ResponseBuffer.CHUNK_SIZE * 3));
+        buffer.content();
+        buffer.release();
+        assertEquals(ResponseBuffer.CHUNK_SIZE * 3, ResponseBuffer.expectedSize("Application.index"));
+
+        buffer = new ResponseBuffer(request);
+        buffer.write(1);
+        assertEquals(3, outstandingChunks());
+        buffer.content();
+        buffer.release();
+        assertEquals(ResponseBuffer.CHUNK_SIZE * 3 - (ResponseBuffer.CHUNK_SIZE * 3 - 1) / 8, ResponseBuffer.expectedSize("Application.index"));
+    }
+}
@@ -0,0 +1,155 @@
+package play.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.libs.MimeTypes;
+import play.vfs.VirtualFile;
+
+public class StaticResourceCacheTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        Play.configuration = new Properties();
+        Play.mode = Play.Mode.DEV;
+        file = File.createTempFile("static", ".css");
+        FileUtils.writeStringToFile(file, "body { color: red; }");
+        file.setLastModified(1000000000000L);
+    }
+
+    @After
+    public void tearDown() {
+        StaticResourceCache.clear();
+        file.delete();
+    }
+
+    @Test
+    public void smallFilesAreKeptInMemory() throws Exception {
+        StaticResourceCache.Resource resource = StaticResourceCache.put("localhost", "GET", "/public/main.css", VirtualFile.open(file));
+        assertSame(resource, StaticResourceCache.get("localhost", "GET", "/public/main.css"));
+        assertNull(StaticResourceCache.get("localhost", "HEAD", "/public/main.css"));
+        assertEquals(MimeTypes.getContentType(file.getName(), "text/plain"), resource.contentType);
+        assertEquals("\"1000000000000-" + file.hashCode() + "\"", resource.etag);
+
+        // Each caller gets its own view of the content
+        ChannelBuffer content = resource.content();
+        assertEquals(20, content.readableBytes());
+        content.skipBytes(10);
+        assertEquals(20, resource.content().readableBytes());
+    }
+
+    @Test
+    public void requestsForTheSameFileShareItsContent() throws Exception {
+        StaticResourceCache.Resource resource = StaticResourceCache.put("localhost", "GET", "/public/main.css", VirtualFile.open(file));
+        assertNull(StaticResourceCache.get("example.com", "GET", "/public/main.css"));
+        assertSame(resource, StaticResourceCache.put("example.com", "GET", "/public/main.css", VirtualFile.open(file)));
+        assertSame(resource, StaticResourceCache.get("example.com", "GET", "/public/main.css"));
+
+        // A change of the file invalidates it for all the requests
+        file.setLastModified(1000000001000L);
+        assertNull(StaticResourceCache.get("localhost", "GET", "/public/main.css"));
+        StaticResourceCache.Resource changed = StaticResourceCache.put("localhost", "GET", "/public/main.css", VirtualFile.open(file));
+        assertEquals(1000000001000L, changed.lastModified);
+        assertSame(changed, StaticResourceCache.get("example.com", "GET", "/public/main.css"));
+    }
+
+    @Test
+    public void bigFilesAreServedFromDisk() throws Exception {
+        Play.configuration.setProperty("http.staticCache.inMemoryMaxSize", "10");
+        StaticResourceCache.Resource resource = StaticResourceCache.put("localhost", "GET", "/public/main.css", VirtualFile.open(file));
+        assertNull(resource.content());
+        assertEquals(20, resource.length);
+    }
+
+    @Test
+    public void changedFilesAreInvalidatedInDevMode() throws Exception {
+        StaticResourceCache.put("localhost", "GET", "/public/main.css", VirtualFile.open(file));
+        assertNotNull(StaticResourceCache.get("localhost", "GET", "/public/main.css"));
+        file.setLastModified(1000000001000L);
+        assertNull(StaticResourceCache.get("localhost", "GET", "/public/main.css"));
+    }
+
+    @Test
+    public void changedFilesAreRefreshedPeriodicallyInProdMode() throws Exception {
+        Play.mode = Play.Mode.PROD;
+        Play.configuration.setProperty("http.staticCache.refresh", "1h");
+        StaticResourceCache.put("localhost", "GET", "/public/main.css", VirtualFile.open(file));
+        file.setLastModified(1000000001000L);
+        assertNotNull(StaticResourceCache.get("localhost", "GET", "/public/main.css"));
+
+        Play.configuration.setProperty("http.staticCache.refresh", "0s");
+        StaticResourceCache.put("localhost", "GET", "/public/main.css", VirtualFile.open(file));
+        file.setLastModified(1000000002000L);
+        Thread.sleep(5);
+        assertNull(StaticResourceCache.get("localhost", "GET", "/public/main.css"));
+    }
+
+    @Test
+    public void filesAreCompressedAsTheyAreRead() throws Exception {
+        FileUtils.writeStringToFile(file, StringUtils.repeat("body { color: red; }\n", 10000));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        assertTrue(StaticResourceCache.gzip(file, compressed, -1));
+        assertEquals(FileUtils.readFileToString(file), IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+
+        // Stopped at the maximum size
+        assertFalse(StaticResourceCache.gzip(file, new ByteArrayOutputStream(), 100));
+    }
+
+    @Test
+    public void compressibleFilesHaveEncodedVariants() throws Exception {
+        Play.tmpDir = new File(file.getParentFile(), "play-tmp-" + System.nanoTime());
+        Play.configuration.setProperty("http.compression.minSize", "0");
+        try {
+            StaticResourceCache.Resource resource = StaticResourceCache.put("localhost", "GET", "/public/main.css", VirtualFile.open(file));
+            if (!resource.isCompressible()) {
+                // No mime types in this environment
+                return;
+            }
+            assertNull(resource.variant(null));
+            StaticResourceCache.Variant gzip = resource.variant("gzip, deflate");
+            assertEquals("gzip", gzip.encoding);
+            assertEquals("\"1000000000000-" + file.hashCode() + "-gzip\"", gzip.etag);
+            assertTrue(gzip.file.getPath().startsWith(new File(Play.tmpDir, "compressed").getPath()));
+            assertEquals("body { color: red; }", IOUtils.toString(new GZIPInputStream(new ChannelBufferInputStream(gzip.content()))));
+            // No brotli encoder, only the precompressed files are served
+            assertSame(gzip, resource.variant("br, gzip"));
+
+            File brotli = new File(file.getPath() + ".br");
+            FileUtils.writeStringToFile(brotli, "fake brotli");
+            try {
+                // The variants are looked up when the file is cached
+                StaticResourceCache.clear();
+                resource = StaticResourceCache.put("localhost", "GET", "/public/main.css", VirtualFile.open(file));
+                assertEquals("br", resource.variant("br, gzip").encoding);
+                assertEquals(brotli, resource.variant("br, gzip").file);
+            } finally {
+                brotli.delete();
+            }
+        } finally {
+            FileUtils.deleteDirectory(Play.tmpDir);
+            Play.tmpDir = null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package play.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.plugins.PluginCollection;
+import play.data.Upload;
+
+public class StreamChunkAggregatorTest {
+
+    @Before
+    public void setUp() {
+        Play.configuration = new Properties();
+        Play.tmpDir = new File(System.getProperty("java.io.tmpdir"), "play-aggregator-" + System.nanoTime());
+        Play.readOnlyTmp = false;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(Play.tmpDir);
+        Play.tmpDir = null;
+    }
+
+    @Test
+    public void multipartBodyIsParsedWhileReceived() throws Exception {
+        Play.configuration.setProperty("play.netty.multipart.streaming", "true");
+        String body = "--b\r\nContent-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n\r\n"
+                + "some content spread over several chunks\r\n--b--\r\n";
+        String request = "POST /upload HTTP/1.1\r\nHost: localhost\r\nContent-Type: multipart/form-data; boundary=b\r\n"
+                + "Content-Length: " + body.length() + "\r\n\r\n" + body;
+
+        // Small chunks, as a big body would be received
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new HttpRequestDecoder(4096, 8192, 16), new StreamChunkAggregator());
+        embedder.offer(ChannelBuffers.wrappedBuffer(request.getBytes("utf-8")));
+        MultipartHttpRequest parsed = (MultipartHttpRequest) embedder.poll();
+
+        assertEquals("/upload", parsed.getUri());
+        assertEquals(0, parsed.getContent().readableBytes());
+        assertEquals(String.valueOf(body.length()), parsed.headers().get("Content-Length"));
+        Upload upload = parsed.body.getUploads().get(0);
+        assertEquals("a.txt", upload.getFileName());
+        assertEquals("some content spread over several chunks", FileUtils.readFileToString(upload.asFile()));
+
+        parsed.body.delete();
+        assertTrue(!upload.asFile().exists());
+    }
+
+    @Test
+    public void tooLargeMultipartIsRejectedThroughTheDefaultPipeline() throws Exception {
+        Play.configuration.setProperty("play.netty.multipart.streaming", "true");
+        Play.configuration.setProperty("play.netty.multipart.maxFileSize", "10");
+        // Read by the PlayHandler static initializer
+        Play.mode = Play.Mode.PROD;
+        Play.pluginCollection = new PluginCollection();
+        String body = "--b\r\nContent-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n\r\n"
+                + StringUtils.repeat("a content bigger than the limit", 1000) + "\r\n--b--\r\n";
+        // Bigger than the chunks of the decoder, so streamed
+        String request = "POST /upload HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n"
+                + "Content-Type: multipart/form-data; boundary=b\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+
+        // The handlers of the server pipeline, before the sink of the embedder
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new SimpleChannelUpstreamHandler());
+        for (Map.Entry<String, ChannelHandler> handler : new HttpServerPipelineFactory().getPipeline().toMap().entrySet()) {
+            embedder.getPipeline().addBefore("SINK", handler.getKey(), handler.getValue());
+        }
+        embedder.offer(ChannelBuffers.wrappedBuffer(request.getBytes("utf-8")));
+
+        // What reached the socket
+        Object written = embedder.poll();
+        assertTrue(written instanceof ChannelBuffer);
+        String response = ((ChannelBuffer) written).toString(Charset.forName("utf-8"));
+        assertTrue(response, response.startsWith("HTTP/1.1 413 Request Entity Too Large\r\n"));
+        assertTrue(response, response.contains("Connection: close\r\n"));
+        assertEquals(null, embedder.poll());
+    }
+}
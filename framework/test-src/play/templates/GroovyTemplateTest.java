@@ -4,10 +4,16 @@ import org.junit.Before;
 import org.junit.Test;
 
 import play.PlayBuilder;
+import play.vfs.VirtualFile;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
+
 import static org.fest.assertions.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 
@@ -124,4 +130,27 @@ public class GroovyTemplateTest {
         new GroovyTemplateCompiler().compile(groovyTemplate);
         assertEquals("123", groovyTemplate.render());
     }
+
+    @Test
+    public void verifyCompilingTemplatesInParallel() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "play-templates-" + System.nanoTime());
+        try {
+            List<VirtualFile> files = new ArrayList<VirtualFile>();
+            for (int i = 0; i < 8; i++) {
+                File file = new File(dir, "template" + i + ".html");
+                FileUtils.writeStringToFile(file, "template " + i + " ${name}", "utf-8");
+                files.add(VirtualFile.open(file));
+            }
+            List<Template> templates = TemplateLoader.compileAll(files, 4);
+            assertThat(templates).hasSize(8);
+            Map<String, Object> args = new HashMap<String, Object>();
+            args.put("name", "Morten");
+            for (int i = 0; i < 8; i++) {
+                assertThat(templates.get(i).render(args)).isEqualTo("template " + i + " Morten");
+                assertThat(TemplateLoader.load(files.get(i))).isSameAs(templates.get(i));
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
 }
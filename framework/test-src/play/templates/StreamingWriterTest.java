@@ -0,0 +1,97 @@
+package play.templates;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+public class StreamingWriterTest {
+
+    /**
+     * Records what is written between two flushes
+     */
+    static class Chunks extends StringWriter {
+
+        final List<String> chunks = new ArrayList<String>();
+        boolean closed;
+
+        @Override
+        public void flush() {
+            chunks.add(getBuffer().toString());
+            getBuffer().setLength(0);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void outputIsWrittenInChunks() throws Exception {
+        Chunks out = new Chunks();
+        StreamingWriter writer = new StreamingWriter(out);
+        writer.write("small");
+        assertThat(out.chunks).isEmpty();
+
+        String big = StringUtils.repeat("x", StreamingWriter.CHUNK_SIZE);
+        writer.write(big);
+        assertThat(out.chunks).containsExactly("small" + big);
+
+        writer.write("end");
+        writer.close();
+        assertThat(out.chunks).hasSize(1);
+        assertThat(out.toString()).isEqualTo("end");
+        assertThat(out.closed).isTrue();
+    }
+
+    @Test
+    public void surrogatePairsAreNotSplit() throws Exception {
+        Chunks out = new Chunks();
+        StreamingWriter writer = new StreamingWriter(out);
+        writer.write(StringUtils.repeat("x", StreamingWriter.CHUNK_SIZE - 1) + "\uD83D");
+        writer.write("\uDE00");
+        writer.close();
+        assertThat(out.chunks.get(0)).hasSize(StreamingWriter.CHUNK_SIZE - 1);
+        assertThat(out.toString()).isEqualTo("\uD83D\uDE00");
+    }
+
+    @Test
+    public void heldOutputIsTheBodyOfTheLayout() throws Exception {
+        Chunks out = new Chunks();
+        StreamingWriter writer = new StreamingWriter(out);
+        writer.write("  before extends ");
+        assertThat(writer.hold()).isTrue();
+        String body = StringUtils.repeat("b", 2 * StreamingWriter.CHUNK_SIZE);
+        writer.write(body);
+        assertThat(out.chunks).isEmpty();
+
+        assertThat(writer.release()).isEqualTo("  before extends " + body);
+        writer.trim();
+        writer.write("\n  <html>" + StringUtils.repeat("h", StreamingWriter.CHUNK_SIZE));
+        writer.write("</html>  \n");
+        writer.close();
+        assertThat(out.chunks.get(0)).startsWith("<html>");
+        assertThat(out.toString()).isEqualTo("</html>");
+
+        writer = new StreamingWriter(new Chunks());
+        writer.write(StringUtils.repeat("x", StreamingWriter.CHUNK_SIZE));
+        assertThat(writer.hold()).isFalse();
+    }
+
+    @Test
+    public void bufferedOutputIsWrittenAtTheEnd() throws Exception {
+        Chunks out = new Chunks();
+        StreamingWriter writer = new StreamingWriter(out);
+        assertThat(writer.buffer()).isTrue();
+        writer.write(StringUtils.repeat("x", 3 * StreamingWriter.CHUNK_SIZE));
+        assertThat(out.chunks).isEmpty();
+        writer.close();
+        assertThat(out.chunks).isEmpty();
+        assertThat(out.toString()).hasSize(3 * StreamingWriter.CHUNK_SIZE);
+    }
+}
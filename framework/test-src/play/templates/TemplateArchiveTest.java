@@ -0,0 +1,65 @@
+package play.templates;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.PlayBuilder;
+
+public class TemplateArchiveTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        dir = new File(System.getProperty("java.io.tmpdir"), "play-templates-" + System.nanoTime());
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TemplateArchive.clear();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void recordedTemplatesAreArchived() throws Exception {
+        TemplateArchive.record();
+        TemplateArchive.record("app/views/index.html", "hello ${name}", "bytecode".getBytes("utf-8"));
+        TemplateArchive.record("app/views/other.html", "other", "other bytecode".getBytes("utf-8"));
+        File archive = new File(dir, "templates.zip");
+        assertThat(TemplateArchive.write(archive)).isEqualTo(2);
+        // Nothing is recorded anymore
+        assertThat(TemplateArchive.write(archive)).isEqualTo(0);
+
+        assertThat(TemplateArchive.getBytecode("app/views/index.html", "hello ${name}")).isNull();
+        assertThat(TemplateArchive.load(archive)).isTrue();
+        assertThat(new String(TemplateArchive.getBytecode("app/views/index.html", "hello ${name}"), "utf-8")).isEqualTo("bytecode");
+        assertThat(new String(TemplateArchive.getBytecode("app/views/other.html", "other"), "utf-8")).isEqualTo("other bytecode");
+
+        // Not once the source changed
+        assertThat(TemplateArchive.getBytecode("app/views/index.html", "bye ${name}")).isNull();
+        assertThat(TemplateArchive.getBytecode("app/views/missing.html", "")).isNull();
+    }
+
+    @Test
+    public void archivesOfAnotherVersionAreIgnored() throws Exception {
+        File archive = new File(dir, "templates.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        out.putNextEntry(new ZipEntry(TemplateArchive.VERSION_ENTRY));
+        out.write("0\nold".getBytes("utf-8"));
+        out.closeEntry();
+        out.close();
+        assertThat(TemplateArchive.load(archive)).isFalse();
+        assertThat(TemplateArchive.load(new File(dir, "missing.zip"))).isFalse();
+    }
+}
@@ -0,0 +1,120 @@
+package play.templates;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TemplateLoaderTest {
+
+    static class Compiled extends BaseTemplate {
+
+        Compiled(String name) {
+            super(name, "");
+            compiledTemplate = Compiled.class;
+        }
+
+        @Override
+        void directLoad(byte[] code) {
+        }
+
+        @Override
+        public void compile() {
+        }
+
+        @Override
+        protected String internalRender(Map<String, Object> args) {
+            return name;
+        }
+
+        @Override
+        protected Throwable cleanStackTrace(Throwable e) {
+            return e;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        TemplateLoader.cleanCompiledCache();
+    }
+
+    @Test
+    public void templateFilesKeepTheirNumber() {
+        String number = TemplateLoader.getUniqueNumberForTemplateFile("app/views/a.html");
+        assertThat(TemplateLoader.getUniqueNumberForTemplateFile("app/views/a.html")).isEqualTo(number);
+        assertThat(TemplateLoader.getUniqueNumberForTemplateFile("app/views/b.html")).isNotEqualTo(number);
+    }
+
+    @Test
+    public void templatesAreCompiledOnce() throws Exception {
+        final AtomicInteger compilations = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<BaseTemplate> compiler = new Callable<BaseTemplate>() {
+            public BaseTemplate call() throws Exception {
+                compilations.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new Compiled("once");
+            }
+        };
+        final List<BaseTemplate> loaded = new ArrayList<BaseTemplate>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    BaseTemplate template = TemplateLoader.compileOnce("once", compiler);
+                    synchronized (loaded) {
+                        loaded.add(template);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+            if (i == 0) {
+                started.await();
+            }
+        }
+        Thread.sleep(50);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertThat(compilations.get()).isEqualTo(1);
+        assertThat(loaded).hasSize(4);
+        for (BaseTemplate template : loaded) {
+            assertThat(template).isSameAs(loaded.get(0));
+        }
+        assertThat(TemplateLoader.templates.get("once")).isSameAs(loaded.get(0));
+    }
+
+    @Test
+    public void compilationErrorsAreThrown() {
+        try {
+            TemplateLoader.compileOnce("error", new Callable<BaseTemplate>() {
+                public BaseTemplate call() {
+                    throw new IllegalStateException("does not compile");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("does not compile");
+        }
+        assertThat(TemplateLoader.templates.containsKey("error")).isFalse();
+        // Compiled again by the next caller
+        assertThat(TemplateLoader.compileOnce("error", new Callable<BaseTemplate>() {
+            public BaseTemplate call() {
+                return new Compiled("error");
+            }
+        }).name).isEqualTo("error");
+    }
+}
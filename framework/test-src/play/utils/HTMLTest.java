@@ -0,0 +1,34 @@
+package play.utils;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class HTMLTest {
+
+    private static String escape(String input) throws Exception {
+        StringWriter out = new StringWriter();
+        HTML.htmlEscape(input, out);
+        String escaped = HTML.htmlEscape(input);
+        assertThat(out.toString()).isEqualTo(escaped);
+        return escaped;
+    }
+
+    @Test
+    public void textWithoutSpecialCharactersIsReturnedAsIs() throws Exception {
+        String text = "Order 42 - shipped to John Smith, 3 items";
+        assertThat(HTML.htmlEscape(text)).isSameAs(text);
+        assertThat(escape("")).isEqualTo("");
+        assertThat(HTML.htmlEscape(null)).isNull();
+    }
+
+    @Test
+    public void specialCharactersAreReplacedByReferences() throws Exception {
+        assertThat(escape("<a href=\"x\">Tom & Jerry</a>")).isEqualTo("&lt;a href=&quot;x&quot;&gt;Tom &amp; Jerry&lt;/a&gt;");
+        assertThat(escape("<")).isEqualTo("&lt;");
+        assertThat(escape("café €")).isEqualTo("caf&eacute; &euro;");
+        assertThat(escape("中文 & more")).isEqualTo("中文 &amp; more");
+    }
+}
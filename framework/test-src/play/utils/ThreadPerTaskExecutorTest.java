@@ -0,0 +1,167 @@
+package play.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ThreadPerTaskExecutorTest {
+
+    private ThreadPerTaskExecutor executor;
+
+    /**
+     * Virtual threads when the JVM has them, platform threads otherwise.
+     */
+    private static ThreadFactory threads() {
+        ThreadFactory virtual = ThreadPerTaskExecutor.virtualThreadFactory("test");
+        return virtual != null ? virtual : new PThreadFactory("test");
+    }
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void eachTaskRunsOnANewThread() throws Exception {
+        executor = new ThreadPerTaskExecutor(1, "test", -1, threads());
+        final ThreadLocal<String> local = new ThreadLocal<String>();
+        Callable<Thread> task = new Callable<Thread>() {
+
+            @Override
+            public Thread call() {
+                assertEquals(null, local.get());
+                local.set("value");
+                return Thread.currentThread();
+            }
+        };
+        Thread first = executor.submit(task).get(5, TimeUnit.SECONDS);
+        Thread second = executor.submit(task).get(5, TimeUnit.SECONDS);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void concurrencyIsLimited() throws Exception {
+        executor = new ThreadPerTaskExecutor(1, "test", 2, threads());
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                int count = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), count));
+                }
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }
+        };
+        Future<?>[] futures = new Future<?>[5];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = executor.submit(task);
+        }
+        assertEquals(2, executor.getActiveCount());
+        assertEquals(3, executor.getWaitingCount());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, executor.getWaitingCount());
+    }
+
+    @Test
+    public void scheduledTaskCanBeCancelled() throws Exception {
+        executor = new ThreadPerTaskExecutor(1, "test", -1, threads());
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        ScheduledFuture<?> cancelled = executor.schedule(task, 1, TimeUnit.HOURS);
+        assertTrue(cancelled.getDelay(TimeUnit.MINUTES) > 50);
+        assertTrue(cancelled.cancel(false));
+        assertTrue(cancelled.isCancelled());
+
+        ScheduledFuture<String> scheduled = executor.schedule(new Callable<String>() {
+
+            @Override
+            public String call() {
+                return "done";
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        assertEquals("done", scheduled.get(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void periodicRunsDoNotOverlap() throws Exception {
+        executor = new ThreadPerTaskExecutor(1, "test", -1, threads());
+        final CountDownLatch runs = new CountDownLatch(3);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                runs.countDown();
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS);
+        assertTrue(runs.await(5, TimeUnit.SECONDS));
+        future.cancel(false);
+        assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    public void shutdownExecutorRejectsTasks() throws Exception {
+        executor = new ThreadPerTaskExecutor(1, "test", -1, threads());
+        executor.shutdown();
+        try {
+            executor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                }
+            });
+            fail("The executor is shut down");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}